@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+import com.squareup.otto.Subscribe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener used by the benchmarks, it is subscribed to {@link BenchmarkEvent} on both Otto and Rx processors
+ * and counts the deliveries.
+ */
+public class BenchmarkListener {
+
+    private final AtomicLong mDelivered;
+
+    public BenchmarkListener(AtomicLong delivered) {
+        mDelivered = delivered;
+    }
+
+    @Subscribe
+    @RxSubscribe
+    public void onBenchmarkEvent(BenchmarkEvent event) {
+        mDelivered.incrementAndGet();
+    }
+
+    /**
+     * Waits until {@code delivered} reaches {@code expected}
+     *
+     * @param delivered
+     * @param expected
+     */
+    static void awaitDeliveries(AtomicLong delivered, long expected) {
+        while (delivered.get() < expected) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Event posted by the benchmarks on the non-UI bus
+     */
+    @Event(type = Event.Type.DATA)
+    public static class BenchmarkEvent {
+        public final long mSequence;
+
+        public BenchmarkEvent(long sequence) {
+            mSequence = sequence;
+        }
+    }
+}
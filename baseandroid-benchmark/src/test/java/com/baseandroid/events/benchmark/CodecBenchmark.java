@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.codec.EventCodec;
+import com.baseandroid.events.codec.EventCodecs;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the codecs of {@link EventCodecs} with Java serialization, encoding and decoding the same event.
+ * <br>
+ * The size of the encoded event is reported next to the time, as the {@code encodedBytes} counter:
+ * a new {@link ObjectOutputStream} is used for every event, as a journal or a bridge writing events one by one would do,
+ * so it pays the class descriptor every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private final OrderPlaced mEvent = new OrderPlaced(8234512L, 3, 149.90, "customer-1729", true, OrderPlaced.Channel.APP);
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(4096);
+    private EventCodec<OrderPlaced> mCodec;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mCodec = EventCodecs.of(OrderPlaced.class);
+    }
+
+    @Benchmark
+    public OrderPlaced eventCodec(EncodedSize size) {
+        mBuffer.clear();
+        mCodec.encode(mEvent, mBuffer);
+        size.encodedBytes = mBuffer.position();
+        mBuffer.flip();
+        return mCodec.decode(mBuffer);
+    }
+
+    @Benchmark
+    public Object objectStream(EncodedSize size) throws IOException, ClassNotFoundException {
+        byte[] bytes = serialize().toByteArray();
+        size.encodedBytes = bytes.length;
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return in.readObject();
+    }
+
+    /**
+     * The size of the last encoded event, reported by JMH as a secondary result of the benchmark
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+        public long encodedBytes;
+    }
+
+    private ByteArrayOutputStream serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(mEvent);
+        out.close();
+        return bytes;
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class OrderPlaced implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public enum Channel {
+            WEB, APP
+        }
+
+        private long mOrderId;
+        private int mQuantity;
+        private double mPrice;
+        private String mCustomer;
+        private boolean mExpress;
+        private Channel mChannel;
+
+        OrderPlaced() {
+        }
+
+        OrderPlaced(long orderId, int quantity, double price, String customer, boolean express, Channel channel) {
+            mOrderId = orderId;
+            mQuantity = quantity;
+            mPrice = price;
+            mCustomer = customer;
+            mExpress = express;
+            mChannel = channel;
+        }
+    }
+}
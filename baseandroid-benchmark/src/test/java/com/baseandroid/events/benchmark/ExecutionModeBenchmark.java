@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.rx.HandlerExecutor;
+import com.baseandroid.events.rx.RxEventProcessor;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the execution modes of {@link HandlerExecutor} with handlers doing blocking I/O.
+ * <p>
+ * Every operation posts {@link #events} events and waits for all of their handlers to complete, each handler blocks for
+ * {@link #blockingMillis} to simulate a JDBC or HTTP call.
+ * On runtimes without virtual threads the {@code VIRTUAL} mode falls back to the pooled one.
+ * A positive {@link #concurrencyLimit} caps the invocations running at the same time, the others wait in the queue of
+ * the event type.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    @Param({"POOLED", "VIRTUAL"})
+    public String mode;
+
+    @Param({"100", "1000", "5000"})
+    public int events;
+
+    @Param({"1"})
+    public int blockingMillis;
+
+    @Param({"0", "16"})
+    public int concurrencyLimit;
+
+    private RxEventProcessor mProcessor;
+    private BlockingListener mListener;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mProcessor = (RxEventProcessor) RxEventProcessor.newInstance();
+        HandlerExecutor executor = "VIRTUAL".equals(mode)
+                ? HandlerExecutor.virtualThreads()
+                : HandlerExecutor.pooled(HandlerExecutor.DEFAULT_POOL_SIZE);
+        if (concurrencyLimit > 0) {
+            executor.setConcurrencyLimit(BlockingIoEvent.class, concurrencyLimit);
+        }
+        mProcessor.setHandlerExecutor(executor);
+        mListener = new BlockingListener(blockingMillis);
+        mProcessor.onRegister(mListener);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProcessor.onUnregister(mListener);
+        mProcessor.setHandlerExecutor(null);
+    }
+
+    @Benchmark
+    public void postBlockingEvents() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(events);
+        mListener.mLatch = latch;
+        for (int i = 0; i < events; i++) {
+            mProcessor.onPost(new BlockingIoEvent());
+        }
+        latch.await();
+    }
+
+    @Event(type = Event.Type.NETWORK)
+    public static class BlockingIoEvent {
+    }
+
+    public static class BlockingListener {
+        private final int mBlockingMillis;
+        volatile CountDownLatch mLatch;
+
+        BlockingListener(int blockingMillis) {
+            mBlockingMillis = blockingMillis;
+        }
+
+        @RxSubscribe
+        public void onBlockingIoEvent(BlockingIoEvent event) throws InterruptedException {
+            Thread.sleep(mBlockingMillis);
+            mLatch.countDown();
+        }
+    }
+}
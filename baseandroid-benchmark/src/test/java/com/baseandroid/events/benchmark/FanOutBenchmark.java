@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.EventDispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the time needed to deliver an event to {@link #subscribers} registered listeners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({"RX", "OTTO", "RING"})
+    public ProcessorType processor;
+
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    private final AtomicLong mDelivered = new AtomicLong();
+    private BenchmarkListener[] mListeners;
+    private long mSequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EventDispatcher.useEventProcessor(processor.newProcessor());
+        mListeners = new BenchmarkListener[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            mListeners[i] = new BenchmarkListener(mDelivered);
+            EventDispatcher.register(mListeners[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (BenchmarkListener listener : mListeners) {
+            EventDispatcher.unregister(listener);
+        }
+    }
+
+    @Benchmark
+    public void fanOut() {
+        long expected = mDelivered.get() + subscribers;
+        EventDispatcher.post(new BenchmarkListener.BenchmarkEvent(mSequence++));
+        BenchmarkListener.awaitDeliveries(mDelivered, expected);
+    }
+}
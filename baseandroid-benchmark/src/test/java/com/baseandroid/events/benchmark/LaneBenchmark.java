@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.OrderingKey;
+import com.baseandroid.events.ring.RingEventProcessor;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the time needed to deliver {@link #events} keyed events to a listener doing some work for each of them,
+ * with the non UI events of {@link RingEventProcessor} spread over {@link #lanes} lanes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaneBenchmark {
+
+    /**
+     * Number of distinct ordering keys of the posted events
+     */
+    private static final int KEYS = 64;
+
+    @Param({"1", "2", "4"})
+    public int lanes;
+
+    @Param({"1000"})
+    public int events;
+
+    @Param({"200"})
+    public int workTokens;
+
+    private final AtomicLong mDelivered = new AtomicLong();
+    private RingEventProcessor mProcessor;
+    private WorkingListener mListener;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mProcessor = (RingEventProcessor) RingEventProcessor.newInstance(RingEventProcessor.DEFAULT_BUFFER_SIZE, lanes);
+        mListener = new WorkingListener(mDelivered, workTokens);
+        mProcessor.onRegister(mListener);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProcessor.onShutdown();
+    }
+
+    @Benchmark
+    public void deliverKeyedEvents() {
+        long expected = mDelivered.get() + events;
+        for (int i = 0; i < events; i++) {
+            mProcessor.onPost(new KeyedEvent(i % KEYS));
+        }
+        BenchmarkListener.awaitDeliveries(mDelivered, expected);
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class KeyedEvent {
+        @OrderingKey
+        public final Integer mKey;
+
+        KeyedEvent(int key) {
+            mKey = key;
+        }
+    }
+
+    public static class WorkingListener {
+        private final AtomicLong mDelivered;
+        private final int mWorkTokens;
+
+        WorkingListener(AtomicLong delivered, int workTokens) {
+            mDelivered = delivered;
+            mWorkTokens = workTokens;
+        }
+
+        @RxSubscribe
+        public void onKeyedEvent(KeyedEvent event) {
+            Blackhole.consumeCPU(mWorkTokens);
+            mDelivered.incrementAndGet();
+        }
+    }
+}
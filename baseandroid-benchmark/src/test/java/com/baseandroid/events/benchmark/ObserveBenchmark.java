@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.rx.RxEventProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.functions.Action1;
+
+/**
+ * Compares the delivery of an event to an annotated handler with the delivery to a stream returned by
+ * {@link RxEventProcessor#observe(Class)}, both on the posting thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObserveBenchmark {
+
+    @Param({"HANDLER", "STREAM"})
+    public String consumer;
+
+    private final AtomicLong mDelivered = new AtomicLong();
+    private RxEventProcessor mProcessor;
+    private BenchmarkListener mListener;
+    private long mSequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mProcessor = (RxEventProcessor) RxEventProcessor.newInstance();
+        if ("HANDLER".equals(consumer)) {
+            mListener = new BenchmarkListener(mDelivered);
+            mProcessor.onRegister(mListener);
+        } else {
+            mProcessor.observe(BenchmarkListener.BenchmarkEvent.class).subscribe(new Action1<BenchmarkListener.BenchmarkEvent>() {
+                @Override
+                public void call(BenchmarkListener.BenchmarkEvent event) {
+                    mDelivered.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProcessor.onShutdown();
+    }
+
+    @Benchmark
+    public long postAndDeliver() {
+        mProcessor.onPost(new BenchmarkListener.BenchmarkEvent(mSequence++));
+        return mDelivered.get();
+    }
+}
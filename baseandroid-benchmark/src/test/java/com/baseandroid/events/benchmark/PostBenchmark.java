@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.EventDispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures {@link EventDispatcher#post(Object)} with a single subscriber.
+ * <ul>
+ * <li>{@link #post()}: throughput of the posting thread, the event may still be queued when the call returns</li>
+ * <li>{@link #postAndDeliver()}: latency from the post to the delivery to the subscriber</li>
+ * </ul>
+ * <p>
+ * <b>NOTE: {@code OttoEventProcessor} consumes one event per queue every 10 ms, so its queues grow during
+ * {@link #post()} and every post pays the sort of the backlog.</b>
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostBenchmark {
+
+    @Param({"RX", "OTTO", "RING"})
+    public ProcessorType processor;
+
+    private final AtomicLong mDelivered = new AtomicLong();
+    private BenchmarkListener mListener;
+    private long mSequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EventDispatcher.useEventProcessor(processor.newProcessor());
+        mListener = new BenchmarkListener(mDelivered);
+        EventDispatcher.register(mListener);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        EventDispatcher.unregister(mListener);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void post() {
+        EventDispatcher.post(new BenchmarkListener.BenchmarkEvent(mSequence++));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void postAndDeliver() {
+        long expected = mDelivered.get() + 1;
+        EventDispatcher.post(new BenchmarkListener.BenchmarkEvent(mSequence++));
+        BenchmarkListener.awaitDeliveries(mDelivered, expected);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.otto.OttoEventProcessor;
+import com.baseandroid.events.ring.RingEventProcessor;
+import com.baseandroid.events.rx.RxEventProcessor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import rx.Scheduler;
+import rx.android.plugins.RxAndroidPlugins;
+import rx.android.plugins.RxAndroidSchedulersHook;
+import rx.schedulers.Schedulers;
+
+/**
+ * The {@link EventProcessor} implementations covered by the benchmarks.
+ */
+public enum ProcessorType {
+    RX {
+        @Override
+        EventProcessor newProcessor() {
+            return RxEventProcessor.newInstance();
+        }
+    },
+    OTTO {
+        @Override
+        EventProcessor newProcessor() {
+            return OttoEventProcessor.newInstance();
+        }
+    },
+    RING {
+        @Override
+        EventProcessor newProcessor() {
+            return RingEventProcessor.newInstance();
+        }
+    };
+
+    static {
+        // there is no Android Main Thread on the JVM, a single thread plays its role
+        RxAndroidPlugins.getInstance().registerSchedulersHook(new RxAndroidSchedulersHook() {
+            private final Scheduler mMainThread = Schedulers.from(Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "benchmark-main");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }));
+
+            @Override
+            public Scheduler getMainThreadScheduler() {
+                return mMainThread;
+            }
+        });
+    }
+
+    abstract EventProcessor newProcessor();
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.benchmark;
+
+import com.baseandroid.events.EventDispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the registration of listeners.
+ * <ul>
+ * <li>{@link #churn()}: register and unregister of a new listener, once the listener class is known to the processor</li>
+ * <li>{@link #coldRegistration()}: first registration of a listener class in a fresh JVM, every fork measures it once</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class RegistrationBenchmark {
+
+    @Param({"RX", "OTTO", "RING"})
+    public ProcessorType processor;
+
+    private final AtomicLong mDelivered = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EventDispatcher.useEventProcessor(processor.newProcessor());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void churn() {
+        BenchmarkListener listener = new BenchmarkListener(mDelivered);
+        EventDispatcher.register(listener);
+        EventDispatcher.unregister(listener);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public BenchmarkListener coldRegistration() {
+        BenchmarkListener listener = new BenchmarkListener(mDelivered);
+        EventDispatcher.register(listener);
+        return listener;
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.codec.EventCodec;
+import com.baseandroid.events.codec.EventCodecs;
+import com.baseandroid.events.log.EventLogger;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.pool.PooledEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EventProcessor} decorator forwarding selected event types to other processes, and posting the events
+ * received from them.
+ * <br>
+ * Every bridged type has an id and an {@link EventCodec}, the same on both sides: the events of those types posted in
+ * this process are delivered by the decorated processor and forwarded, the events received are posted on the decorated
+ * processor, so they go through its normal priority and type routing, and are not forwarded back.
+ * <pre>{@code
+ *     BridgeEventProcessor bridge = BridgeEventProcessor.newInstance(RxEventProcessor.newInstance(),
+ *             LocalSocketTransport.server("com.example.events"));
+ *     bridge.bridgeEventType(SyncProgress.class, 1, new SyncProgressCodec());
+ *     bridge.start();
+ *     EventDispatcher.useEventProcessor(bridge);
+ * }</pre>
+ * On the backend several buses exchange events over TCP with a {@link TcpBusEndpoint}, each bus receives only the types
+ * it bridges:
+ * <pre>{@code
+ *     BridgeEventProcessor bridge = BridgeEventProcessor.newInstance(RxEventProcessor.newInstance(),
+ *             TcpBusEndpoint.newInstance().listen(7400).connectTo("orders.internal", 7400));
+ * }</pre>
+ * <p>
+ * <b>NOTE: events are encoded on the posting thread and written in batches by the bridge thread. With a
+ * {@link BridgeTransport} the events posted while the other process is not connected are kept, with a
+ * {@link TcpBusEndpoint} they are not forwarded. When more than {@link #setMaxPendingBytes(int)} are waiting
+ * for a process the {@link #setOverflowPolicy(OverflowPolicy)} applies.</b>
+ * </p>
+ */
+public final class BridgeEventProcessor implements EventProcessor {
+
+    /**
+     * Default max size of the events waiting to be written
+     */
+    public static final int DEFAULT_MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(BridgeEventProcessor.class);
+    private static final BridgedType[] NO_TYPES = new BridgedType[0];
+
+    private final EventProcessor mDelegate;
+    private final EventLink mLink;
+    private final EventLink.Receiver mReceiver = new EventLink.Receiver() {
+        @Override
+        public void onReceived(int typeId, ByteBuffer payload) {
+            receive(typeId, payload);
+        }
+
+        @Override
+        public int[] getTypeIds() {
+            return typeIds();
+        }
+    };
+    /**
+     * This map contains in keys the bridged event classes, in values their id and codec
+     */
+    private final ConcurrentMap<Class<?>, BridgedType> mTypesByClass = new ConcurrentHashMap<>();
+    /**
+     * The bridged types indexed by id, copied on write
+     */
+    private volatile BridgedType[] mTypesById = NO_TYPES;
+    private final AtomicLong mDropped = new AtomicLong();
+    private volatile int mMaxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+    private volatile OverflowPolicy mOverflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    private BridgeEventProcessor(EventProcessor delegate, BridgeTransport transport) {
+        mDelegate = delegate;
+        mLink = new BridgeLink(transport, mReceiver, delegate.getClass().getSimpleName());
+    }
+
+    private BridgeEventProcessor(EventProcessor delegate, TcpBusEndpoint endpoint) throws IOException {
+        mDelegate = delegate;
+        mLink = new NioLink(endpoint, mReceiver, delegate.getClass().getSimpleName());
+    }
+
+    /**
+     * @param delegate the processor delivering the events in this process
+     * @param transport the transport connecting to the other process
+     * @return a new bridge, to be started with {@link #start()}
+     */
+    public static BridgeEventProcessor newInstance(EventProcessor delegate, BridgeTransport transport) {
+        if (delegate == null || transport == null) {
+            throw new NullPointerException("delegate and transport cannot be null");
+        }
+        return new BridgeEventProcessor(delegate, transport);
+    }
+
+    /**
+     * @param delegate the processor delivering the events in this process
+     * @param endpoint the addresses of this bus and of the buses to connect to
+     * @return a new bridge, to be started with {@link #start()}
+     * @throws IOException if the selector of the bridge can't be opened
+     */
+    public static BridgeEventProcessor newInstance(EventProcessor delegate, TcpBusEndpoint endpoint) throws IOException {
+        if (delegate == null || endpoint == null) {
+            throw new NullPointerException("delegate and endpoint cannot be null");
+        }
+        return new BridgeEventProcessor(delegate, endpoint);
+    }
+
+    /**
+     * Forwards the events of the given class with the codec of {@link EventCodecs#of(Class)}, and accepts them
+     * from the other process. It must be called before {@link #start()}.
+     *
+     * @param eventType the class of the event, annotated with {@link Event}
+     * @param typeId the id of the type on the wire, the same in both processes, between 0 and {@link Short#MAX_VALUE}
+     * @return this bridge
+     */
+    public <T> BridgeEventProcessor bridgeEventType(Class<T> eventType, int typeId) {
+        return bridgeEventType(eventType, typeId, EventCodecs.of(eventType));
+    }
+
+    /**
+     * Forwards the events of the given class, and accepts them from the other process.
+     * It must be called before {@link #start()}.
+     *
+     * @param eventType the class of the event, annotated with {@link Event}
+     * @param typeId the id of the type on the wire, the same in both processes, between 0 and {@link Short#MAX_VALUE}
+     * @param codec
+     * @return this bridge
+     */
+    public synchronized <T> BridgeEventProcessor bridgeEventType(Class<T> eventType, int typeId, EventCodec<T> codec) {
+        if (EventInfo.of(eventType) == null) {
+            throw new IllegalArgumentException(eventType + " is not annotated with @Event");
+        }
+        if (typeId < 0 || typeId > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("typeId must be between 0 and " + Short.MAX_VALUE + ", was " + typeId);
+        }
+        BridgedType[] types = mTypesById;
+        if (typeId < types.length && types[typeId] != null) {
+            throw new IllegalArgumentException("typeId " + typeId + " is already used by " + types[typeId].mEventType);
+        }
+        BridgedType type = new BridgedType(eventType, typeId, codec);
+        types = Arrays.copyOf(types, Math.max(types.length, typeId + 1));
+        types[typeId] = type;
+        mTypesById = types;
+        mTypesByClass.put(eventType, type);
+        return this;
+    }
+
+    /**
+     * Max size of the events waiting to be written to a process, when it is exceeded the
+     * {@link #setOverflowPolicy(OverflowPolicy)} applies.
+     *
+     * @param maxPendingBytes
+     */
+    public void setMaxPendingBytes(int maxPendingBytes) {
+        if (maxPendingBytes <= 0) {
+            throw new IllegalArgumentException("maxPendingBytes must be positive, was " + maxPendingBytes);
+        }
+        mMaxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * What to do with the events posted when {@link #setMaxPendingBytes(int)} is exceeded,
+     * {@link OverflowPolicy#DROP_NEWEST} by default.
+     *
+     * @param policy
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("policy cannot be null");
+        }
+        mOverflowPolicy = policy;
+    }
+
+    /**
+     * Starts connecting to the other process, the bridge reconnects automatically until {@link #stop()}.
+     */
+    public void start() {
+        mLink.start();
+    }
+
+    /**
+     * Closes the connection, the events not yet written are lost.
+     */
+    public void stop() {
+        mLink.close();
+    }
+
+    /**
+     * @return true if another process is connected
+     */
+    public boolean isConnected() {
+        return mLink.isConnected();
+    }
+
+    /**
+     * @return number of events not forwarded because too many bytes were waiting to be written, counted once for
+     * every process that didn't receive them
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * @return the processor delivering the events in this process
+     */
+    public EventProcessor getDelegate() {
+        return mDelegate;
+    }
+
+    @Override
+    public void onRegister(Object o) {
+        mDelegate.onRegister(o);
+    }
+
+    @Override
+    public void onRegister(Object o, Object key) {
+        mDelegate.onRegister(o, key);
+    }
+
+    @Override
+    public void onUnregister(Object o) {
+        mDelegate.onUnregister(o);
+    }
+
+    @Override
+    public void onPost(Object o) {
+        forward(o);
+        mDelegate.onPost(o);
+    }
+
+    @Override
+    public void onPostAll(Collection<?> events) {
+        for (Object o : events) {
+            forward(o);
+        }
+        mDelegate.onPostAll(events);
+    }
+
+    @Override
+    public void onPause(Object o) {
+        mDelegate.onPause(o);
+    }
+
+    @Override
+    public void onResume(Object o) {
+        mDelegate.onResume(o);
+    }
+
+    /**
+     * Closes the connection, see {@link #stop()}, and shuts the delegate down.
+     */
+    @Override
+    public void onShutdown() {
+        stop();
+        mDelegate.onShutdown();
+    }
+
+    @Override
+    public String onSavePoint(Object object) {
+        return mDelegate.onSavePoint(object);
+    }
+
+    @Override
+    public void onLoadPoint(Object object, String key) {
+        mDelegate.onLoadPoint(object, key);
+    }
+
+    /**
+     * Encodes the event for the other process, if its type is bridged
+     *
+     * @param o
+     */
+    @SuppressWarnings("unchecked")
+    private void forward(Object o) {
+        BridgedType type = o != null ? mTypesByClass.get(o.getClass()) : null;
+        if (type != null) {
+            try {
+                int dropped = mLink.enqueue(type.mTypeId, (EventCodec<Object>) type.mCodec, o, mMaxPendingBytes,
+                        mOverflowPolicy);
+                if (dropped > 0) {
+                    mDropped.addAndGet(dropped);
+                    LOGGER.warn("bridge is full, {} events have not been forwarded", dropped);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("{} failed encoding the event", type.mCodec.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the bridged types
+     */
+    private int[] typeIds() {
+        BridgedType[] types = mTypesById;
+        int count = 0;
+        for (BridgedType type : types) {
+            if (type != null) {
+                count++;
+            }
+        }
+        int[] typeIds = new int[count];
+        for (BridgedType type : types) {
+            if (type != null) {
+                typeIds[--count] = type.mTypeId;
+            }
+        }
+        return typeIds;
+    }
+
+    /**
+     * Posts on the decorated processor an event received from the other process, on the bridge thread.
+     * As {@code EventDispatcher.post(...)} does, the reference to a decoded {@link PooledEvent} is released once posted.
+     *
+     * @param typeId
+     * @param payload
+     */
+    private void receive(int typeId, ByteBuffer payload) {
+        BridgedType[] types = mTypesById;
+        BridgedType type = typeId < types.length ? types[typeId] : null;
+        if (type == null) {
+            LOGGER.warn("received an event of unknown type id {}", typeId);
+            return;
+        }
+        Object event;
+        try {
+            event = type.mCodec.decode(payload);
+        } catch (RuntimeException e) {
+            LOGGER.error("{} failed decoding the event", type.mCodec.getClass(), e);
+            return;
+        }
+        if (event != null) {
+            if (EventMetrics.isEnabled()) {
+                EventMetrics.posted(event.getClass());
+            }
+            try {
+                mDelegate.onPost(event);
+            } finally {
+                EventPool.releaseIfPooled(event);
+            }
+        }
+    }
+
+    /**
+     * This class holds the id and the codec of a bridged event type
+     */
+    private static final class BridgedType {
+        private final Class<?> mEventType;
+        private final int mTypeId;
+        private final EventCodec<?> mCodec;
+
+        private BridgedType(Class<?> eventType, int typeId, EventCodec<?> codec) {
+            mEventType = eventType;
+            mTypeId = typeId;
+            mCodec = codec;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import com.baseandroid.events.codec.EventCodec;
+import com.baseandroid.events.log.EventLogger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The link of a {@link BridgeEventProcessor} with the other process: it keeps a connection open through a
+ * {@link BridgeTransport}, reconnecting with an exponential back off when it is lost, writes the queued events in
+ * batched frames (see {@link FrameBuffer}) and reads the frames of the other process.
+ * <br>
+ * Every connection starts with {@link #PROTOCOL_MAGIC} in both directions. Events queued while disconnected are
+ * written once connected, a frame whose write failed is written again on the next connection.
+ */
+final class BridgeLink implements EventLink, Runnable {
+
+    /**
+     * "EVB1", first bytes written on every connection
+     */
+    static final int PROTOCOL_MAGIC = 0x45564231;
+    /**
+     * Max size of a frame read, bigger frames are considered a protocol error
+     */
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(BridgeLink.class);
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final int INITIAL_FRAME_CAPACITY = 4096;
+
+    private final BridgeTransport mTransport;
+    private final Receiver mReceiver;
+    private final String mName;
+    private final Object mLock = new Object();
+    /**
+     * Events queued by the posting threads, guarded by {@link #mLock}
+     */
+    private FrameBuffer mPending = new FrameBuffer(INITIAL_FRAME_CAPACITY);
+    /**
+     * Events being written by the link thread
+     */
+    private FrameBuffer mSending = new FrameBuffer(INITIAL_FRAME_CAPACITY);
+    private volatile boolean mClosed;
+    private volatile Reader mReader;
+    private volatile Thread mReaderThread;
+    private Thread mThread;
+
+    BridgeLink(BridgeTransport transport, Receiver receiver, String name) {
+        mTransport = transport;
+        mReceiver = receiver;
+        mName = name;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (mThread == null) {
+            mThread = new Thread(this, "EventBridge-" + mName);
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        mTransport.close();
+        Reader reader = mReader;
+        if (reader != null) {
+            reader.mConnection.close();
+        }
+        synchronized (mLock) {
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        Reader reader = mReader;
+        return reader != null && !reader.mLost;
+    }
+
+    /**
+     * Queues an event for the next frame.
+     * {@link OverflowPolicy#DISCONNECT} drops the events waiting and the connection, this event goes to the next one.
+     */
+    @Override
+    public <T> int enqueue(int typeId, EventCodec<T> codec, T event, int maxPendingBytes, OverflowPolicy policy) {
+        int dropped = 0;
+        synchronized (mLock) {
+            if (mPending.size() >= maxPendingBytes) {
+                if (policy == OverflowPolicy.BLOCK && Thread.currentThread() != mReaderThread) {
+                    try {
+                        while (!mClosed && mPending.size() >= maxPendingBytes) {
+                            mLock.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return 1;
+                    }
+                } else if (policy == OverflowPolicy.DISCONNECT) {
+                    dropped = mPending.count();
+                    mPending.clear();
+                    Reader reader = mReader;
+                    if (reader != null) {
+                        LOGGER.warn("bridge {} disconnects the other process, {} events are waiting", mName, dropped);
+                        reader.mConnection.close();
+                    }
+                } else {
+                    return 1;
+                }
+            }
+            boolean wasEmpty = mPending.isEmpty();
+            mPending.append(typeId, codec, event);
+            if (wasEmpty) {
+                mLock.notifyAll();
+            }
+        }
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        int failures = 0;
+        try {
+            while (!mClosed) {
+                BridgeConnection connection;
+                try {
+                    connection = mTransport.connect();
+                } catch (IOException e) {
+                    if (!mClosed) {
+                        failures++;
+                        LOGGER.debug("bridge {} failed to connect: {}", mName, e.getMessage());
+                        Thread.sleep(Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures, 10)));
+                    }
+                    continue;
+                }
+                failures = 0;
+                LOGGER.info("bridge {} connected", mName);
+                Reader reader = new Reader(connection);
+                mReader = reader;
+                try {
+                    Thread readerThread = new Thread(reader, "EventBridge-" + mName + "-reader");
+                    readerThread.setDaemon(true);
+                    mReaderThread = readerThread;
+                    readerThread.start();
+                    write(connection.getOutputStream(), reader);
+                } catch (IOException e) {
+                    LOGGER.warn("bridge {} lost the connection: {}", mName, e.getMessage());
+                } finally {
+                    connection.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info("bridge {} interrupted", mName);
+        }
+    }
+
+    /**
+     * Writes the queued events until the connection is lost or the link is closed
+     */
+    private void write(OutputStream out, Reader reader) throws IOException, InterruptedException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(PROTOCOL_MAGIC);
+        dataOut.flush();
+        while (true) {
+            if (mSending.isEmpty()) {
+                synchronized (mLock) {
+                    while (!mClosed && !reader.mLost && mPending.isEmpty()) {
+                        mLock.wait();
+                    }
+                    if (mClosed || reader.mLost) {
+                        return;
+                    }
+                    // the events queued meanwhile go in the next frame
+                    FrameBuffer sending = mPending;
+                    mPending = mSending;
+                    mSending = sending;
+                    // wakes up the threads blocked by OverflowPolicy.BLOCK
+                    mLock.notifyAll();
+                }
+            }
+            mSending.writeTo(out);
+            mSending.clear();
+        }
+    }
+
+    /**
+     * This class reads the frames of a connection, on its own thread
+     */
+    private final class Reader implements Runnable {
+        private final BridgeConnection mConnection;
+        private volatile boolean mLost;
+
+        private Reader(BridgeConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public void run() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(mConnection.getInputStream()));
+                if (in.readInt() != PROTOCOL_MAGIC) {
+                    throw new IOException("the other process doesn't speak the bridge protocol");
+                }
+                byte[] frame = new byte[INITIAL_FRAME_CAPACITY];
+                while (!mClosed) {
+                    int length = in.readInt();
+                    int count = in.readInt();
+                    if (length < 0 || length > MAX_FRAME_SIZE) {
+                        throw new IOException("invalid frame length " + length);
+                    }
+                    if (frame.length < length) {
+                        frame = new byte[Math.max(length, frame.length * 2)];
+                    }
+                    in.readFully(frame, 0, length);
+                    ByteBuffer buffer = ByteBuffer.wrap(frame, 0, length);
+                    for (int i = 0; i < count; i++) {
+                        int typeId = buffer.getInt();
+                        int end = buffer.getInt() + buffer.position();
+                        buffer.limit(end);
+                        try {
+                            mReceiver.onReceived(typeId, buffer);
+                        } finally {
+                            buffer.limit(length);
+                            buffer.position(end);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!mClosed) {
+                    LOGGER.warn("bridge {} stopped reading: {}", mName, e.toString());
+                }
+            } finally {
+                mLost = true;
+                mConnection.close();
+                synchronized (mLock) {
+                    mLock.notifyAll();
+                }
+            }
+        }
+    }
+}
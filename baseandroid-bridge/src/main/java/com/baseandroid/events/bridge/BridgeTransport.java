@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import java.io.IOException;
+
+/**
+ * Establishes the connections of a {@link BridgeEventProcessor} with the other process.
+ * <br>
+ * Available transports are {@link LocalSocketTransport}, for processes of the same app, and {@link SocketTransport}.
+ */
+public interface BridgeTransport {
+
+    /**
+     * Blocks until a connection with the other process is established: servers accept it, clients open it.
+     *
+     * @return the new connection
+     * @throws IOException if the connection failed, the bridge retries later
+     */
+    BridgeConnection connect() throws IOException;
+
+    /**
+     * Releases the resources of the transport, the connection in progress, if any, fails.
+     */
+    void close();
+}
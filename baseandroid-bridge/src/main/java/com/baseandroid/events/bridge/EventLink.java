@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import com.baseandroid.events.codec.EventCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The connection of a {@link BridgeEventProcessor} with the other processes.
+ */
+interface EventLink {
+
+    /**
+     * Receives the events read from the other processes
+     */
+    interface Receiver {
+        /**
+         * @param typeId
+         * @param payload the encoded event, from the position to the limit of the buffer
+         */
+        void onReceived(int typeId, ByteBuffer payload);
+
+        /**
+         * @return the ids of the event types accepted by this process
+         */
+        int[] getTypeIds();
+    }
+
+    void start();
+
+    void close();
+
+    /**
+     * @return true if a connection with another process is open
+     */
+    boolean isConnected();
+
+    /**
+     * Queues an event for the other processes.
+     *
+     * @param typeId
+     * @param codec
+     * @param event
+     * @param maxPendingBytes max size of the events waiting to be written to a process
+     * @param policy what to do when {@code maxPendingBytes} is exceeded
+     * @return number of events dropped, this one included
+     */
+    <T> int enqueue(int typeId, EventCodec<T> codec, T event, int maxPendingBytes, OverflowPolicy policy);
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import com.baseandroid.events.codec.EventCodec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A batched frame of encoded events, written with a single call.
+ * <br>
+ * A frame is made of an header, the length in bytes of the events and their count, followed by the events:
+ * for each event its type id, the length of its payload and the payload written by its {@link EventCodec}.
+ * All the integers are big endian.
+ */
+final class FrameBuffer {
+
+    /**
+     * Size of the header of a frame: the length of the events and their count
+     */
+    static final int HEADER_SIZE = 8;
+
+    private ByteBuffer mBuffer;
+    private int mCount;
+
+    FrameBuffer(int initialCapacity) {
+        mBuffer = ByteBuffer.allocate(Math.max(initialCapacity, HEADER_SIZE * 2));
+        mBuffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * Encodes an event at the end of the frame, growing it if needed.
+     *
+     * @param typeId
+     * @param codec
+     * @param event
+     */
+    <T> void append(int typeId, EventCodec<T> codec, T event) {
+        int start = mBuffer.position();
+        boolean appended = false;
+        try {
+            while (!appended) {
+                try {
+                    mBuffer.putInt(typeId);
+                    int lengthPosition = mBuffer.position();
+                    mBuffer.putInt(0);
+                    codec.encode(event, mBuffer);
+                    mBuffer.putInt(lengthPosition, mBuffer.position() - lengthPosition - 4);
+                    appended = true;
+                } catch (BufferOverflowException e) {
+                    mBuffer.position(start);
+                    grow();
+                }
+            }
+            mCount++;
+        } finally {
+            if (!appended) {
+                // the codec failed, the frame is left as it was
+                mBuffer.position(start);
+            }
+        }
+    }
+
+    /**
+     * Appends an event already encoded.
+     *
+     * @param typeId
+     * @param payload the encoded event, from the position to the limit of the buffer, the position is not moved
+     */
+    void appendEncoded(int typeId, ByteBuffer payload) {
+        while (mBuffer.remaining() < payload.remaining() + 8) {
+            grow();
+        }
+        mBuffer.putInt(typeId);
+        mBuffer.putInt(payload.remaining());
+        mBuffer.put(payload.duplicate());
+        mCount++;
+    }
+
+    private void grow() {
+        ByteBuffer bigger = ByteBuffer.allocate(mBuffer.capacity() * 2);
+        mBuffer.flip();
+        bigger.put(mBuffer);
+        mBuffer = bigger;
+    }
+
+    /**
+     * @return the size in bytes of the encoded events
+     */
+    int size() {
+        return mBuffer.position() - HEADER_SIZE;
+    }
+
+    boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * @return number of events of the frame
+     */
+    int count() {
+        return mCount;
+    }
+
+    /**
+     * Writes the header and returns the frame, ready to be written to a channel. The frame must not be modified until
+     * it has been written and {@link #clear()}ed.
+     *
+     * @return a buffer over the frame, from its header to its last event
+     */
+    ByteBuffer seal() {
+        mBuffer.putInt(0, size());
+        mBuffer.putInt(4, mCount);
+        ByteBuffer frame = mBuffer.duplicate();
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Writes the header and the events with a single write, and flushes the stream.
+     *
+     * @param out
+     * @throws IOException
+     */
+    void writeTo(OutputStream out) throws IOException {
+        ByteBuffer frame = seal();
+        out.write(frame.array(), 0, frame.limit());
+        out.flush();
+    }
+
+    /**
+     * Removes all the events from the frame
+     */
+    void clear() {
+        mBuffer.position(HEADER_SIZE);
+        mCount = 0;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link BridgeTransport} over Unix domain sockets in the abstract namespace, to bridge the processes of the same app
+ * (i.e. a {@code :sync} process and the UI process).
+ * <br>
+ * Both processes must use the same socket name, one of them as {@link #server(String)} and the other as
+ * {@link #client(String)}.
+ */
+public final class LocalSocketTransport implements BridgeTransport {
+
+    private final String mName;
+    private final boolean mServer;
+    private LocalServerSocket mServerSocket;
+    private volatile boolean mClosed;
+
+    private LocalSocketTransport(String name, boolean server) {
+        mName = name;
+        mServer = server;
+    }
+
+    /**
+     * @param name name of the socket, it should start with the package name of the app
+     * @return a transport connecting to the socket
+     */
+    public static LocalSocketTransport client(String name) {
+        return new LocalSocketTransport(name, false);
+    }
+
+    /**
+     * @param name name of the socket, it should start with the package name of the app
+     * @return a transport accepting the connections on the socket
+     */
+    public static LocalSocketTransport server(String name) {
+        return new LocalSocketTransport(name, true);
+    }
+
+    @Override
+    public BridgeConnection connect() throws IOException {
+        if (mClosed) {
+            throw new IOException("transport closed");
+        }
+        if (mServer) {
+            return new LocalConnection(serverSocket().accept());
+        }
+        LocalSocket socket = new LocalSocket();
+        try {
+            socket.connect(new LocalSocketAddress(mName));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new LocalConnection(socket);
+    }
+
+    private synchronized LocalServerSocket serverSocket() throws IOException {
+        if (mServerSocket == null) {
+            mServerSocket = new LocalServerSocket(mName);
+        }
+        return mServerSocket;
+    }
+
+    @Override
+    public synchronized void close() {
+        mClosed = true;
+        if (mServerSocket != null) {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static final class LocalConnection implements BridgeConnection {
+        private final LocalSocket mSocket;
+
+        private LocalConnection(LocalSocket socket) {
+            mSocket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return mSocket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return mSocket.getOutputStream();
+        }
+
+        @Override
+        public void close() {
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import com.baseandroid.events.codec.EventCodec;
+import com.baseandroid.events.log.EventLogger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The link of a {@link BridgeEventProcessor} with other buses over TCP, see {@link TcpBusEndpoint}: a single thread
+ * accepts and opens the connections, reconnecting with an exponential back off, and reads and writes all of them
+ * with non-blocking I/O.
+ * <br>
+ * Every connection starts with an handshake in both directions, {@link #PROTOCOL_MAGIC} followed by the random id of
+ * the bus and the ids of the types it accepts, so that an event is queued only for the peers accepting its type.
+ * Two buses keep a single connection: when they connect to each other, or one reconnects before the other finds the
+ * previous connection lost, both sides close the same duplicate (see {@link #keep(Peer, long)}), so that no event is
+ * delivered twice. The events queued for a
+ * peer are written in batched frames (see {@link FrameBuffer}) one after the other, without waiting for the peer:
+ * the events queued while a frame is written go in the next one.
+ * <p>
+ * <b>NOTE: the events received are posted on the link thread, a decorated processor blocking its posters when full
+ * stops the reads of all the peers, whose writers then apply their {@link OverflowPolicy}.</b>
+ * </p>
+ */
+final class NioLink implements EventLink, Runnable {
+
+    /**
+     * "EVB3", first bytes written on every connection, followed by the id of the bus, the number of accepted type ids
+     * and the ids
+     */
+    static final int PROTOCOL_MAGIC = 0x45564233;
+    /**
+     * Size of the handshake before the type ids: magic, bus id and number of type ids
+     */
+    static final int HANDSHAKE_HEADER_SIZE = 16;
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(NioLink.class);
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final int INITIAL_FRAME_CAPACITY = 4096;
+    private static final int INITIAL_READ_CAPACITY = 64 * 1024;
+
+    private final ServerSocketChannel mServerChannel;
+    /**
+     * The id of this bus sent in the handshake, never 0
+     */
+    private final long mBusId;
+    /**
+     * The buses this link connects to, used by the link thread only
+     */
+    private final List<Remote> mRemotes = new ArrayList<>();
+    private final Receiver mReceiver;
+    private final String mName;
+    private final Selector mSelector;
+    /**
+     * The connected peers, read by the posting threads
+     */
+    private final List<Peer> mPeers = new CopyOnWriteArrayList<>();
+    /**
+     * The peers with events to write or to disconnect, handled by the link thread
+     */
+    private final Queue<Peer> mRequests = new ConcurrentLinkedQueue<>();
+    /**
+     * The buffer encoding the events of each posting thread, once for all the peers
+     */
+    private final ThreadLocal<ByteBuffer> mEncodeBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_FRAME_CAPACITY);
+        }
+    };
+    private volatile boolean mClosed;
+    private volatile Thread mThread;
+
+    NioLink(TcpBusEndpoint endpoint, Receiver receiver, String name) throws IOException {
+        mServerChannel = endpoint.getServerChannel();
+        for (InetSocketAddress address : endpoint.getPeers()) {
+            mRemotes.add(new Remote(address));
+        }
+        mReceiver = receiver;
+        mName = name;
+        mSelector = Selector.open();
+        SecureRandom random = new SecureRandom();
+        long busId;
+        do {
+            busId = random.nextLong();
+        } while (busId == 0);
+        mBusId = busId;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (mThread == null && !mClosed) {
+            Thread thread = new Thread(this, "EventBridge-" + mName);
+            thread.setDaemon(true);
+            mThread = thread;
+            thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        mClosed = true;
+        if (mThread == null) {
+            closeQuietly(mServerChannel);
+            closeQuietly(mSelector);
+        } else {
+            mSelector.wakeup();
+        }
+        for (Peer peer : mPeers) {
+            peer.lost();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (Peer peer : mPeers) {
+            if (peer.mAccepted != null && !peer.mLost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues an event for the next frame of every peer accepting its type, it is encoded once for all of them.
+     * {@link OverflowPolicy} applies to each peer, an event dropped for two peers counts two.
+     */
+    @Override
+    public <T> int enqueue(int typeId, EventCodec<T> codec, T event, int maxPendingBytes, OverflowPolicy policy) {
+        ByteBuffer payload = null;
+        int dropped = 0;
+        for (Peer peer : mPeers) {
+            if (peer.accepts(typeId)) {
+                if (payload == null) {
+                    payload = encode(codec, event);
+                }
+                dropped += peer.enqueue(typeId, payload, maxPendingBytes, policy);
+            }
+        }
+        return dropped;
+    }
+
+    private <T> ByteBuffer encode(EventCodec<T> codec, T event) {
+        ByteBuffer buffer = mEncodeBuffer.get();
+        while (true) {
+            buffer.clear();
+            try {
+                codec.encode(event, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                mEncodeBuffer.set(buffer);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (mServerChannel != null) {
+                mServerChannel.configureBlocking(false);
+                mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+            }
+            while (!mClosed) {
+                long timeout = connectRemotes();
+                handleRequests();
+                mSelector.select(timeout);
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Peer peer = (Peer) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            if (peer.mChannel.finishConnect()) {
+                                connected(peer);
+                            }
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            read(peer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(peer);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        disconnect(peer, e.toString());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("bridge {} stopped", mName, e);
+        } finally {
+            for (Peer peer : mPeers) {
+                disconnect(peer, null);
+            }
+            closeQuietly(mServerChannel);
+            closeQuietly(mSelector);
+        }
+    }
+
+    /**
+     * Opens the connections to the remote buses whose back off is elapsed
+     *
+     * @return millis to the next connection attempt, 0 if none is waiting
+     */
+    private long connectRemotes() {
+        long timeout = 0;
+        long now = nowMillis();
+        for (Remote remote : mRemotes) {
+            if (remote.mPeer == null && isServed(remote)) {
+                // connected through the connection opened by the other bus, see keep()
+                continue;
+            }
+            if (remote.mPeer == null && remote.mConnectAt <= now) {
+                connect(remote);
+            }
+            if (remote.mPeer == null) {
+                long wait = Math.max(1, remote.mConnectAt - now);
+                timeout = timeout == 0 ? wait : Math.min(timeout, wait);
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * @param remote
+     * @return true if the bus of the remote is this bus, or is connected through another connection
+     */
+    private boolean isServed(Remote remote) {
+        if (remote.mBusId == 0) {
+            return false;
+        }
+        if (remote.mBusId == mBusId) {
+            return true;
+        }
+        for (Peer peer : mPeers) {
+            if (peer.mBusId == remote.mBusId && peer.mAccepted != null && !peer.mDisconnected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void connect(Remote remote) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+        } catch (IOException e) {
+            remote.retry(e.toString());
+            return;
+        }
+        Peer peer = new Peer(channel, remote);
+        remote.mPeer = peer;
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            // resolved on every attempt, the remote may have moved
+            InetSocketAddress address = new InetSocketAddress(remote.mAddress.getHostName(), remote.mAddress.getPort());
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(remote.mAddress.getHostName());
+            }
+            if (channel.connect(address)) {
+                connected(peer);
+            } else {
+                peer.mKey = channel.register(mSelector, SelectionKey.OP_CONNECT, peer);
+            }
+        } catch (IOException e) {
+            disconnect(peer, e.toString());
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = mServerChannel.accept();
+            } catch (IOException e) {
+                LOGGER.warn("bridge {} failed to accept: {}", mName, e.toString());
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            Peer peer = new Peer(channel, null);
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connected(peer);
+            } catch (IOException e) {
+                disconnect(peer, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Starts reading the connection and writing the handshake
+     */
+    private void connected(Peer peer) throws IOException {
+        int[] typeIds = mReceiver.getTypeIds();
+        ByteBuffer handshake = ByteBuffer.allocate(HANDSHAKE_HEADER_SIZE + typeIds.length * 4);
+        handshake.putInt(PROTOCOL_MAGIC);
+        handshake.putLong(mBusId);
+        handshake.putInt(typeIds.length);
+        for (int typeId : typeIds) {
+            handshake.putInt(typeId);
+        }
+        handshake.flip();
+        peer.mWriting = handshake;
+        peer.mKey = peer.mChannel.register(mSelector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, peer);
+        mPeers.add(peer);
+        LOGGER.info("bridge {} connected with {}", mName, peer);
+    }
+
+    /**
+     * Sets the write interest of the peers with new events, and closes the peers disconnected by their overflow policy
+     */
+    private void handleRequests() {
+        Peer peer;
+        while ((peer = mRequests.poll()) != null) {
+            if (peer.mLost) {
+                disconnect(peer, "overflow");
+            } else if (peer.mKey != null && peer.mKey.isValid()) {
+                peer.mKey.interestOps(peer.mKey.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void read(Peer peer) throws IOException {
+        if (peer.mChannel.read(peer.mRead) < 0) {
+            throw new EOFException("closed by the peer");
+        }
+        peer.mRead.flip();
+        int needed = parse(peer);
+        peer.mRead.compact();
+        if (needed > peer.mRead.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, peer.mRead.capacity() * 2));
+            peer.mRead.flip();
+            bigger.put(peer.mRead);
+            peer.mRead = bigger;
+        }
+    }
+
+    /**
+     * Reads the handshake and the complete frames of the buffer, posting their events
+     *
+     * @return the size of the next message, to fit in the buffer
+     */
+    private int parse(Peer peer) throws IOException {
+        ByteBuffer buffer = peer.mRead;
+        int limit = buffer.limit();
+        while (true) {
+            int start = buffer.position();
+            int available = limit - start;
+            if (available < FrameBuffer.HEADER_SIZE) {
+                return FrameBuffer.HEADER_SIZE;
+            }
+            if (peer.mAccepted == null) {
+                if (buffer.getInt(start) != PROTOCOL_MAGIC) {
+                    throw new IOException("the other process doesn't speak the bridge protocol");
+                }
+                if (available < HANDSHAKE_HEADER_SIZE) {
+                    return HANDSHAKE_HEADER_SIZE;
+                }
+                long busId = buffer.getLong(start + 4);
+                int count = buffer.getInt(start + 12);
+                if (count < 0 || count > Short.MAX_VALUE + 1) {
+                    throw new IOException("invalid handshake, " + count + " types");
+                }
+                int size = HANDSHAKE_HEADER_SIZE + count * 4;
+                if (available < size) {
+                    return size;
+                }
+                buffer.position(start + HANDSHAKE_HEADER_SIZE);
+                int[] typeIds = new int[count];
+                int maxTypeId = -1;
+                for (int i = 0; i < count; i++) {
+                    typeIds[i] = buffer.getInt();
+                    if (typeIds[i] < 0 || typeIds[i] > Short.MAX_VALUE) {
+                        throw new IOException("invalid handshake, type id " + typeIds[i]);
+                    }
+                    maxTypeId = Math.max(maxTypeId, typeIds[i]);
+                }
+                boolean[] accepted = new boolean[maxTypeId + 1];
+                for (int typeId : typeIds) {
+                    accepted[typeId] = true;
+                }
+                if (!keep(peer, busId)) {
+                    // the events following the handshake of a duplicate are never posted
+                    return FrameBuffer.HEADER_SIZE;
+                }
+                peer.mBusId = busId;
+                peer.mAccepted = accepted;
+                continue;
+            }
+            int length = buffer.getInt(start);
+            int count = buffer.getInt(start + 4);
+            if (length < 0 || length > BridgeLink.MAX_FRAME_SIZE) {
+                throw new IOException("invalid frame length " + length);
+            }
+            int end = start + FrameBuffer.HEADER_SIZE + length;
+            if (available < FrameBuffer.HEADER_SIZE + length) {
+                return FrameBuffer.HEADER_SIZE + length;
+            }
+            buffer.position(start + FrameBuffer.HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                int typeId = buffer.getInt();
+                int eventEnd = buffer.getInt() + buffer.position();
+                if (eventEnd > end || eventEnd < buffer.position()) {
+                    throw new IOException("invalid event length in frame");
+                }
+                buffer.limit(eventEnd);
+                try {
+                    mReceiver.onReceived(typeId, buffer);
+                } finally {
+                    buffer.limit(limit);
+                    buffer.position(eventEnd);
+                }
+            }
+            buffer.position(end);
+        }
+    }
+
+    /**
+     * Keeps a single connection with every bus, when the handshake of a peer is read.
+     * <br>
+     * When the bus is already connected both sides choose the same connection: the one opened by the bus with the
+     * lower id, or the newer one if the same bus opened both, e.g. reconnecting before the other side found the
+     * previous connection lost. A remote whose connection is closed doesn't reconnect until the kept one is lost.
+     *
+     * @param peer the peer whose handshake has been read
+     * @param busId the id of its bus
+     * @return false if the peer has been disconnected
+     */
+    private boolean keep(Peer peer, long busId) {
+        if (busId == mBusId) {
+            LOGGER.warn("bridge {} is connected to itself through {}", mName, peer);
+            if (peer.mRemote != null) {
+                peer.mRemote.mBusId = busId;
+            }
+            disconnect(peer, null);
+            return false;
+        }
+        for (Peer other : mPeers) {
+            if (other == peer || other.mBusId != busId || other.mAccepted == null || other.mDisconnected) {
+                continue;
+            }
+            long opener = peer.mRemote != null ? mBusId : busId;
+            long otherOpener = other.mRemote != null ? mBusId : busId;
+            Peer duplicate = opener <= otherOpener ? other : peer;
+            LOGGER.info("bridge {} closes {}, a duplicate connection", mName, duplicate);
+            if (duplicate.mRemote != null) {
+                duplicate.mRemote.mBusId = busId;
+            }
+            disconnect(duplicate, null);
+            return duplicate != peer;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the frames of the peer until there are no more events or the socket buffer is full
+     */
+    private void write(Peer peer) throws IOException {
+        while (true) {
+            if (peer.mWriting == null || !peer.mWriting.hasRemaining()) {
+                peer.mWriting = peer.nextFrame();
+                if (peer.mWriting == null) {
+                    // the events queued from now on are notified through mRequests
+                    peer.mKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+            peer.mChannel.write(peer.mWriting);
+            if (peer.mWriting.hasRemaining()) {
+                return;
+            }
+        }
+    }
+
+    private void disconnect(Peer peer, String reason) {
+        if (peer.mDisconnected) {
+            return;
+        }
+        peer.mDisconnected = true;
+        boolean wasReady = peer.mAccepted != null;
+        mPeers.remove(peer);
+        peer.lost();
+        closeQuietly(peer.mChannel);
+        if (reason != null && !mClosed) {
+            if (wasReady) {
+                LOGGER.warn("bridge {} lost the connection with {}", mName, peer + ": " + reason);
+            } else {
+                LOGGER.debug("bridge {} failed to connect with {}", mName, peer + ": " + reason);
+            }
+        }
+        if (peer.mRemote != null) {
+            if (wasReady) {
+                peer.mRemote.mFailures = 0;
+            }
+            peer.mRemote.retry(null);
+        }
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * A bus this link connects to
+     */
+    private static final class Remote {
+        private final InetSocketAddress mAddress;
+        private Peer mPeer;
+        /**
+         * The id of the bus at the address, known once a connection to it has been closed as a duplicate, 0 otherwise
+         */
+        private long mBusId;
+        private int mFailures;
+        private long mConnectAt;
+
+        private Remote(InetSocketAddress address) {
+            mAddress = address;
+        }
+
+        /**
+         * Schedules the next connection attempt
+         */
+        private void retry(String reason) {
+            if (reason != null) {
+                LOGGER.debug("bridge failed to connect to {}: {}", mAddress, reason);
+            }
+            mPeer = null;
+            mFailures++;
+            mConnectAt = nowMillis() + Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(mFailures, 10));
+        }
+    }
+
+    /**
+     * A connection with another bus
+     */
+    private final class Peer {
+        private final SocketChannel mChannel;
+        private final Remote mRemote;
+        private SelectionKey mKey;
+        private ByteBuffer mRead = ByteBuffer.allocate(INITIAL_READ_CAPACITY);
+        /**
+         * The handshake or the frame being written by the link thread
+         */
+        private ByteBuffer mWriting;
+        private boolean mDisconnected;
+        /**
+         * Events queued by the posting threads, guarded by this peer
+         */
+        private FrameBuffer mPending = new FrameBuffer(INITIAL_FRAME_CAPACITY);
+        /**
+         * Events being written by the link thread
+         */
+        private FrameBuffer mSending = new FrameBuffer(INITIAL_FRAME_CAPACITY);
+        /**
+         * The types accepted by the peer indexed by id, null until its handshake is read
+         */
+        private volatile boolean[] mAccepted;
+        /**
+         * The id of the bus of the peer, read with its handshake
+         */
+        private long mBusId;
+        private volatile boolean mLost;
+
+        private Peer(SocketChannel channel, Remote remote) {
+            mChannel = channel;
+            mRemote = remote;
+        }
+
+        private boolean accepts(int typeId) {
+            boolean[] accepted = mAccepted;
+            return accepted != null && typeId < accepted.length && accepted[typeId] && !mLost;
+        }
+
+        /**
+         * @return number of events dropped
+         */
+        private int enqueue(int typeId, ByteBuffer payload, int maxPendingBytes, OverflowPolicy policy) {
+            boolean wasEmpty;
+            synchronized (this) {
+                if (mPending.size() >= maxPendingBytes) {
+                    if (policy == OverflowPolicy.BLOCK && Thread.currentThread() != mThread) {
+                        try {
+                            while (!mLost && mPending.size() >= maxPendingBytes) {
+                                wait();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return 1;
+                        }
+                    } else if (policy == OverflowPolicy.DISCONNECT) {
+                        int dropped = mPending.count() + 1;
+                        LOGGER.warn("bridge {} disconnects {}, it is not reading", mName, this);
+                        lost();
+                        mRequests.offer(this);
+                        mSelector.wakeup();
+                        return dropped;
+                    } else {
+                        return 1;
+                    }
+                }
+                if (mLost) {
+                    return 0;
+                }
+                wasEmpty = mPending.isEmpty();
+                mPending.appendEncoded(typeId, payload);
+            }
+            if (wasEmpty) {
+                mRequests.offer(this);
+                mSelector.wakeup();
+            }
+            return 0;
+        }
+
+        /**
+         * Swaps the queued events with the frame written
+         *
+         * @return the next frame to write, null if no event is queued
+         */
+        private synchronized ByteBuffer nextFrame() {
+            mSending.clear();
+            if (mPending.isEmpty()) {
+                return null;
+            }
+            FrameBuffer sending = mPending;
+            mPending = mSending;
+            mSending = sending;
+            // wakes up the threads blocked by OverflowPolicy.BLOCK
+            notifyAll();
+            return mSending.seal();
+        }
+
+        /**
+         * Drops the events queued, and wakes up the threads waiting for this peer
+         */
+        private synchronized void lost() {
+            mLost = true;
+            mPending.clear();
+            notifyAll();
+        }
+
+        @Override
+        public String toString() {
+            return mRemote != null ? mRemote.mAddress.toString() : String.valueOf(mChannel.socket().getRemoteSocketAddress());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+/**
+ * What a {@link BridgeEventProcessor} does with an event to forward when too many bytes are already waiting to be
+ * written to a peer, see {@link BridgeEventProcessor#setMaxPendingBytes(int)}.
+ */
+public enum OverflowPolicy {
+    /**
+     * The event is not forwarded, see {@link BridgeEventProcessor#getDroppedCount()}
+     */
+    DROP_NEWEST,
+    /**
+     * The posting thread waits until the peer reads the waiting events. Events posted by the bridge threads,
+     * i.e. by handlers of received events, are dropped instead, since waiting there would stop the bridge.
+     */
+    BLOCK,
+    /**
+     * The peer is disconnected and the events waiting for it are dropped, a slow peer doesn't hold memory
+     * of the others
+     */
+    DISCONNECT
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * {@link BridgeTransport} over TCP sockets, the server accepts connections on the loopback interface only.
+ */
+public final class SocketTransport implements BridgeTransport {
+
+    private final String mHost;
+    private final int mPort;
+    private final ServerSocket mServerSocket;
+    private volatile boolean mClosed;
+
+    private SocketTransport(String host, int port, ServerSocket serverSocket) {
+        mHost = host;
+        mPort = port;
+        mServerSocket = serverSocket;
+    }
+
+    /**
+     * @param host
+     * @param port
+     * @return a transport connecting to the given address
+     */
+    public static SocketTransport client(String host, int port) {
+        return new SocketTransport(host, port, null);
+    }
+
+    /**
+     * @param port the port to listen on, 0 for any free port (see {@link #getPort()})
+     * @return a transport accepting the connections on the loopback interface
+     * @throws IOException if the port can't be bound
+     */
+    public static SocketTransport server(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, 1, InetAddress.getByName(null));
+        return new SocketTransport(null, serverSocket.getLocalPort(), serverSocket);
+    }
+
+    /**
+     * @return the port of the server, or the one the client connects to
+     */
+    public int getPort() {
+        return mPort;
+    }
+
+    @Override
+    public BridgeConnection connect() throws IOException {
+        if (mClosed) {
+            throw new IOException("transport closed");
+        }
+        Socket socket = mServerSocket != null ? mServerSocket.accept() : new Socket(mHost, mPort);
+        // frames are batched by the bridge
+        socket.setTcpNoDelay(true);
+        return new SocketConnection(socket);
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        if (mServerSocket != null) {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static final class SocketConnection implements BridgeConnection {
+        private final Socket mSocket;
+
+        private SocketConnection(Socket socket) {
+            mSocket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return mSocket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return mSocket.getOutputStream();
+        }
+
+        @Override
+        public void close() {
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The addresses of a bus exchanging events with other buses over TCP, see
+ * {@link BridgeEventProcessor#newInstance(com.baseandroid.events.EventProcessor, TcpBusEndpoint)}.
+ * <br>
+ * A bus can accept the connections of the other buses, connect to them, or both: once connected the two sides are
+ * equivalent, each one receives the events of the types it bridges. Two buses keep a single connection, so they can
+ * both listen and connect to each other without receiving their events twice.
+ * <pre>{@code
+ *     TcpBusEndpoint endpoint = TcpBusEndpoint.newInstance()
+ *             .listen(7400)
+ *             .connectTo("orders.internal", 7400)
+ *             .connectTo("billing.internal", 7400);
+ * }</pre>
+ */
+public final class TcpBusEndpoint {
+
+    private ServerSocketChannel mServerChannel;
+    private final List<InetSocketAddress> mPeers = new ArrayList<>();
+
+    private TcpBusEndpoint() {
+    }
+
+    public static TcpBusEndpoint newInstance() {
+        return new TcpBusEndpoint();
+    }
+
+    /**
+     * Accepts the connections of the other buses on all the interfaces.
+     *
+     * @param port the port to listen on, 0 for any free port (see {@link #getLocalPort()})
+     * @return this endpoint
+     * @throws IOException if the port can't be bound
+     */
+    public TcpBusEndpoint listen(int port) throws IOException {
+        return listen(new InetSocketAddress(port));
+    }
+
+    /**
+     * Accepts the connections of the other buses on the given address.
+     *
+     * @param address
+     * @return this endpoint
+     * @throws IOException if the address can't be bound
+     */
+    public synchronized TcpBusEndpoint listen(InetSocketAddress address) throws IOException {
+        if (mServerChannel != null) {
+            throw new IllegalStateException("already listening on port " + getLocalPort());
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        mServerChannel = channel;
+        return this;
+    }
+
+    /**
+     * Connects to another bus, the host is resolved again on every reconnection.
+     *
+     * @param host
+     * @param port
+     * @return this endpoint
+     */
+    public synchronized TcpBusEndpoint connectTo(String host, int port) {
+        mPeers.add(InetSocketAddress.createUnresolved(host, port));
+        return this;
+    }
+
+    /**
+     * @return the port accepting the connections, or -1 if not listening
+     */
+    public synchronized int getLocalPort() {
+        return mServerChannel != null ? mServerChannel.socket().getLocalPort() : -1;
+    }
+
+    synchronized ServerSocketChannel getServerChannel() {
+        return mServerChannel;
+    }
+
+    synchronized List<InetSocketAddress> getPeers() {
+        return Collections.unmodifiableList(new ArrayList<>(mPeers));
+    }
+}
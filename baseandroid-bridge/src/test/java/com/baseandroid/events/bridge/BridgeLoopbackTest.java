@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link BridgeEventProcessor} between two JVMs over a TCP loopback connection: this JVM posts pings,
+ * a {@link LoopbackPeer} started with the same class path answers with pongs.
+ * <br>
+ * {@link LocalSocketTransport} can't run outside Android, it shares the rest of the bridge with {@link SocketTransport}.
+ */
+public class BridgeLoopbackTest {
+
+    private static final int EVENTS = 1000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final LoopbackPeer.RecordingProcessor mReceived = new LoopbackPeer.RecordingProcessor();
+    private BridgeEventProcessor mBridge;
+    private Process mPeer;
+
+    @After
+    public void tearDown() {
+        if (mBridge != null) {
+            mBridge.stop();
+        }
+        stopPeer();
+    }
+
+    @Test
+    public void eventsQueuedBeforeTheConnectionReachTheOtherJvmInOrder() throws Exception {
+        SocketTransport transport = SocketTransport.server(0);
+        mBridge = LoopbackPeer.newBridge(mReceived, transport);
+        mBridge.start();
+        for (int i = 0; i < EVENTS; i++) {
+            mBridge.onPost(new LoopbackPeer.Ping(i));
+        }
+        startPeer("client", transport.getPort());
+
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(i, awaitPong().mId);
+        }
+        assertEquals(0, mBridge.getDroppedCount());
+    }
+
+    @Test
+    public void serverAcceptsTheOtherJvmAgainAfterItRestarts() throws Exception {
+        SocketTransport transport = SocketTransport.server(0);
+        mBridge = LoopbackPeer.newBridge(mReceived, transport);
+        mBridge.start();
+        startPeer("client", transport.getPort());
+        mBridge.onPost(new LoopbackPeer.Ping(1));
+        assertEquals(1, awaitPong().mId);
+
+        stopPeer();
+        awaitConnected(false);
+        startPeer("client", transport.getPort());
+        mBridge.onPost(new LoopbackPeer.Ping(2));
+        assertEquals(2, awaitPong().mId);
+    }
+
+    @Test
+    public void clientConnectsOnceTheOtherJvmIsUp() throws Exception {
+        int port = freePort();
+        mBridge = LoopbackPeer.newBridge(mReceived, SocketTransport.client("localhost", port));
+        mBridge.start();
+        mBridge.onPost(new LoopbackPeer.Ping(1));
+        // let the bridge fail connecting a few times
+        Thread.sleep(500);
+        startPeer("server", port);
+
+        assertEquals(1, awaitPong().mId);
+        assertTrue(mBridge.isConnected());
+    }
+
+    /**
+     * @return the next pong received, the pings posted here are delivered here too and are skipped
+     */
+    private LoopbackPeer.Pong awaitPong() throws InterruptedException {
+        while (true) {
+            Object event = mReceived.mPosted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull("no event received from the other JVM", event);
+            if (event instanceof LoopbackPeer.Pong) {
+                return (LoopbackPeer.Pong) event;
+            }
+        }
+    }
+
+    private void awaitConnected(boolean connected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (mBridge.isConnected() != connected) {
+            assertTrue("connection state not reached", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void startPeer(String mode, int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        mPeer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), LoopbackPeer.class.getName(),
+                mode, String.valueOf(port))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private void stopPeer() {
+        if (mPeer != null) {
+            mPeer.destroy();
+            try {
+                mPeer.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mPeer = null;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
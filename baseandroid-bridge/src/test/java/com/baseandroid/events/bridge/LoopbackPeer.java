@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.codec.EventCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The other JVM of {@link BridgeLoopbackTest}: it answers every {@link Ping} received through the bridge with a
+ * {@link Pong} of the same id, until its standard input is closed.
+ * <br>
+ * Arguments: {@code server} or {@code client}, and the port.
+ */
+public class LoopbackPeer {
+
+    public static final int PING_TYPE_ID = 1;
+    public static final int PONG_TYPE_ID = 2;
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[1]);
+        BridgeTransport transport = "server".equals(args[0])
+                ? SocketTransport.server(port)
+                : SocketTransport.client("localhost", port);
+        EchoProcessor echo = new EchoProcessor();
+        BridgeEventProcessor bridge = newBridge(echo, transport);
+        echo.mBridge = bridge;
+        bridge.start();
+        while (System.in.read() != -1) {
+            // runs until the test closes the pipe
+        }
+        bridge.stop();
+    }
+
+    static BridgeEventProcessor newBridge(EventProcessor delegate, BridgeTransport transport) {
+        return BridgeEventProcessor.newInstance(delegate, transport)
+                .bridgeEventType(Ping.class, PING_TYPE_ID, new PingCodec())
+                .bridgeEventType(Pong.class, PONG_TYPE_ID, new PongCodec());
+    }
+
+    @Event(type = Event.Type.NETWORK)
+    static class Ping {
+        final long mId;
+
+        Ping(long id) {
+            mId = id;
+        }
+    }
+
+    @Event(type = Event.Type.DATA)
+    static class Pong {
+        final long mId;
+
+        Pong(long id) {
+            mId = id;
+        }
+    }
+
+    static class PingCodec implements EventCodec<Ping> {
+        @Override
+        public void encode(Ping event, ByteBuffer buffer) {
+            buffer.putLong(event.mId);
+        }
+
+        @Override
+        public Ping decode(ByteBuffer buffer) {
+            return new Ping(buffer.getLong());
+        }
+    }
+
+    static class PongCodec implements EventCodec<Pong> {
+        @Override
+        public void encode(Pong event, ByteBuffer buffer) {
+            buffer.putLong(event.mId);
+        }
+
+        @Override
+        public Pong decode(ByteBuffer buffer) {
+            return new Pong(buffer.getLong());
+        }
+    }
+
+    /**
+     * Records the events posted on it, as a processor delivering them to a listener would do
+     */
+    static class RecordingProcessor implements EventProcessor {
+        final BlockingQueue<Object> mPosted = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onRegister(Object o) {
+        }
+
+        @Override
+        public void onRegister(Object o, Object key) {
+        }
+
+        @Override
+        public void onUnregister(Object o) {
+        }
+
+        @Override
+        public void onPost(Object o) {
+            mPosted.add(o);
+        }
+
+        @Override
+        public void onPostAll(Collection<?> events) {
+            mPosted.addAll(events);
+        }
+
+        @Override
+        public void onPause(Object o) {
+        }
+
+        @Override
+        public void onResume(Object o) {
+        }
+
+        @Override
+        public void onShutdown() {
+        }
+
+        @Override
+        public String onSavePoint(Object object) {
+            return null;
+        }
+
+        @Override
+        public void onLoadPoint(Object object, String key) {
+        }
+    }
+
+    /**
+     * Answers the pings received from the other JVM
+     */
+    private static class EchoProcessor extends RecordingProcessor {
+        volatile BridgeEventProcessor mBridge;
+
+        @Override
+        public void onPost(Object o) {
+            if (o instanceof Ping) {
+                mBridge.onPost(new Pong(((Ping) o).mId));
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.bridge;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link BridgeEventProcessor} with a {@link TcpBusEndpoint}, between buses of this JVM over loopback
+ * connections.
+ */
+public class TcpBusLoopbackTest {
+
+    private static final int EVENTS = 10000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final List<BridgeEventProcessor> mBuses = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (BridgeEventProcessor bus : mBuses) {
+            bus.stop();
+        }
+    }
+
+    @Test
+    public void busesReceiveInOrderOnlyTheTypesTheyBridge() throws Exception {
+        LoopbackPeer.RecordingProcessor server = new LoopbackPeer.RecordingProcessor();
+        TcpBusEndpoint endpoint = TcpBusEndpoint.newInstance().listen(loopback(0));
+        BridgeEventProcessor serverBus = startBus(server, endpoint, true);
+        LoopbackPeer.RecordingProcessor client = new LoopbackPeer.RecordingProcessor();
+        BridgeEventProcessor clientBus = startBus(client,
+                TcpBusEndpoint.newInstance().connectTo("localhost", endpoint.getLocalPort()), false);
+        awaitConnected(serverBus);
+        awaitConnected(clientBus);
+
+        for (int i = 0; i < EVENTS; i++) {
+            serverBus.onPost(new LoopbackPeer.Pong(i));
+            serverBus.onPost(new LoopbackPeer.Ping(i));
+        }
+        // the client bridges pings only
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(i, ((LoopbackPeer.Ping) client.mPosted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).mId);
+        }
+        assertNull(client.mPosted.poll(200, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < EVENTS; i++) {
+            clientBus.onPost(new LoopbackPeer.Ping(EVENTS + i));
+        }
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(EVENTS + i, awaitPing(server, EVENTS).mId);
+        }
+        assertEquals(0, serverBus.getDroppedCount());
+        assertEquals(0, clientBus.getDroppedCount());
+    }
+
+    @Test
+    public void everyConnectedBusReceivesTheEvents() throws Exception {
+        LoopbackPeer.RecordingProcessor server = new LoopbackPeer.RecordingProcessor();
+        TcpBusEndpoint endpoint = TcpBusEndpoint.newInstance().listen(loopback(0));
+        BridgeEventProcessor serverBus = startBus(server, endpoint, true);
+        LoopbackPeer.RecordingProcessor first = new LoopbackPeer.RecordingProcessor();
+        LoopbackPeer.RecordingProcessor second = new LoopbackPeer.RecordingProcessor();
+        awaitConnected(startBus(first, TcpBusEndpoint.newInstance().connectTo("localhost", endpoint.getLocalPort()), true));
+        awaitConnected(startBus(second, TcpBusEndpoint.newInstance().connectTo("localhost", endpoint.getLocalPort()), true));
+        awaitPeers(serverBus, new LoopbackPeer.Ping(-1), 2, first, second);
+
+        for (int i = 0; i < EVENTS; i++) {
+            serverBus.onPost(new LoopbackPeer.Ping(i));
+        }
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(i, awaitPing(first, 0).mId);
+            assertEquals(i, awaitPing(second, 0).mId);
+        }
+    }
+
+    @Test
+    public void clientConnectsOnceTheOtherBusListens() throws Exception {
+        int port;
+        ServerSocket probe = new ServerSocket(0, 1, InetAddress.getByName(null));
+        port = probe.getLocalPort();
+        probe.close();
+        LoopbackPeer.RecordingProcessor client = new LoopbackPeer.RecordingProcessor();
+        BridgeEventProcessor clientBus = startBus(client,
+                TcpBusEndpoint.newInstance().connectTo("localhost", port), true);
+        Thread.sleep(500);
+
+        LoopbackPeer.RecordingProcessor server = new LoopbackPeer.RecordingProcessor();
+        BridgeEventProcessor serverBus = startBus(server, TcpBusEndpoint.newInstance().listen(loopback(port)), true);
+        awaitConnected(clientBus);
+        awaitConnected(serverBus);
+        serverBus.onPost(new LoopbackPeer.Ping(7));
+        assertEquals(7, awaitPing(client, 0).mId);
+    }
+
+    @Test
+    public void busesLinkedBothWaysReceiveEveryEventOnce() throws Exception {
+        TcpBusEndpoint firstEndpoint = TcpBusEndpoint.newInstance().listen(loopback(0));
+        TcpBusEndpoint secondEndpoint = TcpBusEndpoint.newInstance().listen(loopback(0));
+        firstEndpoint.connectTo("localhost", secondEndpoint.getLocalPort());
+        secondEndpoint.connectTo("localhost", firstEndpoint.getLocalPort());
+        LoopbackPeer.RecordingProcessor first = new LoopbackPeer.RecordingProcessor();
+        LoopbackPeer.RecordingProcessor second = new LoopbackPeer.RecordingProcessor();
+        BridgeEventProcessor firstBus = startBus(first, firstEndpoint, true);
+        BridgeEventProcessor secondBus = startBus(second, secondEndpoint, true);
+        awaitConnected(firstBus);
+        awaitConnected(secondBus);
+        awaitPeers(firstBus, new LoopbackPeer.Ping(-1), 1, second);
+        // both connections may carry the probes until the duplicate is closed
+        Thread.sleep(500);
+        first.mPosted.clear();
+        second.mPosted.clear();
+
+        for (int i = 0; i < EVENTS; i++) {
+            firstBus.onPost(new LoopbackPeer.Ping(i));
+        }
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(i, awaitPing(second, 0).mId);
+        }
+        assertNull(second.mPosted.poll(200, TimeUnit.MILLISECONDS));
+
+        first.mPosted.clear();
+        for (int i = 0; i < EVENTS; i++) {
+            secondBus.onPost(new LoopbackPeer.Ping(EVENTS + i));
+        }
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(EVENTS + i, awaitPing(first, EVENTS).mId);
+        }
+        assertNull(first.mPosted.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(firstBus.isConnected());
+        assertTrue(secondBus.isConnected());
+    }
+
+    @Test
+    public void eventsOverTheLimitOfASlowPeerAreDropped() throws Exception {
+        TcpBusEndpoint endpoint = TcpBusEndpoint.newInstance().listen(loopback(0));
+        BridgeEventProcessor bus = startBus(new LoopbackPeer.RecordingProcessor(), endpoint, true);
+        bus.setMaxPendingBytes(1024);
+        Socket slowPeer = connectSlowPeer(endpoint.getLocalPort());
+        try {
+            awaitConnected(bus);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            for (int i = 0; bus.getDroppedCount() == 0; i++) {
+                assertTrue(System.nanoTime() < deadline);
+                bus.onPost(new LoopbackPeer.Ping(i));
+            }
+            assertTrue(bus.isConnected());
+        } finally {
+            slowPeer.close();
+        }
+    }
+
+    @Test
+    public void slowPeerIsDisconnected() throws Exception {
+        TcpBusEndpoint endpoint = TcpBusEndpoint.newInstance().listen(loopback(0));
+        BridgeEventProcessor bus = startBus(new LoopbackPeer.RecordingProcessor(), endpoint, true);
+        bus.setMaxPendingBytes(1024);
+        bus.setOverflowPolicy(OverflowPolicy.DISCONNECT);
+        Socket slowPeer = connectSlowPeer(endpoint.getLocalPort());
+        try {
+            awaitConnected(bus);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            for (int i = 0; bus.isConnected(); i++) {
+                assertTrue(System.nanoTime() < deadline);
+                bus.onPost(new LoopbackPeer.Ping(i));
+            }
+            assertTrue(bus.getDroppedCount() > 0);
+        } finally {
+            slowPeer.close();
+        }
+    }
+
+    private BridgeEventProcessor startBus(LoopbackPeer.RecordingProcessor delegate, TcpBusEndpoint endpoint,
+                                          boolean bridgePongs) throws IOException {
+        BridgeEventProcessor bus = BridgeEventProcessor.newInstance(delegate, endpoint)
+                .bridgeEventType(LoopbackPeer.Ping.class, LoopbackPeer.PING_TYPE_ID, new LoopbackPeer.PingCodec());
+        if (bridgePongs) {
+            bus.bridgeEventType(LoopbackPeer.Pong.class, LoopbackPeer.PONG_TYPE_ID, new LoopbackPeer.PongCodec());
+        }
+        mBuses.add(bus);
+        bus.start();
+        return bus;
+    }
+
+    /**
+     * Connects a peer accepting pings that never reads them
+     */
+    private static Socket connectSlowPeer(int port) throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(loopback(port));
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(NioLink.PROTOCOL_MAGIC);
+        out.writeLong(42);
+        out.writeInt(1);
+        out.writeInt(LoopbackPeer.PING_TYPE_ID);
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        assertEquals(NioLink.PROTOCOL_MAGIC, in.readInt());
+        return socket;
+    }
+
+    private static InetSocketAddress loopback(int port) throws IOException {
+        return new InetSocketAddress(InetAddress.getByName(null), port);
+    }
+
+    private static void awaitConnected(BridgeEventProcessor bus) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!bus.isConnected()) {
+            assertTrue("bus not connected", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Posts the probe until all the receivers got it, once the server has read all their handshakes
+     */
+    private static void awaitPeers(BridgeEventProcessor bus, LoopbackPeer.Ping probe, int count,
+                                   LoopbackPeer.RecordingProcessor... receivers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        boolean[] received = new boolean[count];
+        int missing = count;
+        while (missing > 0) {
+            assertTrue("peers not connected", System.nanoTime() < deadline);
+            bus.onPost(probe);
+            Thread.sleep(50);
+            for (int i = 0; i < count; i++) {
+                if (!received[i] && receivers[i].mPosted.poll() != null) {
+                    received[i] = true;
+                    missing--;
+                }
+                receivers[i].mPosted.clear();
+            }
+        }
+    }
+
+    /**
+     * Skips the events posted on the bus itself, which the decorated processor delivers too
+     *
+     * @param minId the first id of the pings posted by the other bus
+     */
+    private static LoopbackPeer.Ping awaitPing(LoopbackPeer.RecordingProcessor processor, long minId)
+            throws InterruptedException {
+        while (true) {
+            Object event = processor.mPosted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertTrue("event not received", event != null);
+            if (event instanceof LoopbackPeer.Ping && ((LoopbackPeer.Ping) event).mId >= minId) {
+                return (LoopbackPeer.Ping) event;
+            }
+        }
+    }
+}
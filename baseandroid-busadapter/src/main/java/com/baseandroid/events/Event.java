@@ -108,6 +108,24 @@ public @interface Event {
     }
     Type type();
 
+    /**
+     * Defines whether only the last event of this class matters.<br>
+     * <p>
+     *     While a listener is paused (see {@code EventDispatcher.pause(...)}) a conflated event replaces the previous event
+     *     of the same class waiting for that listener, so on resume the listener receives only the latest state.
+     * </p>
+     */
+    boolean conflate() default false;
+
+    /**
+     * Defines the time to live of this event, in milliseconds: 0 means forever.<br>
+     * <p>
+     *     An event still waiting in a queue of the processor when its time to live is over is dropped instead of being
+     *     delivered, and reported as {@code DropReason.EXPIRED}. The age is measured from the post with a monotonic clock.
+     * </p>
+     */
+    long ttl() default 0;
+
     /**
      * This comparator sorts the Events by {@link Priority}.
      */
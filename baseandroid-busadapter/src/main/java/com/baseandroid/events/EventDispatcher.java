@@ -18,6 +18,17 @@ package com.baseandroid.events;
 
 import android.util.Log;
 
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.metrics.MetricsRegistry;
+import com.baseandroid.events.metrics.MetricsSink;
+import com.baseandroid.events.metrics.SlowHandlerDetector;
+import com.baseandroid.events.pool.PooledEvent;
+import com.baseandroid.events.record.EventRecorder;
+import com.baseandroid.events.timer.ScheduledEvent;
+import com.baseandroid.events.timer.TimingWheel;
+
+import java.util.Collection;
+
 /**
  * Class managing the events used throughout the application.
  * <br>
@@ -38,6 +49,11 @@ public final class EventDispatcher {
 
     // Using Otto as default
     private static EventProcessor INSTANCE = StubEventProcessors.newInstance();
+    private static volatile EventRecorder sRecorder;
+    /**
+     * Wheel of the events posted with a delay, created by the first one
+     */
+    private static TimingWheel sTimingWheel;
 
     private EventDispatcher() {
         // No instances.
@@ -51,6 +67,31 @@ public final class EventDispatcher {
         INSTANCE = processor;
     }
 
+    /**
+     * Setup the {@link MetricsSink} receiving the metrics of the buses, you can use a {@link MetricsRegistry} or your own exporter.
+     * Passing null disables the metrics, which then cost nothing.
+     * @param sink
+     */
+    public static void useMetricsSink(MetricsSink sink) {
+        EventMetrics.install(sink);
+    }
+
+    /**
+     * Setup the {@link EventRecorder} recording the posted events, passing null stops recording.
+     * @param recorder
+     */
+    public static void useEventRecorder(EventRecorder recorder) {
+        sRecorder = recorder;
+    }
+
+    /**
+     * Setup the {@link SlowHandlerDetector} measuring the handlers invocations, passing null disables the detection.
+     * @param detector
+     */
+    public static void useSlowHandlerDetector(SlowHandlerDetector detector) {
+        SlowHandlerDetector.install(detector);
+    }
+
     /**
      * Registers a given Object on both Buses
      *
@@ -60,6 +101,17 @@ public final class EventDispatcher {
         INSTANCE.onRegister(o);
     }
 
+    /**
+     * Registers a given Object on both Buses, for the events of types having an {@link EventKey}
+     * it will receive only the ones with the given key.
+     *
+     * @param o Object to register on the Buses
+     * @param key the key of the events the object is interested in, e.g. a conversation id
+     */
+    public static void register(Object o, Object key) {
+        INSTANCE.onRegister(o, key);
+    }
+
     /**
      * Unregisters a given Object from both Buses
      *
@@ -75,11 +127,132 @@ public final class EventDispatcher {
      * <p>
      * <b>NOTE: if an object being posted has not been annotated with the {@link Event} Annotation it will be disregarded!!!</b>
      * </p>
+     * If the object is a {@link PooledEvent} the reference of the poster is released when this method returns.
      *
      * @param o the Object we want to post as an event
      */
     public static void post(Object o) {
-        INSTANCE.onPost(o);
+        track(o);
+        try {
+            INSTANCE.onPost(o);
+        } finally {
+            if (o instanceof PooledEvent) {
+                ((PooledEvent) o).release();
+            }
+        }
+    }
+
+    /**
+     * Posts a batch of events, as many calls to {@link #post(Object)} would do but taking the locks of the event
+     * processor once: sync jobs posting many events in a loop should prefer this method.
+     * <br>
+     * The events of the same {@link Event.Type} are delivered in the order of the collection.
+     * The references of the poster to the {@link PooledEvent}s are released when this method returns.
+     *
+     * @param events the Objects we want to post as events
+     */
+    public static void postAll(Collection<?> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        for (Object o : events) {
+            track(o);
+        }
+        try {
+            INSTANCE.onPostAll(events);
+        } finally {
+            for (Object o : events) {
+                if (o instanceof PooledEvent) {
+                    ((PooledEvent) o).release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Posts an event after a delay, as {@link #post(Object)} does.
+     * <br>
+     * The delayed events of the application share a single {@link TimingWheel} and its thread, so this method is
+     * cheaper than a {@code Handler} or a timer task per event; the event is posted with a resolution of
+     * {@link TimingWheel#DEFAULT_TICK_MILLIS}.
+     * If the object is a {@link PooledEvent} the reference of the poster is released once the event is posted or cancelled.
+     *
+     * @param o the Object we want to post as an event
+     * @param delayMillis delay in milliseconds
+     * @return the handle to cancel the event
+     */
+    public static ScheduledEvent postDelayed(Object o, long delayMillis) {
+        return timingWheel().schedule(o, delayMillis);
+    }
+
+    /**
+     * Posts an event at a given time, see {@link #postDelayed(Object, long)}
+     *
+     * @param o the Object we want to post as an event
+     * @param timeMillis the time to post the event at, in the time base of {@link System#currentTimeMillis()}
+     * @return the handle to cancel the event
+     */
+    public static ScheduledEvent postAt(Object o, long timeMillis) {
+        return postDelayed(o, timeMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * @return the wheel of the delayed events, shared with the {@link EventScope}s
+     */
+    static synchronized TimingWheel timingWheel() {
+        if (sTimingWheel == null) {
+            sTimingWheel = TimingWheel.newInstance("EventDispatcher", EventDispatcher::post);
+        }
+        return sTimingWheel;
+    }
+
+    /**
+     * Reports a posted event to the metrics and to the recorder, if any: it is called once per post,
+     * also by the {@link EventScope}s.
+     *
+     * @param o the Object being posted
+     */
+    static void track(Object o) {
+        if (o == null) {
+            return;
+        }
+        if (EventMetrics.isEnabled()) {
+            EventMetrics.posted(o.getClass());
+        }
+        EventRecorder recorder = sRecorder;
+        if (recorder != null) {
+            recorder.record(o);
+        }
+    }
+
+    /**
+     * @return the {@link EventProcessor} of the global bus, the root of the {@link EventScope}s
+     */
+    static EventProcessor processor() {
+        return INSTANCE;
+    }
+
+    /**
+     * Pauses a registered Object, for example a screen that stays registered while it is in the background:
+     * the {@link Event.Type#UI} events for it are kept until {@link #resume(Object)}, and only the last one of each
+     * {@link Event#conflate()}d class.
+     * <br>
+     * {@link com.baseandroid.events.lifecycle.EventLifecycleBinder} calls it for the stopped activities.
+     *
+     * @param o the registered Object
+     */
+    public static void pause(Object o) {
+        INSTANCE.onPause(o);
+    }
+
+    /**
+     * Resumes a paused Object, delivering the {@link Event.Type#UI} events kept for it.
+     * It should be called on the Android Main Thread.
+     *
+     * @param o the paused Object
+     */
+    public static void resume(Object o) {
+        INSTANCE.onResume(o);
     }
 
     /**
@@ -124,6 +297,11 @@ public final class EventDispatcher {
             Log.e(LOG_TAG, "onRegister: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)! All events will be misses!!");
         }
 
+        @Override
+        public void onRegister(Object o, Object key) {
+            Log.e(LOG_TAG, "onRegister: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)! All events will be misses!!");
+        }
+
         @Override
         public void onUnregister(Object o) {
             Log.e(LOG_TAG, "onUnregister: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)! All events will be misses!!");
@@ -134,6 +312,26 @@ public final class EventDispatcher {
             Log.e(LOG_TAG, "onPost: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)! Event of type "+o.getClass().getName()+" will be missed.");
         }
 
+        @Override
+        public void onPostAll(Collection<?> events) {
+            Log.e(LOG_TAG, "onPostAll: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)! "+events.size()+" events will be missed.");
+        }
+
+        @Override
+        public void onPause(Object o) {
+            Log.e(LOG_TAG, "onPause: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)!");
+        }
+
+        @Override
+        public void onResume(Object o) {
+            Log.e(LOG_TAG, "onResume: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)!");
+        }
+
+        @Override
+        public void onShutdown() {
+            Log.e(LOG_TAG, "onShutdown: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)!");
+        }
+
         @Override
         public String onSavePoint(Object object) {
             Log.e(LOG_TAG, "onSavePoint: No EventProcessor declared, you should declare calling EventDispatcher.useEventProcessor(...)!");
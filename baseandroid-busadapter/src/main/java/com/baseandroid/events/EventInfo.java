@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Event} metadata of a class, read once and then cached.
+ * <br>
+ * Processors should use {@link #of(Class)} instead of reading the annotation at every post:
+ * on Android every call to {@code Class.getAnnotation(...)} allocates and is slow.
+ */
+public final class EventInfo {
+
+    /**
+     * Placeholder cached for classes without the {@link Event} annotation
+     */
+    private static final EventInfo NOT_AN_EVENT = new EventInfo(null, null, false, 0, null, null);
+
+    /**
+     * Expiration of the events without a time to live, see {@link #expiration()}
+     */
+    public static final long NO_EXPIRATION = 0;
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * This map contains in keys the classes posted so far, in values their metadata
+     */
+    private static final ConcurrentMap<Class<?>, EventInfo> CACHE = new ConcurrentHashMap<>();
+
+    private final Event.Type mType;
+    private final Event.Priority mPriority;
+    private final boolean mConflated;
+    /**
+     * The time to live of the events in nanoseconds, 0 if they don't expire
+     */
+    private final long mTtlNanos;
+    /**
+     * The field or method annotated with {@link EventKey}, null if the event has no key
+     */
+    private final AccessibleObject mKeyAccessor;
+    /**
+     * The field or method annotated with {@link OrderingKey}, null if the event has no ordering key
+     */
+    private final AccessibleObject mOrderingKeyAccessor;
+
+    private EventInfo(Event.Type type, Event.Priority priority, boolean conflated, long ttlMillis,
+                      AccessibleObject keyAccessor, AccessibleObject orderingKeyAccessor) {
+        mType = type;
+        mPriority = priority;
+        mConflated = conflated;
+        mTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMillis));
+        mKeyAccessor = keyAccessor;
+        mOrderingKeyAccessor = orderingKeyAccessor;
+    }
+
+    /**
+     * @param eventClass
+     * @return the metadata of the class, or null if it is not annotated with {@link Event}
+     */
+    public static EventInfo of(Class<?> eventClass) {
+        EventInfo info = CACHE.get(eventClass);
+        if (info == null) {
+            Event event = eventClass.getAnnotation(Event.class);
+            info = event != null ? new EventInfo(event.type(), event.priority(), event.conflate(), event.ttl(),
+                    findAccessor(eventClass, EventKey.class), findAccessor(eventClass, OrderingKey.class)) : NOT_AN_EVENT;
+            CACHE.put(eventClass, info);
+        }
+        return info != NOT_AN_EVENT ? info : null;
+    }
+
+    private static AccessibleObject findAccessor(Class<?> eventClass, Class<? extends Annotation> annotation) {
+        for (Field field : eventClass.getFields()) {
+            if (field.isAnnotationPresent(annotation)) {
+                return field;
+            }
+        }
+        for (Method method : eventClass.getMethods()) {
+            if (method.isAnnotationPresent(annotation)) {
+                if (method.getParameterTypes().length != 0 || method.getReturnType() == Void.TYPE
+                        || Modifier.isStatic(method.getModifiers())) {
+                    throw new IllegalArgumentException("Method " + method + " has @" + annotation.getSimpleName()
+                            + " annotation but it is not an instance method without arguments returning the key.");
+                }
+                return method;
+            }
+        }
+        return null;
+    }
+
+    public Event.Type getType() {
+        return mType;
+    }
+
+    public Event.Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return true if only the last event of the class matters, see {@link Event#conflate()}
+     */
+    public boolean isConflated() {
+        return mConflated;
+    }
+
+    /**
+     * @return the time to live of the events in nanoseconds, 0 if they don't expire, see {@link Event#ttl()}
+     */
+    public long getTtlNanos() {
+        return mTtlNanos;
+    }
+
+    /**
+     * It should be called when an event is posted.
+     *
+     * @return when an event posted now expires, in the time base of {@link System#nanoTime()},
+     * {@link #NO_EXPIRATION} if the events don't expire
+     */
+    public long expiration() {
+        return mTtlNanos > 0 ? System.nanoTime() + mTtlNanos : NO_EXPIRATION;
+    }
+
+    /**
+     * @param expiration the value returned by {@link #expiration()} when the event was posted
+     * @return true if the time to live of the event is over
+     */
+    public static boolean isExpired(long expiration) {
+        return expiration != NO_EXPIRATION && System.nanoTime() - expiration > 0;
+    }
+
+    /**
+     * @return true if the event has an accessor annotated with {@link EventKey}
+     */
+    public boolean isKeyed() {
+        return mKeyAccessor != null;
+    }
+
+    /**
+     * @param event an instance of the class described by this info
+     * @return the key of the event, null if the event has no key
+     */
+    public Object getKey(Object event) {
+        return read(mKeyAccessor, event);
+    }
+
+    /**
+     * @return true if the event has an accessor annotated with {@link OrderingKey}
+     */
+    public boolean hasOrderingKey() {
+        return mOrderingKeyAccessor != null;
+    }
+
+    /**
+     * @param event an instance of the class described by this info
+     * @return the ordering key of the event, null if the event has no ordering key
+     */
+    public Object getOrderingKey(Object event) {
+        return read(mOrderingKeyAccessor, event);
+    }
+
+    private static Object read(AccessibleObject accessor, Object event) {
+        try {
+            if (accessor instanceof Field) {
+                return ((Field) accessor).get(event);
+            } else if (accessor != null) {
+                return ((Method) accessor).invoke(event, NO_ARGS);
+            }
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("key accessor " + accessor + " of " + event.getClass().getName() + " failed",
+                    e.getCause());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the accessor (a public field or a public method without arguments) returning the key of an {@link Event}.
+ * <br>
+ * Listeners registered with {@code EventDispatcher.register(listener, key)} receive the events of a keyed type
+ * only if their key equals the one of the listener, processors find them with a key index instead of asking every listener.
+ * <pre>{@code
+ *     @Event(type = Event.Type.DATA)
+ *     public class ChatUpdated {
+ *         @EventKey
+ *         public final String conversationId;
+ *         ...
+ *     }
+ * }</pre>
+ * Events returning a null key are delivered to all the listeners.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface EventKey {
+}
@@ -16,6 +16,8 @@
 
 package com.baseandroid.events;
 
+import java.util.Collection;
+
 /**
  * Created by Andrea Guitto on 12/04/2016.
  */
@@ -28,6 +30,15 @@ public interface EventProcessor {
      */
     void onRegister(Object o);
 
+    /**
+     * Registers a given Object on both Buses, it will receive the events of types having an {@link EventKey}
+     * only if their key equals {@code key}.
+     *
+     * @param o Object to register on the Buses
+     * @param key the key of the events the object is interested in, null to receive all the events
+     */
+    void onRegister(Object o, Object key);
+
     /**
      * Unregisters a given Object from both Buses
      *
@@ -46,6 +57,40 @@ public interface EventProcessor {
      */
     void onPost(Object o);
 
+    /**
+     * Posts a batch of events as {@link #onPost(Object)} does, under a single synchronization point: the events of the
+     * same {@link Event.Type} are queued in the order of the collection.
+     *
+     * @param events the Objects we want to post as events
+     */
+    void onPostAll(Collection<?> events);
+
+    /**
+     * Pauses a registered Object: the {@link Event.Type#UI} events for it are kept, or conflated, until
+     * {@link #onResume(Object)}. Objects that are not registered are ignored.
+     *
+     * @param o the registered Object
+     */
+    void onPause(Object o);
+
+    /**
+     * Resumes a paused Object, delivering the {@link Event.Type#UI} events kept for it on the calling thread.
+     *
+     * @param o the paused Object
+     */
+    void onResume(Object o);
+
+    /**
+     * Unregisters every object still registered and releases the threads and the queues of this processor,
+     * the events still queued are not delivered.<br>
+     * The processor can't be used afterwards: events posted to it are disregarded.
+     * <p>
+     * <b>NOTE: implementations written before this method was added must implement it when upgrading,
+     * see {@link EventScope#close()}</b>
+     * </p>
+     */
+    void onShutdown();
+
     /**
      * This method return a string used by {@link EventProcessor} to save the state of the object in configuration changes.<br>
      * You should use the string returned by this method with {@code EventDispatcher.loadPoint()}<br>
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events;
+
+import android.util.Log;
+
+import com.baseandroid.events.pool.PooledEvent;
+import com.baseandroid.events.timer.ScheduledEvent;
+import com.baseandroid.events.timer.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A child bus, for example of an Activity or of a feature, with its own {@link EventProcessor}: registry and queues
+ * are not shared with the global {@link EventDispatcher} nor with the other scopes, so an event posted on a scope
+ * reaches only the objects registered on it.
+ * <br>
+ * Scopes form a tree rooted in the {@link EventDispatcher}:
+ * <ul>
+ * <li>{@link #post(Object)} delivers an event to this scope only</li>
+ * <li>{@link #postUpward(Object)} delivers it to this scope, to its ancestors and to the {@link EventDispatcher}</li>
+ * </ul>
+ * <br>
+ * {@link #close()} tears down the scope and its children at once: the registered objects are unregistered and the
+ * processors are shut down, see {@link EventProcessor#onShutdown()}.
+ * <p>
+ * <b>NOTE: every scope needs its own processor, a processor must not be shared between scopes
+ * nor with the {@link EventDispatcher}</b>
+ * </p>
+ */
+public final class EventScope {
+    private static final String LOG_TAG = EventScope.class.getSimpleName();
+
+    /**
+     * The parent scope, null if the parent is the {@link EventDispatcher}
+     */
+    private final EventScope mParent;
+    private final EventProcessor mProcessor;
+    /**
+     * The objects registered on this scope, unregistered by {@link #close()}
+     */
+    private final Set<Object> mRegistered = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    private final List<EventScope> mChildren = new ArrayList<>();
+    private volatile boolean mClosed;
+    /**
+     * Target of the events posted with a delay on this scope: they are scheduled on the wheel of the
+     * {@link EventDispatcher}, so the scopes don't start a thread each, and cancelled by {@link #close()}
+     */
+    private final TimingWheel.Target mDelayedTarget = this::post;
+
+    private EventScope(EventScope parent, EventProcessor processor) {
+        if (processor == null) {
+            throw new IllegalArgumentException("processor must not be null");
+        }
+        mParent = parent;
+        mProcessor = processor;
+    }
+
+    /**
+     * This method return a new {@link EventScope} child of the {@link EventDispatcher}
+     *
+     * @param processor the processor of the scope, e.g. {@code RxEventProcessor.newInstance()}
+     * @return
+     */
+    public static EventScope newInstance(EventProcessor processor) {
+        return new EventScope(null, processor);
+    }
+
+    /**
+     * This method return a new {@link EventScope} child of this scope, it is closed together with this scope.
+     *
+     * @param processor the processor of the child scope
+     * @return
+     */
+    public EventScope newChild(EventProcessor processor) {
+        EventScope child = new EventScope(this, processor);
+        synchronized (this) {
+            checkOpen();
+            mChildren.add(child);
+        }
+        return child;
+    }
+
+    /**
+     * @return the parent scope, null if the parent is the {@link EventDispatcher}
+     */
+    public EventScope getParent() {
+        return mParent;
+    }
+
+    /**
+     * @return true if {@link #close()} has been called
+     */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Registers a given Object on this scope
+     *
+     * @param o Object to register
+     */
+    public void register(Object o) {
+        add(o);
+        mProcessor.onRegister(o);
+    }
+
+    /**
+     * Registers a given Object on this scope, for the events of types having an {@link EventKey}
+     * it will receive only the ones with the given key.
+     *
+     * @param o Object to register
+     * @param key the key of the events the object is interested in
+     */
+    public void register(Object o, Object key) {
+        add(o);
+        mProcessor.onRegister(o, key);
+    }
+
+    /**
+     * Unregisters a given Object from this scope
+     *
+     * @param o Object to unregister
+     */
+    public void unregister(Object o) {
+        boolean registered;
+        synchronized (this) {
+            registered = mRegistered.remove(o);
+        }
+        if (registered) {
+            mProcessor.onUnregister(o);
+        }
+    }
+
+    /**
+     * Posts an event to the objects registered on this scope only, as {@link EventDispatcher#post(Object)} does.
+     * If the object is a {@link PooledEvent} the reference of the poster is released when this method returns.
+     *
+     * @param o the Object we want to post as an event
+     */
+    public void post(Object o) {
+        EventDispatcher.track(o);
+        try {
+            if (!mClosed) {
+                mProcessor.onPost(o);
+            } else if (o != null) {
+                Log.w(LOG_TAG, "post: scope closed, event of type " + o.getClass().getName() + " will be missed");
+            }
+        } finally {
+            if (o instanceof PooledEvent) {
+                ((PooledEvent) o).release();
+            }
+        }
+    }
+
+    /**
+     * Posts an event to this scope after a delay, see {@link EventDispatcher#postDelayed(Object, long)}.
+     * The events still waiting are cancelled by {@link #close()}.
+     *
+     * @param o the Object we want to post as an event
+     * @param delayMillis delay in milliseconds
+     * @return the handle to cancel the event
+     */
+    public ScheduledEvent postDelayed(Object o, long delayMillis) {
+        checkOpen();
+        ScheduledEvent scheduled = EventDispatcher.timingWheel().schedule(o, delayMillis, mDelayedTarget);
+        if (mClosed) {
+            // closed while scheduling, close() may have missed it
+            scheduled.cancel();
+        }
+        return scheduled;
+    }
+
+    /**
+     * Posts an event to this scope at a given time, see {@link #postDelayed(Object, long)}
+     *
+     * @param o the Object we want to post as an event
+     * @param timeMillis the time to post the event at, in the time base of {@link System#currentTimeMillis()}
+     * @return the handle to cancel the event
+     */
+    public ScheduledEvent postAt(Object o, long timeMillis) {
+        return postDelayed(o, timeMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * Posts a batch of events to the objects registered on this scope only, as {@link EventDispatcher#postAll(Collection)} does.
+     *
+     * @param events the Objects we want to post as events
+     */
+    public void postAll(Collection<?> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        for (Object o : events) {
+            EventDispatcher.track(o);
+        }
+        try {
+            if (!mClosed) {
+                mProcessor.onPostAll(events);
+            } else {
+                Log.w(LOG_TAG, "postAll: scope closed, " + events.size() + " events will be missed");
+            }
+        } finally {
+            for (Object o : events) {
+                if (o instanceof PooledEvent) {
+                    ((PooledEvent) o).release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Posts an event to this scope, then to its ancestors up to the {@link EventDispatcher}: the event is queued
+     * by every processor, the nearest first. Closed scopes are skipped.
+     * If the object is a {@link PooledEvent} the reference of the poster is released when this method returns.
+     *
+     * @param o the Object we want to post as an event
+     */
+    public void postUpward(Object o) {
+        EventDispatcher.track(o);
+        try {
+            for (EventScope scope = this; scope != null; scope = scope.mParent) {
+                if (!scope.mClosed) {
+                    scope.mProcessor.onPost(o);
+                }
+            }
+            EventDispatcher.processor().onPost(o);
+        } finally {
+            if (o instanceof PooledEvent) {
+                ((PooledEvent) o).release();
+            }
+        }
+    }
+
+    /**
+     * Pauses an Object registered on this scope, see {@link EventDispatcher#pause(Object)}
+     *
+     * @param o the registered Object
+     */
+    public void pause(Object o) {
+        mProcessor.onPause(o);
+    }
+
+    /**
+     * Resumes a paused Object, see {@link EventDispatcher#resume(Object)}
+     *
+     * @param o the paused Object
+     */
+    public void resume(Object o) {
+        mProcessor.onResume(o);
+    }
+
+    /**
+     * Closes the child scopes, cancels the delayed events, unregisters the objects registered on this scope and shuts its
+     * processor down.
+     * Events posted afterwards are disregarded, calling it again does nothing.
+     */
+    public void close() {
+        List<EventScope> children;
+        List<Object> registered;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            children = new ArrayList<>(mChildren);
+            registered = new ArrayList<>(mRegistered);
+            mChildren.clear();
+            mRegistered.clear();
+        }
+        EventDispatcher.timingWheel().cancelAll(mDelayedTarget);
+        for (EventScope child : children) {
+            child.close();
+        }
+        for (Object o : registered) {
+            mProcessor.onUnregister(o);
+        }
+        mProcessor.onShutdown();
+        if (mParent != null) {
+            mParent.removeChild(this);
+        }
+    }
+
+    private synchronized void add(Object o) {
+        checkOpen();
+        mRegistered.add(o);
+    }
+
+    private synchronized void removeChild(EventScope child) {
+        mChildren.remove(child);
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("scope closed");
+        }
+    }
+}
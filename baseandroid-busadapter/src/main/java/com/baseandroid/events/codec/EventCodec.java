@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.codec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the events of a class, annotated with {@link com.baseandroid.events.Event}, to and from bytes,
+ * so that they can leave the process.
+ * <br>
+ * Codecs read and write directly the buffers of their callers, they must not keep references to them.
+ */
+public interface EventCodec<T> {
+
+    /**
+     * Writes the event at the position of the buffer, advancing it.
+     *
+     * @param event
+     * @param buffer
+     * @throws BufferOverflowException if the buffer is too small, the caller retries with a bigger buffer
+     */
+    void encode(T event, ByteBuffer buffer);
+
+    /**
+     * Reads an event from the position of the buffer, its limit is set at the end of the encoded event.
+     *
+     * @param buffer
+     * @return the event
+     */
+    T decode(ByteBuffer buffer);
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.codec;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class builds, once per class, the {@link EventCodec} of the events annotated with {@link Event}, so that
+ * journals, bridges or any persistence don't need an hand written codec nor Java serialization.
+ * <br>
+ * The codec reads and writes the non static, non transient fields of the event and of its superclasses, in a compact
+ * binary format written directly in the buffer of the caller:
+ * <ul>
+ * <li>the schema id of the class, see {@link #getSchemaId(Class)}</li>
+ * <li>the fields sorted by name: {@code boolean} and {@code byte} in a byte, {@code char}, {@code short}, {@code int}
+ * and {@code long} as {@link Varint}s, {@code float} and {@code double} in 4 and 8 bytes; boxed primitives are
+ * preceded by a byte telling if they are null; {@code String}s in UTF-8 and {@code byte[]}s are preceded by their
+ * length, enums are written as their ordinal</li>
+ * </ul>
+ * <pre>{@code
+ *     EventCodec<OrderPlaced> codec = EventCodecs.of(OrderPlaced.class);
+ *     codec.encode(event, buffer);
+ * }</pre>
+ * <p>
+ * <b>NOTE: the event class needs a constructor without arguments, of any visibility, and fields of the supported
+ * types only. Both sides must use the same version of the class, a different schema id fails the decoding.</b>
+ * </p>
+ */
+public final class EventCodecs {
+
+    /**
+     * This map contains in keys the event classes, in values their codec
+     */
+    private static final ConcurrentMap<Class<?>, ReflectiveEventCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    private EventCodecs() {
+    }
+
+    /**
+     * @param eventType the class of the event, annotated with {@link Event}
+     * @return the codec of the class, built on the first call
+     * @throws IllegalArgumentException if the class is not annotated, has no constructor without arguments or
+     * has fields of unsupported types
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EventCodec<T> of(Class<T> eventType) {
+        ReflectiveEventCodec<?> codec = CODECS.get(eventType);
+        if (codec == null) {
+            if (EventInfo.of(eventType) == null) {
+                throw new IllegalArgumentException(eventType + " is not annotated with @Event");
+            }
+            codec = new ReflectiveEventCodec<>(eventType);
+            ReflectiveEventCodec<?> previous = CODECS.putIfAbsent(eventType, codec);
+            if (previous != null) {
+                codec = previous;
+            }
+        }
+        return (EventCodec<T>) codec;
+    }
+
+    /**
+     * @param eventType the class of the event, annotated with {@link Event}
+     * @return the hash of the class name and of the names and types of its fields, written before every event
+     */
+    public static int getSchemaId(Class<?> eventType) {
+        return ((ReflectiveEventCodec<?>) of(eventType)).getSchemaId();
+    }
+}
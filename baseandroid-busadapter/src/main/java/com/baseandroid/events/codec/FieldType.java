@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.codec;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The types of field supported by {@link ReflectiveEventCodec}, each one with its encoding.
+ * <br>
+ * Nullable values are written with their length or ordinal plus one, 0 meaning null, or preceded by a presence byte
+ * for boxed primitives.
+ */
+enum FieldType {
+    BOOLEAN {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            buffer.put((byte) (field.getBoolean(event) ? 1 : 0));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setBoolean(event, buffer.get() != 0);
+        }
+    },
+    BYTE {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            buffer.put(field.getByte(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setByte(event, buffer.get());
+        }
+    },
+    CHAR {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Varint.writeUnsignedInt(buffer, field.getChar(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setChar(event, (char) Varint.readUnsignedInt(buffer));
+        }
+    },
+    SHORT {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Varint.writeSignedInt(buffer, field.getShort(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setShort(event, (short) Varint.readSignedInt(buffer));
+        }
+    },
+    INT {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Varint.writeSignedInt(buffer, field.getInt(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setInt(event, Varint.readSignedInt(buffer));
+        }
+    },
+    LONG {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Varint.writeSignedLong(buffer, field.getLong(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setLong(event, Varint.readSignedLong(buffer));
+        }
+    },
+    FLOAT {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            buffer.putFloat(field.getFloat(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setFloat(event, buffer.getFloat());
+        }
+    },
+    DOUBLE {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            buffer.putDouble(field.getDouble(event));
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.setDouble(event, buffer.getDouble());
+        }
+    },
+    BOXED_BOOLEAN {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Boolean value = (Boolean) field.get(event);
+            if (writePresence(value, buffer)) {
+                buffer.put((byte) (value ? 1 : 0));
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Boolean.valueOf(buffer.get() != 0) : null);
+        }
+    },
+    BOXED_BYTE {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Byte value = (Byte) field.get(event);
+            if (writePresence(value, buffer)) {
+                buffer.put(value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Byte.valueOf(buffer.get()) : null);
+        }
+    },
+    BOXED_CHAR {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Character value = (Character) field.get(event);
+            if (writePresence(value, buffer)) {
+                Varint.writeUnsignedInt(buffer, value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Character.valueOf((char) Varint.readUnsignedInt(buffer)) : null);
+        }
+    },
+    BOXED_SHORT {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Short value = (Short) field.get(event);
+            if (writePresence(value, buffer)) {
+                Varint.writeSignedInt(buffer, value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Short.valueOf((short) Varint.readSignedInt(buffer)) : null);
+        }
+    },
+    BOXED_INT {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Integer value = (Integer) field.get(event);
+            if (writePresence(value, buffer)) {
+                Varint.writeSignedInt(buffer, value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Integer.valueOf(Varint.readSignedInt(buffer)) : null);
+        }
+    },
+    BOXED_LONG {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Long value = (Long) field.get(event);
+            if (writePresence(value, buffer)) {
+                Varint.writeSignedLong(buffer, value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Long.valueOf(Varint.readSignedLong(buffer)) : null);
+        }
+    },
+    BOXED_FLOAT {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Float value = (Float) field.get(event);
+            if (writePresence(value, buffer)) {
+                buffer.putFloat(value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Float.valueOf(buffer.getFloat()) : null);
+        }
+    },
+    BOXED_DOUBLE {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Double value = (Double) field.get(event);
+            if (writePresence(value, buffer)) {
+                buffer.putDouble(value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            field.set(event, buffer.get() != 0 ? Double.valueOf(buffer.getDouble()) : null);
+        }
+    },
+    STRING {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            String value = (String) field.get(event);
+            if (value == null) {
+                buffer.put((byte) 0);
+            } else {
+                Varint.writeUnsignedInt(buffer, utf8Length(value) + 1);
+                writeUtf8(value, buffer);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            int length = readLength(buffer);
+            field.set(event, length < 0 ? null : readUtf8(buffer, length));
+        }
+    },
+    BYTES {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            byte[] value = (byte[]) field.get(event);
+            if (value == null) {
+                buffer.put((byte) 0);
+            } else {
+                Varint.writeUnsignedInt(buffer, value.length + 1);
+                buffer.put(value);
+            }
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            int length = readLength(buffer);
+            byte[] value = null;
+            if (length >= 0) {
+                value = new byte[length];
+                buffer.get(value);
+            }
+            field.set(event, value);
+        }
+    },
+    ENUM {
+        @Override
+        void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            Enum<?> value = (Enum<?>) field.get(event);
+            Varint.writeUnsignedInt(buffer, value != null ? value.ordinal() + 1 : 0);
+        }
+
+        @Override
+        void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException {
+            int ordinal = Varint.readUnsignedInt(buffer) - 1;
+            if (ordinal < 0) {
+                field.set(event, null);
+            } else {
+                Object[] constants = ENUM_CONSTANTS.get(field.getType());
+                if (ordinal >= constants.length) {
+                    throw new IllegalArgumentException("unknown ordinal " + ordinal + " of " + field.getType());
+                }
+                field.set(event, constants[ordinal]);
+            }
+        }
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * This map contains in keys the enum types of the fields, in values their constants, getEnumConstants() copies them
+     */
+    private static final ConcurrentMap<Class<?>, Object[]> ENUM_CONSTANTS = new ConcurrentHashMap<>();
+
+    abstract void encode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException;
+
+    abstract void decode(Field field, Object event, ByteBuffer buffer) throws IllegalAccessException;
+
+    /**
+     * @param field
+     * @return the type of the field
+     * @throws IllegalArgumentException if the type of the field is not supported
+     */
+    static FieldType of(Field field) {
+        Class<?> type = field.getType();
+        if (type.isPrimitive()) {
+            if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == byte.class) {
+                return BYTE;
+            } else if (type == char.class) {
+                return CHAR;
+            } else if (type == short.class) {
+                return SHORT;
+            } else if (type == int.class) {
+                return INT;
+            } else if (type == long.class) {
+                return LONG;
+            } else if (type == float.class) {
+                return FLOAT;
+            }
+            return DOUBLE;
+        } else if (type == Boolean.class) {
+            return BOXED_BOOLEAN;
+        } else if (type == Byte.class) {
+            return BOXED_BYTE;
+        } else if (type == Character.class) {
+            return BOXED_CHAR;
+        } else if (type == Short.class) {
+            return BOXED_SHORT;
+        } else if (type == Integer.class) {
+            return BOXED_INT;
+        } else if (type == Long.class) {
+            return BOXED_LONG;
+        } else if (type == Float.class) {
+            return BOXED_FLOAT;
+        } else if (type == Double.class) {
+            return BOXED_DOUBLE;
+        } else if (type == String.class) {
+            return STRING;
+        } else if (type == byte[].class) {
+            return BYTES;
+        } else if (type.isEnum()) {
+            ENUM_CONSTANTS.putIfAbsent(type, type.getEnumConstants());
+            return ENUM;
+        }
+        throw new IllegalArgumentException("field " + field.getName() + " of " + field.getDeclaringClass()
+                + " has unsupported type " + type.getName());
+    }
+
+    /**
+     * Writes 1 if the value is not null, 0 otherwise
+     *
+     * @return true if the value is not null
+     */
+    private static boolean writePresence(Object value, ByteBuffer buffer) {
+        buffer.put((byte) (value != null ? 1 : 0));
+        return value != null;
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    // 4 bytes for 2 chars
+                    bytes += 2;
+                    i++;
+                }
+            } else if (c >= 0x800) {
+                bytes += 2;
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the string in UTF-8 directly in the buffer, unpaired surrogates become '?' as in String.getBytes()
+     */
+    private static void writeUtf8(String value, ByteBuffer buffer) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    /**
+     * Reads the length of a string or of an array, written as length + 1 so that 0 stands for null.
+     * The length is checked against the bytes left in the buffer, so that a corrupted one doesn't allocate
+     * a huge array before failing.
+     *
+     * @param buffer
+     * @return the length, -1 for null
+     * @throws IllegalArgumentException if the length exceeds the bytes left in the buffer
+     */
+    private static int readLength(ByteBuffer buffer) {
+        long length = (Varint.readUnsignedInt(buffer) & 0xFFFFFFFFL) - 1;
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("length " + length + " exceeds the " + buffer.remaining()
+                    + " bytes left");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads the string from the array of the buffer, without copying it first
+     *
+     * @param buffer
+     * @param length the length in bytes, see {@link #readLength(ByteBuffer)}
+     */
+    private static String readUtf8(ByteBuffer buffer, int length) {
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.codec;
+
+import com.baseandroid.events.pool.PooledEvent;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link EventCodec} reading and writing the fields of an event by reflection, see {@link EventCodecs} for the format.
+ * The fields and their {@link FieldType} are resolved once, when the codec is built.
+ */
+final class ReflectiveEventCodec<T> implements EventCodec<T> {
+
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(Field lhs, Field rhs) {
+            int result = lhs.getName().compareTo(rhs.getName());
+            return result != 0 ? result : lhs.getDeclaringClass().getName().compareTo(rhs.getDeclaringClass().getName());
+        }
+    };
+
+    private final Class<T> mEventType;
+    private final Constructor<T> mConstructor;
+    private final Field[] mFields;
+    private final FieldType[] mTypes;
+    private final int mSchemaId;
+
+    ReflectiveEventCodec(Class<T> eventType) {
+        mEventType = eventType;
+        if (Modifier.isAbstract(eventType.getModifiers())) {
+            throw new IllegalArgumentException(eventType + " is abstract");
+        }
+        try {
+            mConstructor = eventType.getDeclaredConstructor();
+            mConstructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(eventType + " has no constructor without arguments");
+        }
+        List<Field> fields = new ArrayList<>();
+        // the fields of PooledEvent are its reference count, not part of the event
+        for (Class<?> type = eventType; type != Object.class && type != PooledEvent.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    fields.add(field);
+                }
+            }
+        }
+        // getDeclaredFields() has no defined order, the names give the same one on both sides
+        Collections.sort(fields, FIELD_ORDER);
+        mFields = fields.toArray(new Field[fields.size()]);
+        mTypes = new FieldType[mFields.length];
+        // FNV-1a hash of the class and of its fields
+        int schemaId = hash(0x811C9DC5, eventType.getName());
+        for (int i = 0; i < mFields.length; i++) {
+            mTypes[i] = FieldType.of(mFields[i]);
+            mFields[i].setAccessible(true);
+            schemaId = hash(schemaId, mFields[i].getName());
+            schemaId = hash(schemaId, mFields[i].getType().getName());
+        }
+        mSchemaId = schemaId;
+    }
+
+    private static int hash(int hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    int getSchemaId() {
+        return mSchemaId;
+    }
+
+    @Override
+    public void encode(T event, ByteBuffer buffer) {
+        buffer.putInt(mSchemaId);
+        try {
+            for (int i = 0; i < mFields.length; i++) {
+                mTypes[i].encode(mFields[i], event, buffer);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("cannot read the fields of " + mEventType, e);
+        }
+    }
+
+    @Override
+    public T decode(ByteBuffer buffer) {
+        int schemaId = buffer.getInt();
+        if (schemaId != mSchemaId) {
+            throw new IllegalArgumentException("schema id " + schemaId + " doesn't match " + mEventType
+                    + ", the other side uses a different version of the class");
+        }
+        try {
+            T event = mConstructor.newInstance();
+            for (int i = 0; i < mFields.length; i++) {
+                mTypes[i].decode(mFields[i], event, buffer);
+            }
+            return event;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("cannot create " + mEventType, e);
+        }
+    }
+}
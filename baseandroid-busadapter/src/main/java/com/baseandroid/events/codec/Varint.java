@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of integers, 7 bits per byte with the high bit set on all the bytes but the last one:
+ * small values take a single byte. Signed values are zig-zag encoded first, so that small negative values are small too.
+ * <br>
+ * Codecs can use it to write compact payloads, see {@link EventCodecs}.
+ */
+public final class Varint {
+
+    private Varint() {
+    }
+
+    /**
+     * @param buffer
+     * @param value written as unsigned, negative values take 5 bytes
+     */
+    public static void writeUnsignedInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int readUnsignedInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    public static void writeSignedInt(ByteBuffer buffer, int value) {
+        writeUnsignedInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    public static int readSignedInt(ByteBuffer buffer) {
+        int value = readUnsignedInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @param buffer
+     * @param value written as unsigned, negative values take 10 bytes
+     */
+    public static void writeUnsignedLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readUnsignedLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    public static void writeSignedLong(ByteBuffer buffer, long value) {
+        writeUnsignedLong(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedLong(ByteBuffer buffer) {
+        long value = readUnsignedLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.lifecycle;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.baseandroid.events.EventDispatcher;
+
+/**
+ * This class pauses the activities registered on {@link EventDispatcher} when they are stopped and resumes them
+ * when they are started again, so that hidden screens don't spend rendering work on {@link com.baseandroid.events.Event.Type#UI}
+ * events: they receive them once visible.
+ * <br>
+ * It should be bound once, in {@code Application.onCreate()}:
+ * <pre>{@code
+ *     EventLifecycleBinder.bind(this);
+ * }</pre>
+ * Activities not registered on {@link EventDispatcher} are ignored by the event processors.
+ * <p>
+ * <b>NOTE: the activity lifecycle callbacks exist since Android 4.0 (API 14), on older versions binding does nothing
+ * and the activities must be paused and resumed by hand, see {@link EventDispatcher#pause(Object)}.</b>
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+public final class EventLifecycleBinder implements Application.ActivityLifecycleCallbacks {
+
+    private EventLifecycleBinder() {
+        // use bind(...)
+    }
+
+    /**
+     * @param application
+     * @return the binder, to be passed to {@link #unbind(Application)}
+     */
+    public static EventLifecycleBinder bind(Application application) {
+        EventLifecycleBinder binder = new EventLifecycleBinder();
+        if (isSupported()) {
+            application.registerActivityLifecycleCallbacks(binder);
+        }
+        return binder;
+    }
+
+    /**
+     * Stops pausing and resuming the activities of the application
+     *
+     * @param application
+     */
+    public void unbind(Application application) {
+        if (isSupported()) {
+            application.unregisterActivityLifecycleCallbacks(this);
+        }
+    }
+
+    /**
+     * @return true if the activities can be paused and resumed automatically on this version of Android
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        EventDispatcher.resume(activity);
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        EventDispatcher.pause(activity);
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.lifecycle;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.metrics.DropReason;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.pool.EventPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link Event.Type#UI} events waiting for a paused listener, see {@code EventDispatcher.pause(...)}.
+ * <br>
+ * Events are kept in posting order, a {@link Event#conflate()}d event replaces the previous event of the same class
+ * waiting for the same target. At most {@link #DEFAULT_MAX_EVENTS} events are kept, once full the oldest one is dropped
+ * and reported as {@link DropReason#OVERFLOW}, so that a listener paused for long doesn't pile up its events. Processors create an instance when the listener is paused and call
+ * {@link #resume(Delivery)} when it is resumed: the events offered after that are refused, so that no event is left
+ * behind.
+ * <p>
+ * <b>NOTE: a {@link com.baseandroid.events.pool.PooledEvent} offered to this class must carry a reference owned by it,
+ * the reference is handed to the {@link Delivery} or released if the event is replaced or {@link #clear()}ed.</b>
+ * </p>
+ */
+public final class PausedEvents {
+
+    /**
+     * Delivers the events to the resumed listener
+     */
+    public interface Delivery {
+        /**
+         * @param target the target passed to {@link #offer(Object, Object, EventInfo)}
+         * @param event
+         */
+        void deliver(Object target, Object event);
+    }
+
+    /**
+     * Default number of events kept for a paused listener
+     */
+    public static final int DEFAULT_MAX_EVENTS = 256;
+
+    private final int mMaxEvents;
+    private final List<Object> mTargets = new ArrayList<>();
+    private final List<Object> mEvents = new ArrayList<>();
+    /**
+     * The expirations of the events kept, see {@link EventInfo#expiration()}
+     */
+    private final List<Long> mExpirations = new ArrayList<>();
+    private boolean mResumed;
+
+    /**
+     * Keeps at most {@link #DEFAULT_MAX_EVENTS} events
+     */
+    public PausedEvents() {
+        this(DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * @param maxEvents max number of events kept, the oldest one is dropped to make room for a new one
+     */
+    public PausedEvents(int maxEvents) {
+        if (maxEvents <= 0) {
+            throw new IllegalArgumentException("maxEvents must be positive, was " + maxEvents);
+        }
+        mMaxEvents = maxEvents;
+    }
+
+    /**
+     * Keeps an event until the listener is resumed.
+     *
+     * @param target what the event must be delivered to, as the processor needs it, it can be null
+     * @param event
+     * @param info the metadata of the event
+     * @return false if the listener has already been resumed, then the caller must deliver the event itself
+     */
+    public boolean offer(Object target, Object event, EventInfo info) {
+        return offer(target, event, info, info.expiration());
+    }
+
+    /**
+     * Keeps an event until the listener is resumed, on resume it is dropped if it has expired meanwhile.
+     *
+     * @param target what the event must be delivered to, as the processor needs it, it can be null
+     * @param event
+     * @param info the metadata of the event
+     * @param expiration when the event expires, see {@link EventInfo#expiration()}
+     * @return false if the listener has already been resumed, then the caller must deliver the event itself
+     */
+    public synchronized boolean offer(Object target, Object event, EventInfo info, long expiration) {
+        if (mResumed) {
+            return false;
+        }
+        if (info.isConflated()) {
+            for (int i = mEvents.size() - 1; i >= 0; i--) {
+                if (mTargets.get(i) == target && mEvents.get(i).getClass() == event.getClass()) {
+                    mTargets.remove(i);
+                    mExpirations.remove(i);
+                    EventPool.releaseIfPooled(mEvents.remove(i));
+                    break;
+                }
+            }
+        }
+        if (mEvents.size() == mMaxEvents) {
+            mTargets.remove(0);
+            mExpirations.remove(0);
+            Object oldest = mEvents.remove(0);
+            EventMetrics.dropped(oldest.getClass(), DropReason.OVERFLOW);
+            EventPool.releaseIfPooled(oldest);
+        }
+        mTargets.add(target);
+        mEvents.add(event);
+        mExpirations.add(expiration);
+        return true;
+    }
+
+    /**
+     * Delivers the events kept so far, in posting order, on the calling thread; the expired ones are dropped.
+     * The events offered afterwards are refused.
+     *
+     * @param delivery
+     */
+    public void resume(Delivery delivery) {
+        Object[] targets;
+        Object[] events;
+        Long[] expirations;
+        synchronized (this) {
+            mResumed = true;
+            targets = mTargets.toArray();
+            events = mEvents.toArray();
+            expirations = mExpirations.toArray(new Long[mExpirations.size()]);
+            mTargets.clear();
+            mEvents.clear();
+            mExpirations.clear();
+        }
+        for (int i = 0; i < events.length; i++) {
+            if (EventInfo.isExpired(expirations[i])) {
+                EventMetrics.dropped(events[i].getClass(), DropReason.EXPIRED);
+                EventPool.releaseIfPooled(events[i]);
+            } else {
+                delivery.deliver(targets[i], events[i]);
+            }
+        }
+    }
+
+    /**
+     * Drops the events kept so far, it should be called when the paused listener is unregistered.
+     */
+    public synchronized void clear() {
+        mResumed = true;
+        for (Object event : mEvents) {
+            EventPool.releaseIfPooled(event);
+        }
+        mTargets.clear();
+        mEvents.clear();
+        mExpirations.clear();
+    }
+
+    /**
+     * @return number of events waiting for the listener
+     */
+    public synchronized int size() {
+        return mEvents.size();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+import com.baseandroid.events.Event;
+
+/**
+ * Reasons for which an event can be discarded by an event processor.
+ */
+public enum DropReason {
+    /**
+     * the posted object is not annotated with {@link Event}
+     */
+    NOT_AN_EVENT,
+    /**
+     * nobody is subscribed to the event
+     */
+    DEAD,
+    /**
+     * the event has been garbage collected before being delivered
+     */
+    COLLECTED,
+    /**
+     * the time to live of the event was over before it could be delivered, see {@link Event#ttl()}
+     */
+    EXPIRED,
+    /**
+     * the event was not urgent enough to enter a queue over its watermarks, see
+     * {@link com.baseandroid.events.shedding.LoadShedder}
+     */
+    SHED,
+    /**
+     * the event was the oldest one kept for a paused listener when too many were waiting, see
+     * {@link com.baseandroid.events.lifecycle.PausedEvents}
+     */
+    OVERFLOW
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+/**
+ * Entry point used by the event processors to report their metrics to the installed {@link MetricsSink}.
+ * <p>
+ * When no sink is installed every method costs a single volatile read:
+ * processors should check {@link #isEnabled()} before computing anything that is only needed by the metrics (e.g. timestamps).
+ * </p>
+ */
+public final class EventMetrics {
+
+    private static volatile MetricsSink sSink;
+
+    private EventMetrics() {
+        // No instances.
+    }
+
+    /**
+     * Installs the {@link MetricsSink} receiving the metrics, null disables the metrics.
+     *
+     * @param sink
+     */
+    public static void install(MetricsSink sink) {
+        sSink = sink;
+    }
+
+    /**
+     * @return the installed {@link MetricsSink}, or null if metrics are disabled
+     */
+    public static MetricsSink getSink() {
+        return sSink;
+    }
+
+    /**
+     * @return true if a {@link MetricsSink} is installed
+     */
+    public static boolean isEnabled() {
+        return sSink != null;
+    }
+
+    /**
+     * @return current time in nanoseconds if metrics are enabled, 0 otherwise
+     */
+    public static long timestamp() {
+        return sSink != null ? System.nanoTime() : 0;
+    }
+
+    public static void posted(Class<?> eventType) {
+        MetricsSink sink = sSink;
+        if (sink != null) {
+            sink.onPosted(eventType);
+        }
+    }
+
+    /**
+     * Reports the delivery of an event
+     *
+     * @param eventType
+     * @param postTimestamp the value returned by {@link #timestamp()} when the event was posted
+     */
+    public static void delivered(Class<?> eventType, long postTimestamp) {
+        MetricsSink sink = sSink;
+        if (sink != null) {
+            sink.onDelivered(eventType, postTimestamp > 0 ? System.nanoTime() - postTimestamp : -1);
+        }
+    }
+
+    public static void dropped(Class<?> eventType, DropReason reason) {
+        MetricsSink sink = sSink;
+        if (sink != null) {
+            sink.onDropped(eventType, reason);
+        }
+    }
+
+    public static void queueDepth(String queue, int depth) {
+        MetricsSink sink = sSink;
+        if (sink != null) {
+            sink.onQueueDepth(queue, depth);
+        }
+    }
+}
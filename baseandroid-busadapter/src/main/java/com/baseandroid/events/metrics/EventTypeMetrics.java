@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+/**
+ * Metrics collected by {@link MetricsRegistry} for a single event type.
+ */
+public final class EventTypeMetrics {
+
+    private final Class<?> mEventType;
+    private final StripedCounter mPosted = new StripedCounter();
+    private final StripedCounter mDelivered = new StripedCounter();
+    private final StripedCounter[] mDropped = new StripedCounter[DropReason.values().length];
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    EventTypeMetrics(Class<?> eventType) {
+        mEventType = eventType;
+        for (int i = 0; i < mDropped.length; i++) {
+            mDropped[i] = new StripedCounter();
+        }
+    }
+
+    public Class<?> getEventType() {
+        return mEventType;
+    }
+
+    public long getPosted() {
+        return mPosted.sum();
+    }
+
+    public long getDelivered() {
+        return mDelivered.sum();
+    }
+
+    /**
+     * @return the number of events discarded, for whatever reason
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (StripedCounter counter : mDropped) {
+            dropped += counter.sum();
+        }
+        return dropped;
+    }
+
+    public long getDropped(DropReason reason) {
+        return mDropped[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return the histogram of the latencies between the post and the delivery of the events
+     */
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    void posted() {
+        mPosted.increment();
+    }
+
+    void delivered(long latencyNanos) {
+        mDelivered.increment();
+        mLatency.record(latencyNanos);
+    }
+
+    void dropped(DropReason reason) {
+        mDropped[reason.ordinal()].increment();
+    }
+
+    @Override
+    public String toString() {
+        return mEventType.getSimpleName() + "[posted=" + getPosted() + ", delivered=" + getDelivered()
+                + ", dropped=" + getDropped() + ", p99=" + mLatency.getPercentileMicros(99) + "us]";
+    }
+}
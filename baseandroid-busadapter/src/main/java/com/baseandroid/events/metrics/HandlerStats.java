@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the sampled invocations of a single handler method, collected by {@link SlowHandlerDetector}.
+ */
+public final class HandlerStats {
+
+    private final String mHandler;
+    private final AtomicLong mInvocations = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+    private final AtomicLong mOverBudget = new AtomicLong();
+
+    HandlerStats(String handler) {
+        mHandler = handler;
+    }
+
+    void record(long durationNanos, boolean overBudget) {
+        mInvocations.incrementAndGet();
+        mTotalNanos.addAndGet(durationNanos);
+        long max = mMaxNanos.get();
+        while (durationNanos > max && !mMaxNanos.compareAndSet(max, durationNanos)) {
+            max = mMaxNanos.get();
+        }
+        if (overBudget) {
+            mOverBudget.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the handler method, as returned by {@link java.lang.reflect.Method#toString()}
+     */
+    public String getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * @return the number of sampled invocations
+     */
+    public long getInvocations() {
+        return mInvocations.get();
+    }
+
+    /**
+     * @return the number of sampled invocations exceeding the budget
+     */
+    public long getOverBudget() {
+        return mOverBudget.get();
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long invocations = mInvocations.get();
+        return invocations == 0 ? 0 : mTotalNanos.get() / invocations;
+    }
+
+    @Override
+    public String toString() {
+        return mHandler + "[invocations=" + getInvocations() + ", overBudget=" + getOverBudget()
+                + ", mean=" + TimeUnit.NANOSECONDS.toMicros(getMeanNanos()) + "us"
+                + ", max=" + TimeUnit.NANOSECONDS.toMicros(getMaxNanos()) + "us]";
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with fixed, exponential buckets: bucket {@code i} counts the values lower than
+ * {@code 2^i} microseconds, the last bucket counts all the values over {@code 2^(BUCKETS - 2)} microseconds (about 1 second).
+ * <p>
+ * Recording a value never allocates and never locks.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of buckets
+     */
+    public static final int BUCKETS = 22;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final StripedCounter mCount = new StripedCounter();
+    private final StripedCounter mSumMicros = new StripedCounter();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Records a latency, negative values are ignored
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000;
+        mBuckets.getAndIncrement(bucketOf(micros));
+        mCount.increment();
+        mSumMicros.add(micros);
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+
+    /**
+     * @param bucket
+     * @return the exclusive upper bound, in microseconds, of the values counted by {@code bucket},
+     * {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return bucket < BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    public long getBucketCount(int bucket) {
+        return mBuckets.get(bucket);
+    }
+
+    public long getCount() {
+        return mCount.sum();
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long count = mCount.sum();
+        return count == 0 ? 0 : (double) mSumMicros.sum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound, in microseconds, of the bucket containing the given percentile
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mBuckets.get(i);
+            total += counts[i];
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold && seen > 0) {
+                return i < BUCKETS - 1 ? getBucketUpperBoundMicros(i) : getMaxMicros();
+            }
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.reset();
+        mSumMicros.reset();
+        mMaxMicros.set(0);
+    }
+}
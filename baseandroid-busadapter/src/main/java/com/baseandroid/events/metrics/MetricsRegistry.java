@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link MetricsSink} aggregating the metrics in memory, per event type and per queue.
+ * <br>
+ * Exporters can read them periodically:
+ * <pre>{@code
+ *     MetricsRegistry registry = new MetricsRegistry();
+ *     EventDispatcher.useMetricsSink(registry);
+ *     ...
+ *     for (EventTypeMetrics metrics : registry.getEventTypeMetrics()) {
+ *         exporter.counter("events.posted", metrics.getEventType(), metrics.getPosted());
+ *     }
+ * }</pre>
+ */
+public class MetricsRegistry implements MetricsSink {
+
+    private final ConcurrentMap<Class<?>, EventTypeMetrics> mEventTypes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> mQueueDepths = new ConcurrentHashMap<>();
+
+    @Override
+    public void onPosted(Class<?> eventType) {
+        getOrCreate(eventType).posted();
+    }
+
+    @Override
+    public void onDelivered(Class<?> eventType, long latencyNanos) {
+        getOrCreate(eventType).delivered(latencyNanos);
+    }
+
+    @Override
+    public void onDropped(Class<?> eventType, DropReason reason) {
+        getOrCreate(eventType).dropped(reason);
+    }
+
+    @Override
+    public void onQueueDepth(String queue, int depth) {
+        AtomicInteger gauge = mQueueDepths.get(queue);
+        if (gauge == null) {
+            AtomicInteger newGauge = new AtomicInteger();
+            gauge = mQueueDepths.putIfAbsent(queue, newGauge);
+            if (gauge == null) {
+                gauge = newGauge;
+            }
+        }
+        gauge.set(depth);
+    }
+
+    private EventTypeMetrics getOrCreate(Class<?> eventType) {
+        EventTypeMetrics metrics = mEventTypes.get(eventType);
+        if (metrics == null) {
+            EventTypeMetrics newMetrics = new EventTypeMetrics(eventType);
+            metrics = mEventTypes.putIfAbsent(eventType, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @param eventType
+     * @return the metrics of the given event type, or null if nothing has been reported for it
+     */
+    public EventTypeMetrics getEventTypeMetrics(Class<?> eventType) {
+        return mEventTypes.get(eventType);
+    }
+
+    /**
+     * @return the metrics of all the event types reported so far
+     */
+    public Collection<EventTypeMetrics> getEventTypeMetrics() {
+        return Collections.unmodifiableCollection(mEventTypes.values());
+    }
+
+    /**
+     * @return a copy of the last depth reported for every queue
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : mQueueDepths.entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().get());
+        }
+        return depths;
+    }
+
+    /**
+     * Forgets all the metrics collected so far
+     */
+    public void reset() {
+        mEventTypes.clear();
+        mQueueDepths.clear();
+    }
+}
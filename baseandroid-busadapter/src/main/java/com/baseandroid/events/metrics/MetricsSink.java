@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+/**
+ * Service Provider Interface used by the event processors to report what happens on the buses.
+ * <br>
+ * Install an implementation with {@code EventDispatcher.useMetricsSink(...)}: you can use {@link MetricsRegistry}, which
+ * aggregates the measures in memory, or bridge these callbacks to your exporter.
+ * <p>
+ * <b>NOTE: these methods are called on the hot path of the buses, from any thread: implementations must be thread safe,
+ * fast and must never block.</b>
+ * </p>
+ */
+public interface MetricsSink {
+
+    /**
+     * Called when an event is posted
+     *
+     * @param eventType the class of the event
+     */
+    void onPosted(Class<?> eventType);
+
+    /**
+     * Called when an event is delivered to a subscriber or to a bus, once per event whatever the number of
+     * subscribers: an event is either delivered or dropped
+     *
+     * @param eventType    the class of the event
+     * @param latencyNanos nanoseconds elapsed since the event was posted
+     */
+    void onDelivered(Class<?> eventType, long latencyNanos);
+
+    /**
+     * Called when an event is discarded
+     *
+     * @param eventType the class of the event
+     * @param reason    why the event has been discarded
+     */
+    void onDropped(Class<?> eventType, DropReason reason);
+
+    /**
+     * Called when the number of events waiting in a queue changes
+     *
+     * @param queue the name of the queue
+     * @param depth the number of events in the queue
+     */
+    void onQueueDepth(String queue, int depth);
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the handlers take to handle the events and reports the ones exceeding a budget.
+ * <br>
+ * Only one invocation every {@link #setSamplingRate(int)} is measured, the statistics of the sampled invocations
+ * are aggregated per handler method (see {@link #getHandlerStats()}).
+ * <br>
+ * By default the budget is 8 ms on the Android Main Thread (half a frame) and 100 ms on other threads, and slow handlers
+ * are logged as warnings.
+ * <pre>{@code
+ *     EventDispatcher.useSlowHandlerDetector(new SlowHandlerDetector()
+ *             .setMainThreadBudget(8, TimeUnit.MILLISECONDS)
+ *             .setSamplingRate(16));
+ * }</pre>
+ * <p>
+ * When no detector is installed, the event processors pay a single volatile read per handler invocation.
+ * </p>
+ */
+public final class SlowHandlerDetector {
+
+    private static final String LOG_TAG = SlowHandlerDetector.class.getSimpleName();
+
+    private static volatile SlowHandlerDetector sInstance;
+
+    /**
+     * Default listener, logs the slow handlers
+     */
+    private static final SlowHandlerListener LOG_LISTENER = new SlowHandlerListener() {
+        @Override
+        public void onSlowHandler(HandlerStats stats, Class<?> eventType, long durationNanos, boolean mainThread) {
+            Log.w(LOG_TAG, "slow handler on " + (mainThread ? "main thread" : Thread.currentThread().getName()) + ": "
+                    + TimeUnit.NANOSECONDS.toMicros(durationNanos) + "us handling " + eventType.getSimpleName() + " - " + stats);
+        }
+    };
+
+    private final ConcurrentMap<String, HandlerStats> mStats = new ConcurrentHashMap<>();
+    private volatile long mMainThreadBudgetNanos = TimeUnit.MILLISECONDS.toNanos(8);
+    private volatile long mBackgroundBudgetNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile int mSamplingMask = 0;
+    private volatile SlowHandlerListener mListener = LOG_LISTENER;
+    /**
+     * Incremented on every invocation without synchronization: a lost increment only moves the next sample
+     */
+    private int mSamplingCounter;
+
+    /**
+     * Installs the detector used by the event processors, null disables the detection.
+     *
+     * @param detector
+     */
+    public static void install(SlowHandlerDetector detector) {
+        sInstance = detector;
+    }
+
+    /**
+     * Called by the event processors before invoking an handler.
+     *
+     * @return the installed detector if this invocation has to be measured, null otherwise
+     */
+    public static SlowHandlerDetector sample() {
+        SlowHandlerDetector detector = sInstance;
+        if (detector != null && (detector.mSamplingCounter++ & detector.mSamplingMask) == 0) {
+            return detector;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the budget of the handlers invoked on the Android Main Thread
+     *
+     * @param budget
+     * @param unit
+     * @return this detector
+     */
+    public SlowHandlerDetector setMainThreadBudget(long budget, TimeUnit unit) {
+        mMainThreadBudgetNanos = unit.toNanos(budget);
+        return this;
+    }
+
+    /**
+     * Sets the budget of the handlers invoked on threads other than the Android Main Thread
+     *
+     * @param budget
+     * @param unit
+     * @return this detector
+     */
+    public SlowHandlerDetector setBackgroundBudget(long budget, TimeUnit unit) {
+        mBackgroundBudgetNanos = unit.toNanos(budget);
+        return this;
+    }
+
+    /**
+     * Measures one invocation out of {@code rate}, rounded up to a power of two. 1 measures every invocation.
+     *
+     * @param rate
+     * @return this detector
+     */
+    public SlowHandlerDetector setSamplingRate(int rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive, was " + rate);
+        }
+        mSamplingMask = Integer.highestOneBit(rate * 2 - 1) - 1;
+        return this;
+    }
+
+    /**
+     * Sets the listener receiving the slow handlers, by default they are logged
+     *
+     * @param listener
+     * @return this detector
+     */
+    public SlowHandlerDetector setListener(SlowHandlerListener listener) {
+        mListener = listener != null ? listener : LOG_LISTENER;
+        return this;
+    }
+
+    /**
+     * Records a sampled invocation.
+     *
+     * @param handler       the handler method
+     * @param eventType     the class of the event handled
+     * @param durationNanos how long the invocation took
+     */
+    public void record(String handler, Class<?> eventType, long durationNanos) {
+        Looper mainLooper = Looper.getMainLooper();
+        boolean mainThread = mainLooper != null && Looper.myLooper() == mainLooper;
+        boolean overBudget = durationNanos > (mainThread ? mMainThreadBudgetNanos : mBackgroundBudgetNanos);
+        HandlerStats stats = mStats.get(handler);
+        if (stats == null) {
+            HandlerStats newStats = new HandlerStats(handler);
+            stats = mStats.putIfAbsent(handler, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        stats.record(durationNanos, overBudget);
+        if (overBudget) {
+            mListener.onSlowHandler(stats, eventType, durationNanos, mainThread);
+        }
+    }
+
+    /**
+     * @return the statistics of all the handlers measured so far
+     */
+    public Collection<HandlerStats> getHandlerStats() {
+        return Collections.unmodifiableCollection(mStats.values());
+    }
+
+    /**
+     * Forgets the statistics collected so far
+     */
+    public void reset() {
+        mStats.clear();
+    }
+}
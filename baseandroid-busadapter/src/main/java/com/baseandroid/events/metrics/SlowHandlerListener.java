@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.metrics;
+
+/**
+ * Receives the handler invocations exceeding the budget configured in {@link SlowHandlerDetector}.
+ */
+public interface SlowHandlerListener {
+
+    /**
+     * Called on the thread that invoked the handler, right after the invocation
+     *
+     * @param stats         the statistics of the handler, including this invocation
+     * @param eventType     the class of the event handled
+     * @param durationNanos how long the invocation took
+     * @param mainThread    whether the handler has been invoked on the Android Main Thread
+     */
+    void onSlowHandler(HandlerStats stats, Class<?> eventType, long durationNanos, boolean mainThread);
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.pool;
+
+/**
+ * Pool of recyclable events of the same type, see {@link PooledEvent}.
+ * <br>
+ * The pool keeps at most {@code maxSize} idle events: when it is empty {@link #obtain()} creates a new one,
+ * when it is full recycled events are left to the garbage collector.
+ * <pre>{@code
+ *     static final EventPool<LocationChanged> LOCATION_POOL = new EventPool<>(new EventPool.Factory<LocationChanged>() {
+ *         public LocationChanged newEvent() {
+ *             return new LocationChanged();
+ *         }
+ *     }, 64);
+ * }</pre>
+ */
+public final class EventPool<T extends PooledEvent> {
+
+    /**
+     * Creates the events of an {@link EventPool}
+     */
+    public interface Factory<T extends PooledEvent> {
+        T newEvent();
+    }
+
+    private final Factory<T> mFactory;
+    private final PooledEvent[] mIdle;
+    private int mSize;
+    private long mCreated;
+
+    /**
+     * @param factory
+     * @param maxSize max number of idle events kept by the pool
+     */
+    public EventPool(Factory<T> factory, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive, was " + maxSize);
+        }
+        mFactory = factory;
+        mIdle = new PooledEvent[maxSize];
+    }
+
+    /**
+     * Adds a reference to the event, if it is a {@link PooledEvent}: processors call it before handing the event
+     * to another thread.
+     *
+     * @param event
+     */
+    public static void retainIfPooled(Object event) {
+        if (event instanceof PooledEvent) {
+            ((PooledEvent) event).retain();
+        }
+    }
+
+    /**
+     * Removes a reference from the event, if it is a {@link PooledEvent}
+     *
+     * @param event
+     */
+    public static void releaseIfPooled(Object event) {
+        if (event instanceof PooledEvent) {
+            ((PooledEvent) event).release();
+        }
+    }
+
+    /**
+     * @return an idle event if any, otherwise a new one; in both cases the caller owns its only reference
+     */
+    @SuppressWarnings("unchecked")
+    public T obtain() {
+        PooledEvent event = null;
+        synchronized (this) {
+            if (mSize > 0) {
+                event = mIdle[--mSize];
+                mIdle[mSize] = null;
+            } else {
+                mCreated++;
+            }
+        }
+        if (event == null) {
+            event = mFactory.newEvent();
+            event.mPool = this;
+        } else {
+            event.reuse();
+        }
+        return (T) event;
+    }
+
+    /**
+     * @return the number of idle events in the pool
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of events created by the pool, it stops growing once the pool is warm
+     */
+    public synchronized long getCreatedCount() {
+        return mCreated;
+    }
+
+    synchronized void recycle(PooledEvent event) {
+        if (mSize < mIdle.length) {
+            mIdle[mSize++] = event;
+        }
+    }
+}
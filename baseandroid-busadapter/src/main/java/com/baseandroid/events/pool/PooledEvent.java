@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class of the events that can be recycled through an {@link EventPool}, to post high frequency events
+ * (e.g. locations or progress updates) without producing garbage.
+ * <br>
+ * Every event is reference counted: the event returned by {@link EventPool#obtain()} holds the reference of the poster,
+ * which is released by {@code EventDispatcher.post(...)} once the event has been handed to the processor.
+ * Processors delivering the event asynchronously retain it until all of its handlers have been invoked,
+ * when the last reference is released {@link #onRecycle()} is called and the event goes back to its pool.
+ * <pre>{@code
+ *     LocationChanged event = LOCATION_POOL.obtain();
+ *     event.set(latitude, longitude);
+ *     EventDispatcher.post(event);
+ *     // don't touch event anymore
+ * }</pre>
+ * <p>
+ * <b>NOTE: a pooled event can be posted only once, and handlers must not keep it after they return:
+ * a handler needing the event later must call {@link #retain()} and then {@link #release()} when done.</b>
+ * </p>
+ */
+public abstract class PooledEvent {
+
+    private final AtomicInteger mReferences = new AtomicInteger(1);
+    /**
+     * Incremented every time the event is recycled, it tells apart the different lives of the same instance
+     */
+    private volatile int mGeneration;
+    /**
+     * The pool this event goes back to when recycled, null if it has been created directly
+     */
+    EventPool<?> mPool;
+
+    /**
+     * Resets the state of this event before it goes back to its pool
+     */
+    protected abstract void onRecycle();
+
+    /**
+     * Adds a reference to this event, which won't be recycled until it is released.
+     *
+     * @return this event
+     * @throws IllegalStateException if the event has already been recycled
+     */
+    public final PooledEvent retain() {
+        int references;
+        do {
+            references = mReferences.get();
+            if (references <= 0) {
+                throw new IllegalStateException(getClass().getName() + " has already been recycled");
+            }
+        } while (!mReferences.compareAndSet(references, references + 1));
+        return this;
+    }
+
+    /**
+     * Adds a reference to this event only if it is still in the given generation, i.e. it hasn't been recycled since.
+     *
+     * @param generation the value of {@link #getGeneration()} when the event was posted
+     * @return true if the reference has been added, then it must be released
+     */
+    public final boolean tryRetain(int generation) {
+        int references;
+        do {
+            references = mReferences.get();
+            if (references <= 0 || mGeneration != generation) {
+                return false;
+            }
+        } while (!mReferences.compareAndSet(references, references + 1));
+        if (mGeneration != generation) {
+            // recycled and obtained again meanwhile
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a reference from this event, when the last one is removed the event is recycled.
+     *
+     * @return true if the event has been recycled
+     * @throws IllegalStateException if the event has been released more times than retained
+     */
+    public final boolean release() {
+        int references = mReferences.decrementAndGet();
+        if (references > 0) {
+            return false;
+        }
+        if (references < 0) {
+            mReferences.incrementAndGet();
+            throw new IllegalStateException(getClass().getName() + " has been released more times than retained");
+        }
+        mGeneration++;
+        onRecycle();
+        if (mPool != null) {
+            mPool.recycle(this);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of references to this event, 0 once it has been recycled
+     */
+    public final int getReferenceCount() {
+        return mReferences.get();
+    }
+
+    /**
+     * @return the number of times this event has been recycled
+     */
+    public final int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Called by {@link EventPool} when the event is obtained again
+     */
+    final void reuse() {
+        mReferences.set(1);
+    }
+}
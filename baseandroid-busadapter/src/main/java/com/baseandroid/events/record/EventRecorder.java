@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.record;
+
+import android.util.Log;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventDispatcher;
+import com.baseandroid.events.codec.EventCodec;
+import com.baseandroid.events.codec.EventCodecs;
+import com.baseandroid.events.codec.Varint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the events posted through {@link EventDispatcher} to a file, with the time elapsed between them, so that
+ * an {@link EventReplayer} can post them again, i.e. to load test a processor with the traffic of production.
+ * <pre>{@code
+ *     EventRecorder recorder = EventRecorder.start(new File(context.getFilesDir(), "events.rec"));
+ *     EventDispatcher.useEventRecorder(recorder);
+ *     ...
+ *     EventDispatcher.useEventRecorder(null);
+ *     recorder.stop();
+ * }</pre>
+ * The posting thread only encodes the event in a buffer, with the codec of {@link EventCodecs#of(Class)} or the one
+ * given to {@link #recordEventType(Class, EventCodec)}, a background thread writes the buffer to the file.
+ * When the file can't keep up and the buffer is full the events are dropped, see {@link #getDroppedCount()}.
+ * <p>
+ * <b>NOTE: the classes without a codec, i.e. without a constructor without arguments, are not recorded.</b>
+ * </p>
+ */
+public final class EventRecorder {
+
+    /**
+     * Default size of the buffer of the events not yet written
+     */
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * "EVR1", first bytes of a recording, followed by the wall clock time of its start in milliseconds
+     */
+    static final int FILE_MAGIC = 0x45565231;
+    /**
+     * Defines the id of a class: the id as a {@link Varint}, the length of the name and the name in UTF-8
+     */
+    static final byte TYPE_RECORD = 1;
+    /**
+     * An event: the id of its class and the nanoseconds elapsed since the previous event as {@link Varint}s,
+     * the length of the encoded event and the encoded event
+     */
+    static final byte EVENT_RECORD = 2;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LOG_TAG = EventRecorder.class.getSimpleName();
+
+    private final FileChannel mChannel;
+    private final Object mLock = new Object();
+    /**
+     * This map contains in keys the classes given to {@link #recordEventType(Class, EventCodec)}, in values their codec
+     */
+    private final Map<Class<?>, EventCodec<?>> mCodecs = new HashMap<>();
+    /**
+     * This map contains in keys the classes recorded, in values their id and codec, guarded by {@link #mLock}
+     */
+    private final Map<Class<?>, RecordedType> mTypes = new HashMap<>();
+    /**
+     * The classes that can't be recorded, guarded by {@link #mLock}
+     */
+    private final Set<Class<?>> mSkipped = new HashSet<>();
+    /**
+     * Records appended by the posting threads, guarded by {@link #mLock}
+     */
+    private ByteBuffer mPending;
+    /**
+     * Records being written by the recorder thread
+     */
+    private ByteBuffer mWriting;
+    private long mLastTimestamp;
+    private long mRecorded;
+    private long mDropped;
+    private boolean mStopped;
+    private final Thread mThread;
+
+    private EventRecorder(FileChannel channel, int maxBufferedBytes) {
+        mChannel = channel;
+        mPending = ByteBuffer.allocate(maxBufferedBytes / 2);
+        mWriting = ByteBuffer.allocate(maxBufferedBytes / 2);
+        mLastTimestamp = System.nanoTime();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeRecords();
+            }
+        }, "EventRecorder");
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * @param file the recording, overwritten if it exists
+     * @return a recorder writing to the file, to be passed to {@link EventDispatcher#useEventRecorder(EventRecorder)}
+     * @throws IOException if the file can't be written
+     */
+    public static EventRecorder start(File file) throws IOException {
+        return start(file, DEFAULT_MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * @param file the recording, overwritten if it exists
+     * @param maxBufferedBytes max size of the events not yet written, the posting threads never wait for the file
+     * @return a recorder writing to the file, to be passed to {@link EventDispatcher#useEventRecorder(EventRecorder)}
+     * @throws IOException if the file can't be written
+     */
+    public static EventRecorder start(File file, int maxBufferedBytes) throws IOException {
+        if (maxBufferedBytes < 1024) {
+            throw new IllegalArgumentException("maxBufferedBytes must be at least 1024, was " + maxBufferedBytes);
+        }
+        FileChannel channel = new FileOutputStream(file).getChannel();
+        EventRecorder recorder = new EventRecorder(channel, maxBufferedBytes);
+        recorder.mPending.putInt(FILE_MAGIC);
+        recorder.mPending.putLong(System.currentTimeMillis());
+        recorder.mThread.start();
+        return recorder;
+    }
+
+    /**
+     * Records the events of the given class with the given codec instead of the one of {@link EventCodecs#of(Class)}.
+     * It must be called before the first event of the class is recorded, and the replayer must use the same codec
+     * (see {@link EventReplayer#useCodec(Class, EventCodec)}).
+     *
+     * @param eventType the class of the event, annotated with {@link Event}
+     * @param codec
+     * @return this recorder
+     */
+    public <T> EventRecorder recordEventType(Class<T> eventType, EventCodec<T> codec) {
+        synchronized (mLock) {
+            if (mTypes.containsKey(eventType)) {
+                throw new IllegalStateException(eventType + " has already been recorded");
+            }
+            mCodecs.put(eventType, codec);
+            mSkipped.remove(eventType);
+        }
+        return this;
+    }
+
+    /**
+     * Appends an event to the recording, it is called by {@link EventDispatcher} before posting the event.
+     *
+     * @param event
+     */
+    public void record(Object event) {
+        long timestamp = System.nanoTime();
+        Class<?> eventType = event.getClass();
+        synchronized (mLock) {
+            if (mStopped) {
+                return;
+            }
+            RecordedType type = mTypes.get(eventType);
+            if (type == null) {
+                type = define(eventType);
+                if (type == null) {
+                    return;
+                }
+            }
+            int start = mPending.position();
+            // concurrent posters may take the lock in a different order than their timestamps
+            timestamp = Math.max(timestamp, mLastTimestamp);
+            try {
+                mPending.put(EVENT_RECORD);
+                Varint.writeUnsignedInt(mPending, type.mId);
+                Varint.writeUnsignedLong(mPending, timestamp - mLastTimestamp);
+                int lengthPosition = mPending.position();
+                mPending.putInt(0);
+                type.mCodec.encode(event, mPending);
+                mPending.putInt(lengthPosition, mPending.position() - lengthPosition - 4);
+            } catch (BufferOverflowException e) {
+                mPending.position(start);
+                mDropped++;
+                return;
+            } catch (RuntimeException e) {
+                mPending.position(start);
+                Log.w(LOG_TAG, type.mCodec.getClass().getName() + " failed encoding the event", e);
+                return;
+            }
+            mLastTimestamp = timestamp;
+            mRecorded++;
+            if (start == 0) {
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Assigns an id to a class and appends its definition, under {@link #mLock}
+     *
+     * @return the recorded type, null if the class can't be recorded or the definition doesn't fit in the buffer
+     */
+    @SuppressWarnings("unchecked")
+    private RecordedType define(Class<?> eventType) {
+        if (mSkipped.contains(eventType)) {
+            return null;
+        }
+        EventCodec<Object> codec = (EventCodec<Object>) mCodecs.get(eventType);
+        if (codec == null) {
+            try {
+                codec = (EventCodec<Object>) EventCodecs.of(eventType);
+            } catch (IllegalArgumentException e) {
+                mSkipped.add(eventType);
+                Log.w(LOG_TAG, eventType.getName() + " is not recorded: " + e.getMessage());
+                return null;
+            }
+        }
+        RecordedType type = new RecordedType(mTypes.size(), codec);
+        byte[] name = eventType.getName().getBytes(UTF_8);
+        int start = mPending.position();
+        try {
+            mPending.put(TYPE_RECORD);
+            Varint.writeUnsignedInt(mPending, type.mId);
+            mPending.putInt(name.length);
+            mPending.put(name);
+        } catch (BufferOverflowException e) {
+            mPending.position(start);
+            mDropped++;
+            return null;
+        }
+        mTypes.put(eventType, type);
+        return type;
+    }
+
+    /**
+     * Writes the events not yet written and closes the file, the events posted from now on are not recorded.
+     *
+     * @throws InterruptedException if interrupted while waiting for the file to be written
+     */
+    public void stop() throws InterruptedException {
+        synchronized (mLock) {
+            mStopped = true;
+            mLock.notifyAll();
+        }
+        mThread.join();
+    }
+
+    /**
+     * @return number of events recorded
+     */
+    public long getRecordedCount() {
+        synchronized (mLock) {
+            return mRecorded;
+        }
+    }
+
+    /**
+     * @return number of events not recorded because the buffer was full
+     */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDropped;
+        }
+    }
+
+    /**
+     * Writes the buffered records until stopped, on the recorder thread
+     */
+    private void writeRecords() {
+        try {
+            while (true) {
+                synchronized (mLock) {
+                    while (!mStopped && mPending.position() == 0) {
+                        mLock.wait();
+                    }
+                    if (mPending.position() == 0) {
+                        return;
+                    }
+                    // the events recorded meanwhile go in the other buffer
+                    ByteBuffer writing = mPending;
+                    mPending = mWriting;
+                    mWriting = writing;
+                }
+                mWriting.flip();
+                while (mWriting.hasRemaining()) {
+                    mChannel.write(mWriting);
+                }
+                mWriting.clear();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "recording stopped, the file can't be written", e);
+        } catch (InterruptedException e) {
+            Log.w(LOG_TAG, "recording interrupted");
+        } finally {
+            synchronized (mLock) {
+                mStopped = true;
+            }
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * This class holds the id and the codec of a recorded class
+     */
+    private static final class RecordedType {
+        private final int mId;
+        private final EventCodec<Object> mCodec;
+
+        private RecordedType(int id, EventCodec<Object> codec) {
+            mId = id;
+            mCodec = codec;
+        }
+    }
+}
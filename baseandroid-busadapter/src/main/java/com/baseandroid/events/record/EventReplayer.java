@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.record;
+
+import android.util.Log;
+
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.codec.EventCodec;
+import com.baseandroid.events.codec.EventCodecs;
+import com.baseandroid.events.codec.Varint;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.pool.EventPool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Posts again the events of a recording of {@link EventRecorder} on an {@link EventProcessor}, at the speed they were
+ * recorded, at a multiple of it or as fast as possible, and measures the posts (see {@link ReplayStats}).
+ * <pre>{@code
+ *     ReplayStats stats = EventReplayer.newInstance(new File("events.rec"))
+ *             .atSpeed(10)
+ *             .replay(RxEventProcessor.newInstance());
+ * }</pre>
+ * Events are decoded before waiting for their time, so that decoding doesn't delay the posts.
+ * A recording truncated by a crash is replayed up to its last complete event.
+ */
+public final class EventReplayer {
+
+    private static final String LOG_TAG = EventReplayer.class.getSimpleName();
+    private static final int READ_BUFFER_CAPACITY = 64 * 1024;
+    /**
+     * Max size of the header of a record: tag, id, elapsed time and length
+     */
+    private static final int MAX_HEADER_SIZE = 1 + 5 + 10 + 4;
+    /**
+     * Waits shorter than this are spun, parking is not precise enough
+     */
+    private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File mFile;
+    /**
+     * This map contains in keys the names of the classes given to {@link #useCodec(Class, EventCodec)}, in values their
+     * class and codec
+     */
+    private final Map<String, ReplayedType> mCodecs = new HashMap<>();
+    private double mSpeed = 1;
+    private ByteBuffer mBuffer;
+    private FileChannel mChannel;
+
+    private EventReplayer(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @param file a recording of {@link EventRecorder}
+     * @return a replayer posting the events at the speed they were recorded
+     */
+    public static EventReplayer newInstance(File file) {
+        return new EventReplayer(file);
+    }
+
+    /**
+     * Posts the events at the speed they were recorded
+     *
+     * @return this replayer
+     */
+    public EventReplayer atOriginalSpeed() {
+        mSpeed = 1;
+        return this;
+    }
+
+    /**
+     * Posts the events at a multiple of the speed they were recorded, i.e. 10 posts in 1 second the events of 10 seconds
+     *
+     * @param multiplier
+     * @return this replayer
+     */
+    public EventReplayer atSpeed(double multiplier) {
+        if (!(multiplier > 0)) {
+            throw new IllegalArgumentException("multiplier must be positive, was " + multiplier);
+        }
+        mSpeed = multiplier;
+        return this;
+    }
+
+    /**
+     * Posts the events one after the other, without waiting
+     *
+     * @return this replayer
+     */
+    public EventReplayer asFastAsPossible() {
+        mSpeed = 0;
+        return this;
+    }
+
+    /**
+     * Decodes the events of the given class with the given codec, the one used by the recorder
+     *
+     * @param eventType
+     * @param codec
+     * @return this replayer
+     */
+    public <T> EventReplayer useCodec(Class<T> eventType, EventCodec<T> codec) {
+        mCodecs.put(eventType.getName(), new ReplayedType(eventType, codec));
+        return this;
+    }
+
+    /**
+     * Posts all the events of the recording on the processor, from the calling thread.
+     * The references to the decoded {@code PooledEvent}s are released once posted.
+     *
+     * @param processor
+     * @return the statistics of the replay
+     * @throws IOException if the recording can't be read, {@link InterruptedIOException} if the thread is interrupted
+     */
+    public ReplayStats replay(EventProcessor processor) throws IOException {
+        ReplayStats stats = new ReplayStats();
+        List<ReplayedType> types = new ArrayList<>();
+        mBuffer = ByteBuffer.allocate(READ_BUFFER_CAPACITY);
+        mBuffer.flip();
+        mChannel = new FileInputStream(mFile).getChannel();
+        try {
+            if (!fill(12) || mBuffer.getInt() != EventRecorder.FILE_MAGIC) {
+                throw new IOException(mFile + " is not a recording");
+            }
+            // wall clock time of the recording
+            mBuffer.getLong();
+            long start = System.nanoTime();
+            long elapsed = 0;
+            boolean timed = mSpeed > 0;
+            while (fill(MAX_HEADER_SIZE) || mBuffer.hasRemaining()) {
+                try {
+                    byte tag = mBuffer.get();
+                    int id = Varint.readUnsignedInt(mBuffer);
+                    if (tag == EventRecorder.TYPE_RECORD) {
+                        int length = mBuffer.getInt();
+                        if (!fill(length)) {
+                            break;
+                        }
+                        byte[] name = new byte[length];
+                        mBuffer.get(name);
+                        setType(types, id, resolve(new String(name, EventRecorder.UTF_8)));
+                        continue;
+                    }
+                    elapsed += Varint.readUnsignedLong(mBuffer);
+                    int length = mBuffer.getInt();
+                    if (length < 0) {
+                        throw new IllegalArgumentException("negative length " + length);
+                    }
+                    if (!fill(length)) {
+                        break;
+                    }
+                    ReplayedType type = id < types.size() ? types.get(id) : null;
+                    Object event = null;
+                    if (type != null) {
+                        ByteBuffer payload = mBuffer.duplicate();
+                        payload.limit(payload.position() + length);
+                        event = decode(type, payload);
+                    }
+                    mBuffer.position(mBuffer.position() + length);
+                    if (event == null) {
+                        stats.skipped();
+                        continue;
+                    }
+                    post(processor, event, timed, timed ? start + (long) (elapsed / mSpeed) : 0, stats);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    Log.w(LOG_TAG, mFile + " is truncated or corrupted, the replay stops: " + e);
+                    break;
+                }
+            }
+            stats.completed(System.nanoTime() - start);
+            return stats;
+        } finally {
+            mChannel.close();
+            mChannel = null;
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * @param processor
+     * @param event
+     * @param timed false to post the event at once, when replaying as fast as possible
+     * @param due when the event has to be posted, in the time base of {@link System#nanoTime()}, which can be negative
+     * @param stats
+     */
+    private void post(EventProcessor processor, Object event, boolean timed, long due, ReplayStats stats)
+            throws InterruptedIOException {
+        if (timed) {
+            waitUntil(due);
+        }
+        long posted = System.nanoTime();
+        if (timed) {
+            stats.getScheduleLag().record(posted - due);
+        }
+        if (EventMetrics.isEnabled()) {
+            EventMetrics.posted(event.getClass());
+        }
+        try {
+            processor.onPost(event);
+        } finally {
+            EventPool.releaseIfPooled(event);
+        }
+        stats.getPostLatency().record(System.nanoTime() - posted);
+        stats.posted();
+    }
+
+    private static void waitUntil(long due) throws InterruptedIOException {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("replay interrupted");
+            }
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return the class and codec of the given name, null if the class is missing or has no codec
+     */
+    private ReplayedType resolve(String name) {
+        ReplayedType type = mCodecs.get(name);
+        if (type == null) {
+            try {
+                Class<?> eventType = Class.forName(name);
+                type = new ReplayedType(eventType, EventCodecs.of(eventType));
+            } catch (ClassNotFoundException | IllegalArgumentException e) {
+                Log.w(LOG_TAG, "the events of " + name + " are skipped: " + e);
+            }
+        }
+        return type;
+    }
+
+    private static void setType(List<ReplayedType> types, int id, ReplayedType type) {
+        while (types.size() <= id) {
+            types.add(null);
+        }
+        types.set(id, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object decode(ReplayedType type, ByteBuffer payload) {
+        try {
+            return ((EventCodec<Object>) type.mCodec).decode(payload);
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, type.mEventType.getName() + " can't be decoded: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the file until the buffer holds the given number of bytes, growing it if needed
+     *
+     * @return false if the file ends before
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (mBuffer.remaining() >= bytes) {
+            return true;
+        }
+        if (bytes > mBuffer.capacity() && mBuffer.remaining() + mChannel.size() - mChannel.position() < bytes) {
+            // a length past the end of the file, truncated or corrupted: the buffer isn't grown for it
+            return false;
+        }
+        mBuffer.compact();
+        if (mBuffer.capacity() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes, mBuffer.capacity() * 2));
+            mBuffer.flip();
+            bigger.put(mBuffer);
+            mBuffer = bigger;
+        }
+        while (mBuffer.position() < bytes) {
+            if (mChannel.read(mBuffer) < 0) {
+                break;
+            }
+        }
+        mBuffer.flip();
+        return mBuffer.remaining() >= bytes;
+    }
+
+    /**
+     * This class holds a recorded class and its codec
+     */
+    private static final class ReplayedType {
+        private final Class<?> mEventType;
+        private final EventCodec<?> mCodec;
+
+        private ReplayedType(Class<?> eventType, EventCodec<?> codec) {
+            mEventType = eventType;
+            mCodec = codec;
+        }
+    }
+}
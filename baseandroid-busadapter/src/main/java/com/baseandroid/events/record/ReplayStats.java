@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.record;
+
+import com.baseandroid.events.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics of a replay of {@link EventReplayer}.
+ * <ul>
+ * <li>{@link #getPostLatency()}: time spent in {@code onPost(...)} by the replaying thread for every event</li>
+ * <li>{@link #getScheduleLag()}: delay of every post from the time of the recording scaled by the speed,
+ * it grows when the processor can't keep up, not recorded when replaying as fast as possible</li>
+ * </ul>
+ * The delivery latencies are measured by the processor itself, see {@code EventDispatcher.useMetricsSink(...)}.
+ */
+public final class ReplayStats {
+
+    private final LatencyHistogram mPostLatency = new LatencyHistogram();
+    private final LatencyHistogram mScheduleLag = new LatencyHistogram();
+    private long mEvents;
+    private long mSkipped;
+    private long mDurationNanos;
+
+    ReplayStats() {
+    }
+
+    void posted() {
+        mEvents++;
+    }
+
+    void skipped() {
+        mSkipped++;
+    }
+
+    void completed(long durationNanos) {
+        mDurationNanos = durationNanos;
+    }
+
+    /**
+     * @return number of events posted
+     */
+    public long getEventCount() {
+        return mEvents;
+    }
+
+    /**
+     * @return number of events not posted because their class or their codec is missing
+     */
+    public long getSkippedCount() {
+        return mSkipped;
+    }
+
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    public double getEventsPerSecond() {
+        return mDurationNanos > 0 ? mEvents * (double) TimeUnit.SECONDS.toNanos(1) / mDurationNanos : 0;
+    }
+
+    public LatencyHistogram getPostLatency() {
+        return mPostLatency;
+    }
+
+    public LatencyHistogram getScheduleLag() {
+        return mScheduleLag;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayStats{events=" + mEvents
+                + ", skipped=" + mSkipped
+                + ", durationMs=" + TimeUnit.NANOSECONDS.toMillis(mDurationNanos)
+                + ", eventsPerSecond=" + (long) getEventsPerSecond()
+                + ", postP99Micros=" + mPostLatency.getPercentileMicros(99)
+                + ", postMaxMicros=" + mPostLatency.getMaxMicros()
+                + ", lagP99Micros=" + mScheduleLag.getPercentileMicros(99)
+                + ", lagMaxMicros=" + mScheduleLag.getMaxMicros()
+                + '}';
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.shedding;
+
+import android.util.Log;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.metrics.DropReason;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.metrics.StripedCounter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drops the less important events while the queues of a processor are too deep, so that the urgent ones keep being
+ * delivered in time during a storm.
+ * <br>
+ * Every queue of the processor has its own {@link Gate}: when the depth of the queue reaches the high watermark the gate
+ * starts shedding the incoming events with a {@link Event.Priority} lower than the minimum one, until the depth goes
+ * back down to the low watermark. The gap between the two watermarks keeps the gate from flapping at every event.
+ * <br>
+ * Shed events are reported as {@link DropReason#SHED} and handed to the {@link Overflow}, if any.
+ * <p>
+ * <b>NOTE: the depth is sampled when events are posted, a queue that stops receiving events stays in shedding mode
+ * until the next post.</b>
+ * </p>
+ */
+public final class LoadShedder {
+
+    private static final String LOG_TAG = LoadShedder.class.getSimpleName();
+
+    /**
+     * Receives the shed events instead of the processor, e.g. to store them and post them again later
+     */
+    public interface Overflow {
+        /**
+         * Called on the posting thread.
+         * A {@link com.baseandroid.events.pool.PooledEvent} is only valid during the call, unless it is retained.
+         *
+         * @param event the shed event
+         * @param queue the name of the queue that was too deep, see {@link Gate#getName()}
+         */
+        void onShed(Object event, String queue);
+    }
+
+    private final int mHighWatermark;
+    private final int mLowWatermark;
+    private final Event.Priority mMinPriority;
+    private final Overflow mOverflow;
+
+    private LoadShedder(int highWatermark, int lowWatermark, Event.Priority minPriority, Overflow overflow) {
+        if (lowWatermark < 0 || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("watermarks must be 0 <= low < high, were low " + lowWatermark
+                    + " and high " + highWatermark);
+        }
+        mHighWatermark = highWatermark;
+        mLowWatermark = lowWatermark;
+        mMinPriority = minPriority;
+        mOverflow = overflow;
+    }
+
+    /**
+     * This method return a new {@link LoadShedder} dropping the events with a priority lower than
+     * {@link Event.Priority#NORMAL}, that is {@code LOW} and {@code IRRELEVANT} ones
+     *
+     * @param highWatermark depth of a queue from which events are shed
+     * @param lowWatermark depth of a queue from which events are accepted again
+     * @return
+     */
+    public static LoadShedder newInstance(int highWatermark, int lowWatermark) {
+        return new LoadShedder(highWatermark, lowWatermark, Event.Priority.NORMAL, null);
+    }
+
+    /**
+     * This method return a new {@link LoadShedder}
+     *
+     * @param highWatermark depth of a queue from which events are shed
+     * @param lowWatermark depth of a queue from which events are accepted again
+     * @param minPriority events with a lower priority are shed, the others are always accepted
+     * @param overflow receives the shed events, null to drop them
+     * @return
+     */
+    public static LoadShedder newInstance(int highWatermark, int lowWatermark, Event.Priority minPriority,
+                                          Overflow overflow) {
+        return new LoadShedder(highWatermark, lowWatermark, minPriority, overflow);
+    }
+
+    public int getHighWatermark() {
+        return mHighWatermark;
+    }
+
+    public int getLowWatermark() {
+        return mLowWatermark;
+    }
+
+    public Event.Priority getMinPriority() {
+        return mMinPriority;
+    }
+
+    /**
+     * Processors call this method once for every queue they want to protect
+     *
+     * @param queue name of the queue, used in logs
+     * @return a new gate, not shedding
+     */
+    public Gate newGate(String queue) {
+        return new Gate(queue);
+    }
+
+    /**
+     * The shedding state of a single queue
+     */
+    public final class Gate {
+        private final String mName;
+        private final AtomicBoolean mShedding = new AtomicBoolean();
+        private final StripedCounter mShed = new StripedCounter();
+
+        private Gate(String name) {
+            mName = name;
+        }
+
+        /**
+         * Decides whether an event can enter the queue. It must be called before the processor takes any reference
+         * to the event: a shed event is reported and handed to the {@link Overflow}, the processor must disregard it.
+         *
+         * @param event the posted event
+         * @param info the metadata of the event
+         * @param depth number of events in the queue, before this one
+         * @return false if the event has been shed
+         */
+        public boolean admit(Object event, EventInfo info, int depth) {
+            boolean shedding = mShedding.get();
+            if (!shedding && depth >= mHighWatermark) {
+                if (mShedding.compareAndSet(false, true)) {
+                    Log.w(LOG_TAG, mName + " reached " + depth + " events, shedding the ones below " + mMinPriority);
+                }
+                shedding = true;
+            } else if (shedding && depth <= mLowWatermark) {
+                if (mShedding.compareAndSet(true, false)) {
+                    Log.i(LOG_TAG, mName + " back to " + depth + " events, " + getShedCount() + " shed so far");
+                }
+                shedding = false;
+            }
+            // Priority constants are declared from the most to the least urgent
+            if (!shedding || info.getPriority().ordinal() <= mMinPriority.ordinal()) {
+                return true;
+            }
+            mShed.increment();
+            EventMetrics.dropped(event.getClass(), DropReason.SHED);
+            Overflow overflow = mOverflow;
+            if (overflow != null) {
+                overflow.onShed(event, mName);
+            }
+            return false;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return true while the queue is over the watermarks
+         */
+        public boolean isShedding() {
+            return mShedding.get();
+        }
+
+        /**
+         * @return the number of events shed by this gate
+         */
+        public long getShedCount() {
+            return mShed.sum();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.timer;
+
+/**
+ * Handle of an event scheduled on a {@link TimingWheel}, e.g. by {@code EventDispatcher.postDelayed(...)}:
+ * it can be cancelled until the event is posted.
+ */
+public final class ScheduledEvent {
+    static final int PENDING = 0;
+    static final int POSTED = 1;
+    static final int CANCELLED = 2;
+
+    private final TimingWheel mWheel;
+    /**
+     * Receives the event when it is due
+     */
+    final TimingWheel.Target mTarget;
+    /**
+     * The event to post, cleared once posted or cancelled; guarded by the lock of the wheel
+     */
+    Object mEvent;
+    /**
+     * The tick the event has to be posted at
+     */
+    long mExpirationTick;
+    /**
+     * Index of the slot of the wheel containing this event, and neighbours in the list of the slot;
+     * guarded by the lock of the wheel
+     */
+    int mSlot;
+    ScheduledEvent mPrev;
+    ScheduledEvent mNext;
+    volatile int mState = PENDING;
+
+    ScheduledEvent(TimingWheel wheel, Object event, TimingWheel.Target target) {
+        mWheel = wheel;
+        mEvent = event;
+        mTarget = target;
+    }
+
+    /**
+     * Cancels the event, if it has not been posted yet
+     *
+     * @return true if the event has been cancelled, false if it was already posted or cancelled
+     */
+    public boolean cancel() {
+        return mWheel.cancel(this);
+    }
+
+    /**
+     * @return true if the event has been cancelled, also by {@link TimingWheel#stop()} or
+     * {@link TimingWheel#cancelAll(TimingWheel.Target)}
+     */
+    public boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    /**
+     * @return true if the event has been posted or cancelled
+     */
+    public boolean isDone() {
+        return mState != PENDING;
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.timer;
+
+import android.util.Log;
+
+import com.baseandroid.events.pool.EventPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel posting events after a delay, all the events scheduled on a wheel share a single ticker thread.
+ * <br>
+ * The wheel has {@link #LEVELS} levels of {@link #SLOTS} slots: a slot of the first level holds the events due at one tick,
+ * a slot of the next level the events due in {@link #SLOTS} ticks, and so on. When the ticker reaches a slot of an upper
+ * level its events are moved to the lower levels, so scheduling and cancelling an event take constant time whatever
+ * the number of scheduled events.
+ * <br>
+ * The ticker thread is started by the first event scheduled and sleeps while the wheel is empty, or until the next slot
+ * with events otherwise. Every event can have its own {@link Target}, so that the posters can share a wheel, and its
+ * thread, instead of starting one each: see {@link #schedule(Object, long, Target)}.
+ * <p>
+ * <b>NOTE: events are posted on the ticker thread, with processors delivering events on the posting thread long handlers
+ * delay the other events of the wheel.</b>
+ * </p>
+ */
+public final class TimingWheel {
+
+    /**
+     * Default resolution of the wheel, events are posted at most one tick late
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * Number of slots of every level
+     */
+    static final int SLOTS = 64;
+    /**
+     * Number of levels, with the default tick they cover more than 4 months: events scheduled further are moved down
+     * the levels when the last slot is reached
+     */
+    static final int LEVELS = 5;
+
+    private static final String LOG_TAG = TimingWheel.class.getSimpleName();
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_MASK = SLOTS - 1;
+    /**
+     * Number of ticks covered by all the levels
+     */
+    private static final long MAX_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    /**
+     * Receives the events when they are due, on the ticker thread
+     */
+    public interface Target {
+        void post(Object event);
+    }
+
+    private final String mName;
+    private final long mTickNanos;
+    private final Target mTarget;
+    private final long mStartNanos = System.nanoTime();
+    private final Object mLock = new Object();
+    /**
+     * Heads of the lists of events of every slot, level after level; guarded by {@link #mLock}
+     */
+    private final ScheduledEvent[] mSlots = new ScheduledEvent[LEVELS * SLOTS];
+    /**
+     * Last tick processed by the ticker
+     */
+    private long mCurrentTick;
+    /**
+     * Tick the ticker is sleeping until, {@link Long#MAX_VALUE} when the wheel is empty
+     */
+    private long mWakeTick = Long.MAX_VALUE;
+    /**
+     * Number of events scheduled and not yet posted nor cancelled
+     */
+    private int mSize;
+    private Thread mTicker;
+    private boolean mStopped;
+
+    private TimingWheel(String name, long tickMillis, Target target) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive, was " + tickMillis);
+        }
+        mName = name;
+        mTickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        mTarget = target;
+    }
+
+    /**
+     * This method return a new {@link TimingWheel} with a tick of {@link #DEFAULT_TICK_MILLIS}
+     *
+     * @param name name of the wheel, used for its ticker thread
+     * @param target receives the events when they are due
+     * @return
+     */
+    public static TimingWheel newInstance(String name, Target target) {
+        return new TimingWheel(name, DEFAULT_TICK_MILLIS, target);
+    }
+
+    /**
+     * This method return a new {@link TimingWheel}
+     *
+     * @param name name of the wheel, used for its ticker thread
+     * @param tickMillis resolution of the wheel
+     * @param target receives the events when they are due
+     * @return
+     */
+    public static TimingWheel newInstance(String name, long tickMillis, Target target) {
+        return new TimingWheel(name, tickMillis, target);
+    }
+
+    /**
+     * Schedules an event, it will be posted to the target of the wheel after the delay.
+     * If the wheel has been stopped the event is discarded and the handle returned is already cancelled.
+     *
+     * @param event the event to post
+     * @param delayMillis delay in milliseconds, events with a delay of 0 or less are posted at the next tick
+     * @return the handle to cancel the event
+     */
+    public ScheduledEvent schedule(Object event, long delayMillis) {
+        return schedule(event, delayMillis, mTarget);
+    }
+
+    /**
+     * Schedules an event, it will be posted to the given target after the delay, see {@link #schedule(Object, long)}.
+     *
+     * @param event the event to post
+     * @param delayMillis delay in milliseconds, events with a delay of 0 or less are posted at the next tick
+     * @param target receives the event when it is due, instead of the target of the wheel
+     * @return the handle to cancel the event
+     */
+    public ScheduledEvent schedule(Object event, long delayMillis, Target target) {
+        if (event == null) {
+            throw new IllegalArgumentException("event must not be null");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        ScheduledEvent scheduled = new ScheduledEvent(this, event, target);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)) - mStartNanos;
+        synchronized (mLock) {
+            if (!mStopped) {
+                if (mSize == 0) {
+                    // the ticker doesn't advance while the wheel is empty
+                    mCurrentTick = Math.max(mCurrentTick, tickAt(System.nanoTime()));
+                }
+                scheduled.mExpirationTick = Math.max((deadline + mTickNanos - 1) / mTickNanos, mCurrentTick + 1);
+                add(scheduled);
+                mSize++;
+                if (mTicker == null) {
+                    mTicker = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            tick();
+                        }
+                    }, "TimingWheel-" + mName);
+                    mTicker.setDaemon(true);
+                    mTicker.start();
+                } else if (scheduled.mExpirationTick < mWakeTick) {
+                    mLock.notifyAll();
+                }
+                return scheduled;
+            }
+        }
+        Log.w(LOG_TAG, "schedule: " + mName + " stopped, event of type " + event.getClass().getName() + " will be missed");
+        scheduled.mState = ScheduledEvent.CANCELLED;
+        scheduled.mEvent = null;
+        EventPool.releaseIfPooled(event);
+        return scheduled;
+    }
+
+    /**
+     * @return the number of events scheduled and not yet posted nor cancelled
+     */
+    public int getPendingCount() {
+        synchronized (mLock) {
+            return mSize;
+        }
+    }
+
+    /**
+     * Cancels all the scheduled events and stops the ticker thread, the events scheduled afterwards are discarded.
+     */
+    public void stop() {
+        List<Object> cancelled = new ArrayList<>();
+        synchronized (mLock) {
+            if (mStopped) {
+                return;
+            }
+            mStopped = true;
+            for (int i = 0; i < mSlots.length; i++) {
+                for (ScheduledEvent scheduled = mSlots[i]; scheduled != null; scheduled = scheduled.mNext) {
+                    scheduled.mState = ScheduledEvent.CANCELLED;
+                    cancelled.add(scheduled.mEvent);
+                    scheduled.mEvent = null;
+                }
+                mSlots[i] = null;
+            }
+            mSize = 0;
+            mLock.notifyAll();
+        }
+        for (Object event : cancelled) {
+            EventPool.releaseIfPooled(event);
+        }
+    }
+
+    /**
+     * Cancels the scheduled events of the given target, e.g. when it is torn down: unlike {@link #stop()} the wheel
+     * keeps posting the events of the other targets.
+     * It scans the whole wheel, so it is meant for a target going away rather than for single events.
+     *
+     * @param target
+     * @return the number of events cancelled
+     */
+    public int cancelAll(Target target) {
+        List<Object> cancelled = new ArrayList<>();
+        synchronized (mLock) {
+            for (int i = 0; i < mSlots.length; i++) {
+                ScheduledEvent scheduled = mSlots[i];
+                while (scheduled != null) {
+                    ScheduledEvent next = scheduled.mNext;
+                    if (scheduled.mTarget == target) {
+                        unlink(scheduled);
+                        scheduled.mState = ScheduledEvent.CANCELLED;
+                        cancelled.add(scheduled.mEvent);
+                        scheduled.mEvent = null;
+                        mSize--;
+                    }
+                    scheduled = next;
+                }
+            }
+        }
+        for (Object event : cancelled) {
+            EventPool.releaseIfPooled(event);
+        }
+        return cancelled.size();
+    }
+
+    boolean cancel(ScheduledEvent scheduled) {
+        Object event;
+        synchronized (mLock) {
+            if (scheduled.mState != ScheduledEvent.PENDING) {
+                return false;
+            }
+            unlink(scheduled);
+            scheduled.mState = ScheduledEvent.CANCELLED;
+            event = scheduled.mEvent;
+            scheduled.mEvent = null;
+            mSize--;
+        }
+        EventPool.releaseIfPooled(event);
+        return true;
+    }
+
+    private long tickAt(long nanos) {
+        return (nanos - mStartNanos) / mTickNanos;
+    }
+
+    /**
+     * Adds an event to the slot of its expiration tick, in the lowest level covering it.
+     * The caller must hold {@link #mLock}.
+     *
+     * @param scheduled
+     */
+    private void add(ScheduledEvent scheduled) {
+        long expiration = scheduled.mExpirationTick;
+        long delta = expiration - mCurrentTick;
+        if (delta >= MAX_TICKS) {
+            // placed in the last slot reachable, it will be added again with its own expiration when that slot is reached
+            expiration = mCurrentTick + MAX_TICKS - 1;
+            delta = MAX_TICKS - 1;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((expiration >>> (SLOT_BITS * level)) & SLOT_MASK);
+        ScheduledEvent head = mSlots[slot];
+        scheduled.mSlot = slot;
+        scheduled.mPrev = null;
+        scheduled.mNext = head;
+        if (head != null) {
+            head.mPrev = scheduled;
+        }
+        mSlots[slot] = scheduled;
+    }
+
+    /**
+     * The caller must hold {@link #mLock}.
+     *
+     * @param scheduled
+     */
+    private void unlink(ScheduledEvent scheduled) {
+        if (scheduled.mPrev == null) {
+            mSlots[scheduled.mSlot] = scheduled.mNext;
+        } else {
+            scheduled.mPrev.mNext = scheduled.mNext;
+        }
+        if (scheduled.mNext != null) {
+            scheduled.mNext.mPrev = scheduled.mPrev;
+        }
+        scheduled.mPrev = null;
+        scheduled.mNext = null;
+    }
+
+    /**
+     * Processes the next tick: the upper levels reached by the tick are moved to the lower ones, then the events of
+     * the slot of the tick are removed and added to {@code expired}.
+     * The caller must hold {@link #mLock}.
+     *
+     * @param expired
+     */
+    private void advance(List<ScheduledEvent> expired) {
+        long tick = ++mCurrentTick;
+        for (int level = 1; level < LEVELS && (tick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+            int slot = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            ScheduledEvent scheduled = mSlots[slot];
+            mSlots[slot] = null;
+            while (scheduled != null) {
+                ScheduledEvent next = scheduled.mNext;
+                add(scheduled);
+                scheduled = next;
+            }
+        }
+        int slot = (int) (tick & SLOT_MASK);
+        ScheduledEvent scheduled = mSlots[slot];
+        mSlots[slot] = null;
+        while (scheduled != null) {
+            ScheduledEvent next = scheduled.mNext;
+            if (scheduled.mExpirationTick <= tick) {
+                scheduled.mState = ScheduledEvent.POSTED;
+                scheduled.mPrev = null;
+                scheduled.mNext = null;
+                mSize--;
+                expired.add(scheduled);
+            } else {
+                add(scheduled);
+            }
+            scheduled = next;
+        }
+    }
+
+    /**
+     * The caller must hold {@link #mLock}.
+     *
+     * @return the next tick having events in the first level, or the next tick moving an upper level down
+     */
+    private long nextWakeTick() {
+        long boundary = (mCurrentTick | SLOT_MASK) + 1;
+        for (long tick = mCurrentTick + 1; tick < boundary; tick++) {
+            if (mSlots[(int) (tick & SLOT_MASK)] != null) {
+                return tick;
+            }
+        }
+        return boundary;
+    }
+
+    /**
+     * Loop of the ticker thread
+     */
+    private void tick() {
+        List<ScheduledEvent> expired = new ArrayList<>();
+        List<Target> targets = new ArrayList<>();
+        List<Object> events = new ArrayList<>();
+        while (true) {
+            synchronized (mLock) {
+                try {
+                    while (expired.isEmpty()) {
+                        if (mStopped) {
+                            return;
+                        }
+                        if (mSize == 0) {
+                            mWakeTick = Long.MAX_VALUE;
+                            mLock.wait();
+                            continue;
+                        }
+                        long now = tickAt(System.nanoTime());
+                        while (mCurrentTick < now && mSize > 0) {
+                            advance(expired);
+                        }
+                        if (expired.isEmpty()) {
+                            mWakeTick = nextWakeTick();
+                            long waitNanos = mStartNanos + mWakeTick * mTickNanos - System.nanoTime();
+                            if (waitNanos > 0) {
+                                mLock.wait(TimeUnit.NANOSECONDS.toMillis(waitNanos), (int) (waitNanos % 1000000));
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (ScheduledEvent scheduled : expired) {
+                    targets.add(scheduled.mTarget);
+                    events.add(scheduled.mEvent);
+                    scheduled.mEvent = null;
+                }
+                expired.clear();
+            }
+            for (int i = 0; i < events.size(); i++) {
+                Object event = events.get(i);
+                try {
+                    targets.get(i).post(event);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "tick: " + mName + " failed posting event of type " + event.getClass().getName(), e);
+                }
+            }
+            targets.clear();
+            events.clear();
+        }
+    }
+}
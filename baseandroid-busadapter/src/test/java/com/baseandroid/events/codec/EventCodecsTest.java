@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.codec;
+
+import com.baseandroid.events.Event;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodes and decodes events with the codecs of {@link EventCodecs}, for every {@link FieldType}.
+ */
+public class EventCodecsTest {
+
+    @Test
+    public void primitivesAtTheirBounds() {
+        AllTypes min = AllTypes.filled();
+        min.mBoolean = false;
+        min.mByte = Byte.MIN_VALUE;
+        min.mChar = Character.MIN_VALUE;
+        min.mShort = Short.MIN_VALUE;
+        min.mInt = Integer.MIN_VALUE;
+        min.mLong = Long.MIN_VALUE;
+        min.mFloat = -Float.MAX_VALUE;
+        min.mDouble = Double.NEGATIVE_INFINITY;
+        assertRoundTrip(min);
+
+        AllTypes max = AllTypes.filled();
+        max.mBoolean = true;
+        max.mByte = Byte.MAX_VALUE;
+        max.mChar = Character.MAX_VALUE;
+        max.mShort = Short.MAX_VALUE;
+        max.mInt = Integer.MAX_VALUE;
+        max.mLong = Long.MAX_VALUE;
+        max.mFloat = Float.NaN;
+        max.mDouble = Double.MIN_VALUE;
+        assertRoundTrip(max);
+    }
+
+    @Test
+    public void varintsAroundTheirLengthLimits() {
+        long[] values = {0, 1, -1, 63, 64, -64, -65, 8191, 8192, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            AllTypes event = AllTypes.filled();
+            event.mLong = value;
+            event.mBoxedLong = value;
+            event.mInt = (int) value;
+            event.mBoxedInt = (int) value;
+            assertRoundTrip(event);
+        }
+    }
+
+    @Test
+    public void boxesWithAndWithoutValue() {
+        assertRoundTrip(AllTypes.filled());
+        assertRoundTrip(new AllTypes());
+
+        AllTypes boxed = AllTypes.filled();
+        boxed.mBoxedBoolean = false;
+        boxed.mBoxedInt = 0;
+        boxed.mBoxedChar = Character.MAX_VALUE;
+        boxed.mBoxedLong = Long.MIN_VALUE;
+        assertRoundTrip(boxed);
+    }
+
+    @Test
+    public void stringsBytesAndEnums() {
+        AllTypes empty = AllTypes.filled();
+        empty.mString = "";
+        empty.mBytes = new byte[0];
+        empty.mEnum = Color.RED;
+        assertRoundTrip(empty);
+
+        AllTypes unicode = AllTypes.filled();
+        unicode.mString = "caff\u00e8 \u20ac \ud83d\ude00";
+        unicode.mBytes = new byte[300];
+        for (int i = 0; i < unicode.mBytes.length; i++) {
+            unicode.mBytes[i] = (byte) i;
+        }
+        unicode.mEnum = Color.BLUE;
+        assertRoundTrip(unicode);
+
+        AllTypes nulls = AllTypes.filled();
+        nulls.mString = null;
+        nulls.mBytes = null;
+        nulls.mEnum = null;
+        assertRoundTrip(nulls);
+    }
+
+    @Test
+    public void fieldsOfSuperclassesAreEncoded() {
+        Child child = new Child();
+        child.mParentValue = 42;
+        child.mChildValue = "child";
+        child.mSkipped = 7;
+        EventCodec<Child> codec = EventCodecs.of(Child.class);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        codec.encode(child, buffer);
+        buffer.flip();
+        Child decoded = codec.decode(buffer);
+        assertEquals(42, decoded.mParentValue);
+        assertEquals("child", decoded.mChildValue);
+        assertEquals(0, decoded.mSkipped);
+    }
+
+    @Test
+    public void differentSchemaFailsTheDecoding() {
+        assertNotEquals(EventCodecs.getSchemaId(OrderV1.class), EventCodecs.getSchemaId(OrderV2.class));
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        EventCodecs.of(OrderV1.class).encode(new OrderV1(), buffer);
+        buffer.flip();
+        try {
+            EventCodecs.of(OrderV2.class).decode(buffer);
+            fail("decoded an event with a different schema id");
+        } catch (IllegalArgumentException expected) {
+            // the other side uses a different version of the class
+        }
+    }
+
+    @Test
+    public void corruptedLengthsFailTheDecoding() {
+        for (Class<?> eventType : new Class<?>[]{Blob.class, Note.class}) {
+            // a length far larger than the buffer must fail before allocating it
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            buffer.putInt(EventCodecs.getSchemaId(eventType));
+            Varint.writeUnsignedInt(buffer, Integer.MAX_VALUE);
+            buffer.flip();
+            assertDecodingFails(eventType, buffer);
+
+            // and so must a length pointing past the end of the buffer, e.g. of a truncated file
+            buffer = ByteBuffer.allocate(16);
+            buffer.putInt(EventCodecs.getSchemaId(eventType));
+            Varint.writeUnsignedInt(buffer, 11);
+            buffer.put(new byte[4]);
+            buffer.flip();
+            assertDecodingFails(eventType, buffer);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void classesNotAnnotatedAreRejected() {
+        EventCodecs.of(String.class);
+    }
+
+    private static void assertDecodingFails(Class<?> eventType, ByteBuffer buffer) {
+        try {
+            EventCodecs.of(eventType).decode(buffer);
+            fail("decoded " + eventType + " with a corrupted length");
+        } catch (IllegalArgumentException expected) {
+            // the length exceeds the bytes left
+        }
+    }
+
+    private static void assertRoundTrip(AllTypes event) {
+        EventCodec<AllTypes> codec = EventCodecs.of(AllTypes.class);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.encode(event, buffer);
+        int size = buffer.position();
+        buffer.flip();
+        AllTypes decoded = codec.decode(buffer);
+        assertEquals("bytes left after decoding", size, buffer.position());
+        assertFalse(buffer.hasRemaining());
+
+        assertEquals(event.mBoolean, decoded.mBoolean);
+        assertEquals(event.mByte, decoded.mByte);
+        assertEquals(event.mChar, decoded.mChar);
+        assertEquals(event.mShort, decoded.mShort);
+        assertEquals(event.mInt, decoded.mInt);
+        assertEquals(event.mLong, decoded.mLong);
+        assertEquals(Float.floatToRawIntBits(event.mFloat), Float.floatToRawIntBits(decoded.mFloat));
+        assertEquals(Double.doubleToRawLongBits(event.mDouble), Double.doubleToRawLongBits(decoded.mDouble));
+        assertEquals(event.mBoxedBoolean, decoded.mBoxedBoolean);
+        assertEquals(event.mBoxedByte, decoded.mBoxedByte);
+        assertEquals(event.mBoxedChar, decoded.mBoxedChar);
+        assertEquals(event.mBoxedShort, decoded.mBoxedShort);
+        assertEquals(event.mBoxedInt, decoded.mBoxedInt);
+        assertEquals(event.mBoxedLong, decoded.mBoxedLong);
+        assertEquals(event.mBoxedFloat, decoded.mBoxedFloat);
+        assertEquals(event.mBoxedDouble, decoded.mBoxedDouble);
+        assertEquals(event.mString, decoded.mString);
+        if (event.mBytes == null) {
+            assertNull(decoded.mBytes);
+        } else {
+            assertArrayEquals(event.mBytes, decoded.mBytes);
+        }
+        assertEquals(event.mEnum, decoded.mEnum);
+    }
+
+    public enum Color {
+        RED, GREEN, BLUE
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class AllTypes {
+        boolean mBoolean;
+        byte mByte;
+        char mChar;
+        short mShort;
+        int mInt;
+        long mLong;
+        float mFloat;
+        double mDouble;
+        Boolean mBoxedBoolean;
+        Byte mBoxedByte;
+        Character mBoxedChar;
+        Short mBoxedShort;
+        Integer mBoxedInt;
+        Long mBoxedLong;
+        Float mBoxedFloat;
+        Double mBoxedDouble;
+        String mString;
+        byte[] mBytes;
+        Color mEnum;
+
+        static AllTypes filled() {
+            AllTypes event = new AllTypes();
+            event.mBoolean = true;
+            event.mByte = 7;
+            event.mChar = 'x';
+            event.mShort = -300;
+            event.mInt = 123456;
+            event.mLong = -9876543210L;
+            event.mFloat = 1.5f;
+            event.mDouble = -2.25;
+            event.mBoxedBoolean = true;
+            event.mBoxedByte = (byte) -7;
+            event.mBoxedChar = 'y';
+            event.mBoxedShort = (short) 300;
+            event.mBoxedInt = -123456;
+            event.mBoxedLong = 9876543210L;
+            event.mBoxedFloat = -1.5f;
+            event.mBoxedDouble = 2.25;
+            event.mString = "order";
+            event.mBytes = new byte[]{1, 2, 3};
+            event.mEnum = Color.GREEN;
+            return event;
+        }
+    }
+
+    public static class Parent {
+        int mParentValue;
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class Child extends Parent {
+        String mChildValue;
+        transient int mSkipped;
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class Blob {
+        byte[] mBytes;
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class Note {
+        String mText;
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class OrderV1 {
+        long mOrderId = 1;
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class OrderV2 {
+        long mOrderId = 1;
+    }
+}
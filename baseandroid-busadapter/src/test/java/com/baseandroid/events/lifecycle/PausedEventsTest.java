@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.lifecycle;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.metrics.DropReason;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.metrics.MetricsRegistry;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.pool.PooledEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link PausedEvents} keeps at most the given number of events, dropping the oldest ones.
+ */
+public class PausedEventsTest {
+
+    private static final int MAX_EVENTS = 3;
+
+    private final MetricsRegistry mMetrics = new MetricsRegistry();
+
+    @Before
+    public void setUp() {
+        EventMetrics.install(mMetrics);
+    }
+
+    @After
+    public void tearDown() {
+        EventMetrics.install(null);
+    }
+
+    @Test
+    public void oldestEventsAreDroppedWhenFull() {
+        EventPool<UiEvent> pool = new EventPool<>(new EventPool.Factory<UiEvent>() {
+            @Override
+            public UiEvent newEvent() {
+                return new UiEvent();
+            }
+        }, MAX_EVENTS + 2);
+        EventInfo info = EventInfo.of(UiEvent.class);
+        PausedEvents paused = new PausedEvents(MAX_EVENTS);
+        // obtained first, a dropped event goes back to the pool
+        List<UiEvent> offered = new ArrayList<>();
+        for (int i = 0; i < MAX_EVENTS + 2; i++) {
+            offered.add(pool.obtain());
+        }
+        for (UiEvent event : offered) {
+            assertTrue(paused.offer(null, event, info));
+        }
+        assertEquals(MAX_EVENTS, paused.size());
+        assertEquals(2, mMetrics.getEventTypeMetrics(UiEvent.class).getDropped(DropReason.OVERFLOW));
+        // the references owned by PausedEvents are released
+        assertEquals(0, offered.get(0).getReferenceCount());
+        assertEquals(0, offered.get(1).getReferenceCount());
+
+        final List<Object> delivered = new ArrayList<>();
+        paused.resume(new PausedEvents.Delivery() {
+            @Override
+            public void deliver(Object target, Object event) {
+                delivered.add(event);
+            }
+        });
+        assertEquals(MAX_EVENTS, delivered.size());
+        for (int i = 0; i < MAX_EVENTS; i++) {
+            assertSame(offered.get(i + 2), delivered.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxEventsMustBePositive() {
+        new PausedEvents(0);
+    }
+
+    @Event(type = Event.Type.UI)
+    public static class UiEvent extends PooledEvent {
+        @Override
+        protected void onRecycle() {
+        }
+    }
+}
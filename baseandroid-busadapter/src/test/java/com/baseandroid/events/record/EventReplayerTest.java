@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.record;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records a few events with {@link EventRecorder} and replays them with {@link EventReplayer}: the events must be
+ * posted in the recorded order, spaced by the recorded time divided by the speed, and a truncated recording must be
+ * replayed up to its last complete event.
+ */
+public class EventReplayerTest {
+
+    private static final int EVENTS = 3;
+    private static final long GAP_MILLIS = 200;
+    private static final long TOLERANCE_MILLIS = 25;
+
+    private File mRecording;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        mRecording = File.createTempFile("events", ".rec");
+        EventRecorder recorder = EventRecorder.start(mRecording);
+        for (int i = 0; i < EVENTS; i++) {
+            if (i > 0) {
+                Thread.sleep(GAP_MILLIS);
+            }
+            recorder.record(new Tick(i));
+        }
+        recorder.stop();
+        assertEquals(EVENTS, recorder.getRecordedCount());
+    }
+
+    @After
+    public void tearDown() {
+        mRecording.delete();
+    }
+
+    @Test
+    public void eventsAreSpacedByTheRecordedTimeOverTheSpeed() throws IOException {
+        RecordingProcessor processor = new RecordingProcessor();
+        ReplayStats stats = EventReplayer.newInstance(mRecording).atSpeed(4).replay(processor);
+
+        assertEquals(EVENTS, stats.getEventCount());
+        assertSequence(processor, EVENTS);
+        for (int i = 1; i < EVENTS; i++) {
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(processor.mNanos.get(i) - processor.mNanos.get(i - 1));
+            assertTrue("events posted " + gapMillis + " ms apart",
+                    Math.abs(gapMillis - GAP_MILLIS / 4) <= TOLERANCE_MILLIS);
+        }
+    }
+
+    @Test
+    public void asFastAsPossibleDoesntWait() throws IOException {
+        RecordingProcessor processor = new RecordingProcessor();
+        ReplayStats stats = EventReplayer.newInstance(mRecording).asFastAsPossible().replay(processor);
+
+        assertSequence(processor, EVENTS);
+        assertTrue("replay took " + stats.getDurationNanos() + " ns",
+                stats.getDurationNanos() < TimeUnit.MILLISECONDS.toNanos(GAP_MILLIS));
+    }
+
+    @Test
+    public void truncatedRecordingIsReplayedUpToItsLastCompleteEvent() throws IOException {
+        // the last event loses its last bytes, as when the process dies while writing it
+        truncate(mRecording, mRecording.length() - 2);
+        RecordingProcessor processor = new RecordingProcessor();
+        ReplayStats stats = EventReplayer.newInstance(mRecording).asFastAsPossible().replay(processor);
+
+        assertSequence(processor, EVENTS - 1);
+        assertEquals(0, stats.getSkippedCount());
+    }
+
+    private static void assertSequence(RecordingProcessor processor, int count) {
+        assertEquals(count, processor.mEvents.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, ((Tick) processor.mEvents.get(i)).mSequence);
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        byte[] bytes = new byte[(int) length];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class Tick {
+        int mSequence;
+
+        public Tick() {
+        }
+
+        Tick(int sequence) {
+            mSequence = sequence;
+        }
+    }
+
+    private static final class RecordingProcessor implements EventProcessor {
+        final List<Object> mEvents = new ArrayList<>();
+        final List<Long> mNanos = new ArrayList<>();
+
+        @Override
+        public void onRegister(Object o) {
+        }
+
+        @Override
+        public void onRegister(Object o, Object key) {
+        }
+
+        @Override
+        public void onUnregister(Object o) {
+        }
+
+        @Override
+        public void onPost(Object o) {
+            mNanos.add(System.nanoTime());
+            mEvents.add(o);
+        }
+
+        @Override
+        public void onPostAll(Collection<?> events) {
+            for (Object o : events) {
+                onPost(o);
+            }
+        }
+
+        @Override
+        public void onPause(Object o) {
+        }
+
+        @Override
+        public void onResume(Object o) {
+        }
+
+        @Override
+        public void onShutdown() {
+        }
+
+        @Override
+        public String onSavePoint(Object object) {
+            return null;
+        }
+
+        @Override
+        public void onLoadPoint(Object object, String key) {
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.shedding;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the hysteresis of {@link LoadShedder.Gate#admit(Object, EventInfo, int)} and the events it hands to the
+ * {@link LoadShedder.Overflow}.
+ */
+public class LoadShedderTest {
+
+    private static final int HIGH = 4;
+    private static final int LOW = 1;
+
+    private final RecordingOverflow mOverflow = new RecordingOverflow();
+
+    @Test
+    public void sheddingStartsAtHighAndStopsAtLow() {
+        LoadShedder.Gate gate = LoadShedder.newInstance(HIGH, LOW, Event.Priority.NORMAL, mOverflow).newGate("queue");
+
+        for (int depth = 0; depth < HIGH; depth++) {
+            assertTrue("shed below the high watermark, at " + depth, admit(gate, new LowEvent(), depth));
+        }
+        assertFalse(gate.isShedding());
+
+        assertFalse(admit(gate, new LowEvent(), HIGH));
+        assertTrue(gate.isShedding());
+        // between the watermarks the gate keeps shedding
+        for (int depth = HIGH - 1; depth > LOW; depth--) {
+            assertFalse("admitted above the low watermark, at " + depth, admit(gate, new LowEvent(), depth));
+            assertTrue(gate.isShedding());
+        }
+
+        assertTrue(admit(gate, new LowEvent(), LOW));
+        assertFalse(gate.isShedding());
+        // and between the watermarks it keeps admitting, until the high one again
+        assertTrue(admit(gate, new LowEvent(), HIGH - 1));
+        assertFalse(admit(gate, new LowEvent(), HIGH + 10));
+        assertEquals(4, gate.getShedCount());
+    }
+
+    @Test
+    public void eventsAtOrAboveMinPriorityAreNeverShed() {
+        LoadShedder.Gate gate = LoadShedder.newInstance(HIGH, LOW, Event.Priority.NORMAL, mOverflow).newGate("queue");
+        assertFalse(admit(gate, new LowEvent(), HIGH));
+
+        int depth = HIGH * 100;
+        assertTrue(admit(gate, new CriticalEvent(), depth));
+        assertTrue(admit(gate, new HighEvent(), depth));
+        assertTrue(admit(gate, new NormalEvent(), depth));
+        assertFalse(admit(gate, new LowEvent(), depth));
+        assertFalse(admit(gate, new IrrelevantEvent(), depth));
+        assertTrue(gate.isShedding());
+        assertEquals(3, gate.getShedCount());
+    }
+
+    @Test
+    public void minPriorityIsConfigurable() {
+        LoadShedder.Gate gate = LoadShedder.newInstance(HIGH, LOW, Event.Priority.CRITICAL, null).newGate("queue");
+        assertTrue(admit(gate, new CriticalEvent(), HIGH));
+        assertTrue(gate.isShedding());
+        assertFalse(admit(gate, new HighEvent(), HIGH));
+        assertFalse(admit(gate, new NormalEvent(), HIGH));
+        assertEquals(2, gate.getShedCount());
+    }
+
+    @Test
+    public void overflowReceivesTheShedEvents() {
+        LoadShedder shedder = LoadShedder.newInstance(HIGH, LOW, Event.Priority.NORMAL, mOverflow);
+        LoadShedder.Gate gate = shedder.newGate("DATA");
+
+        LowEvent admitted = new LowEvent();
+        assertTrue(admit(gate, admitted, 0));
+        LowEvent shed = new LowEvent();
+        assertFalse(admit(gate, shed, HIGH));
+        assertTrue(admit(gate, new HighEvent(), HIGH));
+        IrrelevantEvent alsoShed = new IrrelevantEvent();
+        assertFalse(admit(gate, alsoShed, HIGH));
+
+        assertEquals(2, mOverflow.mEvents.size());
+        assertSame(shed, mOverflow.mEvents.get(0));
+        assertSame(alsoShed, mOverflow.mEvents.get(1));
+        assertEquals("DATA", mOverflow.mQueues.get(0));
+        assertEquals("DATA", mOverflow.mQueues.get(1));
+    }
+
+    @Test
+    public void gatesShedIndependently() {
+        LoadShedder shedder = LoadShedder.newInstance(HIGH, LOW, Event.Priority.NORMAL, mOverflow);
+        LoadShedder.Gate deep = shedder.newGate("deep");
+        LoadShedder.Gate shallow = shedder.newGate("shallow");
+
+        assertFalse(admit(deep, new LowEvent(), HIGH));
+        assertTrue(admit(shallow, new LowEvent(), LOW + 1));
+        assertTrue(deep.isShedding());
+        assertFalse(shallow.isShedding());
+        assertEquals(1, deep.getShedCount());
+        assertEquals(0, shallow.getShedCount());
+        assertEquals("deep", mOverflow.mQueues.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowWatermarkMustBeBelowHigh() {
+        LoadShedder.newInstance(HIGH, HIGH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowWatermarkMustNotBeNegative() {
+        LoadShedder.newInstance(HIGH, -1);
+    }
+
+    private static boolean admit(LoadShedder.Gate gate, Object event, int depth) {
+        return gate.admit(event, EventInfo.of(event.getClass()), depth);
+    }
+
+    private static class RecordingOverflow implements LoadShedder.Overflow {
+        final List<Object> mEvents = new ArrayList<>();
+        final List<String> mQueues = new ArrayList<>();
+
+        @Override
+        public void onShed(Object event, String queue) {
+            mEvents.add(event);
+            mQueues.add(queue);
+        }
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.CRITICAL)
+    public static class CriticalEvent {
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.HIGH)
+    public static class HighEvent {
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.NORMAL)
+    public static class NormalEvent {
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.LOW)
+    public static class LowEvent {
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.IRRELEVANT)
+    public static class IrrelevantEvent {
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.timer;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventDispatcher;
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.pool.PooledEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link TimingWheel} on the real clock, with a tick of 1 ms so that the events cross the levels of the wheel
+ * in a few seconds. Events must never be posted before their delay, and at most {@link #TOLERANCE_MILLIS} after it.
+ */
+public class TimingWheelTest {
+
+    private static final long TICK_MILLIS = 1;
+    private static final long TOLERANCE_MILLIS = 250;
+
+    private final BlockingQueue<Posted> mPosted = new LinkedBlockingQueue<>();
+    private TimingWheel mWheel;
+
+    @Before
+    public void setUp() {
+        mWheel = TimingWheel.newInstance("test", TICK_MILLIS, new TimingWheel.Target() {
+            @Override
+            public void post(Object event) {
+                mPosted.add(new Posted(event, System.nanoTime()));
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mWheel.stop();
+    }
+
+    @Test
+    public void eventsArePostedAtTheLevelBoundaries() throws InterruptedException {
+        // the last tick of the first level, the first tick of the second one, and the same for the third level
+        long[] delays = {63, 64, 4095, 4096};
+        long start = System.nanoTime();
+        for (long delay : delays) {
+            mWheel.schedule(delay, delay);
+        }
+        assertEquals(delays.length, mWheel.getPendingCount());
+        for (long delay : delays) {
+            Posted posted = mPosted.poll(delay + TOLERANCE_MILLIS, TimeUnit.MILLISECONDS);
+            assertNotNull("event of " + delay + " ms not posted", posted);
+            assertEquals(delay, posted.mEvent);
+            assertOnTime(delay, start, posted);
+        }
+        assertEquals(0, mWheel.getPendingCount());
+    }
+
+    @Test
+    public void idleWheelCatchesUpWithTheClock() throws InterruptedException {
+        mWheel.schedule("first", 0);
+        assertNotNull(mPosted.poll(TOLERANCE_MILLIS, TimeUnit.MILLISECONDS));
+        // the ticker doesn't advance while the wheel is empty
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        mWheel.schedule("second", 100);
+        Posted posted = mPosted.poll(100 + TOLERANCE_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(posted);
+        assertOnTime(100, start, posted);
+    }
+
+    @Test
+    public void cancelBeforeExpiry() throws InterruptedException {
+        ScheduledEvent scheduled = mWheel.schedule("cancelled", 50);
+        assertTrue(scheduled.cancel());
+        assertTrue(scheduled.isCancelled());
+        assertTrue(scheduled.isDone());
+        assertFalse(scheduled.cancel());
+        assertEquals(0, mWheel.getPendingCount());
+        assertNull(mPosted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelAfterExpiry() throws InterruptedException {
+        ScheduledEvent scheduled = mWheel.schedule("posted", 10);
+        assertNotNull(mPosted.poll(TOLERANCE_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(scheduled.cancel());
+        assertFalse(scheduled.isCancelled());
+        assertTrue(scheduled.isDone());
+    }
+
+    @Test
+    public void stopReleasesPooledEvents() throws InterruptedException {
+        EventPool<TimerEvent> pool = new EventPool<>(new EventPool.Factory<TimerEvent>() {
+            @Override
+            public TimerEvent newEvent() {
+                return new TimerEvent();
+            }
+        }, 4);
+        List<TimerEvent> events = new ArrayList<>();
+        List<ScheduledEvent> handles = new ArrayList<>();
+        // on different levels of the wheel
+        for (long delay : new long[]{1000, 100000, 10000000}) {
+            TimerEvent event = pool.obtain();
+            events.add(event);
+            handles.add(mWheel.schedule(event, delay));
+        }
+        mWheel.stop();
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(0, events.get(i).getReferenceCount());
+            assertTrue(handles.get(i).isCancelled());
+        }
+        assertEquals(events.size(), pool.size());
+        assertEquals(0, mWheel.getPendingCount());
+
+        // events scheduled once stopped are discarded
+        TimerEvent late = pool.obtain();
+        assertTrue(mWheel.schedule(late, 10).isCancelled());
+        assertEquals(0, late.getReferenceCount());
+        assertNull(mPosted.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelAllCancelsOnlyTheEventsOfTheTarget() throws InterruptedException {
+        final BlockingQueue<Object> other = new LinkedBlockingQueue<>();
+        TimingWheel.Target target = new TimingWheel.Target() {
+            @Override
+            public void post(Object event) {
+                other.add(event);
+            }
+        };
+        mWheel.schedule("own", 50);
+        ScheduledEvent cancelled = mWheel.schedule("cancelled", 50, target);
+        mWheel.schedule("cancelled", 100000, target);
+        mWheel.schedule("posted", 10, target);
+
+        assertEquals("posted", other.poll(TOLERANCE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(2, mWheel.cancelAll(target));
+        assertTrue(cancelled.isCancelled());
+        assertEquals(1, mWheel.getPendingCount());
+        assertEquals("own", mPosted.poll(TOLERANCE_MILLIS, TimeUnit.MILLISECONDS).mEvent);
+        assertNull(other.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void postAtInThePastPostsAtTheNextTick() throws InterruptedException {
+        RecordingProcessor processor = new RecordingProcessor();
+        EventDispatcher.useEventProcessor(processor);
+        TimerEvent event = new TimerEvent();
+        ScheduledEvent scheduled = EventDispatcher.postAt(event, System.currentTimeMillis() - 60000);
+        assertSame(event, processor.mPosted.poll(TimingWheel.DEFAULT_TICK_MILLIS + TOLERANCE_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(scheduled.isDone());
+        assertFalse(scheduled.isCancelled());
+    }
+
+    private static void assertOnTime(long delayMillis, long startNanos, Posted posted) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(posted.mNanos - startNanos);
+        assertTrue("posted after " + elapsedMillis + " ms instead of " + delayMillis, elapsedMillis >= delayMillis);
+        assertTrue("posted after " + elapsedMillis + " ms instead of " + delayMillis,
+                elapsedMillis <= delayMillis + TOLERANCE_MILLIS);
+    }
+
+    private static final class Posted {
+        final Object mEvent;
+        final long mNanos;
+
+        Posted(Object event, long nanos) {
+            mEvent = event;
+            mNanos = nanos;
+        }
+    }
+
+    @Event(type = Event.Type.GENERIC)
+    public static class TimerEvent extends PooledEvent {
+        @Override
+        protected void onRecycle() {
+        }
+    }
+
+    private static final class RecordingProcessor implements EventProcessor {
+        final BlockingQueue<Object> mPosted = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onRegister(Object o) {
+        }
+
+        @Override
+        public void onRegister(Object o, Object key) {
+        }
+
+        @Override
+        public void onUnregister(Object o) {
+        }
+
+        @Override
+        public void onPost(Object o) {
+            mPosted.add(o);
+        }
+
+        @Override
+        public void onPostAll(Collection<?> events) {
+            mPosted.addAll(events);
+        }
+
+        @Override
+        public void onPause(Object o) {
+        }
+
+        @Override
+        public void onResume(Object o) {
+        }
+
+        @Override
+        public void onShutdown() {
+        }
+
+        @Override
+        public String onSavePoint(Object object) {
+            return null;
+        }
+
+        @Override
+        public void onLoadPoint(Object object, String key) {
+        }
+    }
+}
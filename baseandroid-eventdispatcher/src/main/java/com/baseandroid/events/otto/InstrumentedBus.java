@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.otto;
+
+import com.baseandroid.events.metrics.SlowHandlerDetector;
+import com.squareup.otto.Bus;
+import com.squareup.otto.ThreadEnforcer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This {@link Bus} measures the handlers with the installed {@link SlowHandlerDetector}.
+ * <br>
+ * Otto doesn't expose the invocation of the single handlers: a sampled post is dispatched by this class to the
+ * {@link com.squareup.otto.Subscribe} methods of the registered objects, on the posting thread, and every method is
+ * measured on its own. The posts not sampled, and the events without handlers, are posted by Otto.
+ * <p>
+ * <b>NOTE: an event posted to this bus by a handler of a sampled post is delivered at once, not after the handlers of
+ * the event being dispatched.</b>
+ * </p>
+ */
+public class InstrumentedBus extends Bus {
+
+    private final ThreadEnforcer mEnforcer;
+
+    /**
+     * The registered objects, guarded by its own lock
+     */
+    private final Set<Object> mRegistered = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public InstrumentedBus(ThreadEnforcer enforcer) {
+        super(enforcer);
+        mEnforcer = enforcer;
+    }
+
+    @Override
+    public void register(Object object) {
+        super.register(object);
+        synchronized (mRegistered) {
+            mRegistered.add(object);
+        }
+    }
+
+    @Override
+    public void unregister(Object object) {
+        super.unregister(object);
+        synchronized (mRegistered) {
+            mRegistered.remove(object);
+        }
+    }
+
+    @Override
+    public void post(Object event) {
+        SlowHandlerDetector detector = SlowHandlerDetector.sample();
+        if (detector == null || event == null) {
+            super.post(event);
+            return;
+        }
+        mEnforcer.enforce(this);
+        List<Object> registered;
+        synchronized (mRegistered) {
+            registered = new ArrayList<>(mRegistered);
+        }
+        boolean dispatched = false;
+        for (Object o : registered) {
+            if (OttoSubscriberMethods.handles(o.getClass(), event.getClass()) && isRegistered(o)) {
+                // as Otto does, an object unregistered by a previous handler doesn't receive the event
+                OttoSubscriberMethods.dispatch(o, event, detector);
+                dispatched = true;
+            }
+        }
+        if (!dispatched) {
+            // Otto wraps it in a DeadEvent
+            super.post(event);
+        }
+    }
+
+    /**
+     * @param o
+     * @return true if the object is registered
+     */
+    private boolean isRegistered(Object o) {
+        synchronized (mRegistered) {
+            return mRegistered.contains(o);
+        }
+    }
+}
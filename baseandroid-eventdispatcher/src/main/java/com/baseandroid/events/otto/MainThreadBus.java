@@ -19,6 +19,7 @@ package com.baseandroid.events.otto;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.baseandroid.events.pool.EventPool;
 import com.squareup.otto.Bus;
 import com.squareup.otto.ThreadEnforcer;
 
@@ -30,7 +31,7 @@ import com.squareup.otto.ThreadEnforcer;
  * (Looper.myLooper() == Looper.getMainLooper()) will return false, and the event
  * is delegated to an {@link Handler} running on the Main Thread.
  */
-public class MainThreadBus extends Bus {
+public class MainThreadBus extends InstrumentedBus {
     private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     public MainThreadBus() {
@@ -42,7 +43,15 @@ public class MainThreadBus extends Bus {
         if (Looper.myLooper() == Looper.getMainLooper()) {
             super.post(event);
         } else {
-            mHandler.post(() -> MainThreadBus.super.post(event));
+            // a pooled event must not be recycled before reaching the Main Thread
+            EventPool.retainIfPooled(event);
+            mHandler.post(() -> {
+                try {
+                    MainThreadBus.super.post(event);
+                } finally {
+                    EventPool.releaseIfPooled(event);
+                }
+            });
         }
     }
 }
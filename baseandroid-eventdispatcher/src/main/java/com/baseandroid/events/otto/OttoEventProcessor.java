@@ -17,20 +17,32 @@
 package com.baseandroid.events.otto;
 
 import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.EventKey;
 import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.lifecycle.PausedEvents;
+import com.baseandroid.events.log.EventLogger;
+import com.baseandroid.events.metrics.DropReason;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.shedding.LoadShedder;
 import com.squareup.otto.Bus;
 import com.squareup.otto.DeadEvent;
 import com.squareup.otto.Subscribe;
 import com.squareup.otto.ThreadEnforcer;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
 
@@ -63,56 +75,129 @@ import rx.schedulers.Schedulers;
  */
 public final class OttoEventProcessor implements EventProcessor {
 
-    /**
-     * Bus working on the Android Main Thread
-     */
-    public static final Bus UI_BUS = new MainThreadBus();
-    private static final Logger LOGGER = LoggerFactory.getLogger(OttoEventProcessor.class);
+    private static final EventLogger LOGGER = EventLogger.getLogger(OttoEventProcessor.class);
 
     /**
      * Defines the time interval (in milliseconds) used to poll the event queues
      */
     private static final long EVENT_CONSUMPTION_INTERVAL = 10; // 10ms
+    /**
+     * Invokes the {@link Subscribe} methods of a resumed object for the events kept while it was paused
+     */
+    private static final PausedEvents.Delivery RESUMED_DELIVERY = (target, event) -> {
+        try {
+            OttoSubscriberMethods.dispatch(target, event);
+        } finally {
+            EventPool.releaseIfPooled(event);
+        }
+    };
 
+    /**
+     * Bus working on the Android Main Thread
+     */
+    private final Bus UI_BUS = new MainThreadBus();
     /**
      * Bus working on a thread separated by the Android Main Thread
      */
-    private static final Bus BUS = new Bus(ThreadEnforcer.ANY);
+    private final Bus BUS = new InstrumentedBus(ThreadEnforcer.ANY);
     /**
      * flag used to determine whether this EventDispatcher has been initialised
      */
-    private static boolean mInitialised = false;
+    private boolean mInitialised = false;
+    /**
+     * flag set by {@link #onShutdown()}, events posted afterwards are disregarded
+     */
+    private volatile boolean mShutdown = false;
+    /**
+     * The objects registered on the Buses, unregistered by {@link #onShutdown()}; guarded by its own lock
+     */
+    private final Set<Object> mRegistered = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * The objects registered with a key, kept off the Buses, see {@link #onRegister(Object, Object)}: this map contains
+     * in keys the objects, in values their key; guarded by the lock of {@link #mRegistered}
+     */
+    private final Map<Object, Object> mKeyed = new IdentityHashMap<>();
+    /**
+     * The paused objects, unregistered from {@link #UI_BUS}, with the UI events kept for them;
+     * guarded by the lock of {@link #mRegistered}
+     */
+    private final Map<Object, PausedEvents> mPaused = new IdentityHashMap<>();
     /**
      * Synchronized Queues of <code>NETWORK</code> events
      */
-    private static List<Object> mNetworkEvents;
+    private final List<QueuedEvent> mNetworkEvents = Collections.synchronizedList(new ArrayList<>());
     /**
      * Synchronized Queues of <code>DATA</code> events
      */
-    private static List<Object> mDataEvents;
+    private final List<QueuedEvent> mDataEvents = Collections.synchronizedList(new ArrayList<>());
     /**
      * Synchronized Queues of <code>GENERIC</code> events
      */
-    private static List<Object> mGenericEvents;
+    private final List<QueuedEvent> mGenericEvents = Collections.synchronizedList(new ArrayList<>());
     /**
      * Synchronized Queues of <code>UI</code> events
      */
-    private static List<Object> mUIEvents;
+    private final List<QueuedEvent> mUIEvents = Collections.synchronizedList(new ArrayList<>());
     /**
      * Synchronized Queues of <code>CONTEXT</code> events
      */
-    private static List<Object> mContextEvents;
+    private final List<QueuedEvent> mContextEvents = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * Subscriptions of the polling of the queues, see {@link #startEventsConsumption()}
+     */
+    private Subscription mConsumption;
+    private Subscription mUIConsumption;
+    /**
+     * The gates of the queues, indexed by {@link Event.Type} ordinal, null if events are never shed
+     */
+    private volatile LoadShedder.Gate[] mGates;
 
     DeadEventManager mDeadEventManager;
 
     private OttoEventProcessor() {
-        // No instances.
+        // use newInstance()
     }
 
+    /**
+     * This method return a new {@link OttoEventProcessor}, with its own Buses and queues
+     *
+     * @return
+     */
     public static EventProcessor newInstance() {
         return new OttoEventProcessor();
     }
 
+    /**
+     * Sheds the less important events posted while a queue is over the watermarks of {@code shedder}.
+     * Every {@link Event.Type} queue has its own {@link LoadShedder.Gate}: since queues are sorted by
+     * {@link Event.Priority} the urgent events don't wait for the shed ones, and the queues stay short to sort.
+     *
+     * @param shedder null to never shed events
+     */
+    public void setLoadShedder(LoadShedder shedder) {
+        if (shedder == null) {
+            mGates = null;
+            return;
+        }
+        LoadShedder.Gate[] gates = new LoadShedder.Gate[Event.Type.values().length];
+        for (Event.Type type : Event.Type.values()) {
+            gates[type.ordinal()] = shedder.newGate(type.name());
+        }
+        mGates = gates;
+    }
+
+    /**
+     * @param event
+     * @param info the metadata of the event
+     * @param pending events of the same type not queued yet
+     * @return false if the event has been shed
+     */
+    private boolean admit(Object event, EventInfo info, int pending) {
+        LoadShedder.Gate[] gates = mGates;
+        return gates == null
+                || gates[info.getType().ordinal()].admit(event, info, queueOf(info.getType()).size() + pending);
+    }
+
     /**
      * This method starts some kind of polling of the events queues.
      * <p>
@@ -131,30 +216,18 @@ public final class OttoEventProcessor implements EventProcessor {
      * <p>
      * If an event is present, it will be posted on the related bus to be processed.
      */
-    private static void startEventsConsumption() {
+    private void startEventsConsumption() {
         LOGGER.info("starting UI events consumption processors");
 
         /*
          * This Observable (Observable.interval) cycles every EVENT_CONSUMPTION_INTERVAL millis
          * we observe results on a new Thread and remove items from non-UI queues
          */
-        rx.Observable.interval(EVENT_CONSUMPTION_INTERVAL, TimeUnit.MILLISECONDS).onBackpressureBuffer().subscribeOn(Schedulers.newThread()).observeOn(Schedulers.newThread()).subscribe(aLong1 -> {
-            if (!mNetworkEvents.isEmpty()) {
-                Object ev = mNetworkEvents.remove(0);
-                logEvent(ev, false);
-                BUS.post(ev);
-            } else if (!mDataEvents.isEmpty()) {
-                Object ev = mDataEvents.remove(0);
-                logEvent(ev, false);
-                BUS.post(ev);
-            } else if (!mGenericEvents.isEmpty()) {
-                Object ev = mGenericEvents.remove(0);
-                logEvent(ev, false);
-                BUS.post(ev);
-            } else if (!mContextEvents.isEmpty()) {
-                Object ev = mContextEvents.remove(0);
-                logEvent(ev, false);
-                BUS.post(ev);
+        mConsumption = rx.Observable.interval(EVENT_CONSUMPTION_INTERVAL, TimeUnit.MILLISECONDS).onBackpressureBuffer().subscribeOn(Schedulers.newThread()).observeOn(Schedulers.newThread()).subscribe(aLong1 -> {
+            if (!consumeEvent(mNetworkEvents, Event.Type.NETWORK)
+                    && !consumeEvent(mDataEvents, Event.Type.DATA)
+                    && !consumeEvent(mGenericEvents, Event.Type.GENERIC)) {
+                consumeEvent(mContextEvents, Event.Type.CONTEXT);
             }
         });
 
@@ -162,33 +235,148 @@ public final class OttoEventProcessor implements EventProcessor {
          * This Observable (Observable.interval) cycles every EVENT_CONSUMPTION_INTERVAL millis
          * we observe results on the UI Thread and remove items UI queues
          */
-        rx.Observable.interval(EVENT_CONSUMPTION_INTERVAL, TimeUnit.MILLISECONDS)
+        mUIConsumption = rx.Observable.interval(EVENT_CONSUMPTION_INTERVAL, TimeUnit.MILLISECONDS)
                 .onBackpressureBuffer()
                 .subscribeOn(Schedulers.newThread())
                 .observeOn(AndroidSchedulers.mainThread())//UI Events must be posted on the Main Thread
-                .subscribe(aLong -> {
-                    if (!mUIEvents.isEmpty()) {
-                        Object ev = mUIEvents.remove(0);
-                        logEvent(ev, true);
-                        UI_BUS.post(ev);
-                    }
-                });
+                .subscribe(aLong -> consumeEvent(mUIEvents, Event.Type.UI));
+    }
+
+    /**
+     * Removes the first event of the queue, if any, and posts it on the related bus.
+     *
+     * @param queue the queue of events
+     * @param type the {@link Event.Type} of the events in the queue
+     * @return true if an event has been posted
+     */
+    private boolean consumeEvent(List<QueuedEvent> queue, Event.Type type) {
+        QueuedEvent queued;
+        while (true) {
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    return false;
+                }
+                queued = queue.remove(0);
+            }
+            if (!EventInfo.isExpired(queued.mExpiration)) {
+                break;
+            }
+            // expired events don't take the turn of the queue
+            LOGGER.debug("dropping expired {}", queued.mEvent.getClass());
+            EventMetrics.dropped(queued.mEvent.getClass(), DropReason.EXPIRED);
+            EventPool.releaseIfPooled(queued.mEvent);
+        }
+        EventMetrics.queueDepth(type.name(), queue.size());
+        boolean uiEvent = type == Event.Type.UI;
+        logEvent(queued.mEvent, type);
+        EventMetrics.delivered(queued.mEvent.getClass(), queued.mPostTimestamp);
+        try {
+            if (uiEvent) {
+                keepForPaused(queued);
+                UI_BUS.post(queued.mEvent);
+            } else {
+                BUS.post(queued.mEvent);
+            }
+            deliverToKeyed(queued.mEvent, uiEvent);
+        } finally {
+            // the reference taken when the event was queued
+            EventPool.releaseIfPooled(queued.mEvent);
+        }
+        return true;
+    }
+
+    /**
+     * Offers a UI event to the paused objects having a {@link Subscribe} method for it,
+     * as they don't receive it from {@link #UI_BUS}.
+     *
+     * @param queued the UI event being posted
+     */
+    private void keepForPaused(QueuedEvent queued) {
+        synchronized (mRegistered) {
+            if (mPaused.isEmpty()) {
+                return;
+            }
+            EventInfo info = EventInfo.of(queued.mEvent.getClass());
+            Object key = info.getKey(queued.mEvent);
+            for (Map.Entry<Object, PausedEvents> paused : mPaused.entrySet()) {
+                if (matchesKey(paused.getKey(), key)
+                        && OttoSubscriberMethods.handles(paused.getKey().getClass(), queued.mEvent.getClass())) {
+                    // the reference owned by PausedEvents
+                    EventPool.retainIfPooled(queued.mEvent);
+                    paused.getValue().offer(paused.getKey(), queued.mEvent, info, queued.mExpiration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invokes the {@link Subscribe} methods of the objects registered with a key, as they don't receive the events
+     * from the Buses.
+     *
+     * @param event the event being posted
+     * @param uiEvent true if the event is a <code>UI</code> one, the paused objects don't receive it
+     */
+    private void deliverToKeyed(Object event, boolean uiEvent) {
+        List<Object> targets;
+        synchronized (mRegistered) {
+            if (mKeyed.isEmpty()) {
+                return;
+            }
+            targets = keyedTargetsOf(event, uiEvent);
+        }
+        for (Object target : targets) {
+            boolean registered;
+            synchronized (mRegistered) {
+                // as Otto does, an object unregistered by a previous handler doesn't receive the event
+                registered = mKeyed.containsKey(target);
+            }
+            if (registered) {
+                OttoSubscriberMethods.dispatch(target, event);
+            }
+        }
+    }
+
+    /**
+     * The caller must hold the lock of {@link #mRegistered}.
+     *
+     * @param event
+     * @param skipPaused true to leave the paused objects out
+     * @return the objects registered with a key having a {@link Subscribe} method for the event, and a key matching
+     * the one of the event
+     */
+    private List<Object> keyedTargetsOf(Object event, boolean skipPaused) {
+        List<Object> targets = new ArrayList<>();
+        Object key = EventInfo.of(event.getClass()).getKey(event);
+        for (Object o : mKeyed.keySet()) {
+            if (matchesKey(o, key) && !(skipPaused && mPaused.containsKey(o))
+                    && OttoSubscriberMethods.handles(o.getClass(), event.getClass())) {
+                targets.add(o);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * The caller must hold the lock of {@link #mRegistered}.
+     *
+     * @param o a registered object
+     * @param eventKey the key of the event, null if the event has none
+     * @return true if the object receives the events of the given key: it has been registered without key, or with
+     * the key of the event, or the event has no key
+     */
+    private boolean matchesKey(Object o, Object eventKey) {
+        Object key = mKeyed.get(o);
+        return key == null || eventKey == null || key.equals(eventKey);
     }
 
     /**
      * Convenience method used for debugging purposes. It will log what kind of event is being posted on what Bus.
      *
      * @param ev The event being posted
-     * @param uiEvent whether it's a UI event or not.
+     * @param type the {@link Event.Type} of the event
      */
-    private static void logEvent(Object ev, boolean uiEvent) {
-        String bus;
-        if (uiEvent) {
-            bus = "UI_BUS";
-        } else {
-            bus = "BUS";
-        }
-        LOGGER.info("posting " + ev.getClass().getSimpleName() + " of type " + ev.getClass().getAnnotation(Event.class).type() + " on " + bus);
+    private static void logEvent(Object ev, Event.Type type) {
+        LOGGER.debug("posting {} of type {} on {}", ev.getClass(), type, type == Event.Type.UI ? "UI_BUS" : "BUS");
     }
 
     /**
@@ -199,6 +387,30 @@ public final class OttoEventProcessor implements EventProcessor {
     public void onRegister(Object o) {
         BUS.register(o);
         UI_BUS.register(o);
+        synchronized (mRegistered) {
+            mRegistered.add(o);
+        }
+    }
+
+    /**
+     * Registers a given Object for the events with the given key.
+     * <br>
+     * Otto delivers every event to all of its subscribers, so the object is not registered on the Buses: its
+     * {@link Subscribe} methods are invoked by this processor, on the thread of the Bus, after the ones of the objects
+     * registered without key. For event types having an {@link EventKey} it receives only the events with the given
+     * key, or without key; it receives all the events of the other types.
+     *
+     * @param o Object to register
+     * @param key the key of the events the object is interested in, null to register it on the Buses
+     */
+    public void onRegister(Object o, Object key) {
+        if (key == null) {
+            onRegister(o);
+            return;
+        }
+        synchronized (mRegistered) {
+            mKeyed.put(o, key);
+        }
     }
 
     /**
@@ -207,8 +419,32 @@ public final class OttoEventProcessor implements EventProcessor {
      * @param o Object to unregister from the Buses
      */
     public void onUnregister(Object o) {
+        boolean registered;
+        boolean keyed;
+        PausedEvents paused;
+        synchronized (mRegistered) {
+            registered = mRegistered.remove(o);
+            keyed = mKeyed.remove(o) != null;
+            paused = mPaused.remove(o);
+        }
+        if (keyed) {
+            // never registered on the Buses
+            if (paused != null) {
+                paused.clear();
+            }
+            return;
+        }
+        if (!registered && mShutdown) {
+            // already unregistered by onShutdown()
+            return;
+        }
         BUS.unregister(o);
-        UI_BUS.unregister(o);
+        if (paused != null) {
+            // already unregistered from UI_BUS by onPause()
+            paused.clear();
+        } else {
+            UI_BUS.unregister(o);
+        }
     }
 
     /**
@@ -221,14 +457,75 @@ public final class OttoEventProcessor implements EventProcessor {
      * @param o the Object we want to post as an event
      */
     public void onPost(Object o) {
-        LOGGER.info("received new object to post: " + o.getClass().getSimpleName());
-        if (!mInitialised) {
-            //init events lists implicetely synchronized
-            mNetworkEvents = Collections.synchronizedList(new ArrayList<>());
-            mGenericEvents = Collections.synchronizedList(new ArrayList<>());
-            mDataEvents = Collections.synchronizedList(new ArrayList<>());
-            mUIEvents = Collections.synchronizedList(new ArrayList<>());
-            mContextEvents = Collections.synchronizedList(new ArrayList<>());
+        if (mShutdown) {
+            LOGGER.warn("processor shut down, {} will be missed", o != null ? o.getClass() : null);
+            return;
+        }
+        initialise();
+        //check if it's an event we recognise
+        EventInfo info = o != null ? EventInfo.of(o.getClass()) : null;
+        if (info != null) {
+            //put it in the right list and sort the list
+            Event.Type t = info.getType();
+            LOGGER.debug("received new object to post: {} is an event of type {}", o.getClass(), t);
+            if (!admit(o, info, 0)) {
+                return;
+            }
+            // pooled events must survive in the queue after the poster released them
+            EventPool.retainIfPooled(o);
+            enqueueEvent(queueOf(t), new QueuedEvent(o, EventMetrics.timestamp(), info.expiration()), t);
+        } else if (o != null) {
+            LOGGER.debug("received new object to post: {} is not an event", o.getClass());
+            EventMetrics.dropped(o.getClass(), DropReason.NOT_AN_EVENT);
+        }
+    }
+
+    /**
+     * Posts a batch of events: they are grouped by {@link Event.Type} and every queue is locked and sorted once
+     * for the whole batch. The sort is stable, so events with the same {@link Event.Priority} are consumed in the order
+     * of the collection.
+     *
+     * @param events the Objects we want to post as events
+     */
+    public void onPostAll(Collection<?> events) {
+        if (mShutdown) {
+            LOGGER.warn("processor shut down, {} events will be missed", events.size());
+            return;
+        }
+        initialise();
+        long postTimestamp = EventMetrics.timestamp();
+        Map<Event.Type, List<QueuedEvent>> batches = new EnumMap<>(Event.Type.class);
+        for (Object o : events) {
+            EventInfo info = o != null ? EventInfo.of(o.getClass()) : null;
+            if (info != null) {
+                Event.Type t = info.getType();
+                List<QueuedEvent> batch = batches.get(t);
+                if (!admit(o, info, batch != null ? batch.size() : 0)) {
+                    continue;
+                }
+                // pooled events must survive in the queue after the poster released them
+                EventPool.retainIfPooled(o);
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                    batches.put(t, batch);
+                }
+                batch.add(new QueuedEvent(o, postTimestamp, info.expiration()));
+            } else if (o != null) {
+                LOGGER.debug("received new object to post: {} is not an event", o.getClass());
+                EventMetrics.dropped(o.getClass(), DropReason.NOT_AN_EVENT);
+            }
+        }
+        for (Map.Entry<Event.Type, List<QueuedEvent>> batch : batches.entrySet()) {
+            LOGGER.debug("received {} events of type {} to post", batch.getValue().size(), batch.getKey());
+            enqueueEvents(queueOf(batch.getKey()), batch.getValue(), batch.getKey());
+        }
+    }
+
+    /**
+     * Starts the consumption of the queues, the first time an event is posted.
+     */
+    private synchronized void initialise() {
+        if (!mInitialised && !mShutdown) {
             //init dead events manager
             if(mDeadEventManager == null) {
                 mDeadEventManager = new DeadEventManager();
@@ -242,35 +539,158 @@ public final class OttoEventProcessor implements EventProcessor {
             mInitialised = true;
             startEventsConsumption();
         }
-        //check if it's an event we recognise
-        if (o != null && o.getClass().isAnnotationPresent(Event.class)) {
-            //put it in the right list and sort the list
-            Event.Type t = o.getClass().getAnnotation(Event.class).type();
-            LOGGER.info("object " + o.getClass().getSimpleName() + " is an event of type " + t);
-            switch (t) {
-                default:
-                case GENERIC:
-                    mGenericEvents.add(o);
-                    Collections.sort(mGenericEvents, Event.COMPARATOR);
-                    break;
-                case DATA:
-                    mDataEvents.add(o);
-                    Collections.sort(mDataEvents, Event.COMPARATOR);
-                    break;
-                case NETWORK:
-                    mNetworkEvents.add(o);
-                    Collections.sort(mNetworkEvents, Event.COMPARATOR);
-                    break;
-                case UI:
-                    mUIEvents.add(o);
-                    Collections.sort(mUIEvents, Event.COMPARATOR);
-                    break;
-                case CONTEXT:
-                    mContextEvents.add(o);
-                    Collections.sort(mContextEvents, Event.COMPARATOR);
-                    break;
+    }
+
+    /**
+     * @param type
+     * @return the queue of the events of {@code type}
+     */
+    private List<QueuedEvent> queueOf(Event.Type type) {
+        switch (type) {
+            case DATA:
+                return mDataEvents;
+            case NETWORK:
+                return mNetworkEvents;
+            case UI:
+                return mUIEvents;
+            case CONTEXT:
+                return mContextEvents;
+            case GENERIC:
+            default:
+                return mGenericEvents;
+        }
+    }
+
+    /**
+     * Adds an event to a queue and sorts the queue by {@link Event.Priority}.
+     *
+     * @param queue the queue of events
+     * @param queued the event to add
+     * @param type the {@link Event.Type} of the events in the queue
+     */
+    private static void enqueueEvent(List<QueuedEvent> queue, QueuedEvent queued, Event.Type type) {
+        int depth;
+        synchronized (queue) {
+            queue.add(queued);
+            Collections.sort(queue, QueuedEvent.COMPARATOR);
+            depth = queue.size();
+        }
+        EventMetrics.queueDepth(type.name(), depth);
+    }
+
+    /**
+     * Adds a batch of events to a queue and sorts the queue by {@link Event.Priority} once.
+     *
+     * @param queue the queue of events
+     * @param batch the events to add, in posting order
+     * @param type the {@link Event.Type} of the events in the queue
+     */
+    private static void enqueueEvents(List<QueuedEvent> queue, List<QueuedEvent> batch, Event.Type type) {
+        int depth;
+        synchronized (queue) {
+            queue.addAll(batch);
+            Collections.sort(queue, QueuedEvent.COMPARATOR);
+            depth = queue.size();
+        }
+        EventMetrics.queueDepth(type.name(), depth);
+    }
+
+    /**
+     * Pauses a registered Object: it is unregistered from {@link #UI_BUS}, and the UI events it has a {@link Subscribe}
+     * method for are kept until {@link #onResume(Object)}.
+     * <p>
+     * <b>NOTE: UI events are delivered on the Android Main Thread, pause and resume must be called on it too.</b>
+     * </p>
+     *
+     * @param o the registered Object
+     */
+    @Override
+    public void onPause(Object o) {
+        synchronized (mRegistered) {
+            if (o == null || !(mRegistered.contains(o) || mKeyed.containsKey(o)) || mPaused.containsKey(o)) {
+                return;
+            }
+            if (mRegistered.contains(o)) {
+                UI_BUS.unregister(o);
+            }
+            mPaused.put(o, new PausedEvents());
+        }
+    }
+
+    /**
+     * Resumes a paused Object: it is registered again on {@link #UI_BUS}, and its {@link Subscribe} methods are invoked
+     * on the calling thread for the events kept meanwhile.
+     *
+     * @param o the paused Object
+     */
+    @Override
+    public void onResume(Object o) {
+        PausedEvents paused;
+        synchronized (mRegistered) {
+            paused = o != null ? mPaused.remove(o) : null;
+            if (paused == null) {
+                return;
+            }
+            if (mRegistered.contains(o)) {
+                UI_BUS.register(o);
+            }
+        }
+        paused.resume(RESUMED_DELIVERY);
+    }
+
+    /**
+     * Stops the polling of the queues, releases the events still queued and unregisters every object still registered.
+     * Events posted afterwards are disregarded.
+     */
+    @Override
+    public synchronized void onShutdown() {
+        if (mShutdown) {
+            return;
+        }
+        mShutdown = true;
+        if (mConsumption != null) {
+            mConsumption.unsubscribe();
+            mUIConsumption.unsubscribe();
+        }
+        if (mDeadEventManager != null) {
+            BUS.unregister(mDeadEventManager);
+            UI_BUS.unregister(mDeadEventManager);
+        }
+        List<Object> registered;
+        Map<Object, PausedEvents> paused;
+        synchronized (mRegistered) {
+            registered = new ArrayList<>(mRegistered);
+            mRegistered.clear();
+            mKeyed.clear();
+            paused = new IdentityHashMap<>(mPaused);
+            mPaused.clear();
+        }
+        for (Object o : registered) {
+            BUS.unregister(o);
+            PausedEvents events = paused.get(o);
+            if (events != null) {
+                // already unregistered from UI_BUS by onPause()
+                events.clear();
+            } else {
+                UI_BUS.unregister(o);
+            }
+            paused.remove(o);
+        }
+        for (PausedEvents events : paused.values()) {
+            // the ones of the objects registered with a key
+            events.clear();
+        }
+        for (Event.Type type : Event.Type.values()) {
+            List<QueuedEvent> queue = queueOf(type);
+            synchronized (queue) {
+                for (QueuedEvent queued : queue) {
+                    EventPool.releaseIfPooled(queued.mEvent);
+                }
+                queue.clear();
             }
+            EventMetrics.queueDepth(type.name(), 0);
         }
+        LOGGER.info("processor shut down");
     }
 
     @Override
@@ -287,7 +707,7 @@ public final class OttoEventProcessor implements EventProcessor {
      * If an event is posted but nobody is {@link Subscribe}d to it, it will become a "dead" event.
      * This class is here to catch and log such occurrences, since this should never happen. This is very useful to debug possible leaks.
      */
-    private static class DeadEventManager {
+    private class DeadEventManager {
         /**
          * Catches every {@link DeadEvent} not being consumed by nobody.
          *
@@ -295,7 +715,44 @@ public final class OttoEventProcessor implements EventProcessor {
          */
         @Subscribe
         public void onConsumeDeadEvent(DeadEvent de) {
-            LOGGER.warn("received DeadEvent of type " + de.event.getClass().getSimpleName());
+            synchronized (mRegistered) {
+                if (!keyedTargetsOf(de.event, false).isEmpty()) {
+                    // delivered by deliverToKeyed()
+                    return;
+                }
+            }
+            LOGGER.warn("received DeadEvent of type {}", de.event.getClass());
+            EventMetrics.dropped(de.event.getClass(), DropReason.DEAD);
+        }
+    }
+
+    /**
+     * This class is used to wrap the events waiting in the queues, together with the time they were posted at.
+     */
+    private static final class QueuedEvent {
+        /**
+         * This comparator sorts the queued events by {@link Event.Priority}, as {@link Event#COMPARATOR} does.
+         */
+        @SuppressWarnings("unchecked") // Event.COMPARATOR is raw
+        static final Comparator<QueuedEvent> COMPARATOR = (lhs, rhs) -> Event.COMPARATOR.compare(lhs.mEvent, rhs.mEvent);
+
+        /**
+         * The queued event
+         */
+        final Object mEvent;
+        /**
+         * When the event was posted, see {@link EventMetrics#timestamp()}
+         */
+        final long mPostTimestamp;
+        /**
+         * When the event expires, see {@link EventInfo#expiration()}
+         */
+        final long mExpiration;
+
+        QueuedEvent(Object event, long postTimestamp, long expiration) {
+            mEvent = event;
+            mPostTimestamp = postTimestamp;
+            mExpiration = expiration;
         }
     }
 }
\ No newline at end of file
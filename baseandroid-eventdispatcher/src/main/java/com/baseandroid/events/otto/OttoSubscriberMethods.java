@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.otto;
+
+import com.baseandroid.events.metrics.SlowHandlerDetector;
+import com.squareup.otto.Subscribe;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link Subscribe} methods of the listener classes, found as Otto does: the public methods declared by the class
+ * itself, invoked for the events of their parameter type and of its subclasses.
+ * <br>
+ * {@link com.squareup.otto.Bus} delivers every event to all of its subscribers, this class delivers an event to a single
+ * listener, e.g. the events kept for a paused one, or the events whose handlers are measured by {@link InstrumentedBus}.
+ */
+final class OttoSubscriberMethods {
+
+    private static final Method[] NO_METHODS = new Method[0];
+
+    /**
+     * This map contains in keys the listener classes, in values their {@link Subscribe} methods
+     */
+    private static final ConcurrentMap<Class<?>, Method[]> METHODS_CACHE = new ConcurrentHashMap<>();
+
+    private OttoSubscriberMethods() {
+        // no instances
+    }
+
+    /**
+     * @param listenerClass
+     * @param eventClass
+     * @return true if the listener class has at least a {@link Subscribe} method for the events of the given class
+     */
+    static boolean handles(Class<?> listenerClass, Class<?> eventClass) {
+        for (Method method : methodsOf(listenerClass)) {
+            if (accepts(method, eventClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invokes the {@link Subscribe} methods of the listener for the event on the calling thread, measured by the
+     * installed {@link SlowHandlerDetector}.
+     * As {@link com.squareup.otto.Bus} does, an exception thrown by a method is rethrown wrapped in a
+     * {@link RuntimeException}.
+     *
+     * @param listener
+     * @param event
+     */
+    static void dispatch(Object listener, Object event) {
+        for (Method method : methodsOf(listener.getClass())) {
+            if (accepts(method, event.getClass())) {
+                invoke(method, listener, event, SlowHandlerDetector.sample());
+            }
+        }
+    }
+
+    /**
+     * Invokes the {@link Subscribe} methods of the listener for the event on the calling thread, measuring every one
+     * of them with the given detector.
+     *
+     * @param listener
+     * @param event
+     * @param detector the detector sampling the post
+     * @see #dispatch(Object, Object)
+     */
+    static void dispatch(Object listener, Object event, SlowHandlerDetector detector) {
+        for (Method method : methodsOf(listener.getClass())) {
+            if (accepts(method, event.getClass())) {
+                invoke(method, listener, event, detector);
+            }
+        }
+    }
+
+    /**
+     * @param method
+     * @param eventClass
+     * @return true if Otto delivers the events of the given class to the method: the events are delivered to the
+     * methods for their class and superclasses, never for their interfaces
+     */
+    private static boolean accepts(Method method, Class<?> eventClass) {
+        Class<?> type = method.getParameterTypes()[0];
+        return !type.isInterface() && type.isAssignableFrom(eventClass);
+    }
+
+    /**
+     * @param method
+     * @param listener
+     * @param event
+     * @param detector the detector measuring the invocation, null if it isn't measured
+     */
+    private static void invoke(Method method, Object listener, Object event, SlowHandlerDetector detector) {
+        long start = detector != null ? System.nanoTime() : 0;
+        try {
+            method.invoke(listener, event);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Could not dispatch event: " + event.getClass() + " to handler " + method,
+                    e.getCause());
+        } finally {
+            if (detector != null) {
+                detector.record(method.toString(), event.getClass(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @param listenerClass
+     * @return the {@link Subscribe} methods declared by the listener class
+     */
+    private static Method[] methodsOf(Class<?> listenerClass) {
+        Method[] methods = METHODS_CACHE.get(listenerClass);
+        if (methods == null) {
+            List<Method> found = new ArrayList<>();
+            for (Method method : listenerClass.getDeclaredMethods()) {
+                if (!method.isBridge() && method.isAnnotationPresent(Subscribe.class)
+                        && method.getParameterTypes().length == 1) {
+                    method.setAccessible(true);
+                    found.add(method);
+                }
+            }
+            methods = found.isEmpty() ? NO_METHODS : found.toArray(new Method[found.size()]);
+            Method[] previous = METHODS_CACHE.putIfAbsent(listenerClass, methods);
+            if (previous != null) {
+                methods = previous;
+            }
+        }
+        return methods;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.otto;
+
+import com.baseandroid.events.metrics.HandlerStats;
+import com.baseandroid.events.metrics.SlowHandlerDetector;
+import com.squareup.otto.DeadEvent;
+import com.squareup.otto.Subscribe;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link InstrumentedBus} measures every {@link Subscribe} method receiving a sampled post on its own.
+ */
+public class InstrumentedBusTest {
+
+    private SlowHandlerDetector mDetector;
+    private InstrumentedBus mBus;
+
+    @Before
+    public void setUp() {
+        mDetector = new SlowHandlerDetector().setSamplingRate(1);
+        SlowHandlerDetector.install(mDetector);
+        mBus = new InstrumentedBus(ThreadEnforcer.ANY);
+    }
+
+    @After
+    public void tearDown() {
+        SlowHandlerDetector.install(null);
+    }
+
+    @Test
+    public void everyHandlerIsMeasured() throws NoSuchMethodException {
+        StringListener first = new StringListener();
+        mBus.register(first);
+        mBus.register(new StringListener());
+        mBus.register(new ObjectListener());
+
+        mBus.post("event");
+
+        assertEquals(1, first.mReceived.size());
+        Map<String, Long> invocations = invocations();
+        assertEquals(2, invocations.size());
+        assertEquals(Long.valueOf(2),
+                invocations.get(StringListener.class.getMethod("onString", String.class).toString()));
+        assertEquals(Long.valueOf(1),
+                invocations.get(ObjectListener.class.getMethod("onObject", Object.class).toString()));
+        assertNull(invocations.get(StringListener.class.getMethod("onDead", DeadEvent.class).toString()));
+    }
+
+    @Test
+    public void unregisteredObjectsDontReceiveTheEvent() {
+        StringListener listener = new StringListener();
+        mBus.register(listener);
+        mBus.unregister(listener);
+        mBus.register(new ObjectListener());
+
+        mBus.post("event");
+
+        assertTrue(listener.mReceived.isEmpty());
+    }
+
+    @Test
+    public void eventsWithoutHandlersAreDead() {
+        StringListener listener = new StringListener();
+        mBus.register(listener);
+
+        mBus.post(1);
+
+        assertEquals(1, listener.mDead.size());
+        assertEquals(1, listener.mDead.get(0).event);
+    }
+
+    private Map<String, Long> invocations() {
+        Map<String, Long> invocations = new HashMap<>();
+        for (HandlerStats stats : mDetector.getHandlerStats()) {
+            invocations.put(stats.getHandler(), stats.getInvocations());
+        }
+        return invocations;
+    }
+
+    public static class StringListener {
+
+        final List<String> mReceived = new ArrayList<>();
+        final List<DeadEvent> mDead = new ArrayList<>();
+
+        @Subscribe
+        public void onString(String event) {
+            mReceived.add(event);
+        }
+
+        @Subscribe
+        public void onDead(DeadEvent event) {
+            mDead.add(event);
+        }
+    }
+
+    public static class ObjectListener {
+
+        @Subscribe
+        public void onObject(Object event) {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.otto;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventKey;
+import com.squareup.otto.Subscribe;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the objects registered on {@link OttoEventProcessor} with a key receive only the keyed events of their
+ * key, the keyed events without key, and all the events of the types without {@link EventKey}.
+ */
+public class OttoEventProcessorKeyTest {
+
+    private OttoEventProcessor mProcessor;
+
+    @Before
+    public void setUp() {
+        mProcessor = (OttoEventProcessor) OttoEventProcessor.newInstance();
+    }
+
+    @After
+    public void tearDown() {
+        mProcessor.onShutdown();
+    }
+
+    @Test
+    public void keyedObjectsReceiveTheEventsOfTheirKey() throws InterruptedException {
+        RecordingListener all = new RecordingListener(4);
+        RecordingListener first = new RecordingListener(3);
+        RecordingListener second = new RecordingListener(3);
+        mProcessor.onRegister(all);
+        mProcessor.onRegister(first, "first");
+        mProcessor.onRegister(second, "second");
+
+        mProcessor.onPostAll(Arrays.asList(
+                new KeyedEvent("first"), new KeyedEvent("second"), new KeyedEvent(null), new PlainEvent()));
+
+        assertTrue(all.mDelivered.await(5, TimeUnit.SECONDS));
+        assertTrue(first.mDelivered.await(5, TimeUnit.SECONDS));
+        assertTrue(second.mDelivered.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "second", null, "plain"), all.received());
+        assertEquals(Arrays.asList("first", null, "plain"), first.received());
+        assertEquals(Arrays.asList("second", null, "plain"), second.received());
+    }
+
+    @Test
+    public void unregisteredKeyedObjectsDontReceiveEvents() throws InterruptedException {
+        RecordingListener all = new RecordingListener(1);
+        RecordingListener keyed = new RecordingListener(1);
+        mProcessor.onRegister(all);
+        mProcessor.onRegister(keyed, "first");
+        mProcessor.onUnregister(keyed);
+
+        mProcessor.onPost(new KeyedEvent("first"));
+
+        assertTrue(all.mDelivered.await(5, TimeUnit.SECONDS));
+        // keyed objects receive the event right after the other ones, on the same thread
+        Thread.sleep(100);
+        assertEquals(Collections.emptyList(), keyed.received());
+    }
+
+    public static class RecordingListener {
+        final CountDownLatch mDelivered;
+        private final List<String> mReceived = new ArrayList<>();
+
+        RecordingListener(int expected) {
+            mDelivered = new CountDownLatch(expected);
+        }
+
+        @Subscribe
+        public void onKeyed(KeyedEvent event) {
+            record(event.mKey);
+        }
+
+        @Subscribe
+        public void onPlain(PlainEvent event) {
+            record("plain");
+        }
+
+        synchronized List<String> received() {
+            return new ArrayList<>(mReceived);
+        }
+
+        private void record(String received) {
+            synchronized (this) {
+                mReceived.add(received);
+            }
+            mDelivered.countDown();
+        }
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class KeyedEvent {
+        @EventKey
+        public final String mKey;
+
+        KeyedEvent(String key) {
+            mKey = key;
+        }
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class PlainEvent {
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.otto;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.shedding.LoadShedder;
+import com.squareup.otto.Subscribe;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link OttoEventProcessor#setLoadShedder(LoadShedder)} gives every {@link Event.Type} queue its own
+ * gate. Events are posted with {@link OttoEventProcessor#onPostAll(java.util.Collection)}, so the depth seen by the
+ * gates only depends on the events of the batch.
+ */
+public class OttoEventProcessorSheddingTest {
+
+    private static final int HIGH = 2;
+    private static final int LOW = 0;
+
+    private final List<String> mShedQueues = new ArrayList<>();
+    private OttoEventProcessor mProcessor;
+
+    @Before
+    public void setUp() {
+        mProcessor = (OttoEventProcessor) OttoEventProcessor.newInstance();
+        mProcessor.setLoadShedder(LoadShedder.newInstance(HIGH, LOW, Event.Priority.NORMAL,
+                new LoadShedder.Overflow() {
+                    @Override
+                    public void onShed(Object event, String queue) {
+                        synchronized (mShedQueues) {
+                            mShedQueues.add(queue);
+                        }
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        mProcessor.onShutdown();
+    }
+
+    @Test
+    public void everyTypeHasItsOwnGate() throws InterruptedException {
+        // 2 low priority DATA events, the high priority one and the GENERIC one
+        CountingListener listener = new CountingListener(4);
+        mProcessor.onRegister(listener);
+
+        mProcessor.onPostAll(Arrays.asList(
+                new LowDataEvent(), new LowDataEvent(), new LowDataEvent(), new LowDataEvent(),
+                new HighDataEvent(), new LowGenericEvent()));
+
+        synchronized (mShedQueues) {
+            assertEquals(Arrays.asList("DATA", "DATA"), mShedQueues);
+        }
+        assertTrue("admitted events not delivered", listener.mDelivered.await(5, TimeUnit.SECONDS));
+        assertEquals(2, listener.mLowData.get());
+        assertEquals(1, listener.mHighData.get());
+        assertEquals(1, listener.mLowGeneric.get());
+    }
+
+    public static class CountingListener {
+        final CountDownLatch mDelivered;
+        final AtomicInteger mLowData = new AtomicInteger();
+        final AtomicInteger mHighData = new AtomicInteger();
+        final AtomicInteger mLowGeneric = new AtomicInteger();
+
+        CountingListener(int expected) {
+            mDelivered = new CountDownLatch(expected);
+        }
+
+        @Subscribe
+        public void onLowData(LowDataEvent event) {
+            mLowData.incrementAndGet();
+            mDelivered.countDown();
+        }
+
+        @Subscribe
+        public void onHighData(HighDataEvent event) {
+            mHighData.incrementAndGet();
+            mDelivered.countDown();
+        }
+
+        @Subscribe
+        public void onLowGeneric(LowGenericEvent event) {
+            mLowGeneric.incrementAndGet();
+            mDelivered.countDown();
+        }
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.LOW)
+    public static class LowDataEvent {
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.HIGH)
+    public static class HighDataEvent {
+    }
+
+    @Event(type = Event.Type.GENERIC, priority = Event.Priority.LOW)
+    public static class LowGenericEvent {
+    }
+}
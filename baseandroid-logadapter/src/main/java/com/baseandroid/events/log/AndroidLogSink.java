@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.log;
+
+import android.util.Log;
+
+/**
+ * {@link LogSink} writing the messages on the Android log, this is the default sink of {@link EventLogger}.
+ */
+public final class AndroidLogSink implements LogSink {
+
+    @Override
+    public void log(LogLevel level, String tag, String message, Throwable throwable) {
+        if (throwable != null) {
+            message = message + '\n' + Log.getStackTraceString(throwable);
+        }
+        Log.println(level.priority, tag, message);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link LogSink} moving the writes of another sink on a background thread.
+ * <br>
+ * Messages are stored in a preallocated ring buffer: logging threads never block and never wait for the I/O,
+ * when the buffer is full the messages are dropped and counted (see {@link #getDroppedCount()}).
+ * <pre>{@code
+ *     EventLogger.setSink(new AsyncLogSink(new AndroidLogSink(), 1024));
+ * }</pre>
+ */
+public final class AsyncLogSink implements LogSink {
+
+    /**
+     * Max time the writer thread sleeps before checking the buffer again
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LogSink mDelegate;
+    private final int mCapacity;
+    private final int mMask;
+
+    private final LogLevel[] mLevels;
+    private final String[] mTags;
+    private final String[] mMessages;
+    private final Throwable[] mThrowables;
+    /**
+     * For every slot, the sequence of the message it contains plus one, once the message is completely written
+     */
+    private final AtomicLongArray mPublished;
+    /**
+     * Next sequence to be claimed by a logging thread
+     */
+    private final AtomicLong mClaimed = new AtomicLong();
+    /**
+     * Next sequence to be written by the writer thread
+     */
+    private volatile long mConsumed;
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final Thread mWriter;
+    private volatile boolean mWriterParked;
+    private volatile boolean mRunning = true;
+
+    /**
+     * @param delegate the sink actually writing the messages
+     * @param capacity max number of messages waiting to be written, rounded up to a power of two
+     */
+    public AsyncLogSink(LogSink delegate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        }
+        mDelegate = delegate;
+        mCapacity = Integer.highestOneBit(capacity * 2 - 1);
+        mMask = mCapacity - 1;
+        mLevels = new LogLevel[mCapacity];
+        mTags = new String[mCapacity];
+        mMessages = new String[mCapacity];
+        mThrowables = new Throwable[mCapacity];
+        mPublished = new AtomicLongArray(mCapacity);
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "AsyncLogSink");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    @Override
+    public void log(LogLevel level, String tag, String message, Throwable throwable) {
+        long sequence;
+        do {
+            sequence = mClaimed.get();
+            if (sequence - mConsumed >= mCapacity) {
+                mDropped.incrementAndGet();
+                return;
+            }
+        } while (!mClaimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mMask;
+        mLevels[slot] = level;
+        mTags[slot] = tag;
+        mMessages[slot] = message;
+        mThrowables[slot] = throwable;
+        mPublished.set(slot, sequence + 1);
+
+        if (mWriterParked) {
+            LockSupport.unpark(mWriter);
+        }
+    }
+
+    /**
+     * @return the number of messages dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Stops the writer thread once the messages already in the buffer have been written
+     */
+    public void close() {
+        mRunning = false;
+        LockSupport.unpark(mWriter);
+    }
+
+    private void drain() {
+        while (true) {
+            long sequence = mConsumed;
+            int slot = (int) sequence & mMask;
+            if (mPublished.get(slot) == sequence + 1) {
+                LogLevel level = mLevels[slot];
+                String tag = mTags[slot];
+                String message = mMessages[slot];
+                Throwable throwable = mThrowables[slot];
+                mTags[slot] = null;
+                mMessages[slot] = null;
+                mThrowables[slot] = null;
+                mConsumed = sequence + 1;
+                try {
+                    mDelegate.log(level, tag, message, throwable);
+                } catch (RuntimeException e) {
+                    // a failing sink must not stop the writer
+                }
+            } else if (!mRunning && mClaimed.get() == sequence) {
+                return;
+            } else {
+                mWriterParked = true;
+                if (mPublished.get(slot) != sequence + 1) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                mWriterParked = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.log;
+
+/**
+ * Logger used on the hot path of the event processors.
+ * <br>
+ * Messages are formatted only if their level is enabled, replacing each {@code {}} of the format with an argument
+ * ({@link Class} arguments are written with their simple name). Methods with up to three arguments don't allocate
+ * any array, so when a level is disabled a call costs a single branch:
+ * <pre>{@code
+ *     LOGGER.debug("posting {} on {}", event.getClass(), bus);
+ * }</pre>
+ * When arguments are expensive to compute, guard the call with {@link #isDebugEnabled()} and similar methods.
+ * <p>
+ * The level and the {@link LogSink} are global: by default messages from {@link LogLevel#INFO} up are written on the
+ * Android log, use {@link AsyncLogSink} to move the writes off the calling threads.
+ * </p>
+ */
+public final class EventLogger {
+
+    private static final String PLACEHOLDER = "{}";
+
+    private static volatile int sPriority = LogLevel.INFO.priority;
+    private static volatile LogSink sSink = new AndroidLogSink();
+
+    private final String mTag;
+
+    private EventLogger(String tag) {
+        mTag = tag;
+    }
+
+    /**
+     * @param clazz the class logging, its simple name is used as tag
+     * @return a new logger
+     */
+    public static EventLogger getLogger(Class<?> clazz) {
+        return new EventLogger(clazz.getSimpleName());
+    }
+
+    /**
+     * @param tag the tag of the messages
+     * @return a new logger
+     */
+    public static EventLogger getLogger(String tag) {
+        return new EventLogger(tag);
+    }
+
+    /**
+     * Sets the minimum level of the messages being logged
+     *
+     * @param level
+     */
+    public static void setLevel(LogLevel level) {
+        sPriority = level.priority;
+    }
+
+    /**
+     * Sets the {@link LogSink} writing the messages, null restores the {@link AndroidLogSink}
+     *
+     * @param sink
+     */
+    public static void setSink(LogSink sink) {
+        sSink = sink != null ? sink : new AndroidLogSink();
+    }
+
+    public boolean isLoggable(LogLevel level) {
+        return level.priority >= sPriority;
+    }
+
+    public boolean isVerboseEnabled() {
+        return LogLevel.VERBOSE.priority >= sPriority;
+    }
+
+    public boolean isDebugEnabled() {
+        return LogLevel.DEBUG.priority >= sPriority;
+    }
+
+    public boolean isInfoEnabled() {
+        return LogLevel.INFO.priority >= sPriority;
+    }
+
+    public void debug(String message) {
+        if (LogLevel.DEBUG.priority >= sPriority) {
+            write(LogLevel.DEBUG, message, null, null, null, 0, null);
+        }
+    }
+
+    public void debug(String format, Object arg) {
+        if (LogLevel.DEBUG.priority >= sPriority) {
+            write(LogLevel.DEBUG, format, arg, null, null, 1, null);
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        if (LogLevel.DEBUG.priority >= sPriority) {
+            write(LogLevel.DEBUG, format, arg1, arg2, null, 2, null);
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2, Object arg3) {
+        if (LogLevel.DEBUG.priority >= sPriority) {
+            write(LogLevel.DEBUG, format, arg1, arg2, arg3, 3, null);
+        }
+    }
+
+    public void info(String message) {
+        if (LogLevel.INFO.priority >= sPriority) {
+            write(LogLevel.INFO, message, null, null, null, 0, null);
+        }
+    }
+
+    public void info(String format, Object arg) {
+        if (LogLevel.INFO.priority >= sPriority) {
+            write(LogLevel.INFO, format, arg, null, null, 1, null);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (LogLevel.INFO.priority >= sPriority) {
+            write(LogLevel.INFO, format, arg1, arg2, null, 2, null);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2, Object arg3) {
+        if (LogLevel.INFO.priority >= sPriority) {
+            write(LogLevel.INFO, format, arg1, arg2, arg3, 3, null);
+        }
+    }
+
+    public void warn(String message) {
+        if (LogLevel.WARN.priority >= sPriority) {
+            write(LogLevel.WARN, message, null, null, null, 0, null);
+        }
+    }
+
+    public void warn(String format, Object arg) {
+        if (LogLevel.WARN.priority >= sPriority) {
+            write(LogLevel.WARN, format, arg, null, null, 1, null);
+        }
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        if (LogLevel.WARN.priority >= sPriority) {
+            write(LogLevel.WARN, format, arg1, arg2, null, 2, null);
+        }
+    }
+
+    public void error(String message, Throwable throwable) {
+        if (LogLevel.ERROR.priority >= sPriority) {
+            write(LogLevel.ERROR, message, null, null, null, 0, throwable);
+        }
+    }
+
+    public void error(String format, Object arg, Throwable throwable) {
+        if (LogLevel.ERROR.priority >= sPriority) {
+            write(LogLevel.ERROR, format, arg, null, null, 1, throwable);
+        }
+    }
+
+    private void write(LogLevel level, String format, Object arg1, Object arg2, Object arg3, int args, Throwable throwable) {
+        sSink.log(level, mTag, format(format, arg1, arg2, arg3, args), throwable);
+    }
+
+    /**
+     * Replaces the first {@code args} placeholders of {@code format} with the arguments
+     */
+    static String format(String format, Object arg1, Object arg2, Object arg3, int args) {
+        if (args == 0) {
+            return format;
+        }
+        StringBuilder builder = new StringBuilder(format.length() + 32 * args);
+        int start = 0;
+        for (int i = 0; i < args; i++) {
+            int placeholder = format.indexOf(PLACEHOLDER, start);
+            if (placeholder < 0) {
+                break;
+            }
+            builder.append(format, start, placeholder);
+            appendArgument(builder, i == 0 ? arg1 : i == 1 ? arg2 : arg3);
+            start = placeholder + PLACEHOLDER.length();
+        }
+        builder.append(format, start, format.length());
+        return builder.toString();
+    }
+
+    private static void appendArgument(StringBuilder builder, Object arg) {
+        if (arg instanceof Class) {
+            builder.append(((Class<?>) arg).getSimpleName());
+        } else {
+            builder.append(arg);
+        }
+    }
+}
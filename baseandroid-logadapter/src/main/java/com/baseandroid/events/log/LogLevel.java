@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.log;
+
+import android.util.Log;
+
+/**
+ * Levels of the messages logged by {@link EventLogger}, in increasing order of severity.
+ * Their priorities are the ones used by {@link Log}.
+ */
+public enum LogLevel {
+    VERBOSE(Log.VERBOSE),
+    DEBUG(Log.DEBUG),
+    INFO(Log.INFO),
+    WARN(Log.WARN),
+    ERROR(Log.ERROR),
+    /**
+     * disables logging
+     */
+    OFF(Integer.MAX_VALUE);
+
+    final int priority;
+
+    LogLevel(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the priority of this level, as defined by {@link Log}
+     */
+    public int getPriority() {
+        return priority;
+    }
+}
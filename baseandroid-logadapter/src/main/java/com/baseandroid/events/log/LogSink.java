@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baseandroid.events.log;
+
+/**
+ * Destination of the messages logged by {@link EventLogger}.
+ * <p>
+ * <b>NOTE: sinks are called from any thread, implementations must be thread safe.</b>
+ * </p>
+ */
+public interface LogSink {
+
+    /**
+     * Writes a message
+     *
+     * @param level     the level of the message
+     * @param tag       the tag of the logger
+     * @param message   the formatted message
+     * @param throwable the throwable attached to the message, may be null
+     */
+    void log(LogLevel level, String tag, String message, Throwable throwable);
+}
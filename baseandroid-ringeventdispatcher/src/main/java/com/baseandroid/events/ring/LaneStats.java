@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import java.util.Locale;
+
+/**
+ * A snapshot of the activity of a lane of {@link RingEventProcessor}, see {@link RingEventProcessor#getLaneStats(int)}.
+ * <br>
+ * The utilization is the fraction of time the lane thread spent delivering events: a lane close to 1 is saturated,
+ * its events wait in the ring. Compare two snapshots with {@link #getUtilizationSince(LaneStats)} to measure a period.
+ */
+public final class LaneStats {
+    private final String mName;
+    private final int mQueueDepth;
+    private final long mBusyNanos;
+    private final long mUptimeNanos;
+
+    LaneStats(String name, int queueDepth, long busyNanos, long uptimeNanos) {
+        mName = name;
+        mQueueDepth = queueDepth;
+        mBusyNanos = busyNanos;
+        mUptimeNanos = uptimeNanos;
+    }
+
+    /**
+     * @return the name of the lane, also used for its queue depth metrics
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the number of events waiting in the lane when the snapshot was taken
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    /**
+     * @return nanoseconds spent delivering events since the lane was started
+     */
+    public long getBusyNanos() {
+        return mBusyNanos;
+    }
+
+    /**
+     * @return nanoseconds elapsed since the lane was started
+     */
+    public long getUptimeNanos() {
+        return mUptimeNanos;
+    }
+
+    /**
+     * @return the fraction of time spent delivering events since the lane was started, between 0 and 1
+     */
+    public double getUtilization() {
+        return mUptimeNanos > 0 ? Math.min(1d, (double) mBusyNanos / mUptimeNanos) : 0d;
+    }
+
+    /**
+     * @param previous an older snapshot of the same lane
+     * @return the fraction of time spent delivering events between the two snapshots, between 0 and 1
+     */
+    public double getUtilizationSince(LaneStats previous) {
+        long elapsed = mUptimeNanos - previous.mUptimeNanos;
+        return elapsed > 0 ? Math.min(1d, (double) (mBusyNanos - previous.mBusyNanos) / elapsed) : 0d;
+    }
+
+    @Override
+    public String toString() {
+        return mName + "{queueDepth=" + mQueueDepth + ", utilization=" + String.format(Locale.US, "%.2f", getUtilization()) + "}";
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Consumer draining a {@link RingBuffer} on the thread of a {@link Looper}, usually the Android Main Thread.
+ * <br>
+ * A single drain task is scheduled at a time, whatever the number of events published meanwhile; every run delivers
+ * at most {@link #MAX_EVENTS_PER_RUN} events and then yields the looper, so that a burst of events doesn't freeze the UI.
+ */
+final class LooperRingConsumer implements RingBuffer.Consumer, Runnable {
+
+    /**
+     * Max number of events delivered before giving back the looper to other messages
+     */
+    static final int MAX_EVENTS_PER_RUN = 64;
+
+    private final RingBuffer mRing;
+    private final Handler mHandler;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private volatile boolean mStopped;
+
+    LooperRingConsumer(RingBuffer ring, Looper looper) {
+        mRing = ring;
+        mHandler = new Handler(looper);
+        ring.attach(this, looper.getThread());
+    }
+
+    @Override
+    public void signal() {
+        if (mScheduled.compareAndSet(false, true)) {
+            mHandler.post(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        mStopped = true;
+        mHandler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (mStopped) {
+            return;
+        }
+        // cleared before draining, events published from now on schedule a new run
+        mScheduled.set(false);
+        mRing.drain(MAX_EVENTS_PER_RUN);
+        if (mRing.hasPublished()) {
+            signal();
+        }
+    }
+}
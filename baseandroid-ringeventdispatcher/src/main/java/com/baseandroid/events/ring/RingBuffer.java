@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated multi-producer, single-consumer ring of events.
+ * <br>
+ * Posting threads claim a sequence with a CAS, write the slot and publish it; the consumer reads every published
+ * sequence after the last consumed one as a single batch, so the slots are reused and nothing is allocated per event.
+ * When the ring is full posting threads wait for the consumer, unless they are the consumer itself:
+ * in that case the pending events are delivered inline to avoid a deadlock.
+ */
+final class RingBuffer {
+
+    /**
+     * Max time a posting thread sleeps while waiting for free slots
+     */
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Receives the events of the ring, always on the consumer thread
+     */
+    interface EventHandler {
+        /**
+         * @param ring             the ring the event comes from
+         * @param event
+         * @param metricsTimestamp when the event was posted, see {@code EventMetrics.timestamp()}
+         * @param endOfBatch true for the last event currently published
+         */
+        void onEvent(RingBuffer ring, Object event, long metricsTimestamp, boolean endOfBatch);
+    }
+
+    /**
+     * Wakes the consumer up when new events are published
+     */
+    interface Consumer {
+        void signal();
+
+        /**
+         * Stops draining the ring, the events still published are not delivered
+         */
+        void stop();
+    }
+
+    private final String mName;
+    private final int mCapacity;
+    private final int mMask;
+    private final Object[] mEvents;
+    private final long[] mMetricsTimestamps;
+    /**
+     * For every slot, the sequence of the event it contains plus one, once the event is completely written
+     */
+    private final AtomicLongArray mPublished;
+    /**
+     * Next sequence to be claimed by a posting thread
+     */
+    private final AtomicLong mClaimed = new AtomicLong();
+    /**
+     * Next sequence to be delivered by the consumer
+     */
+    private volatile long mConsumed;
+    private final EventHandler mHandler;
+    private volatile Consumer mConsumer;
+    private volatile Thread mConsumerThread;
+    /**
+     * Set by {@link #close()}, events published afterwards are rejected
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * @param name     name of the ring, used for queue depth metrics
+     * @param capacity max number of events waiting for delivery, rounded up to a power of two
+     * @param handler
+     */
+    RingBuffer(String name, int capacity, EventHandler handler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        }
+        mName = name;
+        mCapacity = Integer.highestOneBit(capacity * 2 - 1);
+        mMask = mCapacity - 1;
+        mEvents = new Object[mCapacity];
+        mMetricsTimestamps = new long[mCapacity];
+        mPublished = new AtomicLongArray(mCapacity);
+        mHandler = handler;
+    }
+
+    /**
+     * Attaches the consumer of this ring, it must be called once before publishing
+     *
+     * @param consumer
+     * @param consumerThread the thread draining the ring
+     */
+    void attach(Consumer consumer, Thread consumerThread) {
+        mConsumer = consumer;
+        mConsumerThread = consumerThread;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the number of events published or being published, not yet delivered
+     */
+    int size() {
+        return (int) (mClaimed.get() - mConsumed);
+    }
+
+    /**
+     * Stops the consumer, events published afterwards are rejected and the posting threads waiting for a free slot
+     * give up. The events still in the ring are left to the garbage collector.
+     */
+    void close() {
+        mClosed = true;
+        mConsumer.stop();
+    }
+
+    /**
+     * Publishes an event, waiting for a free slot if the ring is full
+     *
+     * @param event
+     * @param metricsTimestamp
+     * @return false if the ring has been closed and the event rejected
+     */
+    boolean publish(Object event, long metricsTimestamp) {
+        long sequence;
+        int tries = 0;
+        while (true) {
+            if (mClosed) {
+                return false;
+            }
+            sequence = mClaimed.get();
+            if (sequence - mConsumed >= mCapacity) {
+                if (Thread.currentThread() == mConsumerThread) {
+                    drain(Integer.MAX_VALUE);
+                } else {
+                    backOff(++tries);
+                }
+            } else if (mClaimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int slot = (int) sequence & mMask;
+        mEvents[slot] = event;
+        mMetricsTimestamps[slot] = metricsTimestamp;
+        mPublished.set(slot, sequence + 1);
+
+        mConsumer.signal();
+        return true;
+    }
+
+    /**
+     * Publishes a batch of events, claiming as many slots as possible with a single compare and set and waiting for free
+     * slots if the ring is full. The events are published in the order of the array.
+     *
+     * @param events
+     * @param count number of events of the array to publish
+     * @param metricsTimestamp
+     * @return the number of events published, less than {@code count} if the ring has been closed
+     */
+    int publishAll(Object[] events, int count, long metricsTimestamp) {
+        int published = 0;
+        int tries = 0;
+        while (published < count) {
+            if (mClosed) {
+                break;
+            }
+            long sequence = mClaimed.get();
+            long free = mCapacity - (sequence - mConsumed);
+            if (free <= 0) {
+                if (Thread.currentThread() == mConsumerThread) {
+                    drain(Integer.MAX_VALUE);
+                } else {
+                    backOff(++tries);
+                }
+            } else {
+                int claimed = (int) Math.min(free, count - published);
+                if (mClaimed.compareAndSet(sequence, sequence + claimed)) {
+                    for (int i = 0; i < claimed; i++) {
+                        int slot = (int) (sequence + i) & mMask;
+                        mEvents[slot] = events[published + i];
+                        mMetricsTimestamps[slot] = metricsTimestamp;
+                        mPublished.set(slot, sequence + i + 1);
+                    }
+                    published += claimed;
+                    mConsumer.signal();
+                }
+            }
+        }
+        return published;
+    }
+
+    /**
+     * @return true if at least one event is ready to be delivered
+     */
+    boolean hasPublished() {
+        long sequence = mConsumed;
+        return mPublished.get((int) sequence & mMask) == sequence + 1;
+    }
+
+    /**
+     * Delivers the published events to the {@link EventHandler}, it must be called by the consumer thread only.
+     * The consumed sequence is advanced before every delivery, so handlers can post on this same ring.
+     *
+     * @param maxEvents max number of events to deliver
+     * @return the number of events delivered
+     */
+    int drain(int maxEvents) {
+        long batchEnd = mConsumed;
+        long claimed = mClaimed.get();
+        int batchSize = 0;
+        // the batch ends at the first slot not yet published
+        while (batchEnd < claimed && batchSize < maxEvents
+                && mPublished.get((int) batchEnd & mMask) == batchEnd + 1) {
+            batchEnd++;
+            batchSize++;
+        }
+
+        int delivered = 0;
+        long sequence;
+        while ((sequence = mConsumed) < batchEnd) {
+            int slot = (int) sequence & mMask;
+            Object event = mEvents[slot];
+            long metricsTimestamp = mMetricsTimestamps[slot];
+            mEvents[slot] = null;
+            mConsumed = sequence + 1;
+            delivered++;
+            mHandler.onEvent(this, event, metricsTimestamp, sequence + 1 == batchEnd);
+        }
+        return delivered;
+    }
+
+    private static void backOff(int tries) {
+        if (tries < SPIN_TRIES) {
+            // busy spin, the consumer is usually about to free a slot
+        } else if (tries < SPIN_TRIES * 2) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(MAX_BACKOFF_NANOS);
+        }
+    }
+}
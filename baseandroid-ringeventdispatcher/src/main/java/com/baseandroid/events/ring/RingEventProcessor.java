@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import android.os.Looper;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.OrderingKey;
+import com.baseandroid.events.log.EventLogger;
+import com.baseandroid.events.metrics.DropReason;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.rx.annotations.FilterResults;
+import com.baseandroid.events.rx.annotations.RxHandlerIndex;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+import com.baseandroid.events.shedding.LoadShedder;
+
+import java.util.Collection;
+
+/**
+ * {@link EventProcessor} delivering events through preallocated ring buffers, in the style of the LMAX Disruptor.
+ * <br>
+ * <ul>
+ * <li>{@code BUS}: one or more lanes, each a ring drained by a dedicated background thread</li>
+ * <li>{@code UI_BUS}: a ring drained on the Android Main Thread, for events of type {@link Event.Type#UI}</li>
+ * </ul>
+ * <br>
+ * With more than one lane, see {@link #newInstance(int, int)}, the events are spread over the lanes by the hash of their
+ * {@link OrderingKey}, or of their class when they have none: the events with the same ordering key, or of the same
+ * class, are delivered by the same lane in posting order, the others are delivered in parallel.
+ * <br>
+ * Posting an event only claims a slot and publishes it, there are no locks, no sorting and no allocations;
+ * the consumer delivers all the events published since its last run as a batch.
+ * Listeners declare their handlers with {@link RxSubscribe}, the same annotation of {@code RxEventProcessor}.
+ * <pre>{@code
+ *     EventDispatcher.useEventProcessor(RingEventProcessor.newInstance());
+ * }</pre>
+ * <p>
+ * <b>NOTE: events are delivered in posting order, {@link Event.Priority} is only considered to shed events
+ * (see {@link #setLoadShedder(LoadShedder)});
+ * with more than one lane the handlers of non UI events can be invoked concurrently and must be thread safe;
+ * save points are not supported, {@code EventDispatcher.savePoint(...)} returns null.</b>
+ * </p>
+ */
+public final class RingEventProcessor implements EventProcessor {
+
+    /**
+     * Default number of slots of every ring
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(RingEventProcessor.class);
+
+    private final RxHandlerIndex mHandlerIndex = new RxHandlerIndex();
+    /**
+     * Lanes of the events that are not of type {@link Event.Type#UI}, each one drained by its own background thread
+     */
+    private final RingBuffer[] BUS;
+    private final ThreadRingConsumer[] mLaneConsumers;
+    /**
+     * Ring drained on the Android Main Thread
+     */
+    private final RingBuffer UI_BUS;
+    /**
+     * flag set by {@link #onShutdown()}
+     */
+    private volatile boolean mShutdown;
+    /**
+     * The gates of the lanes, followed by the one of {@link #UI_BUS}, null if events are never shed
+     */
+    private volatile LoadShedder.Gate[] mGates;
+
+    private RingEventProcessor(int bufferSize, int lanes) {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes must be positive, was " + lanes);
+        }
+        BUS = new RingBuffer[lanes];
+        mLaneConsumers = new ThreadRingConsumer[lanes];
+        for (int i = 0; i < lanes; i++) {
+            BUS[i] = new RingBuffer(lanes == 1 ? "BUS" : "BUS-" + i, bufferSize, new Delivery());
+            mLaneConsumers[i] = new ThreadRingConsumer(BUS[i]);
+        }
+
+        UI_BUS = new RingBuffer("UI_BUS", bufferSize, new Delivery());
+        Looper mainLooper = Looper.getMainLooper();
+        if (mainLooper != null) {
+            new LooperRingConsumer(UI_BUS, mainLooper);
+        } else {
+            // there is no Android Main Thread when running on the JVM, e.g. in unit tests
+            new ThreadRingConsumer(UI_BUS);
+        }
+    }
+
+    public static EventProcessor newInstance() {
+        return new RingEventProcessor(DEFAULT_BUFFER_SIZE, 1);
+    }
+
+    /**
+     * @param bufferSize number of slots of every ring, rounded up to a power of two.
+     *                   When a ring is full posting threads wait for a free slot.
+     * @return
+     */
+    public static EventProcessor newInstance(int bufferSize) {
+        return new RingEventProcessor(bufferSize, 1);
+    }
+
+    /**
+     * @param bufferSize number of slots of every ring, rounded up to a power of two.
+     *                   When a ring is full posting threads wait for a free slot.
+     * @param lanes number of background threads delivering the events that are not of type {@link Event.Type#UI},
+     *              e.g. {@code Runtime.getRuntime().availableProcessors()}
+     * @return
+     */
+    public static EventProcessor newInstance(int bufferSize, int lanes) {
+        return new RingEventProcessor(bufferSize, lanes);
+    }
+
+    /**
+     * @return the number of lanes delivering the events that are not of type {@link Event.Type#UI}
+     */
+    public int getLaneCount() {
+        return BUS.length;
+    }
+
+    /**
+     * @param lane index of the lane, from 0 to {@link #getLaneCount()} excluded
+     * @return a snapshot of the queue depth and of the utilization of the lane
+     */
+    public LaneStats getLaneStats(int lane) {
+        return mLaneConsumers[lane].getStats();
+    }
+
+    /**
+     * Sheds the less important events posted while a ring is over the watermarks of {@code shedder}, instead of making
+     * the posting threads wait for a free slot. Every lane and the UI ring have their own {@link LoadShedder.Gate}.
+     *
+     * @param shedder null to never shed events
+     */
+    public void setLoadShedder(LoadShedder shedder) {
+        if (shedder == null) {
+            mGates = null;
+            return;
+        }
+        LoadShedder.Gate[] gates = new LoadShedder.Gate[BUS.length + 1];
+        for (int i = 0; i < BUS.length; i++) {
+            gates[i] = shedder.newGate(BUS[i].getName());
+        }
+        gates[BUS.length] = shedder.newGate(UI_BUS.getName());
+        mGates = gates;
+    }
+
+    /**
+     * @param ring index of the ring, {@code BUS.length} for {@link #UI_BUS}
+     * @param event
+     * @param info the metadata of the event
+     * @param pending events of the same ring not published yet
+     * @return false if the event has been shed
+     */
+    private boolean admit(int ring, Object event, EventInfo info, int pending) {
+        LoadShedder.Gate[] gates = mGates;
+        return gates == null
+                || gates[ring].admit(event, info, (ring == BUS.length ? UI_BUS : BUS[ring]).size() + pending);
+    }
+
+    /**
+     * @param event
+     * @param info the metadata of the event
+     * @return the index of the lane delivering the event
+     */
+    private int laneOf(Object event, EventInfo info) {
+        if (BUS.length == 1) {
+            return 0;
+        }
+        Object key = info.hasOrderingKey() ? info.getOrderingKey(event) : null;
+        int hash = key != null ? key.hashCode() : event.getClass().hashCode();
+        // spreads the high bits, as HashMap does
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % BUS.length;
+    }
+
+    @Override
+    public void onRegister(Object o) {
+        if (o != null) {
+            mHandlerIndex.register(o);
+        }
+    }
+
+    @Override
+    public void onRegister(Object o, Object key) {
+        if (o != null) {
+            mHandlerIndex.register(o, key);
+        }
+    }
+
+    @Override
+    public void onUnregister(Object o) {
+        if (o != null) {
+            mHandlerIndex.unregister(o);
+        }
+    }
+
+    /**
+     * Pauses a registered Object: the events delivered by {@link #UI_BUS} to its handlers are kept until
+     * {@link #onResume(Object)}.
+     *
+     * @param o the registered Object
+     */
+    @Override
+    public void onPause(Object o) {
+        if (o != null) {
+            mHandlerIndex.pause(o);
+        }
+    }
+
+    /**
+     * Resumes a paused Object, its handlers are invoked on the calling thread for the events kept meanwhile.
+     *
+     * @param o the paused Object
+     */
+    @Override
+    public void onResume(Object o) {
+        if (o != null) {
+            mHandlerIndex.resume(o);
+        }
+    }
+
+    @Override
+    public void onPost(Object o) {
+        //check if it's an event we recognise
+        EventInfo info = o != null ? EventInfo.of(o.getClass()) : null;
+        if (info != null) {
+            Event.Type t = info.getType();
+            LOGGER.debug("received new object to post: {} is an event of type {}", o.getClass(), t);
+            int ring = t == Event.Type.UI ? BUS.length : laneOf(o, info);
+            if (!admit(ring, o, info, 0)) {
+                return;
+            }
+            // pooled events must survive in the ring after the poster released them
+            EventPool.retainIfPooled(o);
+            boolean published = (ring == BUS.length ? UI_BUS : BUS[ring]).publish(o, postTimestamp(info));
+            if (!published) {
+                LOGGER.warn("processor shut down, {} will be missed", o.getClass());
+                EventPool.releaseIfPooled(o);
+            }
+        } else if (o != null) {
+            LOGGER.debug("received new object to post: {} is not an event", o.getClass());
+            EventMetrics.dropped(o.getClass(), DropReason.NOT_AN_EVENT);
+        }
+    }
+
+    /**
+     * Posts a batch of events, publishing the events of each ring with as few claims as possible.
+     * Events of the same {@link Event.Type} and lane are delivered in the order of the collection.
+     *
+     * @param events the Objects we want to post as events
+     */
+    @Override
+    public void onPostAll(Collection<?> events) {
+        Object[] uiEvents = null;
+        Object[][] busEvents = new Object[BUS.length][];
+        int[] busCounts = new int[BUS.length];
+        int uiCount = 0;
+        boolean expiring = false;
+        for (Object o : events) {
+            EventInfo info = o != null ? EventInfo.of(o.getClass()) : null;
+            if (info != null) {
+                if (info.getType() == Event.Type.UI) {
+                    if (!admit(BUS.length, o, info, uiCount)) {
+                        continue;
+                    }
+                    // pooled events must survive in the ring after the poster released them
+                    EventPool.retainIfPooled(o);
+                    if (uiEvents == null) {
+                        uiEvents = new Object[events.size()];
+                    }
+                    uiEvents[uiCount++] = o;
+                } else {
+                    int lane = laneOf(o, info);
+                    if (!admit(lane, o, info, busCounts[lane])) {
+                        continue;
+                    }
+                    EventPool.retainIfPooled(o);
+                    if (busEvents[lane] == null) {
+                        busEvents[lane] = new Object[events.size()];
+                    }
+                    busEvents[lane][busCounts[lane]++] = o;
+                }
+                expiring |= info.getTtlNanos() > 0;
+            } else if (o != null) {
+                LOGGER.debug("received new object to post: {} is not an event", o.getClass());
+                EventMetrics.dropped(o.getClass(), DropReason.NOT_AN_EVENT);
+            }
+        }
+        long metricsTimestamp = expiring ? System.nanoTime() : EventMetrics.timestamp();
+        if (uiCount > 0) {
+            releaseRejected(uiEvents, UI_BUS.publishAll(uiEvents, uiCount, metricsTimestamp), uiCount);
+        }
+        for (int lane = 0; lane < BUS.length; lane++) {
+            if (busCounts[lane] > 0) {
+                releaseRejected(busEvents[lane], BUS[lane].publishAll(busEvents[lane], busCounts[lane], metricsTimestamp),
+                        busCounts[lane]);
+            }
+        }
+    }
+
+    /**
+     * The timestamp published with an event: events with a {@link Event#ttl()} always need one to expire,
+     * the others only when metrics are enabled
+     *
+     * @param info
+     * @return
+     */
+    private static long postTimestamp(EventInfo info) {
+        return info.getTtlNanos() > 0 ? System.nanoTime() : EventMetrics.timestamp();
+    }
+
+    /**
+     * Releases the events a closed ring didn't publish, see {@link #onShutdown()}
+     *
+     * @param events
+     * @param from index of the first rejected event
+     * @param to number of events of the array
+     */
+    private static void releaseRejected(Object[] events, int from, int to) {
+        if (from < to) {
+            LOGGER.warn("processor shut down, {} events will be missed", to - from);
+            for (int i = from; i < to; i++) {
+                EventPool.releaseIfPooled(events[i]);
+            }
+        }
+    }
+
+    /**
+     * Unregisters every listener and stops the consumers of the rings, the events still in the rings are not delivered.
+     * Events posted afterwards are disregarded.
+     */
+    @Override
+    public void onShutdown() {
+        if (mShutdown) {
+            return;
+        }
+        mShutdown = true;
+        mHandlerIndex.unregisterAll();
+        for (RingBuffer lane : BUS) {
+            lane.close();
+        }
+        UI_BUS.close();
+        LOGGER.info("processor shut down");
+    }
+
+    @Override
+    public String onSavePoint(Object object) {
+        return null;
+    }
+
+    @Override
+    public void onLoadPoint(Object object, String key) {
+
+    }
+
+    /**
+     * This class delivers the events of a ring to the registered handlers, always on the consumer thread of the ring
+     */
+    private final class Delivery implements RingBuffer.EventHandler {
+        /**
+         * The results of the filters of the handlers for the event being delivered
+         */
+        private final FilterResults mFilterResults = new FilterResults();
+
+        @Override
+        public void onEvent(RingBuffer ring, Object event, long metricsTimestamp, boolean endOfBatch) {
+            LOGGER.debug("posting {} on {}", event.getClass(), ring.getName());
+            try {
+                long ttl = EventInfo.of(event.getClass()).getTtlNanos();
+                if (ttl > 0 && System.nanoTime() - metricsTimestamp > ttl) {
+                    LOGGER.debug("{} expired before delivery", event.getClass());
+                    EventMetrics.dropped(event.getClass(), DropReason.EXPIRED);
+                } else if (mHandlerIndex.hasHandlers(event.getClass())) {
+                    EventMetrics.delivered(event.getClass(), metricsTimestamp);
+                    mHandlerIndex.dispatch(event, mFilterResults);
+                } else {
+                    EventMetrics.dropped(event.getClass(), DropReason.DEAD);
+                }
+            } catch (RuntimeException e) {
+                // the consumer must keep draining the ring
+                LOGGER.error("failed delivering {}", event.getClass(), e);
+            } finally {
+                mFilterResults.clear();
+                EventPool.releaseIfPooled(event);
+            }
+            if (endOfBatch && EventMetrics.isEnabled()) {
+                EventMetrics.queueDepth(ring.getName(), ring.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import com.baseandroid.events.log.EventLogger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consumer draining a {@link RingBuffer} on its own daemon thread.
+ * The thread spins briefly when the ring is empty, then parks until the next event is published.
+ */
+final class ThreadRingConsumer implements RingBuffer.Consumer, Runnable {
+
+    /**
+     * Max time the consumer sleeps before checking the ring again
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int SPIN_TRIES = 100;
+    private static final EventLogger LOGGER = EventLogger.getLogger(ThreadRingConsumer.class);
+
+    private final RingBuffer mRing;
+    private final Thread mThread;
+    private volatile boolean mParked;
+    private volatile boolean mStopped;
+    /**
+     * When the thread was started, see {@link System#nanoTime()}
+     */
+    private final long mStartNanos;
+    /**
+     * Time spent delivering events, written by the consumer thread only
+     */
+    private volatile long mBusyNanos;
+
+    ThreadRingConsumer(RingBuffer ring) {
+        mRing = ring;
+        mStartNanos = System.nanoTime();
+        mThread = new Thread(this, "RingEventProcessor-" + ring.getName());
+        mThread.setDaemon(true);
+        ring.attach(this, mThread);
+        mThread.start();
+    }
+
+    @Override
+    public void signal() {
+        if (mParked) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    /**
+     * @return a snapshot of the activity of this consumer
+     */
+    LaneStats getStats() {
+        return new LaneStats(mRing.getName(), mRing.size(), mBusyNanos, System.nanoTime() - mStartNanos);
+    }
+
+    @Override
+    public void stop() {
+        mStopped = true;
+        LockSupport.unpark(mThread);
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        while (!mStopped) {
+            if (mRing.hasPublished()) {
+                long start = System.nanoTime();
+                try {
+                    mRing.drain(mRing.getCapacity());
+                } catch (RuntimeException e) {
+                    // the failed event has already been consumed, the next drain goes on with the following ones
+                    LOGGER.error("failed draining {}", mRing.getName(), e);
+                }
+                mBusyNanos += System.nanoTime() - start;
+                idle = 0;
+            } else if (++idle < SPIN_TRIES) {
+                Thread.yield();
+            } else {
+                mParked = true;
+                if (!mRing.hasPublished()) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                mParked = false;
+            }
+        }
+    }
+}
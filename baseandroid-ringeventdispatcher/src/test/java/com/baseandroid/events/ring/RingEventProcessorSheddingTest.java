@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.OrderingKey;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+import com.baseandroid.events.shedding.LoadShedder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link RingEventProcessor#setLoadShedder(LoadShedder)} gives every lane and the UI ring their own gate.
+ * Events are posted with {@link RingEventProcessor#onPostAll(java.util.Collection)}, so the depth seen by the gates
+ * only depends on the events of the batch.
+ */
+public class RingEventProcessorSheddingTest {
+
+    private static final int HIGH = 2;
+    private static final int LOW = 0;
+
+    private final List<String> mShedQueues = new ArrayList<>();
+    private RingEventProcessor mProcessor;
+
+    @Before
+    public void setUp() {
+        mProcessor = (RingEventProcessor) RingEventProcessor.newInstance(16, 2);
+        mProcessor.setLoadShedder(LoadShedder.newInstance(HIGH, LOW, Event.Priority.NORMAL,
+                new LoadShedder.Overflow() {
+                    @Override
+                    public void onShed(Object event, String queue) {
+                        synchronized (mShedQueues) {
+                            mShedQueues.add(queue);
+                        }
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        mProcessor.onShutdown();
+    }
+
+    @Test
+    public void everyRingHasItsOwnGate() throws InterruptedException {
+        // 2 events of the first lane, the high priority one and 2 of the second lane, 2 UI events
+        CountingListener listener = new CountingListener(7);
+        mProcessor.onRegister(listener);
+
+        mProcessor.onPostAll(Arrays.asList(
+                new LowEvent(0), new LowEvent(0), new LowEvent(0), new LowEvent(0), new HighEvent(0),
+                new LowEvent(1), new LowEvent(1),
+                new LowUIEvent(), new LowUIEvent(), new LowUIEvent()));
+
+        synchronized (mShedQueues) {
+            assertEquals(Arrays.asList("BUS-0", "BUS-0", "UI_BUS"), mShedQueues);
+        }
+        assertTrue("admitted events not delivered", listener.mDelivered.await(5, TimeUnit.SECONDS));
+        assertEquals(4, listener.mLow.get());
+        assertEquals(1, listener.mHigh.get());
+        assertEquals(2, listener.mUI.get());
+    }
+
+    @Test
+    public void nullShedderAdmitsEveryEvent() throws InterruptedException {
+        mProcessor.setLoadShedder(null);
+        CountingListener listener = new CountingListener(4);
+        mProcessor.onRegister(listener);
+
+        mProcessor.onPostAll(Arrays.asList(new LowEvent(0), new LowEvent(0), new LowEvent(0), new LowEvent(0)));
+
+        assertTrue("events not delivered", listener.mDelivered.await(5, TimeUnit.SECONDS));
+        synchronized (mShedQueues) {
+            assertTrue(mShedQueues.isEmpty());
+        }
+    }
+
+    public static class CountingListener {
+        final CountDownLatch mDelivered;
+        final AtomicInteger mLow = new AtomicInteger();
+        final AtomicInteger mHigh = new AtomicInteger();
+        final AtomicInteger mUI = new AtomicInteger();
+
+        CountingListener(int expected) {
+            mDelivered = new CountDownLatch(expected);
+        }
+
+        @RxSubscribe
+        public void onLow(LowEvent event) {
+            mLow.incrementAndGet();
+            mDelivered.countDown();
+        }
+
+        @RxSubscribe
+        public void onHigh(HighEvent event) {
+            mHigh.incrementAndGet();
+            mDelivered.countDown();
+        }
+
+        @RxSubscribe
+        public void onUI(LowUIEvent event) {
+            mUI.incrementAndGet();
+            mDelivered.countDown();
+        }
+    }
+
+    /**
+     * The ordering key picks the lane: key 0 goes to the first one, key 1 to the second one
+     */
+    @Event(type = Event.Type.DATA, priority = Event.Priority.LOW)
+    public static class LowEvent {
+        @OrderingKey
+        public final Integer mLane;
+
+        public LowEvent(int lane) {
+            mLane = lane;
+        }
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.HIGH)
+    public static class HighEvent {
+        @OrderingKey
+        public final Integer mLane;
+
+        public HighEvent(int lane) {
+            mLane = lane;
+        }
+    }
+
+    @Event(type = Event.Type.UI, priority = Event.Priority.LOW)
+    public static class LowUIEvent {
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.ring;
+
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a {@link ThreadRingConsumer} keeps draining its ring after the delivery of an event failed.
+ */
+public class ThreadRingConsumerTest {
+
+    @Test
+    public void laneSurvivesAFailedDelivery() throws InterruptedException {
+        final BlockingQueue<Object> delivered = new LinkedBlockingQueue<>();
+        final RingBuffer ring = new RingBuffer("test", 4, new RingBuffer.EventHandler() {
+            @Override
+            public void onEvent(RingBuffer ring, Object event, long metricsTimestamp, boolean endOfBatch) {
+                if ("fail".equals(event)) {
+                    throw new IllegalStateException("handler invalidated");
+                }
+                delivered.add(event);
+            }
+        });
+        ThreadRingConsumer consumer = new ThreadRingConsumer(ring);
+        // more events than the capacity of the ring: the poster would wait forever for a dead lane
+        Thread poster = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ring.publish("first", 0);
+                ring.publish("fail", 0);
+                for (int i = 0; i < 10; i++) {
+                    ring.publish(i, 0);
+                }
+            }
+        });
+        poster.setDaemon(true);
+        try {
+            poster.start();
+            assertEquals("first", delivered.poll(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, delivered.poll(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            consumer.stop();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx;
+
+import com.baseandroid.events.Event;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs the asynchronous handler invocations of {@link RxEventProcessor}.
+ * <br>
+ * Two execution modes are available:
+ * <ul>
+ * <li>{@link #pooled(int)}: invocations run on a fixed pool of platform threads</li>
+ * <li>{@link #virtualThreads()}: every invocation runs on its own virtual thread, when the runtime supports them
+ * (see {@link #isVirtualThreadsSupported()}), otherwise it falls back to {@link #pooled(int)}</li>
+ * </ul>
+ * <br>
+ * Concurrency can be limited per event type with {@link #setConcurrencyLimit(Class, int)}: invocations exceeding the limit
+ * wait in a per-type queue, without blocking neither the posting thread nor the executor threads.
+ * <p>
+ * <b>NOTE: only events that are not of type {@link Event.Type#UI} are handed to the executor,
+ * UI events are always handled on the UI bus.</b>
+ * </p>
+ */
+public final class HandlerExecutor {
+
+    /**
+     * Default size of the pool used when virtual threads are not available
+     */
+    public static final int DEFAULT_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Factory method of virtual thread executors, resolved once by reflection since it only exists on Java 21+
+     */
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private final ExecutorService mExecutor;
+    private final boolean mVirtual;
+    /**
+     * This map contains in keys the event types with a concurrency limit, in values the limiter of that type
+     */
+    private final ConcurrentMap<Class<?>, TypeLimiter> mLimiters = new ConcurrentHashMap<>();
+    /**
+     * Number of the invocations handed to this executor and not started yet
+     */
+    private final AtomicInteger mQueued = new AtomicInteger();
+
+    private HandlerExecutor(ExecutorService executor, boolean virtual) {
+        mExecutor = executor;
+        mVirtual = virtual;
+    }
+
+    /**
+     * This method return a new {@link HandlerExecutor} running invocations on a fixed pool of platform threads
+     *
+     * @param threads number of threads of the pool
+     * @return
+     */
+    public static HandlerExecutor pooled(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive, was " + threads);
+        }
+        return new HandlerExecutor(Executors.newFixedThreadPool(threads, new HandlerThreadFactory()), false);
+    }
+
+    /**
+     * This method return a new {@link HandlerExecutor} running every invocation on a new virtual thread.
+     * If the runtime doesn't support virtual threads it returns {@code pooled(DEFAULT_POOL_SIZE)}.
+     *
+     * @return
+     */
+    public static HandlerExecutor virtualThreads() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return new HandlerExecutor((ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null), true);
+            } catch (Exception e) {
+                // fall back to platform threads
+            }
+        }
+        return pooled(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @return true if the current runtime is able to run handlers on virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if this executor runs invocations on virtual threads
+     */
+    public boolean isVirtual() {
+        return mVirtual;
+    }
+
+    /**
+     * Limits the number of handler invocations of the given event type running at the same time.
+     * It must be called before posting events of that type.
+     *
+     * @param eventType the class of the event, annotated with {@link Event}
+     * @param maxConcurrent max number of concurrent invocations
+     * @return this executor
+     */
+    public HandlerExecutor setConcurrencyLimit(Class<?> eventType, int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive, was " + maxConcurrent);
+        }
+        mLimiters.put(eventType, new TypeLimiter(maxConcurrent));
+        return this;
+    }
+
+    /**
+     * Runs the invocation of an handler of {@code eventType}, honouring its concurrency limit if any.
+     * After {@link #shutdown()} the invocation runs on the calling thread, as the processor may still hand invocations
+     * to an executor it has just replaced.
+     *
+     * @param eventType the class of the event being handled
+     * @param task      the handler invocation
+     */
+    public void execute(Class<?> eventType, final Runnable task) {
+        mQueued.incrementAndGet();
+        Runnable invocation = new Runnable() {
+            @Override
+            public void run() {
+                mQueued.decrementAndGet();
+                task.run();
+            }
+        };
+        TypeLimiter limiter = mLimiters.get(eventType);
+        if (limiter == null) {
+            try {
+                mExecutor.execute(invocation);
+            } catch (RejectedExecutionException e) {
+                invocation.run();
+            }
+        } else {
+            limiter.mPending.offer(invocation);
+            limiter.drain();
+        }
+    }
+
+    /**
+     * @return the number of invocations waiting for a thread, also the ones over a concurrency limit: it is the depth
+     * watched by the {@link com.baseandroid.events.shedding.LoadShedder} of the processor
+     */
+    public int getQueuedCount() {
+        return mQueued.get();
+    }
+
+    /**
+     * Stops accepting new invocations, the ones already submitted will be completed.
+     * The invocations executed afterwards run on the calling thread.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * This class is used to keep the number of running invocations of an event type under a limit.
+     * Invocations over the limit are queued and submitted as soon as a running one completes.
+     */
+    private final class TypeLimiter {
+        private final int mMaxConcurrent;
+        private final AtomicInteger mRunning = new AtomicInteger();
+        private final Queue<Runnable> mPending = new ConcurrentLinkedQueue<>();
+
+        private TypeLimiter(int maxConcurrent) {
+            mMaxConcurrent = maxConcurrent;
+        }
+
+        private void drain() {
+            while (!mPending.isEmpty()) {
+                int running = mRunning.get();
+                if (running >= mMaxConcurrent) {
+                    // a running invocation will drain the queue when it completes
+                    return;
+                }
+                if (mRunning.compareAndSet(running, running + 1)) {
+                    final Runnable invocation = mPending.poll();
+                    if (invocation == null) {
+                        mRunning.decrementAndGet();
+                    } else {
+                        try {
+                            mExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        invocation.run();
+                                    } finally {
+                                        mRunning.decrementAndGet();
+                                        drain();
+                                    }
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            // shut down: the slot is given back and the invocation runs on the calling thread
+                            mRunning.decrementAndGet();
+                            invocation.run();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This factory creates daemon threads, so that pending handlers don't keep the process alive
+     */
+    private static final class HandlerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RxEventProcessor-handler-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -15,22 +15,44 @@
  */
 package com.baseandroid.events.rx;
 
-import android.util.Log;
-
 import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
 import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.lifecycle.PausedEvents;
+import com.baseandroid.events.log.EventLogger;
+import com.baseandroid.events.log.LogLevel;
+import com.baseandroid.events.metrics.DropReason;
+import com.baseandroid.events.metrics.EventMetrics;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.pool.PooledEvent;
+import com.baseandroid.events.rx.annotations.FilterResults;
+import com.baseandroid.events.rx.annotations.RateLimitedHandlers;
 import com.baseandroid.events.rx.annotations.RxAnnotatedHandlerFinder;
+import com.baseandroid.events.shedding.LoadShedder;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import rx.Observable;
 import rx.Observer;
 import rx.schedulers.Schedulers;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
 
 /**
  * Class managing the events used throughout the application using {@link RxBus} classes.
@@ -48,7 +70,7 @@ import rx.android.schedulers.AndroidSchedulers;
  */
 public final class RxEventProcessor implements EventProcessor {
 
-    private static final String LOG_TAG = RxEventProcessor.class.getSimpleName();
+    private static final EventLogger LOGGER = EventLogger.getLogger(RxEventProcessor.class);
 
     /**
      * This Map contains in keys some autogenerate String and used to identify a subscriber, in values some timestamps.
@@ -59,17 +81,62 @@ public final class RxEventProcessor implements EventProcessor {
      * Bus working on a thread separated by the Android Main Thread
      */
 
-    private final RxBus BUS = new RxBus();
+    private final RxBus<Object, Object> BUS = new RxBus<>();
     /**
      * Bus working on the Android Main Thread
      */
-    private final RxBus UI_BUS = new RxBus(10);
+    private final RxBus<Object, Object> UI_BUS = new RxBus<>(10);
     /**
      * This map contains in keys the objects registered to all Bus, in value the wrapper of object with {@link Observer} interface
      */
     private final Map<Object, ObserverWrapper> wrapperCache = new WeakHashMap();
-
-    private static boolean verbose;
+    /**
+     * This map contains in keys the keys of the objects registered with {@code EventDispatcher.register(o, key)},
+     * in values the wrappers of the objects registered with that key
+     */
+    private final ConcurrentMap<Object, ObserverWrapper[]> mKeyedWrappers = new ConcurrentHashMap<>();
+    /**
+     * This map contains in keys the event classes passed to {@link #observe(Class)}, in values the subjects feeding
+     * their streams
+     */
+    private final ConcurrentMap<Class<?>, Subject<Object, Object>> mTypeStreams = new ConcurrentHashMap<>();
+    /**
+     * This map contains in keys the event classes, in values the number of registered objects having handlers for them:
+     * events that are not of type {@link Event.Type#UI} and have no handlers don't go through {@link #BUS}
+     */
+    private final ConcurrentMap<Class<?>, AtomicInteger> mHandlerCounts = new ConcurrentHashMap<>();
+    /**
+     * Queue of the references to the registered objects collected without being unregistered
+     */
+    private final ReferenceQueue<Object> mCollectedListeners = new ReferenceQueue<>();
+    /**
+     * Number of the registered objects collected without being unregistered
+     */
+    private final AtomicLong mLeakedRegistrations = new AtomicLong();
+    /**
+     * Executor of asynchronous handler invocations, when null handlers are invoked on the posting thread
+     */
+    private volatile HandlerExecutor mHandlerExecutor;
+    /**
+     * The gate of the invocations waiting in {@link #mHandlerExecutor}, null if events are never shed
+     */
+    private volatile LoadShedder.Gate mGate;
+    /**
+     * flag set by {@link #onShutdown()}, events posted afterwards are disregarded
+     */
+    private volatile boolean mShutdown;
+    /**
+     * Envelopes of the events posted on {@link #BUS}, reused post after post; guarded by the lock of {@link #BUS}
+     */
+    private ObservedEvent[] mEnvelopes = new ObservedEvent[4];
+    /**
+     * Number of envelopes in use by the post in progress and by the posts nested in its handlers
+     */
+    private int mEnvelopesInUse;
+    /**
+     * Depth of the posts on {@link #BUS} in progress, greater than 1 when handlers post events
+     */
+    private int mPostDepth;
 
     private RxEventProcessor() {
         // No instances.
@@ -82,18 +149,10 @@ public final class RxEventProcessor implements EventProcessor {
      * Convenience method used for debugging purposes. It will log what kind of event is being posted on what Bus.
      *
      * @param ev The event being posted
-     * @param uiEvent whether it's a UI event or not.
+     * @param type the {@link Event.Type} of the event
      */
-    private static void logEvent(Object ev, boolean uiEvent) {
-        String bus;
-        if (uiEvent) {
-            bus = "UI_BUS";
-        } else {
-            bus = "BUS";
-        }
-        if (verbose) {
-            Log.i(LOG_TAG, "posting " + ev.getClass().getSimpleName() + " of type " + ev.getClass().getAnnotation(Event.class).type() + " on " + bus);
-        }
+    private static void logEvent(Object ev, Event.Type type) {
+        LOGGER.debug("posting {} of type {} on {}", ev.getClass(), type, type == Event.Type.UI ? "UI_BUS" : "BUS");
     }
 
     public static EventProcessor newInstance() {
@@ -105,9 +164,11 @@ public final class RxEventProcessor implements EventProcessor {
      *
      * @param listener
      * @param event
+     * @param acceptedHandlers the handlers whose filters accepted the event, see {@link RxAnnotatedHandlerFinder#acceptedHandlers}
+     * @param rateLimited the rate limited handlers of the listener, null if it has none
      */
-    private static void handleEvent(Object listener, Object event) {
-        RxAnnotatedHandlerFinder.handleEvent(listener, event);
+    private static void handleEvent(Object listener, Object event, long acceptedHandlers, RateLimitedHandlers rateLimited) {
+        RxAnnotatedHandlerFinder.handleEvent(listener, event, acceptedHandlers, rateLimited);
     }
 
     /**
@@ -120,7 +181,7 @@ public final class RxEventProcessor implements EventProcessor {
      */
     private ObserverWrapper getWrapper(Object o) {
         if (!wrapperCache.containsKey(o)) {
-            wrapperCache.put(o, new ObserverWrapper(o));
+            wrapperCache.put(o, new ObserverWrapper(o, this));
         }
         return wrapperCache.get(o);
     }
@@ -141,56 +202,404 @@ public final class RxEventProcessor implements EventProcessor {
      * @return
      */
     private long makeTimestamp() {
-        return new Date().getTime();
+        return System.currentTimeMillis();
     }
 
     @Override
     public void onRegister(Object o) {
+        onRegister(o, null);
+    }
+
+    /**
+     * Registers a given Object on both Buses.
+     * <br>
+     * Events having an {@link com.baseandroid.events.EventKey} are delivered to the objects registered with a key
+     * through an index by key, bypassing the buses: they are not replayed to the objects registered later.
+     *
+     * @param o Object to register on the Buses
+     * @param key the key of the events the object is interested in, null to receive all the events
+     */
+    @Override
+    public void onRegister(Object o, Object key) {
+        purgeCollectedListeners();
         if (o != null) {
             ObserverWrapper observerWrapper = getWrapper(o);
             if(observerWrapper.mSavedTimestamp <= 0){
                 observerWrapper.mSavedTimestamp = makeTimestamp();
             }
+            if (observerWrapper.mKey != null) {
+                removeKeyedWrapper(observerWrapper);
+            }
+            observerWrapper.mKey = key;
+            if (key != null) {
+                addKeyedWrapper(observerWrapper);
+            }
             BUS.register(observerWrapper);
             UI_BUS.register(observerWrapper);
+            countHandlers(observerWrapper, true);
+        }
+    }
+
+    /**
+     * Updates the number of registered objects having handlers for the event types of a subscriber
+     *
+     * @param wrapper
+     * @param registered true when the subscriber is registered, false when it is unregistered
+     */
+    private void countHandlers(ObserverWrapper wrapper, boolean registered) {
+        if (wrapper.mHandlersCounted == registered) {
+            return;
+        }
+        wrapper.mHandlersCounted = registered;
+        for (Class<?> eventType : RxAnnotatedHandlerFinder.subscribedEventTypes(wrapper.mListenerClass)) {
+            AtomicInteger count = mHandlerCounts.get(eventType);
+            if (count == null) {
+                AtomicInteger created = new AtomicInteger();
+                count = mHandlerCounts.putIfAbsent(eventType, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.addAndGet(registered ? 1 : -1);
         }
     }
 
+    /**
+     * @param eventType
+     * @return true if at least one registered object has handlers for the event type
+     */
+    private boolean hasHandlers(Class<?> eventType) {
+        AtomicInteger count = mHandlerCounts.get(eventType);
+        return count != null && count.get() > 0;
+    }
+
     @Override
     public void onUnregister(Object o) {
+        purgeCollectedListeners();
         if (o != null) {
             ObserverWrapper removedObject = removeWrapper(o);
             if (removedObject != null) {
                 BUS.unregister(removedObject);
                 UI_BUS.unregister(removedObject);
+                countHandlers(removedObject, false);
+                if (removedObject.mKey != null) {
+                    removeKeyedWrapper(removedObject);
+                }
+                PausedEvents paused = removedObject.mPausedEvents;
+                if (paused != null) {
+                    paused.clear();
+                }
                 removedObject.clear();
             }
         }
     }
 
+    /**
+     * Removes from the buses and from the key index the wrappers of the objects that have been garbage collected
+     * without being unregistered, so that they stop receiving events right away.
+     * <br>
+     * It is called at every registration and post, it doesn't allocate when no object has been collected.
+     */
+    private void purgeCollectedListeners() {
+        Reference<?> reference;
+        while ((reference = mCollectedListeners.poll()) != null) {
+            ObserverWrapper wrapper = ((ListenerReference) reference).mWrapper;
+            BUS.unregister(wrapper);
+            UI_BUS.unregister(wrapper);
+            countHandlers(wrapper, false);
+            if (wrapper.mKey != null) {
+                removeKeyedWrapper(wrapper);
+            }
+            PausedEvents paused = wrapper.mPausedEvents;
+            if (paused != null) {
+                paused.clear();
+            }
+            wrapper.clear();
+            mLeakedRegistrations.incrementAndGet();
+            LOGGER.warn("{} has been garbage collected without being unregistered", wrapper.mListenerClass);
+        }
+    }
+
+    /**
+     * @return number of the registered objects garbage collected without being unregistered, every one of them is
+     * a missing call to {@code EventDispatcher.unregister(...)}
+     */
+    public long getLeakedRegistrationCount() {
+        return mLeakedRegistrations.get();
+    }
+
+    /**
+     * Pauses a registered Object: the {@link Event.Type#UI} events accepted by its handlers are kept until
+     * {@link #onResume(Object)}.
+     *
+     * @param o the registered Object
+     */
+    @Override
+    public void onPause(Object o) {
+        ObserverWrapper wrapper = o != null ? wrapperCache.get(o) : null;
+        if (wrapper != null && wrapper.mPausedEvents == null) {
+            wrapper.mPausedEvents = new PausedEvents();
+        }
+    }
+
+    /**
+     * Resumes a paused Object, its handlers are invoked on the calling thread for the events kept meanwhile.
+     *
+     * @param o the paused Object
+     */
+    @Override
+    public void onResume(Object o) {
+        ObserverWrapper wrapper = o != null ? wrapperCache.get(o) : null;
+        if (wrapper != null) {
+            PausedEvents paused = wrapper.mPausedEvents;
+            if (paused != null) {
+                wrapper.mPausedEvents = null;
+                paused.resume(wrapper);
+            }
+        }
+    }
+
+    private synchronized void addKeyedWrapper(ObserverWrapper wrapper) {
+        ObserverWrapper[] current = mKeyedWrappers.get(wrapper.mKey);
+        if (current == null) {
+            mKeyedWrappers.put(wrapper.mKey, new ObserverWrapper[]{wrapper});
+        } else {
+            ObserverWrapper[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = wrapper;
+            mKeyedWrappers.put(wrapper.mKey, updated);
+        }
+    }
+
+    private synchronized void removeKeyedWrapper(ObserverWrapper wrapper) {
+        ObserverWrapper[] current = mKeyedWrappers.get(wrapper.mKey);
+        if (current == null) {
+            return;
+        }
+        ObserverWrapper[] updated = new ObserverWrapper[current.length];
+        int size = 0;
+        for (ObserverWrapper registered : current) {
+            if (registered != wrapper) {
+                updated[size++] = registered;
+            }
+        }
+        if (size == 0) {
+            mKeyedWrappers.remove(wrapper.mKey);
+        } else {
+            mKeyedWrappers.put(wrapper.mKey, Arrays.copyOf(updated, size));
+        }
+    }
+
+    /**
+     * Delivers a keyed event to the objects registered with its key, the other objects receive it through the buses.
+     *
+     * @param observedEvent
+     */
+    private void postOnKeyIndex(ObservedEvent observedEvent) {
+        if (observedEvent.mKey != null) {
+            ObserverWrapper[] wrappers = mKeyedWrappers.get(observedEvent.mKey);
+            if (wrappers != null) {
+                for (ObserverWrapper wrapper : wrappers) {
+                    wrapper.deliver(observedEvent);
+                }
+            }
+        }
+    }
+
     @Override
     public void onPost(Object o) {
-        if (verbose) {
-            Log.i(LOG_TAG, "received new object to post: " + o.getClass().getSimpleName());
+        if (mShutdown) {
+            LOGGER.warn("processor shut down, {} will be missed", o != null ? o.getClass() : null);
+            return;
         }
+        purgeCollectedListeners();
         //check if it's an event we recognise
-        if (o != null && o.getClass().isAnnotationPresent(Event.class)) {
-            //put it in the right list and sort the list
-            Event.Type t = o.getClass().getAnnotation(Event.class).type();
-            if (verbose) {
-                Log.i(LOG_TAG, "object " + o.getClass().getSimpleName() + " is an event of type " + t);
+        EventInfo info = o != null ? EventInfo.of(o.getClass()) : null;
+        if (info != null) {
+            Event.Type t = info.getType();
+            LOGGER.debug("received new object to post: {} is an event of type {}", o.getClass(), t);
+            if (!admit(o, info)) {
+                return;
             }
+            emitOnStream(o);
             switch (t) {
                 case UI:
-                    UI_BUS.post(new ObservedEvent(o, makeTimestamp(), t));
+                    // the envelope is kept by the replay buffer of UI_BUS, so it can't be reused
+                    ObservedEvent observedEvent = ObservedEvent.replayable(o, makeTimestamp(), EventMetrics.timestamp(), info);
+                    UI_BUS.post(observedEvent);
+                    postOnKeyIndex(observedEvent);
                     break;
                 default:
-                    BUS.post(new ObservedEvent(o, makeTimestamp(), t));
+                    if (hasHandlers(o.getClass())) {
+                        synchronized (BUS) {
+                            postOnBus(o, info, makeTimestamp(), EventMetrics.timestamp());
+                        }
+                    }
                     break;
             }
+        } else if (o != null) {
+            LOGGER.debug("received new object to post: {} is not an event", o.getClass());
+            EventMetrics.dropped(o.getClass(), DropReason.NOT_AN_EVENT);
         }
     }
 
+    /**
+     * Posts a batch of events holding the monitor of {@link #BUS} once, all the events share the same post timestamp.
+     * Events are delivered in the order of the collection.
+     * <br>
+     * The events are emitted on the streams, see {@link #observe(Class)}, before taking the monitor: observers may
+     * be slow or post events themselves, and must not hold back the posts of the other threads.
+     *
+     * @param events the Objects we want to post as events
+     */
+    @Override
+    public void onPostAll(Collection<?> events) {
+        if (mShutdown) {
+            LOGGER.warn("processor shut down, {} events will be missed", events.size());
+            return;
+        }
+        purgeCollectedListeners();
+        long timestamp = makeTimestamp();
+        long metricsTimestamp = EventMetrics.timestamp();
+        List<Object> accepted = new ArrayList<>(events.size());
+        List<EventInfo> infos = new ArrayList<>(events.size());
+        for (Object o : events) {
+            EventInfo info = o != null ? EventInfo.of(o.getClass()) : null;
+            if (info == null) {
+                if (o != null) {
+                    LOGGER.debug("received new object to post: {} is not an event", o.getClass());
+                    EventMetrics.dropped(o.getClass(), DropReason.NOT_AN_EVENT);
+                }
+            } else if (admit(o, info)) {
+                accepted.add(o);
+                infos.add(info);
+            }
+        }
+        // in the order of the collection, so every stream sees its events in posting order
+        for (Object o : accepted) {
+            emitOnStream(o);
+        }
+        synchronized (BUS) {
+            for (int i = 0; i < accepted.size(); i++) {
+                Object o = accepted.get(i);
+                EventInfo info = infos.get(i);
+                if (info.getType() == Event.Type.UI) {
+                    // the envelope is kept by the replay buffer of UI_BUS, so it can't be reused
+                    ObservedEvent observedEvent = ObservedEvent.replayable(o, timestamp, metricsTimestamp, info);
+                    UI_BUS.post(observedEvent);
+                    postOnKeyIndex(observedEvent);
+                } else if (hasHandlers(o.getClass())) {
+                    postOnBus(o, info, timestamp, metricsTimestamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a hot stream of the events of the given class posted from now on.
+     * <br>
+     * Events are emitted as they are, on the posting thread, before being delivered to the handlers: there are no
+     * envelopes, no reflection and no subscriber filtering, so the stream can be composed with any operator.
+     * Events of subclasses of {@code eventType} are not emitted.
+     * The stream completes when the processor is shut down.
+     * <p>
+     * <b>NOTE: save points, keys and pauses don't apply to the streams; a {@link PooledEvent} can be recycled once
+     * {@code onNext} returns, operators switching thread must copy it.</b>
+     * </p>
+     *
+     * @param eventType the class of the events, annotated with {@link Event}
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> observe(Class<T> eventType) {
+        if (EventInfo.of(eventType) == null) {
+            throw new IllegalArgumentException(eventType.getName() + " is not annotated with @Event");
+        }
+        Subject<Object, Object> stream = mTypeStreams.get(eventType);
+        if (stream == null) {
+            Subject<Object, Object> created = PublishSubject.create().toSerialized();
+            stream = mTypeStreams.putIfAbsent(eventType, created);
+            if (stream == null) {
+                stream = created;
+            }
+        }
+        return (Observable<T>) stream.asObservable();
+    }
+
+    /**
+     * Emits an event on the stream of its class, if someone observes it
+     *
+     * @param event
+     */
+    private void emitOnStream(Object event) {
+        if (!mTypeStreams.isEmpty()) {
+            Subject<Object, Object> stream = mTypeStreams.get(event.getClass());
+            if (stream != null && stream.hasObservers()) {
+                stream.onNext(event);
+            }
+        }
+    }
+
+    /**
+     * Posts an event on {@link #BUS} in a reused envelope.
+     * <br>
+     * Events posted by handlers are delivered by Rx after the handler returns, so envelopes are released
+     * only when the outermost post completes.
+     * <br>
+     * The caller must hold the monitor of {@link #BUS}.
+     *
+     * @param event
+     * @param info
+     * @param timestamp see {@link #makeTimestamp()}
+     * @param metricsTimestamp see {@link EventMetrics#timestamp()}
+     */
+    private void postOnBus(Object event, EventInfo info, long timestamp, long metricsTimestamp) {
+        if (mEnvelopesInUse == mEnvelopes.length) {
+            mEnvelopes = Arrays.copyOf(mEnvelopes, mEnvelopes.length * 2);
+        }
+        ObservedEvent envelope = mEnvelopes[mEnvelopesInUse];
+        if (envelope == null) {
+            envelope = new ObservedEvent();
+            envelope.mFilterResults = new FilterResults();
+            mEnvelopes[mEnvelopesInUse] = envelope;
+        }
+        mEnvelopesInUse++;
+        envelope.set(event, timestamp, metricsTimestamp, info);
+
+        mPostDepth++;
+        try {
+            BUS.post(envelope);
+            postOnKeyIndex(envelope);
+        } finally {
+            if (--mPostDepth == 0) {
+                for (int i = 0; i < mEnvelopesInUse; i++) {
+                    mEnvelopes[i].clear();
+                }
+                mEnvelopesInUse = 0;
+            }
+        }
+    }
+
+    /**
+     * Unregisters every object still registered, completes the streams of {@link #observe(Class)}, shuts the
+     * {@link HandlerExecutor} down and forgets the save points.
+     * Events posted afterwards are disregarded.
+     */
+    @Override
+    public void onShutdown() {
+        mShutdown = true;
+        for (Object o : new ArrayList<>(wrapperCache.keySet())) {
+            onUnregister(o);
+        }
+        mKeyedWrappers.clear();
+        mSavePoints.clear();
+        for (Subject<Object, Object> stream : mTypeStreams.values()) {
+            stream.onCompleted();
+        }
+        mTypeStreams.clear();
+        setHandlerExecutor(null);
+        LOGGER.info("processor shut down");
+    }
+
     @Override
     public String onSavePoint(Object object) {
         String key = null;
@@ -208,7 +617,7 @@ public final class RxEventProcessor implements EventProcessor {
 
             // assembling the final key
             key = prefix + randomSeed + timestamp;
-            mSavePoints.put(key, new Date().getTime());
+            mSavePoints.put(key, makeTimestamp());
         }
         return key;
     }
@@ -229,50 +638,212 @@ public final class RxEventProcessor implements EventProcessor {
     /**
      * This class is used to wrap an object annotated with {@link Event} annotation.
      * This wrapper app information about the save point used with {@code EventDispatcher.savePoint} and {@code EventDispatcher.loadPoint}
+     * <br>
+     * Envelopes of {@link #BUS} are reused and hold the event strongly until cleared,
+     * envelopes of {@link #UI_BUS} are retained by its replay buffer and hold the event weakly.
      */
     private static final class ObservedEvent {
         /**
-         * The reference of the event
+         * The event, when the envelope is reused
+         */
+        private Object mEvent;
+        /**
+         * The reference of the event, when the envelope is replayable
          */
-        private final WeakReference mEvent;
+        private WeakReference<Object> mEventRef;
+        /**
+         * The class of the event, still known after the event has been garbage collected
+         */
+        private Class<?> mEventClass;
         /**
          * When the event was posted
          */
-        private final long mEventPostTimestamp;
+        private long mEventPostTimestamp;
         /**
          * The {@link Event.Type} of the event
          */
-        private final Event.Type mEventType;
+        private Event.Type mEventType;
+        /**
+         * The key of the event, null if its type has no {@link com.baseandroid.events.EventKey} or the key is null
+         */
+        private Object mKey;
+        /**
+         * The results of the filters of the handlers for the event, shared by the subscribers;
+         * null for replayable envelopes, whose filters are evaluated for every subscriber
+         */
+        private FilterResults mFilterResults;
+        /**
+         * The generation of the event when it was posted, if it is a {@link PooledEvent}.
+         * Replayed events recycled meanwhile are not delivered.
+         */
+        private int mGeneration;
+        /**
+         * When the event expires, see {@link EventInfo#expiration()}
+         */
+        private long mExpiration;
+        /**
+         * Reports the outcome of the event to the metrics once for all the subscribers, null if metrics are disabled
+         */
+        private MetricsReport mReport;
 
         /**
-         * This method is used to instantiate a new {@link ObservedEvent}
+         * This method is used to instantiate a new {@link ObservedEvent} holding the event weakly
          * @param event the wrapped event
          * @param eventPostTimestamp The timestamp of when the event was posted
-         * @param eventType the wrapped event type
+         * @param metricsTimestamp The timestamp of when the event was posted, used by metrics
+         * @param info the {@link Event} metadata of the wrapped event
+         * @return
          */
-        public ObservedEvent(Object event, long eventPostTimestamp, Event.Type eventType) {
-            this.mEvent = new WeakReference(event);
+        static ObservedEvent replayable(Object event, long eventPostTimestamp, long metricsTimestamp, EventInfo info) {
+            ObservedEvent observedEvent = new ObservedEvent();
+            observedEvent.set(event, eventPostTimestamp, metricsTimestamp, info);
+            observedEvent.mEvent = null;
+            observedEvent.mEventRef = new WeakReference<>(event);
+            return observedEvent;
+        }
+
+        void set(Object event, long eventPostTimestamp, long metricsTimestamp, EventInfo info) {
+            this.mEvent = event;
+            this.mEventClass = event.getClass();
             this.mEventPostTimestamp = eventPostTimestamp;
-            this.mEventType = eventType;
+            this.mEventType = info.getType();
+            this.mKey = info.isKeyed() ? info.getKey(event) : null;
+            this.mGeneration = event instanceof PooledEvent ? ((PooledEvent) event).getGeneration() : 0;
+            this.mExpiration = info.expiration();
+            this.mReport = EventMetrics.isEnabled() ? new MetricsReport(mEventClass, metricsTimestamp) : null;
+        }
+
+        Object getEvent() {
+            return mEventRef != null ? mEventRef.get() : mEvent;
+        }
+
+        void clear() {
+            mEvent = null;
+            mEventClass = null;
+            mKey = null;
+            mReport = null;
+            mFilterResults.clear();
+        }
+    }
+
+    /**
+     * This method is used to deliver an event to a listener.
+     * Events that are not of type {@link Event.Type#UI} are handed to the {@link HandlerExecutor}, if any,
+     * and dropped if they expire while waiting for a thread.
+     * The caller must hold a reference to pooled events, it is released once the handler has been invoked.
+     *
+     * @param listener
+     * @param event
+     * @param eventType
+     * @param report reports the event to the metrics once for all the listeners, null if it has already been reported
+     *               or metrics are disabled
+     * @param expiration when the event expires, see {@link EventInfo#expiration()}
+     * @param acceptedHandlers the handlers whose filters accepted the event, see {@link RxAnnotatedHandlerFinder#acceptedHandlers}
+     * @param rateLimited the rate limited handlers of the listener, null if it has none
+     */
+    private void dispatchEvent(final Object listener, final Object event, Event.Type eventType, final MetricsReport report,
+                               final long expiration, final long acceptedHandlers, final RateLimitedHandlers rateLimited) {
+        HandlerExecutor executor = mHandlerExecutor;
+        if (executor == null || eventType == Event.Type.UI) {
+            try {
+                MetricsReport.delivered(report);
+                handleEvent(listener, event, acceptedHandlers, rateLimited);
+            } finally {
+                EventPool.releaseIfPooled(event);
+            }
+        } else {
+            executor.execute(event.getClass(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (EventInfo.isExpired(expiration)) {
+                            MetricsReport.dropped(report, DropReason.EXPIRED);
+                            return;
+                        }
+                        MetricsReport.delivered(report);
+                        handleEvent(listener, event, acceptedHandlers, rateLimited);
+                    } finally {
+                        EventPool.releaseIfPooled(event);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Reports an event to the metrics once, whatever the number of subscribers receiving it, like the processors with
+     * queues do when the event is dequeued: the first subscriber handling the event reports it as delivered, with the
+     * latency until its handler starts, or the first subscriber missing it reports it as dropped.
+     * <br>
+     * It outlives the envelope of the event when the handlers run on the {@link HandlerExecutor}.
+     */
+    private static final class MetricsReport extends AtomicBoolean {
+        private static final long serialVersionUID = 1L;
+
+        private final Class<?> mEventClass;
+        private final long mMetricsTimestamp;
+
+        MetricsReport(Class<?> eventClass, long metricsTimestamp) {
+            mEventClass = eventClass;
+            mMetricsTimestamp = metricsTimestamp;
+        }
+
+        static void delivered(MetricsReport report) {
+            if (report != null && report.compareAndSet(false, true)) {
+                EventMetrics.delivered(report.mEventClass, report.mMetricsTimestamp);
+            }
+        }
+
+        static void dropped(MetricsReport report, DropReason reason) {
+            if (report != null && report.compareAndSet(false, true)) {
+                EventMetrics.dropped(report.mEventClass, reason);
+            }
         }
     }
 
     /**
      * This class is used to wrap bus subscribers and make them compatible with {@link Observer} interface
      */
-    private static final class ObserverWrapper implements Observer {
+    private static final class ObserverWrapper implements Observer, PausedEvents.Delivery {
 
         /**
          * The reference of the subscriber
          */
-        private final WeakReference mWrapped;
+        private final ListenerReference mWrapped;
+        /**
+         * The class of the subscriber, reported if it is collected without being unregistered
+         */
+        private final Class<?> mListenerClass;
+        /**
+         * The processor delivering events to the subscriber
+         */
+        private final RxEventProcessor mProcessor;
         /**
          * The timestamp saved by method {@code EventDispatcher.savePoint}
          */
         private long mSavedTimestamp;
+        /**
+         * The key passed to {@code EventDispatcher.register(o, key)}, null if the subscriber receives all the events
+         */
+        private Object mKey;
+        /**
+         * The rate limited handlers of the subscriber, null if it has none
+         */
+        private final RateLimitedHandlers mRateLimited;
+        /**
+         * True while the handlers of the subscriber are counted in {@link #mHandlerCounts}
+         */
+        private boolean mHandlersCounted;
+        /**
+         * The UI events kept while the subscriber is paused, null if it is not paused
+         */
+        private volatile PausedEvents mPausedEvents;
 
-        public ObserverWrapper(Object wrapped) {
-            mWrapped = new WeakReference(wrapped);
+        public ObserverWrapper(Object wrapped, RxEventProcessor processor) {
+            mWrapped = new ListenerReference(wrapped, processor.mCollectedListeners, this);
+            mListenerClass = wrapped.getClass();
+            mProcessor = processor;
+            mRateLimited = RateLimitedHandlers.forListener(wrapped);
         }
 
         @Override
@@ -287,15 +858,29 @@ public final class RxEventProcessor implements EventProcessor {
 
         @Override
         public void onNext(Object event) {
+            if (event instanceof ObservedEvent) {
+                ObservedEvent observedEvent = (ObservedEvent) event;
+                // keyed subscribers receive keyed events from the key index
+                if (mKey == null || observedEvent.mKey == null) {
+                    deliver(observedEvent);
+                }
+            }
+        }
+
+        /**
+         * Delivers an event to the subscriber, unless it is older than its save point
+         *
+         * @param observedEvent
+         */
+        void deliver(ObservedEvent observedEvent) {
             if (mWrapped != null) {
                 Object wrappedRefObject = mWrapped.get();
-                if (wrappedRefObject != null && event instanceof ObservedEvent) {
-                    ObservedEvent observedEvent = (ObservedEvent) event;
+                if (wrappedRefObject != null) {
                     boolean shouldHandleEvent = true;
 
                     // manage timestamp of ObservedEvent
                     long eventTimestamp = observedEvent.mEventPostTimestamp;
-                    Object eventToHandle = observedEvent.mEvent.get();
+                    Object eventToHandle = observedEvent.getEvent();
                     Event.Type eventType = observedEvent.mEventType;
 
                     // if the event post timestamp is before the last saved timestamp of the subscriber
@@ -304,22 +889,142 @@ public final class RxEventProcessor implements EventProcessor {
                         shouldHandleEvent = eventTimestamp >= mSavedTimestamp;
                     }
 
+                    // replayed events, or events posted before a long handler, can be over their time to live
+                    if (shouldHandleEvent && EventInfo.isExpired(observedEvent.mExpiration)) {
+                        MetricsReport.dropped(observedEvent.mReport, DropReason.EXPIRED);
+                        return;
+                    }
+
+                    // pooled events are delivered only if they haven't been recycled, holding a reference meanwhile
+                    if (shouldHandleEvent && eventToHandle instanceof PooledEvent
+                            && !((PooledEvent) eventToHandle).tryRetain(observedEvent.mGeneration)) {
+                        eventToHandle = null;
+                    }
+
                     if (shouldHandleEvent && eventToHandle != null) {
-                        RxEventProcessor.logEvent(eventToHandle, eventType == Event.Type.UI);
-                        RxEventProcessor.handleEvent(wrappedRefObject, eventToHandle);
+                        // filters run here, before the event is handed to another thread
+                        long acceptedHandlers = RxAnnotatedHandlerFinder.acceptedHandlers(wrappedRefObject, eventToHandle,
+                                observedEvent.mFilterResults);
+                        PausedEvents paused = mPausedEvents;
+                        if (acceptedHandlers != 0 && paused != null && eventType == Event.Type.UI
+                                && paused.offer(null, eventToHandle, EventInfo.of(observedEvent.mEventClass),
+                                observedEvent.mExpiration)) {
+                            // the reference taken above is owned by the paused events, until the subscriber is resumed
+                            MetricsReport.delivered(observedEvent.mReport);
+                            return;
+                        }
+                        if (acceptedHandlers != 0) {
+                            RxEventProcessor.logEvent(eventToHandle, eventType);
+                            mProcessor.dispatchEvent(wrappedRefObject, eventToHandle, eventType,
+                                    observedEvent.mReport, observedEvent.mExpiration, acceptedHandlers,
+                                    mRateLimited);
+                        } else {
+                            EventPool.releaseIfPooled(eventToHandle);
+                        }
+                    } else if (shouldHandleEvent) {
+                        MetricsReport.dropped(observedEvent.mReport, DropReason.COLLECTED);
                     }
                 }
             }
         }
 
+        /**
+         * Delivers an event kept while the subscriber was paused, it has been reported to the metrics when it was kept
+         *
+         * @param target unused
+         * @param event
+         */
+        @Override
+        public void deliver(Object target, Object event) {
+            Object wrappedRefObject = mWrapped.get();
+            if (wrappedRefObject == null) {
+                // the event has been reported as delivered when it was kept
+                EventPool.releaseIfPooled(event);
+                return;
+            }
+            long acceptedHandlers = RxAnnotatedHandlerFinder.acceptedHandlers(wrappedRefObject, event, null);
+            if (acceptedHandlers != 0) {
+                RxEventProcessor.logEvent(event, Event.Type.UI);
+                mProcessor.dispatchEvent(wrappedRefObject, event, Event.Type.UI, null, EventInfo.NO_EXPIRATION,
+                        acceptedHandlers, mRateLimited);
+            } else {
+                EventPool.releaseIfPooled(event);
+            }
+        }
+
         public void clear() {
             if (mWrapped != null) {
                 mWrapped.clear();
             }
+            if (mRateLimited != null) {
+                mRateLimited.dispose();
+            }
+        }
+    }
+
+    /**
+     * This class is the weak reference of a subscriber, enqueued when the subscriber is collected:
+     * references cleared by {@code unregister(...)} are not enqueued.
+     */
+    private static final class ListenerReference extends WeakReference<Object> {
+
+        /**
+         * The wrapper of the subscriber, to be removed from the buses when the subscriber is collected
+         */
+        private final ObserverWrapper mWrapper;
+
+        ListenerReference(Object listener, ReferenceQueue<Object> queue, ObserverWrapper wrapper) {
+            super(listener, queue);
+            mWrapper = wrapper;
         }
     }
 
+    /**
+     * Enables the logging of every event posted and delivered, it sets the level of {@link EventLogger}
+     * to {@link LogLevel#DEBUG} (or back to {@link LogLevel#INFO}).
+     *
+     * @param verbose
+     */
     public void setVerbose(boolean verbose) {
-        this.verbose = verbose;
+        EventLogger.setLevel(verbose ? LogLevel.DEBUG : LogLevel.INFO);
+    }
+
+    /**
+     * Setup the {@link HandlerExecutor} running the handlers of events that are not of type {@link Event.Type#UI}.
+     * Passing null restores the default behaviour, handlers are invoked on the posting thread.
+     * <p>
+     * The previous executor, if any, is shut down.
+     * </p>
+     *
+     * @param executor
+     */
+    public void setHandlerExecutor(HandlerExecutor executor) {
+        HandlerExecutor previous = mHandlerExecutor;
+        mHandlerExecutor = executor;
+        if (previous != null && previous != executor) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Sheds the less important events posted while too many handler invocations wait in the {@link HandlerExecutor}.
+     * Without executor, and for <code>UI</code> events, handlers run on the posting thread and nothing is shed.
+     *
+     * @param shedder null to never shed events
+     */
+    public void setLoadShedder(LoadShedder shedder) {
+        mGate = shedder != null ? shedder.newGate(HandlerExecutor.class.getSimpleName()) : null;
+    }
+
+    /**
+     * @param event
+     * @param info the metadata of the event
+     * @return false if the event has been shed
+     */
+    private boolean admit(Object event, EventInfo info) {
+        LoadShedder.Gate gate = mGate;
+        HandlerExecutor executor = mHandlerExecutor;
+        return gate == null || executor == null || info.getType() == Event.Type.UI
+                || gate.admit(event, info, executor.getQueuedCount());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+/**
+ * A guard declared on a handler with {@link RxSubscribe#filter()}: the handler is invoked only for the events
+ * accepted by the filter.
+ * <br>
+ * Filters run before the handler is dispatched, so rejected events cost neither the reflective invocation nor a hop to
+ * another thread. Every filter class is instantiated once and shared by all the handlers declaring it,
+ * and its result for an event is computed once per post, whatever the number of handlers using it:
+ * filters must be stateless, and cheap.
+ * <pre>{@code
+ *     public class FailedOnly implements EventFilter<UploadChanged> {
+ *         public boolean accept(UploadChanged event) {
+ *             return event.status == Status.FAILED;
+ *         }
+ *     }
+ *
+ *     @RxSubscribe(filter = FailedOnly.class)
+ *     public void onUploadFailed(UploadChanged event) {
+ *         ...
+ *     }
+ * }</pre>
+ * Implementations must have a public constructor without arguments.
+ */
+public interface EventFilter<T> {
+
+    /**
+     * @param event
+     * @return true if the handler must be invoked for the event
+     */
+    boolean accept(T event);
+
+    /**
+     * The default of {@link RxSubscribe#filter()}: the method receives all the events of its type, and no filter is
+     * evaluated for them
+     */
+    final class AcceptAll implements EventFilter<Object> {
+
+        private AcceptAll() {
+            // never instantiated, see RxAnnotatedHandlerFinder.findFilter(...)
+        }
+
+        @Override
+        public boolean accept(Object event) {
+            return true;
+        }
+    }
+}
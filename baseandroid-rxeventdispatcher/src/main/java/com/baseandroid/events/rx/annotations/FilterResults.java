@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import com.baseandroid.events.log.EventLogger;
+
+import java.util.Arrays;
+
+/**
+ * The results of the {@link EventFilter}s evaluated for a single posted event, so that handlers declaring the same
+ * filter share its result.
+ * <br>
+ * Processors keep an instance per event being delivered and {@link #clear()} it before reusing it for another event.
+ */
+public final class FilterResults {
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(FilterResults.class);
+
+    private EventFilter<?>[] mFilters = new EventFilter<?>[4];
+    private boolean[] mResults = new boolean[4];
+    private int mSize;
+
+    /**
+     * @param filter
+     * @param event
+     * @return the result of the filter for the event, evaluated only the first time
+     */
+    synchronized boolean accept(EventFilter<?> filter, Object event) {
+        for (int i = 0; i < mSize; i++) {
+            if (mFilters[i] == filter) {
+                return mResults[i];
+            }
+        }
+        boolean result = evaluate(filter, event);
+        if (mSize == mFilters.length) {
+            mFilters = Arrays.copyOf(mFilters, mSize * 2);
+            mResults = Arrays.copyOf(mResults, mSize * 2);
+        }
+        mFilters[mSize] = filter;
+        mResults[mSize] = result;
+        mSize++;
+        return result;
+    }
+
+    /**
+     * Forgets the results, before evaluating the filters for another event
+     */
+    public synchronized void clear() {
+        Arrays.fill(mFilters, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * Evaluates a filter, a failing filter rejects the event.
+     *
+     * @param filter
+     * @param event
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static boolean evaluate(EventFilter<?> filter, Object event) {
+        try {
+            // a filter is only declared on the handlers of the events it accepts
+            return ((EventFilter<Object>) filter).accept(event);
+        } catch (RuntimeException e) {
+            LOGGER.error("{} failed filtering the event", filter.getClass(), e);
+            return false;
+        }
+    }
+}
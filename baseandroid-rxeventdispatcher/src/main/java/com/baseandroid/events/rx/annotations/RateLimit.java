@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+
+/**
+ * The rate limiting operators that can be declared with {@link RxSubscribe}, {@link #BATCH} collects the events in lists
+ * for the methods receiving a {@link List} of events.
+ */
+enum RateLimit {
+
+    DEBOUNCE {
+        @Override
+        Observable<Object> apply(Observable<Object> events, long millis, int maxSize, Scheduler scheduler) {
+            return events.debounce(millis, TimeUnit.MILLISECONDS, scheduler);
+        }
+    },
+    THROTTLE_FIRST {
+        @Override
+        Observable<Object> apply(Observable<Object> events, long millis, int maxSize, Scheduler scheduler) {
+            return events.throttleFirst(millis, TimeUnit.MILLISECONDS, scheduler);
+        }
+    },
+    THROTTLE_LAST {
+        @Override
+        Observable<Object> apply(Observable<Object> events, long millis, int maxSize, Scheduler scheduler) {
+            return events.throttleLast(millis, TimeUnit.MILLISECONDS, scheduler);
+        }
+    },
+    SAMPLE {
+        @Override
+        Observable<Object> apply(Observable<Object> events, long millis, int maxSize, Scheduler scheduler) {
+            return events.sample(millis, TimeUnit.MILLISECONDS, scheduler);
+        }
+    },
+    BATCH {
+        @Override
+        @SuppressWarnings("unchecked")
+        Observable<Object> apply(Observable<Object> events, long millis, int maxSize, Scheduler scheduler) {
+            Observable<List<Object>> batches = maxSize > 0
+                    ? events.buffer(millis, TimeUnit.MILLISECONDS, maxSize, scheduler)
+                    : events.buffer(millis, TimeUnit.MILLISECONDS, scheduler);
+            // the timer emits empty lists when no event has been received
+            return (Observable<Object>) (Observable<?>) batches.filter(new Func1<List<Object>, Boolean>() {
+                @Override
+                public Boolean call(List<Object> batch) {
+                    return !batch.isEmpty();
+                }
+            });
+        }
+    };
+
+    /**
+     * @param events
+     * @param millis
+     * @param maxSize max number of events of a batch, 0 for no limit, used by {@link #BATCH} only
+     * @param scheduler
+     * @return the rate limited events
+     */
+    abstract Observable<Object> apply(Observable<Object> events, long millis, int maxSize, Scheduler scheduler);
+}
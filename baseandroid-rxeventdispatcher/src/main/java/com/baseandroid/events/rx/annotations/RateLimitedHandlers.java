@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The rate limited subscriber methods of a listener, see {@link RxSubscribe#debounce()}.
+ * <br>
+ * An instance must be kept for each registered listener, since every listener has its own windows, and
+ * {@link #dispose()}d when the listener is unregistered.
+ */
+public final class RateLimitedHandlers {
+
+    private final Map<RxSubscriberMethod, RateLimitedInvocation> mInvocations;
+
+    private RateLimitedHandlers(Map<RxSubscriberMethod, RateLimitedInvocation> invocations) {
+        mInvocations = invocations;
+    }
+
+    /**
+     * @param listener
+     * @return the rate limited handlers of the listener, null if it doesn't declare any
+     */
+    public static RateLimitedHandlers forListener(Object listener) {
+        Map<RxSubscriberMethod, RateLimitedInvocation> invocations = null;
+        for (RxSubscriberMethod[] methods : RxAnnotatedHandlerFinder.findSubscriberMethods(listener.getClass()).values()) {
+            for (RxSubscriberMethod method : methods) {
+                if (method.rateLimit != null) {
+                    if (invocations == null) {
+                        invocations = new IdentityHashMap<RxSubscriberMethod, RateLimitedInvocation>();
+                    }
+                    invocations.put(method, new RateLimitedInvocation(listener, method));
+                }
+            }
+        }
+        return invocations != null ? new RateLimitedHandlers(invocations) : null;
+    }
+
+    /**
+     * @param method
+     * @param event
+     * @return false if the method is not rate limited and must be invoked directly
+     */
+    boolean offer(RxSubscriberMethod method, Object event) {
+        RateLimitedInvocation invocation = mInvocations.get(method);
+        if (invocation == null) {
+            return false;
+        }
+        invocation.offer(event);
+        return true;
+    }
+
+    /**
+     * Drops the pending events, the rate limited handlers won't be invoked anymore
+     */
+    public void dispose() {
+        for (RateLimitedInvocation invocation : mInvocations.values()) {
+            invocation.dispose();
+        }
+    }
+}
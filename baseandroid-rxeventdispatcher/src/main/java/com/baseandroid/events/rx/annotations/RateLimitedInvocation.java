@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.log.EventLogger;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * The invocations of a rate limited subscriber method on a listener: the events accepted by the method go through
+ * the operator declared with {@link RxSubscribe} before the method is invoked.
+ * <br>
+ * The listener is weakly referenced, the invocation disposes itself once the listener has been collected.
+ * When the method falls behind, the rate limited operators keep only the latest event while batches are buffered,
+ * so that no accepted event is lost.
+ */
+final class RateLimitedInvocation {
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(RateLimitedInvocation.class);
+
+    private final WeakReference<Object> mTarget;
+    private final RxSubscriberMethod mMethod;
+    private final Subject<Object, Object> mEvents = PublishSubject.create().toSerialized();
+    private final Subscription mSubscription;
+
+    RateLimitedInvocation(Object target, RxSubscriberMethod method) {
+        mTarget = new WeakReference<Object>(target);
+        mMethod = method;
+        Observable<Object> limited = method.rateLimit
+                .apply(mEvents, method.rateLimitMillis, method.batchMaxSize, Schedulers.computation());
+        // the other operators already drop events by design, a batch instead holds all the events since the previous one
+        limited = method.rateLimit == RateLimit.BATCH ? limited.onBackpressureBuffer() : limited.onBackpressureLatest();
+        EventInfo info = EventInfo.of(method.eventType);
+        if (info != null && info.getType() == Event.Type.UI) {
+            limited = limited.observeOn(AndroidSchedulers.mainThread());
+        }
+        mSubscription = limited.subscribe(new Action1<Object>() {
+            @Override
+            public void call(Object event) {
+                invoke(event);
+            }
+        });
+    }
+
+    /**
+     * Hands an event accepted by the method to the operator, batch methods receive it in a list
+     *
+     * @param event
+     */
+    void offer(Object event) {
+        mEvents.onNext(event);
+    }
+
+    /**
+     * Drops the pending events, the method won't be invoked anymore
+     */
+    void dispose() {
+        mSubscription.unsubscribe();
+    }
+
+    private void invoke(Object event) {
+        Object target = mTarget.get();
+        if (target == null) {
+            dispose();
+            return;
+        }
+        try {
+            mMethod.invoke(target, event);
+        } catch (InvocationTargetException e) {
+            LOGGER.error("{} failed handling the event", mMethod, e.getCause());
+        }
+    }
+}
@@ -15,14 +15,16 @@
  */
 package com.baseandroid.events.rx.annotations;
 
-import android.util.Log;
+import com.baseandroid.events.log.EventLogger;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -45,7 +47,18 @@ public final class RxAnnotatedHandlerFinder {
     /** Cache event bus subscriber methods for each class. */
     private static final ConcurrentMap<Class<?>, Map<Class<?>, Set<Method>>> SUBSCRIBERS_CACHE =
             new ConcurrentHashMap<Class<?>, Map<Class<?>, Set<Method>>>();
-    private static final String LOG_TAG = RxAnnotatedHandlerFinder.class.getSimpleName();
+
+    /** Cache event bus subscriber methods for each class, by event type, as arrays iterated without allocations. */
+    private static final ConcurrentMap<Class<?>, Map<Class<?>, RxSubscriberMethod[]>> SUBSCRIBER_METHODS_CACHE =
+            new ConcurrentHashMap<Class<?>, Map<Class<?>, RxSubscriberMethod[]>>();
+
+    /** Cache the filters declared by subscriber methods, a single instance for each filter class. */
+    private static final ConcurrentMap<Class<?>, EventFilter<?>> FILTERS_CACHE =
+            new ConcurrentHashMap<Class<?>, EventFilter<?>>();
+
+    /** Max number of subscriber methods of a class for the same event type, see {@link #acceptedHandlers}. */
+    private static final int MAX_SUBSCRIBERS_PER_EVENT = 64;
+    private static final EventLogger LOGGER = EventLogger.getLogger(RxAnnotatedHandlerFinder.class);
 
     private static void loadAnnotatedProducerMethods(Class<?> listenerClass,
             Map<Class<?>, Method> producerMethods) {
@@ -80,7 +93,7 @@ public final class RxAnnotatedHandlerFinder {
                             + parameterTypes.length + " arguments.  Methods must require a single argument.");
                 }
 
-                Class<?> eventType = parameterTypes[0];
+                Class<?> eventType = subscribedEventType(method);
                 if (eventType.isInterface()) {
                     throw new IllegalArgumentException("Method " + method + " has @Subscribe annotation on " + eventType
                             + " which is an interface.  Subscription must be on a concrete class type.");
@@ -133,6 +146,26 @@ public final class RxAnnotatedHandlerFinder {
         SUBSCRIBERS_CACHE.put(listenerClass, subscriberMethods);
     }
 
+    /**
+     * @param method a subscriber method
+     * @return the type of the events received by the method, the element type for batch methods receiving a {@link List}
+     */
+    static Class<?> subscribedEventType(Method method) {
+        Class<?> parameterType = method.getParameterTypes()[0];
+        if (parameterType != List.class) {
+            return parameterType;
+        }
+        Type listType = method.getGenericParameterTypes()[0];
+        if (listType instanceof ParameterizedType) {
+            Type elementType = ((ParameterizedType) listType).getActualTypeArguments()[0];
+            if (elementType instanceof Class) {
+                return (Class<?>) elementType;
+            }
+        }
+        throw new IllegalArgumentException("Method " + method + " has @Subscribe annotation on a List, "
+                + "which must declare the class of its events, as in List<MyEvent>.");
+    }
+
     /** This implementation finds all methods marked with a {@link RxProduce} annotation. */
     static Map<Class<?>, RxEventProducer> findAllProducers(Object listener) {
         final Class<?> listenerClass = listener.getClass();
@@ -153,20 +186,73 @@ public final class RxAnnotatedHandlerFinder {
         return handlersInMethod;
     }
 
+    /** This implementation finds all methods marked with a {@link RxSubscribe} annotation, by event type. */
+    static Map<Class<?>, RxSubscriberMethod[]> findSubscriberMethods(Class<?> listenerClass) {
+        Map<Class<?>, RxSubscriberMethod[]> subscriberMethods = SUBSCRIBER_METHODS_CACHE.get(listenerClass);
+        if (null == subscriberMethods) {
+            Map<Class<?>, Set<Method>> methods = SUBSCRIBERS_CACHE.get(listenerClass);
+            if (null == methods) {
+                methods = new HashMap<Class<?>, Set<Method>>();
+                loadAnnotatedSubscriberMethods(listenerClass, methods);
+            }
+            subscriberMethods = new HashMap<Class<?>, RxSubscriberMethod[]>();
+            for (Map.Entry<Class<?>, Set<Method>> e : methods.entrySet()) {
+                if (e.getValue().size() > MAX_SUBSCRIBERS_PER_EVENT) {
+                    throw new IllegalArgumentException(listenerClass + " has more than " + MAX_SUBSCRIBERS_PER_EVENT
+                            + " @Subscribe methods for " + e.getKey());
+                }
+                RxSubscriberMethod[] array = new RxSubscriberMethod[e.getValue().size()];
+                int i = 0;
+                for (Method m : e.getValue()) {
+                    array[i++] = new RxSubscriberMethod(m);
+                }
+                subscriberMethods.put(e.getKey(), array);
+            }
+            SUBSCRIBER_METHODS_CACHE.put(listenerClass, subscriberMethods);
+        }
+        return subscriberMethods;
+    }
+
+    /**
+     * @param listenerClass
+     * @return the event types the listener class has {@link RxSubscribe} methods for
+     */
+    public static Set<Class<?>> subscribedEventTypes(Class<?> listenerClass) {
+        return findSubscriberMethods(listenerClass).keySet();
+    }
+
+    /** This implementation returns the shared instance of a filter class, {@link EventFilter.AcceptAll} means no filter. */
+    static EventFilter<?> findFilter(Class<? extends EventFilter<?>> filterClass) {
+        if (filterClass == EventFilter.AcceptAll.class) {
+            return null;
+        }
+        EventFilter<?> filter = FILTERS_CACHE.get(filterClass);
+        if (filter == null) {
+            try {
+                filter = filterClass.getDeclaredConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalArgumentException("Filter " + filterClass
+                        + " must be a concrete class with a public constructor without arguments.", e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalArgumentException("Filter " + filterClass + " failed to initialize.", e.getCause());
+            }
+            EventFilter<?> previous = FILTERS_CACHE.putIfAbsent(filterClass, filter);
+            if (previous != null) {
+                filter = previous;
+            }
+        }
+        return filter;
+    }
+
     /** This implementation finds all methods marked with a {@link RxSubscribe} annotation. */
     static Map<Class<?>, Set<RxEventHandler>> findAllSubscribers(Object listener) {
-        Class<?> listenerClass = listener.getClass();
         Map<Class<?>, Set<RxEventHandler>> handlersInMethod = new HashMap<Class<?>, Set<RxEventHandler>>();
 
-        Map<Class<?>, Set<Method>> methods = SUBSCRIBERS_CACHE.get(listenerClass);
-        if (null == methods) {
-            methods = new HashMap<Class<?>, Set<Method>>();
-            loadAnnotatedSubscriberMethods(listenerClass, methods);
-        }
+        Map<Class<?>, RxSubscriberMethod[]> methods = findSubscriberMethods(listener.getClass());
         if (!methods.isEmpty()) {
-            for (Map.Entry<Class<?>, Set<Method>> e : methods.entrySet()) {
+            for (Map.Entry<Class<?>, RxSubscriberMethod[]> e : methods.entrySet()) {
                 Set<RxEventHandler> handlers = new HashSet<RxEventHandler>();
-                for (Method m : e.getValue()) {
+                for (RxSubscriberMethod m : e.getValue()) {
                     handlers.add(new RxEventHandler(listener, m));
                 }
                 handlersInMethod.put(e.getKey(), handlers);
@@ -185,6 +271,7 @@ public final class RxAnnotatedHandlerFinder {
     public static int clearResources(Object listener){
         Map<Class<?>, Set<Method>> subscribersCache = SUBSCRIBERS_CACHE.remove(listener);
         Map<Class<?>, Method> producersCache = PRODUCERS_CACHE.remove(listener);
+        SUBSCRIBER_METHODS_CACHE.remove(listener);
 
         int subscribersRefCount = 0, producersRefCount = 0;
         if(subscribersCache != null){
@@ -198,25 +285,82 @@ public final class RxAnnotatedHandlerFinder {
 
     /**
      * This method is used to call the event on listener, it use reflection to know what method call on listener object.
+     * The subscriber methods are cached by listener class, so this method doesn't allocate.
+     * Rate limited methods are invoked directly, batch methods are skipped since they receive lists.
      *
      * @param listener
      * @param event
      */
     public static void handleEvent(Object listener, Object event){
-        Map<Class<?>, Set<RxEventHandler>> allSubscribers = RxAnnotatedHandlerFinder.findAllSubscribers(listener);
-
-        if (allSubscribers != null && !allSubscribers.isEmpty()) {
-            Set<RxEventHandler> rxEventHandlers = allSubscribers.get(event.getClass());
-            if(rxEventHandlers != null && !rxEventHandlers.isEmpty()){
-                Iterator<RxEventHandler> iterator = rxEventHandlers.iterator();
-                while (iterator.hasNext()) {
-                    RxEventHandler handler = iterator.next();
-                    try {
-                        handler.handleEvent(event);
-                    } catch (InvocationTargetException e) {
-                        Log.e(LOG_TAG, Log.getStackTraceString(e.getCause()));
+        handleEvent(listener, event, acceptedHandlers(listener, event, null));
+    }
+
+    /**
+     * This method evaluates the {@link EventFilter}s of the subscriber methods of the listener for the event,
+     * it should be called before handing the event to another thread.
+     *
+     * @param listener
+     * @param event
+     * @param results the results of the filters already evaluated for the event, null to evaluate them anyway
+     * @return a mask with bit {@code i} set if the {@code i}-th subscriber method accepts the event, 0 if none does
+     */
+    public static long acceptedHandlers(Object listener, Object event, FilterResults results) {
+        RxSubscriberMethod[] methods = findSubscriberMethods(listener.getClass()).get(event.getClass());
+        if (methods == null) {
+            return 0;
+        }
+        long accepted = 0;
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].accepts(event, results)) {
+                accepted |= 1L << i;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * This method is used to call the event on listener, invoking only the subscriber methods accepting the event.
+     * Rate limited methods are invoked directly, batch methods are skipped since they receive lists.
+     *
+     * @param listener
+     * @param event
+     * @param acceptedHandlers the mask returned by {@link #acceptedHandlers(Object, Object, FilterResults)}
+     */
+    public static void handleEvent(Object listener, Object event, long acceptedHandlers){
+        handleEvent(listener, event, acceptedHandlers, null);
+    }
+
+    /**
+     * This method is used to call the event on listener, invoking only the subscriber methods accepting the event.
+     * The rate limited methods are invoked through {@code rateLimited}, or directly if it is null; batch methods
+     * are only invoked through {@code rateLimited}, which collects the events in lists, and are skipped if it is null.
+     *
+     * @param listener
+     * @param event
+     * @param acceptedHandlers the mask returned by {@link #acceptedHandlers(Object, Object, FilterResults)}
+     * @param rateLimited the rate limited handlers of the listener, see {@link RateLimitedHandlers#forListener(Object)}
+     */
+    public static void handleEvent(Object listener, Object event, long acceptedHandlers, RateLimitedHandlers rateLimited){
+        if (acceptedHandlers == 0) {
+            return;
+        }
+        RxSubscriberMethod[] methods = findSubscriberMethods(listener.getClass()).get(event.getClass());
+        for (int i = 0; i < methods.length; i++) {
+            if ((acceptedHandlers & (1L << i)) != 0) {
+                if (methods[i].rateLimit != null) {
+                    if (rateLimited != null && rateLimited.offer(methods[i], event)) {
+                        continue;
+                    }
+                    if (methods[i].rateLimit == RateLimit.BATCH) {
+                        LOGGER.debug("{} receives batches, skipping it without rate limited handlers", methods[i]);
+                        continue;
                     }
                 }
+                try {
+                    methods[i].invoke(listener, event);
+                } catch (InvocationTargetException e) {
+                    LOGGER.error("{} failed handling the event", methods[i], e.getCause());
+                }
             }
         }
     }
@@ -15,8 +15,12 @@
  */
 package com.baseandroid.events.rx.annotations;
 
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.lifecycle.PausedEvents;
+import com.baseandroid.events.pool.EventPool;
+
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 /**
  * Wraps a single-argument 'handler' method on a specific object.
@@ -35,13 +39,17 @@ class RxEventHandler {
     /** Object sporting the handler method. */
     private final Object target;
     /** Handler method. */
-    private final Method method;
+    private final RxSubscriberMethod method;
+    /** Invocations through the rate limiting operator of the method, null if the method is not rate limited. */
+    private final RateLimitedInvocation rateLimited;
     /** Object hash code. */
     private final int hashCode;
     /** Should this handler receive events? */
     private boolean valid = true;
+    /** Events kept while the target is paused, null if it is not paused. */
+    private volatile PausedEvents paused;
 
-    RxEventHandler(Object target, Method method) {
+    RxEventHandler(Object target, RxSubscriberMethod method) {
         if (target == null) {
             throw new NullPointerException("EventHandler target cannot be null.");
         }
@@ -51,12 +59,12 @@ class RxEventHandler {
 
         this.target = target;
         this.method = method;
-        method.setAccessible(true);
+        this.rateLimited = method.rateLimit != null ? new RateLimitedInvocation(target, method) : null;
 
         // Compute hash code eagerly since we know it will be used frequently and we cannot estimate the runtime of the
         // target's hashCode call.
         final int prime = 31;
-        hashCode = (prime + method.hashCode()) * prime + target.hashCode();
+        hashCode = (prime + method.method.hashCode()) * prime + target.hashCode();
     }
 
     public boolean isValid() {
@@ -70,6 +78,33 @@ class RxEventHandler {
      */
     public void invalidate() {
         valid = false;
+        if (rateLimited != null) {
+            rateLimited.dispose();
+        }
+    }
+
+    /**
+     * @return true if the method receives {@link Event.Type#UI} events, the only ones kept while the target is paused
+     */
+    boolean isPausable() {
+        EventInfo info = EventInfo.of(method.eventType);
+        return info != null && info.getType() == Event.Type.UI;
+    }
+
+    /**
+     * @param pausedEvents where the events are kept until the target is resumed, null to resume the handler
+     */
+    void setPaused(PausedEvents pausedEvents) {
+        paused = pausedEvents;
+    }
+
+    /**
+     * @param event
+     * @param results the results of the filters already evaluated for the event, null to evaluate the filter anyway
+     * @return true if the filter of the handler, if any, accepts the event
+     */
+    public boolean accepts(Object event, FilterResults results) {
+        return method.accepts(event, results);
     }
 
     /**
@@ -84,20 +119,24 @@ class RxEventHandler {
         if (!valid) {
             throw new IllegalStateException(toString() + " has been invalidated and can no longer handle events.");
         }
-        try {
-            method.invoke(target, event);
-        } catch (IllegalAccessException e) {
-            throw new AssertionError(e);
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof Error) {
-                throw (Error) e.getCause();
+        PausedEvents kept = paused;
+        if (kept != null) {
+            // the kept event must survive the end of the post
+            EventPool.retainIfPooled(event);
+            if (kept.offer(this, event, EventInfo.of(event.getClass()))) {
+                return;
             }
-            throw e;
+            EventPool.releaseIfPooled(event);
+        }
+        if (rateLimited != null) {
+            rateLimited.offer(event);
+        } else {
+            method.invoke(target, event);
         }
     }
 
     @Override public String toString() {
-        return "[EventHandler " + method + "]";
+        return method.toString();
     }
 
     @Override public int hashCode() {
@@ -119,7 +158,7 @@ class RxEventHandler {
 
         final RxEventHandler other = (RxEventHandler) obj;
 
-        return method.equals(other.method) && target == other.target;
+        return method.method.equals(other.method.method) && target == other.target;
     }
 
 }
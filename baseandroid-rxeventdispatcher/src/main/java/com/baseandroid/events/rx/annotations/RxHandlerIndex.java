@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import com.baseandroid.events.EventInfo;
+import com.baseandroid.events.EventKey;
+import com.baseandroid.events.lifecycle.PausedEvents;
+import com.baseandroid.events.log.EventLogger;
+import com.baseandroid.events.pool.EventPool;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the {@link RxSubscribe} handlers of the registered listeners, by event type.
+ * <br>
+ * The handlers of listeners registered with a key for event types having an {@link EventKey} are indexed
+ * by event type and key, so that an event reaches only the listeners of its key.
+ * <p>
+ * Registrations copy the handler arrays of the affected event types, so that {@link #dispatch(Object)} reads them
+ * without locking and without allocating: this index is meant for processors with few registrations and many events.
+ * </p>
+ */
+public final class RxHandlerIndex {
+
+    private static final EventLogger LOGGER = EventLogger.getLogger(RxHandlerIndex.class);
+    private static final RxEventHandler[] NO_HANDLERS = new RxEventHandler[0];
+    /**
+     * Invokes the handlers of a resumed listener for the events kept while it was paused
+     */
+    private static final PausedEvents.Delivery RESUMED_DELIVERY = new PausedEvents.Delivery() {
+        @Override
+        public void deliver(Object target, Object event) {
+            RxEventHandler handler = (RxEventHandler) target;
+            try {
+                if (handler.isValid()) {
+                    handler.handleEvent(event);
+                }
+            } catch (InvocationTargetException e) {
+                LOGGER.error("{} failed handling the event", handler, e.getCause());
+            } finally {
+                EventPool.releaseIfPooled(event);
+            }
+        }
+    };
+
+    /**
+     * This map contains in keys the event types, in values the handlers of all the listeners for that type
+     */
+    private final ConcurrentMap<Class<?>, RxEventHandler[]> mHandlersByType = new ConcurrentHashMap<>();
+    /**
+     * This map contains in keys the keyed event types, in values the handlers of the listeners registered with a key,
+     * by key
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Object, RxEventHandler[]>> mKeyedHandlersByType =
+            new ConcurrentHashMap<>();
+    /**
+     * This map contains in keys the registered listeners, in values their registration
+     */
+    private final Map<Object, Registration> mListeners = new IdentityHashMap<>();
+
+    /**
+     * Registers the {@link RxSubscribe} methods of a listener, registering it twice has no effect.
+     *
+     * @param listener
+     */
+    public void register(Object listener) {
+        register(listener, null);
+    }
+
+    /**
+     * Registers the {@link RxSubscribe} methods of a listener, for event types having an {@link EventKey}
+     * it will receive only the events with the given key. Registering it twice has no effect.
+     *
+     * @param listener
+     * @param key the key of the events the listener is interested in, null to receive all the events
+     */
+    public synchronized void register(Object listener, Object key) {
+        if (mListeners.containsKey(listener)) {
+            return;
+        }
+        Registration registration = new Registration(RxAnnotatedHandlerFinder.findAllSubscribers(listener), key);
+        mListeners.put(listener, registration);
+        for (Map.Entry<Class<?>, Set<RxEventHandler>> entry : registration.mHandlers.entrySet()) {
+            ConcurrentMap<Object, RxEventHandler[]> index = indexFor(entry.getKey(), key);
+            Object indexKey = indexKey(entry.getKey(), key);
+            RxEventHandler[] current = handlersFor(index, indexKey);
+            List<RxEventHandler> updated = new ArrayList<>(current.length + entry.getValue().size());
+            for (RxEventHandler handler : current) {
+                updated.add(handler);
+            }
+            updated.addAll(entry.getValue());
+            index.put(indexKey, updated.toArray(new RxEventHandler[updated.size()]));
+        }
+    }
+
+    /**
+     * Unregisters the handlers of a listener, they won't receive events anymore.
+     *
+     * @param listener
+     */
+    public synchronized void unregister(Object listener) {
+        Registration registration = mListeners.remove(listener);
+        if (registration == null) {
+            return;
+        }
+        for (Map.Entry<Class<?>, Set<RxEventHandler>> entry : registration.mHandlers.entrySet()) {
+            ConcurrentMap<Object, RxEventHandler[]> index = indexFor(entry.getKey(), registration.mKey);
+            Object indexKey = indexKey(entry.getKey(), registration.mKey);
+            List<RxEventHandler> updated = new ArrayList<>();
+            for (RxEventHandler handler : handlersFor(index, indexKey)) {
+                if (!entry.getValue().contains(handler)) {
+                    updated.add(handler);
+                }
+            }
+            if (updated.isEmpty()) {
+                index.remove(indexKey);
+                if (index.isEmpty() && index != (Map) mHandlersByType) {
+                    mKeyedHandlersByType.remove(entry.getKey());
+                }
+            } else {
+                index.put(indexKey, updated.toArray(new RxEventHandler[updated.size()]));
+            }
+            for (RxEventHandler handler : entry.getValue()) {
+                handler.invalidate();
+            }
+        }
+        if (registration.mPaused != null) {
+            registration.mPaused.clear();
+        }
+    }
+
+    /**
+     * Unregisters the handlers of all the registered listeners.
+     */
+    public synchronized void unregisterAll() {
+        for (Object listener : new ArrayList<>(mListeners.keySet())) {
+            unregister(listener);
+        }
+    }
+
+    /**
+     * Pauses a registered listener: its handlers of {@link com.baseandroid.events.Event.Type#UI} events keep the events
+     * until {@link #resume(Object)}. Listeners that are not registered are ignored.
+     *
+     * @param listener
+     */
+    public synchronized void pause(Object listener) {
+        Registration registration = mListeners.get(listener);
+        if (registration == null || registration.mPaused != null) {
+            return;
+        }
+        registration.mPaused = new PausedEvents();
+        for (Set<RxEventHandler> handlers : registration.mHandlers.values()) {
+            for (RxEventHandler handler : handlers) {
+                if (handler.isPausable()) {
+                    handler.setPaused(registration.mPaused);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resumes a paused listener, its handlers are invoked on the calling thread for the events kept meanwhile.
+     *
+     * @param listener
+     */
+    public void resume(Object listener) {
+        PausedEvents paused;
+        synchronized (this) {
+            Registration registration = mListeners.get(listener);
+            if (registration == null || registration.mPaused == null) {
+                return;
+            }
+            paused = registration.mPaused;
+            registration.mPaused = null;
+            for (Set<RxEventHandler> handlers : registration.mHandlers.values()) {
+                for (RxEventHandler handler : handlers) {
+                    handler.setPaused(null);
+                }
+            }
+        }
+        paused.resume(RESUMED_DELIVERY);
+    }
+
+    /**
+     * @param eventType
+     * @return true if at least one handler is registered for the given event type
+     */
+    public boolean hasHandlers(Class<?> eventType) {
+        return mHandlersByType.containsKey(eventType) || mKeyedHandlersByType.containsKey(eventType);
+    }
+
+    /**
+     * Invokes, on the calling thread, all the handlers registered for the class of the event:
+     * the ones of the listeners registered without key and, for keyed events, the ones of the listeners registered
+     * with the key of the event.
+     *
+     * @param event
+     * @return the number of handlers invoked
+     */
+    public int dispatch(Object event) {
+        return dispatch(event, null);
+    }
+
+    /**
+     * Invokes, on the calling thread, all the handlers registered for the class of the event whose
+     * {@link EventFilter}, if any, accepts it.
+     *
+     * @param event
+     * @param results where the results of the filters are shared among the handlers, it must be empty
+     * @return the number of handlers invoked
+     * @see #dispatch(Object)
+     */
+    public int dispatch(Object event, FilterResults results) {
+        int invoked = invoke(handlersFor(event.getClass()), event, results);
+        ConcurrentMap<Object, RxEventHandler[]> keyedHandlers = mKeyedHandlersByType.get(event.getClass());
+        if (keyedHandlers != null) {
+            Object key = EventInfo.of(event.getClass()).getKey(event);
+            if (key != null) {
+                invoked += invoke(handlersFor(keyedHandlers, key), event, results);
+            } else {
+                // events without a key reach all the listeners
+                for (RxEventHandler[] handlers : keyedHandlers.values()) {
+                    invoked += invoke(handlers, event, results);
+                }
+            }
+        }
+        return invoked;
+    }
+
+    private static int invoke(RxEventHandler[] handlers, Object event, FilterResults results) {
+        int invoked = 0;
+        for (RxEventHandler handler : handlers) {
+            // a listener unregistered during the dispatch doesn't receive the event anymore
+            if (handler.isValid() && handler.accepts(event, results)) {
+                try {
+                    handler.handleEvent(event);
+                } catch (InvocationTargetException e) {
+                    LOGGER.error("{} failed handling the event", handler, e.getCause());
+                } catch (IllegalStateException e) {
+                    if (handler.isValid()) {
+                        throw e;
+                    }
+                    // unregistered on another thread after the check above
+                    continue;
+                }
+                invoked++;
+            }
+        }
+        return invoked;
+    }
+
+    private RxEventHandler[] handlersFor(Class<?> eventType) {
+        return handlersFor(mHandlersByType, eventType);
+    }
+
+    private static RxEventHandler[] handlersFor(Map<?, RxEventHandler[]> index, Object indexKey) {
+        RxEventHandler[] handlers = index.get(indexKey);
+        return handlers != null ? handlers : NO_HANDLERS;
+    }
+
+    /**
+     * @return the index holding the handlers of the given event type for listeners registered with the given key
+     */
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<Object, RxEventHandler[]> indexFor(Class<?> eventType, Object key) {
+        if (key == null || !isKeyed(eventType)) {
+            return (ConcurrentMap) mHandlersByType;
+        }
+        ConcurrentMap<Object, RxEventHandler[]> index = mKeyedHandlersByType.get(eventType);
+        if (index == null) {
+            index = new ConcurrentHashMap<>();
+            mKeyedHandlersByType.put(eventType, index);
+        }
+        return index;
+    }
+
+    private static Object indexKey(Class<?> eventType, Object key) {
+        return key == null || !isKeyed(eventType) ? eventType : key;
+    }
+
+    private static boolean isKeyed(Class<?> eventType) {
+        EventInfo info = EventInfo.of(eventType);
+        return info != null && info.isKeyed();
+    }
+
+    /**
+     * This class holds the handlers of a registered listener, by event type, and the key it was registered with
+     */
+    private static final class Registration {
+        private final Map<Class<?>, Set<RxEventHandler>> mHandlers;
+        private final Object mKey;
+        /**
+         * The events kept while the listener is paused, null if it is not paused
+         */
+        private PausedEvents mPaused;
+
+        private Registration(Map<Class<?>, Set<RxEventHandler>> handlers, Object key) {
+            mHandlers = handlers;
+            mKey = key;
+        }
+    }
+}
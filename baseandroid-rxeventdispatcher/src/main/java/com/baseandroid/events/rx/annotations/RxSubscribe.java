@@ -29,10 +29,57 @@ import java.lang.annotation.Target;
  * <p>If this annotation is applied to methods with zero parameters or more than one parameter, the object containing
  * the method will not be able to register for event delivery from the {@link RxBus}. Otto fails fast by throwing
  * runtime exceptions in these cases.
+ * <p>The {@link #filter()} restricts the events the method is invoked for, see {@link EventFilter}.
+ * <p>At most one of {@link #debounce()}, {@link #throttleFirst()}, {@link #throttleLast()} and {@link #sample()} can be
+ * set to rate limit the invocations of the method, each listener instance has its own window. Rate limited methods of
+ * {@link com.baseandroid.events.Event.Type#UI} events are invoked on the main thread, the others on the
+ * {@code Schedulers.computation()} threads. They can't receive {@link com.baseandroid.events.pool.PooledEvent}s, as the
+ * events are held past the end of the post.
+ * <p>Methods whose parameter is a {@code List<T>} receive the events of type {@code T} in batches: the list holds the
+ * events accepted since the previous invocation, at most {@link #batchMaxSize()} of them and for at most
+ * {@link #batchMaxDelay()} milliseconds. They are invoked on the same threads as the rate limited methods.
  *
  * @author Andrea Guitto
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface RxSubscribe {
+
+    /**
+     * @return the class of the {@link EventFilter} guarding the method, {@link EventFilter.AcceptAll} (the default)
+     * means that the method receives all the events of its type
+     */
+    Class<? extends EventFilter<?>> filter() default EventFilter.AcceptAll.class;
+
+    /**
+     * @return milliseconds of quiet after an event before the method is invoked with it, 0 (the default) to disable it
+     */
+    long debounce() default 0;
+
+    /**
+     * @return milliseconds after an invocation during which the events are dropped, 0 (the default) to disable it
+     */
+    long throttleFirst() default 0;
+
+    /**
+     * @return milliseconds of the window at the end of which the method is invoked with the last event of the window,
+     * 0 (the default) to disable it
+     */
+    long throttleLast() default 0;
+
+    /**
+     * @return milliseconds of the period at which the method is invoked with the last event received, if any,
+     * 0 (the default) to disable it
+     */
+    long sample() default 0;
+
+    /**
+     * @return max number of events of the list received by a batch method, 0 (the default) for no limit
+     */
+    int batchMaxSize() default 0;
+
+    /**
+     * @return max milliseconds an event waits before the batch method receives it, it must be positive for batch methods
+     */
+    long batchMaxDelay() default 0;
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import com.baseandroid.events.metrics.SlowHandlerDetector;
+import com.baseandroid.events.pool.PooledEvent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A method annotated with {@link RxSubscribe}, not bound to any listener: it is shared by all the instances of the
+ * listener class and invoked on the listener receiving the event.
+ */
+final class RxSubscriberMethod {
+
+    /** Handler method. */
+    final Method method;
+    /** Handler method name, reported by {@link SlowHandlerDetector}. */
+    final String name;
+    /** Filter declared with {@link RxSubscribe#filter()}, null if the method receives all the events. */
+    final EventFilter<?> filter;
+    /** Rate limiting operator declared with {@link RxSubscribe}, null if the method is invoked for every event. */
+    final RateLimit rateLimit;
+    /** Window of {@link #rateLimit}, in milliseconds. */
+    final long rateLimitMillis;
+    /** Max number of events of the lists received by batch methods, 0 for no limit. */
+    final int batchMaxSize;
+    /** Type of the events received by the method, the element type of the list for batch methods. */
+    final Class<?> eventType;
+
+    RxSubscriberMethod(Method method) {
+        this.method = method;
+        this.name = method.toString();
+        method.setAccessible(true);
+        RxSubscribe annotation = method.getAnnotation(RxSubscribe.class);
+        this.eventType = RxAnnotatedHandlerFinder.subscribedEventType(method);
+        this.filter = annotation != null ? RxAnnotatedHandlerFinder.findFilter(annotation.filter()) : null;
+
+        RateLimit limit = null;
+        long millis = 0;
+        if (annotation != null) {
+            long[] windows = {annotation.debounce(), annotation.throttleFirst(), annotation.throttleLast(), annotation.sample()};
+            for (int i = 0; i < windows.length; i++) {
+                if (windows[i] < 0) {
+                    throw new IllegalArgumentException("Method " + method + " has a negative rate limit window.");
+                }
+                if (windows[i] > 0) {
+                    if (limit != null) {
+                        throw new IllegalArgumentException("Method " + method + " has more than one rate limit.");
+                    }
+                    limit = RateLimit.values()[i];
+                    millis = windows[i];
+                }
+            }
+        }
+        int maxSize = 0;
+        if (method.getParameterTypes()[0] == List.class) {
+            if (limit != null) {
+                throw new IllegalArgumentException("Method " + method + " receives batches, it can't be rate limited.");
+            }
+            if (annotation == null || annotation.batchMaxDelay() <= 0 || annotation.batchMaxSize() < 0) {
+                throw new IllegalArgumentException("Method " + method + " receives batches, it must declare a positive "
+                        + "batchMaxDelay and a batchMaxSize that is not negative.");
+            }
+            limit = RateLimit.BATCH;
+            millis = annotation.batchMaxDelay();
+            maxSize = annotation.batchMaxSize();
+        }
+        if (limit != null && PooledEvent.class.isAssignableFrom(eventType)) {
+            throw new IllegalArgumentException("Method " + method + " is rate limited but receives pooled events, "
+                    + "which are recycled at the end of the post.");
+        }
+        this.rateLimit = limit;
+        this.rateLimitMillis = millis;
+        this.batchMaxSize = maxSize;
+    }
+
+    /**
+     * @param event
+     * @param results the results of the filters already evaluated for the event, null to evaluate the filter anyway
+     * @return true if the method must be invoked for the event
+     */
+    boolean accepts(Object event, FilterResults results) {
+        if (filter == null) {
+            return true;
+        }
+        return results != null ? results.accept(filter, event) : FilterResults.evaluate(filter, event);
+    }
+
+    /**
+     * Invokes the method on {@code target} to handle {@code event}.
+     *
+     * @param target the listener
+     * @param event  event to handle
+     * @throws InvocationTargetException  if the method throws any {@link Throwable} that is not
+     *     an {@link Error} ({@code Error}s are propagated as-is).
+     */
+    void invoke(Object target, Object event) throws InvocationTargetException {
+        SlowHandlerDetector detector = SlowHandlerDetector.sample();
+        long start = detector != null ? System.nanoTime() : 0;
+        try {
+            method.invoke(target, event);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        } finally {
+            if (detector != null) {
+                detector.record(name, event.getClass(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return "[EventHandler " + method + "]";
+    }
+}
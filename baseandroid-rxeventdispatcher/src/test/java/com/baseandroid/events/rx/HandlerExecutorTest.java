@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.pool.PooledEvent;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+import com.baseandroid.events.shedding.LoadShedder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the per type concurrency limit of {@link HandlerExecutor}, the invocations executed after its shutdown, and the
+ * load shedding of {@link RxEventProcessor} on the invocations waiting in the executor.
+ */
+public class HandlerExecutorTest {
+
+    private static final int INVOCATIONS = 20;
+    private static final int LIMIT = 2;
+
+    @Test
+    public void limitedTypeNeverExceedsItsLimit() throws InterruptedException {
+        HandlerExecutor executor = HandlerExecutor.pooled(8).setConcurrencyLimit(DataEvent.class, LIMIT);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch completed = new CountDownLatch(INVOCATIONS);
+        try {
+            for (int i = 0; i < INVOCATIONS; i++) {
+                executor.execute(DataEvent.class, new Runnable() {
+                    @Override
+                    public void run() {
+                        int now = running.incrementAndGet();
+                        while (true) {
+                            int max = maxRunning.get();
+                            if (now <= max || maxRunning.compareAndSet(max, now)) {
+                                break;
+                            }
+                        }
+                        sleep(5);
+                        running.decrementAndGet();
+                        completed.countDown();
+                    }
+                });
+            }
+            // the queued invocations are drained as the running ones complete
+            assertTrue("queued invocations not drained", completed.await(5, TimeUnit.SECONDS));
+            assertEquals(LIMIT, maxRunning.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void otherTypesAreNotLimited() throws InterruptedException {
+        HandlerExecutor executor = HandlerExecutor.pooled(4).setConcurrencyLimit(DataEvent.class, 1);
+        final CountDownLatch started = new CountDownLatch(4);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(OtherEvent.class, new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        await(release);
+                    }
+                });
+            }
+            assertTrue("unlimited invocations not running together", started.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void invocationsRunOnTheCallerAfterShutdown() {
+        HandlerExecutor executor = HandlerExecutor.pooled(2).setConcurrencyLimit(DataEvent.class, 1);
+        executor.shutdown();
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger inline = new AtomicInteger();
+        Runnable invocation = new Runnable() {
+            @Override
+            public void run() {
+                if (Thread.currentThread() == caller) {
+                    inline.incrementAndGet();
+                }
+            }
+        };
+        // a rejected invocation of a limited type must give its slot back, or the type would stop for good
+        for (int i = 0; i < 3; i++) {
+            executor.execute(DataEvent.class, invocation);
+            executor.execute(OtherEvent.class, invocation);
+        }
+        assertEquals(6, inline.get());
+    }
+
+    @Test
+    public void replacedExecutorStillDeliversAndReleasesEvents() {
+        RxEventProcessor processor = (RxEventProcessor) RxEventProcessor.newInstance();
+        HandlerExecutor executor = HandlerExecutor.pooled(2);
+        processor.setHandlerExecutor(executor);
+        // what a poster still holding the previous executor sees
+        executor.shutdown();
+        CountingListener listener = new CountingListener();
+        processor.onRegister(listener);
+        EventPool<PooledDataEvent> pool = new EventPool<>(new EventPool.Factory<PooledDataEvent>() {
+            @Override
+            public PooledDataEvent newEvent() {
+                return new PooledDataEvent();
+            }
+        }, 1);
+        try {
+            PooledDataEvent event = pool.obtain();
+            processor.onPost(event);
+            event.release();
+            assertEquals(1, listener.mDelivered.get());
+            assertEquals(0, event.getReferenceCount());
+        } finally {
+            processor.onShutdown();
+        }
+    }
+
+    @Test
+    public void processorShedsWhileInvocationsWait() throws InterruptedException {
+        RxEventProcessor processor = (RxEventProcessor) RxEventProcessor.newInstance();
+        HandlerExecutor executor = HandlerExecutor.pooled(1);
+        processor.setHandlerExecutor(executor);
+        final List<Object> shed = new ArrayList<>();
+        processor.setLoadShedder(LoadShedder.newInstance(2, 0, Event.Priority.NORMAL, new LoadShedder.Overflow() {
+            @Override
+            public void onShed(Object event, String queue) {
+                shed.add(event);
+            }
+        }));
+        BlockingListener listener = new BlockingListener();
+        processor.onRegister(listener);
+        try {
+            // the first invocation holds the only thread, the next ones wait in the executor
+            for (int i = 0; i < 5; i++) {
+                processor.onPost(new LowEvent());
+            }
+            processor.onPost(new HighEvent());
+            assertTrue("low priority events not shed", shed.size() >= 2);
+            for (Object event : shed) {
+                assertTrue(event instanceof LowEvent);
+            }
+            listener.mRelease.countDown();
+            assertTrue("high priority event not delivered", listener.mHigh.await(5, TimeUnit.SECONDS));
+            assertEquals(0, executor.getQueuedCount());
+        } finally {
+            listener.mRelease.countDown();
+            processor.onShutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class CountingListener {
+        final AtomicInteger mDelivered = new AtomicInteger();
+
+        @RxSubscribe
+        public void onData(PooledDataEvent event) {
+            mDelivered.incrementAndGet();
+        }
+    }
+
+    public static class BlockingListener {
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final CountDownLatch mHigh = new CountDownLatch(1);
+
+        @RxSubscribe
+        public void onLow(LowEvent event) {
+            await(mRelease);
+        }
+
+        @RxSubscribe
+        public void onHigh(HighEvent event) {
+            mHigh.countDown();
+        }
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.LOW)
+    public static class LowEvent {
+    }
+
+    @Event(type = Event.Type.DATA, priority = Event.Priority.HIGH)
+    public static class HighEvent {
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class DataEvent {
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class OtherEvent {
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class PooledDataEvent extends PooledEvent {
+        @Override
+        protected void onRecycle() {
+        }
+    }
+}
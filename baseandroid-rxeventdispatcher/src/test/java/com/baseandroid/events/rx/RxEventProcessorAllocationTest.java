@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx;
+
+import com.baseandroid.events.Event;
+import com.baseandroid.events.EventProcessor;
+import com.baseandroid.events.pool.EventPool;
+import com.baseandroid.events.pool.PooledEvent;
+import com.baseandroid.events.rx.annotations.RxSubscribe;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the bytes allocated by the posting thread for every event posted on {@link RxEventProcessor},
+ * delivery included, so that allocations creeping back in the envelope path make the build fail.
+ * <br>
+ * Posts are measured after a warm-up, with the per-thread allocation counter of the JVM:
+ * the test is skipped on JVMs not supporting it.
+ */
+public class RxEventProcessorAllocationTest {
+
+    private static final int WARMUP_POSTS = 200000;
+    private static final int MEASURED_POSTS = 100000;
+
+    /**
+     * Posts not delivered to any handler allocate nothing
+     */
+    private static final double NO_DELIVERY_BUDGET_BYTES = 1;
+    /**
+     * Events posted on the background bus are delivered through reused envelopes, the only allocation left is
+     * the argument array of the reflective handler invocation, which the JIT doesn't always eliminate
+     */
+    private static final double BUS_BUDGET_BYTES = 32;
+    /**
+     * The replay buffer of the UI bus keeps the envelopes of UI events: envelope, weak reference and replay node
+     */
+    private static final double UI_BUS_BUDGET_BYTES = 144;
+
+    private EventProcessor mProcessor;
+    private CountingListener mListener;
+
+    @Before
+    public void setUp() {
+        mProcessor = RxEventProcessor.newInstance();
+        mListener = new CountingListener();
+        mProcessor.onRegister(mListener);
+    }
+
+    @After
+    public void tearDown() {
+        mProcessor.onUnregister(mListener);
+    }
+
+    @Test
+    public void busEventDeliveryIsAllocationFree() {
+        DataEvent event = new DataEvent();
+        assertBudget(event, BUS_BUDGET_BYTES);
+        assertEquals(WARMUP_POSTS + MEASURED_POSTS, mListener.mDataEvents);
+    }
+
+    @Test
+    public void busEventWithoutSubscribersIsAllocationFree() {
+        assertBudget(new UnhandledEvent(), NO_DELIVERY_BUDGET_BYTES);
+    }
+
+    @Test
+    public void objectNotAnEventIsAllocationFree() {
+        assertBudget(new Object(), NO_DELIVERY_BUDGET_BYTES);
+    }
+
+    @Test
+    public void pooledEventDeliveryIsAllocationFree() {
+        EventPool<PooledDataEvent> pool = new EventPool<>(new EventPool.Factory<PooledDataEvent>() {
+            @Override
+            public PooledDataEvent newEvent() {
+                return new PooledDataEvent();
+            }
+        }, 4);
+        ThreadMXBean threads = allocationCounter();
+        for (int i = 0; i < WARMUP_POSTS; i++) {
+            postPooled(pool);
+        }
+        long before = allocatedBytes(threads);
+        for (int i = 0; i < MEASURED_POSTS; i++) {
+            postPooled(pool);
+        }
+        assertWithinBudget(allocatedBytes(threads) - before, BUS_BUDGET_BYTES);
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void uiEventDeliveryStaysWithinBudget() {
+        assertBudget(new UiEvent(), UI_BUS_BUDGET_BYTES);
+        assertEquals(WARMUP_POSTS + MEASURED_POSTS, mListener.mUiEvents);
+    }
+
+    private void postPooled(EventPool<PooledDataEvent> pool) {
+        PooledDataEvent event = pool.obtain();
+        mProcessor.onPost(event);
+        // what EventDispatcher.post does once the processor returns
+        event.release();
+    }
+
+    private void assertBudget(Object event, double budgetBytes) {
+        ThreadMXBean threads = allocationCounter();
+        for (int i = 0; i < WARMUP_POSTS; i++) {
+            mProcessor.onPost(event);
+        }
+        long before = allocatedBytes(threads);
+        for (int i = 0; i < MEASURED_POSTS; i++) {
+            mProcessor.onPost(event);
+        }
+        assertWithinBudget(allocatedBytes(threads) - before, budgetBytes);
+    }
+
+    private static void assertWithinBudget(long allocated, double budgetBytes) {
+        double perPost = (double) allocated / MEASURED_POSTS;
+        assertTrue("allocated " + perPost + " bytes per post, budget is " + budgetBytes, perPost <= budgetBytes);
+    }
+
+    private static ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+        ((com.sun.management.ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class DataEvent {
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class UnhandledEvent {
+    }
+
+    @Event(type = Event.Type.UI)
+    public static class UiEvent {
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class PooledDataEvent extends PooledEvent {
+        @Override
+        protected void onRecycle() {
+        }
+    }
+
+    public static class CountingListener {
+        long mDataEvents;
+        long mUiEvents;
+
+        @RxSubscribe
+        public void onDataEvent(DataEvent event) {
+            mDataEvents++;
+        }
+
+        @RxSubscribe
+        public void onPooledDataEvent(PooledDataEvent event) {
+        }
+
+        @RxSubscribe
+        public void onUiEvent(UiEvent event) {
+            mUiEvents++;
+        }
+    }
+}
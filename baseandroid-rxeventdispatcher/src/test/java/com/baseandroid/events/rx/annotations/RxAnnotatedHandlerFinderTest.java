@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Sysdata Digital, S.r.l.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baseandroid.events.rx.annotations;
+
+import com.baseandroid.events.Event;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the public overloads of {@link RxAnnotatedHandlerFinder#handleEvent(Object, Object)}, which are called without
+ * {@link RateLimitedHandlers}: batch methods must be skipped without aborting the invocation of the other methods.
+ */
+public class RxAnnotatedHandlerFinderTest {
+
+    @Test
+    public void handleEventSkipsBatchMethods() {
+        BatchListener listener = new BatchListener();
+        RxAnnotatedHandlerFinder.handleEvent(listener, new DataEvent());
+        assertEquals(1, listener.mFirst);
+        assertEquals(1, listener.mLast);
+        assertEquals(0, listener.mBatches);
+    }
+
+    @Test
+    public void handleEventWithMaskSkipsBatchMethods() {
+        BatchListener listener = new BatchListener();
+        DataEvent event = new DataEvent();
+        long accepted = RxAnnotatedHandlerFinder.acceptedHandlers(listener, event, null);
+        assertEquals(3, Long.bitCount(accepted));
+        RxAnnotatedHandlerFinder.handleEvent(listener, event, accepted);
+        assertEquals(1, listener.mFirst);
+        assertEquals(1, listener.mLast);
+        assertEquals(0, listener.mBatches);
+    }
+
+    @Event(type = Event.Type.DATA)
+    public static class DataEvent {
+    }
+
+    public static class BatchListener {
+        int mFirst;
+        int mLast;
+        int mBatches;
+
+        @RxSubscribe
+        public void onFirst(DataEvent event) {
+            mFirst++;
+        }
+
+        @RxSubscribe(batchMaxDelay = 100)
+        public void onBatch(List<DataEvent> events) {
+            mBatches++;
+        }
+
+        @RxSubscribe
+        public void onLast(DataEvent event) {
+            mLast++;
+        }
+    }
+}